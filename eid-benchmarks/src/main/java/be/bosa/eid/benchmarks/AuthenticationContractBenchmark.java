@@ -0,0 +1,65 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.client_server.shared.message.AuthenticationContract;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.SecureRandom;
+
+/**
+ * Calculation of the data to be signed for an authentication, both with and
+ * without channel binding.
+ */
+@State(Scope.Benchmark)
+public class AuthenticationContractBenchmark {
+
+	private AuthenticationContract plainContract;
+	private AuthenticationContract channelBindingContract;
+
+	@Setup
+	public void setup() throws UnknownHostException {
+		BenchmarkData benchmarkData = new BenchmarkData();
+		SecureRandom secureRandom = new SecureRandom();
+		byte[] salt = new byte[20];
+		secureRandom.nextBytes(salt);
+		byte[] challenge = new byte[20];
+		secureRandom.nextBytes(challenge);
+		byte[] sessionId = new byte[32];
+		secureRandom.nextBytes(sessionId);
+		this.plainContract = new AuthenticationContract(salt, null, null, null, null, challenge);
+		this.channelBindingContract = new AuthenticationContract(salt, "www.example.be",
+				InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), sessionId, benchmarkData.getAuthnCertFile(),
+				challenge);
+	}
+
+	@Benchmark
+	public byte[] calculateToBeSigned() {
+		return this.plainContract.calculateToBeSigned();
+	}
+
+	@Benchmark
+	public byte[] calculateToBeSignedWithChannelBinding() {
+		return this.channelBindingContract.calculateToBeSigned();
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.server.spi.AuthenticationService;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+/**
+ * Authentication service that trusts every certificate chain, so the
+ * benchmarks measure the eID Server itself instead of a PKI validation.
+ */
+public class BenchmarkAuthenticationService implements AuthenticationService {
+
+	public void validateCertificateChain(List<X509Certificate> certificateChain) throws SecurityException {
+		// trust all
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.client_server.shared.message.AuthenticationContract;
+import be.bosa.eid.client_server.shared.message.AuthenticationDataMessage;
+import be.bosa.eid.client_server.shared.message.HelloMessage;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+
+/**
+ * Synthetic eID card data used by the benchmarks. The certificates are
+ * generated for benchmarking only and do not chain up to a real eID root.
+ */
+public final class BenchmarkData {
+
+	private final byte[] authnCertFile;
+	private final byte[] citizenCaCertFile;
+	private final byte[] rootCaCertFile;
+	private final PrivateKey authnPrivateKey;
+	private final byte[] identityFile;
+	private final byte[] addressFile;
+
+	private final SecureRandom secureRandom = new SecureRandom();
+
+	public BenchmarkData() {
+		try {
+			this.authnCertFile = load("benchmark-authn.der");
+			this.citizenCaCertFile = load("benchmark-ca.der");
+			this.rootCaCertFile = load("benchmark-root.der");
+			KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+			this.authnPrivateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(load("benchmark-authn-key.der")));
+			this.identityFile = load("id-alice.tlv");
+			this.addressFile = load("address-alice.tlv");
+		} catch (IOException | GeneralSecurityException e) {
+			throw new IllegalStateException("cannot load benchmark data: " + e.getMessage(), e);
+		}
+	}
+
+	private static byte[] load(String resourceName) throws IOException {
+		try (InputStream inputStream = BenchmarkData.class.getResourceAsStream("/" + resourceName)) {
+			if (inputStream == null) {
+				throw new IOException("resource not found: " + resourceName);
+			}
+			return IOUtils.toByteArray(inputStream);
+		}
+	}
+
+	public HelloMessage createHelloMessage() {
+		return new HelloMessage("en", null);
+	}
+
+	/**
+	 * Creates the authentication data message a client would send for the
+	 * given challenge, signed with the synthetic authentication key.
+	 */
+	public AuthenticationDataMessage createAuthenticationDataMessage(byte[] challenge, boolean includeIdentity) {
+		byte[] salt = new byte[20];
+		this.secureRandom.nextBytes(salt);
+		AuthenticationContract authenticationContract = new AuthenticationContract(salt, null, null, null, null,
+				challenge);
+		try {
+			Signature signature = Signature.getInstance("SHA256withRSA");
+			signature.initSign(this.authnPrivateKey);
+			signature.update(authenticationContract.calculateToBeSigned());
+			byte[] signatureValue = signature.sign();
+			return new AuthenticationDataMessage(salt, null, signatureValue, this.authnCertFile,
+					this.citizenCaCertFile, this.rootCaCertFile, null, includeIdentity ? this.identityFile : null,
+					includeIdentity ? this.addressFile : null, null, null, null, null, null, null);
+		} catch (IOException | GeneralSecurityException e) {
+			throw new IllegalStateException("cannot create authentication data: " + e.getMessage(), e);
+		}
+	}
+
+	public byte[] getAuthnCertFile() {
+		return this.authnCertFile;
+	}
+
+	public byte[] getIdentityFile() {
+		return this.identityFile;
+	}
+
+	public byte[] getAddressFile() {
+		return this.addressFile;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.server.Address;
+import be.bosa.eid.server.Identity;
+import be.bosa.eid.server.dto.DTOMapper;
+import be.bosa.eid.server.impl.tlv.TlvParser;
+import be.bosa.eid.server.spi.AddressDTO;
+import be.bosa.eid.server.spi.IdentityDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mapping of the parsed identity and address onto the DTOs handed to the
+ * SPI implementations.
+ */
+@State(Scope.Benchmark)
+public class DTOMapperBenchmark {
+
+	private Identity identity;
+	private Address address;
+
+	@Setup
+	public void setup() {
+		BenchmarkData benchmarkData = new BenchmarkData();
+		this.identity = TlvParser.parse(benchmarkData.getIdentityFile(), Identity.class);
+		this.address = TlvParser.parse(benchmarkData.getAddressFile(), Address.class);
+	}
+
+	@Benchmark
+	public IdentityDTO mapIdentity() {
+		return new DTOMapper().map(this.identity, IdentityDTO.class);
+	}
+
+	@Benchmark
+	public AddressDTO mapAddress() {
+		return new DTOMapper().map(this.address, AddressDTO.class);
+	}
+}
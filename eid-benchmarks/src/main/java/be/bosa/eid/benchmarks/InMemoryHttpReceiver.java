@@ -0,0 +1,55 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.client_server.shared.protocol.HttpReceiver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP receiver on top of in-memory headers and body.
+ */
+public class InMemoryHttpReceiver implements HttpReceiver {
+
+	private final Map<String, String> headers;
+
+	private final byte[] body;
+
+	public InMemoryHttpReceiver(Map<String, String> headers, byte[] body) {
+		this.headers = headers;
+		this.body = body;
+	}
+
+	public boolean isSecure() {
+		return true;
+	}
+
+	public List<String> getHeaderNames() {
+		return new ArrayList<>(this.headers.keySet());
+	}
+
+	public String getHeaderValue(String headerName) {
+		return this.headers.get(headerName);
+	}
+
+	public byte[] getBody() {
+		return this.body;
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.client_server.shared.protocol.HttpTransmitter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP transmitter that keeps the marshalled message in memory, so it can be
+ * fed to the other side without any network I/O.
+ */
+public class InMemoryHttpTransmitter implements HttpTransmitter {
+
+	private final Map<String, String> headers = new LinkedHashMap<>();
+
+	private byte[] body;
+
+	public boolean isSecure() {
+		return true;
+	}
+
+	public void addHeader(String headerName, String headerValue) {
+		this.headers.put(headerName, headerValue);
+	}
+
+	public void setBody(byte[] bodyValue) {
+		this.body = bodyValue;
+	}
+
+	public Map<String, String> getHeaders() {
+		return this.headers;
+	}
+
+	public byte[] getBody() {
+		return this.body;
+	}
+
+	/**
+	 * Gives back a receiver for the message transmitted so far.
+	 */
+	public InMemoryHttpReceiver toReceiver() {
+		return new InMemoryHttpReceiver(this.headers, this.body);
+	}
+}
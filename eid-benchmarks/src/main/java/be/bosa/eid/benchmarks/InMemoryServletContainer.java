@@ -0,0 +1,290 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.server.EidServiceServlet;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Minimal in-memory servlet container hosting a single eID Server servlet.
+ * Only the parts of the servlet API the eID Server uses are backed by real
+ * state, all other methods give back default values.
+ */
+public class InMemoryServletContainer {
+
+	private final Map<String, Object> contextAttributes = new HashMap<>();
+
+	private final ServletContext servletContext;
+
+	private final BenchmarkServlet servlet;
+
+	public InMemoryServletContainer(Map<String, String> initParams) throws ServletException {
+		this.servletContext = proxy(ServletContext.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getAttribute":
+					return this.contextAttributes.get(args[0]);
+				case "setAttribute":
+					this.contextAttributes.put((String) args[0], args[1]);
+					return null;
+				case "removeAttribute":
+					this.contextAttributes.remove(args[0]);
+					return null;
+				case "getInitParameter":
+					return null;
+				case "getInitParameterNames":
+					return Collections.emptyEnumeration();
+				default:
+					return defaultValue(method.getReturnType());
+			}
+		});
+		ServletConfig servletConfig = proxy(ServletConfig.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getInitParameter":
+					return initParams.get(args[0]);
+				case "getInitParameterNames":
+					return Collections.enumeration(initParams.keySet());
+				case "getServletContext":
+					return this.servletContext;
+				case "getServletName":
+					return "eid-benchmark";
+				default:
+					return defaultValue(method.getReturnType());
+			}
+		});
+		this.servlet = new BenchmarkServlet();
+		this.servlet.init(servletConfig);
+	}
+
+	public void destroy() {
+		this.servlet.destroy();
+	}
+
+	/**
+	 * Creates a new, empty HTTP session.
+	 */
+	public HttpSession createSession() {
+		Map<String, Object> attributes = new HashMap<>();
+		String id = UUID.randomUUID().toString();
+		long creationTime = System.currentTimeMillis();
+		return proxy(HttpSession.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getAttribute":
+					return attributes.get(args[0]);
+				case "setAttribute":
+					attributes.put((String) args[0], args[1]);
+					return null;
+				case "removeAttribute":
+					attributes.remove(args[0]);
+					return null;
+				case "getAttributeNames":
+					return Collections.enumeration(attributes.keySet());
+				case "getId":
+					return id;
+				case "getCreationTime":
+				case "getLastAccessedTime":
+					return creationTime;
+				case "getServletContext":
+					return this.servletContext;
+				case "invalidate":
+					attributes.clear();
+					return null;
+				default:
+					return defaultValue(method.getReturnType());
+			}
+		});
+	}
+
+	/**
+	 * Posts the message held by the given transmitter to the servlet and gives
+	 * back the response of the servlet.
+	 */
+	public InMemoryHttpReceiver post(InMemoryHttpTransmitter httpTransmitter, HttpSession session)
+			throws ServletException {
+		Map<String, String> requestHeaders = httpTransmitter.getHeaders();
+		byte[] requestBody = httpTransmitter.getBody() != null ? httpTransmitter.getBody() : new byte[0];
+		Map<String, Object> requestAttributes = new HashMap<>();
+		HttpServletRequest request = proxy(HttpServletRequest.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getHeader":
+					return requestHeaders.get(args[0]);
+				case "getHeaderNames":
+					return Collections.enumeration(requestHeaders.keySet());
+				case "getContentLength":
+					return requestBody.length;
+				case "getContentLengthLong":
+					return (long) requestBody.length;
+				case "getInputStream":
+					return new InMemoryServletInputStream(requestBody);
+				case "getSession":
+					return session;
+				case "getAttribute":
+					return requestAttributes.get(args[0]);
+				case "setAttribute":
+					requestAttributes.put((String) args[0], args[1]);
+					return null;
+				case "removeAttribute":
+					requestAttributes.remove(args[0]);
+					return null;
+				case "getServletContext":
+					return this.servletContext;
+				case "getMethod":
+					return "POST";
+				case "getRemoteAddr":
+					return "127.0.0.1";
+				case "isSecure":
+					return true;
+				default:
+					return defaultValue(method.getReturnType());
+			}
+		});
+
+		Map<String, String> responseHeaders = new LinkedHashMap<>();
+		ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+		ServletOutputStream responseOutputStream = new InMemoryServletOutputStream(responseBody);
+		HttpServletResponse response = proxy(HttpServletResponse.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "addHeader":
+				case "setHeader":
+					responseHeaders.put((String) args[0], (String) args[1]);
+					return null;
+				case "getHeader":
+					return responseHeaders.get(args[0]);
+				case "getOutputStream":
+					return responseOutputStream;
+				default:
+					return defaultValue(method.getReturnType());
+			}
+		});
+
+		this.servlet.post(request, response);
+		return new InMemoryHttpReceiver(responseHeaders, responseBody.toByteArray());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler invocationHandler) {
+		return (T) Proxy.newProxyInstance(InMemoryServletContainer.class.getClassLoader(), new Class<?>[]{type},
+				invocationHandler);
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (!type.isPrimitive() || type == void.class) {
+			return null;
+		}
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		throw new UnsupportedOperationException("no default value for " + type);
+	}
+
+	private static class BenchmarkServlet extends EidServiceServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		void post(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+			doPost(request, response);
+		}
+	}
+
+	private static class InMemoryServletInputStream extends ServletInputStream {
+
+		private final ByteArrayInputStream inputStream;
+
+		InMemoryServletInputStream(byte[] data) {
+			this.inputStream = new ByteArrayInputStream(data);
+		}
+
+		@Override
+		public int read() {
+			return this.inputStream.read();
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			return this.inputStream.read(buffer, offset, length);
+		}
+
+		@Override
+		public boolean isFinished() {
+			return this.inputStream.available() == 0;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class InMemoryServletOutputStream extends ServletOutputStream {
+
+		private final ByteArrayOutputStream outputStream;
+
+		InMemoryServletOutputStream(ByteArrayOutputStream outputStream) {
+			this.outputStream = outputStream;
+		}
+
+		@Override
+		public void write(int b) {
+			this.outputStream.write(b);
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) {
+			this.outputStream.write(buffer, offset, length);
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
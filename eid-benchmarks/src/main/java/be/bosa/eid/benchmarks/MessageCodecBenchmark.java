@@ -0,0 +1,99 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.client_server.shared.message.AuthenticationDataMessage;
+import be.bosa.eid.client_server.shared.message.ClientServerProtocolMessageCatalog;
+import be.bosa.eid.client_server.shared.message.HelloMessage;
+import be.bosa.eid.client_server.shared.protocol.Transport;
+import be.bosa.eid.client_server.shared.protocol.Unmarshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Marshalling via {@link Transport} and unmarshalling via
+ * {@link Unmarshaller} of a small and a large protocol message, in both the
+ * HTTP header and the binary wire format.
+ */
+@State(Scope.Benchmark)
+public class MessageCodecBenchmark {
+
+	private Unmarshaller unmarshaller;
+
+	private HelloMessage helloMessage;
+	private AuthenticationDataMessage authenticationDataMessage;
+
+	private InMemoryHttpReceiver helloReceiver;
+	private InMemoryHttpReceiver authenticationDataReceiver;
+	private InMemoryHttpReceiver binaryAuthenticationDataReceiver;
+
+	@Setup
+	public void setup() {
+		BenchmarkData benchmarkData = new BenchmarkData();
+		this.unmarshaller = new Unmarshaller(new ClientServerProtocolMessageCatalog());
+		this.helloMessage = benchmarkData.createHelloMessage();
+		this.authenticationDataMessage = benchmarkData.createAuthenticationDataMessage(new byte[20], true);
+		this.helloReceiver = transfer(this.helloMessage).toReceiver();
+		this.authenticationDataReceiver = transfer(this.authenticationDataMessage).toReceiver();
+		this.binaryAuthenticationDataReceiver = transferBinary(this.authenticationDataMessage).toReceiver();
+	}
+
+	private static InMemoryHttpTransmitter transfer(Object message) {
+		InMemoryHttpTransmitter httpTransmitter = new InMemoryHttpTransmitter();
+		Transport.transfer(message, httpTransmitter);
+		return httpTransmitter;
+	}
+
+	private static InMemoryHttpTransmitter transferBinary(Object message) {
+		InMemoryHttpTransmitter httpTransmitter = new InMemoryHttpTransmitter();
+		Transport.transfer(message, httpTransmitter, true, false);
+		return httpTransmitter;
+	}
+
+	@Benchmark
+	public InMemoryHttpTransmitter transferHello() {
+		return transfer(this.helloMessage);
+	}
+
+	@Benchmark
+	public InMemoryHttpTransmitter transferAuthenticationData() {
+		return transfer(this.authenticationDataMessage);
+	}
+
+	@Benchmark
+	public InMemoryHttpTransmitter transferAuthenticationDataBinary() {
+		return transferBinary(this.authenticationDataMessage);
+	}
+
+	@Benchmark
+	public Object receiveHello() {
+		return this.unmarshaller.receive(this.helloReceiver);
+	}
+
+	@Benchmark
+	public Object receiveAuthenticationData() {
+		return this.unmarshaller.receive(this.authenticationDataReceiver);
+	}
+
+	@Benchmark
+	public Object receiveAuthenticationDataBinary() {
+		return this.unmarshaller.receive(this.binaryAuthenticationDataReceiver);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.client_server.shared.message.AuthenticationDataMessage;
+import be.bosa.eid.client_server.shared.message.AuthenticationRequestMessage;
+import be.bosa.eid.client_server.shared.message.ClientServerProtocolMessageCatalog;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.client_server.shared.protocol.Transport;
+import be.bosa.eid.client_server.shared.protocol.Unmarshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpSession;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Complete Hello to AuthenticationData exchange against an eID Server servlet
+ * running in an in-memory servlet container. The client side signature is
+ * part of every run, as every run gets a fresh challenge.
+ */
+@State(Scope.Benchmark)
+public class MessageExchangeBenchmark {
+
+	@Param({"false", "true"})
+	public boolean includeIdentity;
+
+	private BenchmarkData benchmarkData;
+
+	private InMemoryServletContainer servletContainer;
+
+	private Unmarshaller unmarshaller;
+
+	@Setup
+	public void setup() throws ServletException {
+		this.benchmarkData = new BenchmarkData();
+		Map<String, String> initParams = new HashMap<>();
+		initParams.put("AuthenticationServiceClass", BenchmarkAuthenticationService.class.getName());
+		initParams.put("IncludeIdentity", Boolean.toString(this.includeIdentity));
+		initParams.put("IncludeAddress", Boolean.toString(this.includeIdentity));
+		this.servletContainer = new InMemoryServletContainer(initParams);
+		this.unmarshaller = new Unmarshaller(new ClientServerProtocolMessageCatalog());
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.servletContainer.destroy();
+	}
+
+	@Benchmark
+	public FinishedMessage authentication() throws ServletException {
+		HttpSession session = this.servletContainer.createSession();
+
+		InMemoryHttpReceiver helloResponse = exchange(this.benchmarkData.createHelloMessage(), session);
+		AuthenticationRequestMessage authenticationRequestMessage = (AuthenticationRequestMessage) this.unmarshaller
+				.receive(helloResponse);
+
+		AuthenticationDataMessage authenticationDataMessage = this.benchmarkData
+				.createAuthenticationDataMessage(authenticationRequestMessage.challenge, this.includeIdentity);
+		InMemoryHttpReceiver authenticationResponse = exchange(authenticationDataMessage, session);
+		FinishedMessage finishedMessage = (FinishedMessage) this.unmarshaller.receive(authenticationResponse);
+		if (finishedMessage.errorCode != null) {
+			throw new IllegalStateException("authentication failed: " + finishedMessage.errorCode);
+		}
+		return finishedMessage;
+	}
+
+	private InMemoryHttpReceiver exchange(Object requestMessage, HttpSession session) throws ServletException {
+		InMemoryHttpTransmitter httpTransmitter = new InMemoryHttpTransmitter();
+		Transport.transfer(requestMessage, httpTransmitter);
+		return this.servletContainer.post(httpTransmitter, session);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.client_server.shared.message.AuthenticationDataMessage;
+import be.bosa.eid.client_server.shared.message.AuthenticationRequestMessage;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.client_server.shared.message.HelloMessage;
+import be.bosa.eid.client_server.shared.protocol.ProtocolContext;
+import be.bosa.eid.client_server.shared.protocol.ProtocolException;
+import be.bosa.eid.client_server.shared.protocol.ProtocolState;
+import be.bosa.eid.client_server.shared.protocol.ProtocolStateMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Protocol state checks of an authentication run, as performed by the eID
+ * Server for every request and response message.
+ */
+@State(Scope.Thread)
+public class ProtocolStateMachineBenchmark {
+
+	private HelloMessage helloMessage;
+	private AuthenticationRequestMessage authenticationRequestMessage;
+	private AuthenticationDataMessage authenticationDataMessage;
+	private FinishedMessage finishedMessage;
+
+	@Setup
+	public void setup() {
+		BenchmarkData benchmarkData = new BenchmarkData();
+		this.helloMessage = benchmarkData.createHelloMessage();
+		this.authenticationRequestMessage = new AuthenticationRequestMessage(new byte[20], false, false, false, false,
+				false, false, false, false, true, false, false, false, false, null);
+		this.authenticationDataMessage = benchmarkData.createAuthenticationDataMessage(new byte[20], false);
+		this.finishedMessage = new FinishedMessage();
+	}
+
+	@Benchmark
+	public ProtocolState authenticationRun() throws ProtocolException {
+		SimpleProtocolContext protocolContext = new SimpleProtocolContext();
+
+		ProtocolStateMachine helloStateMachine = new ProtocolStateMachine(protocolContext);
+		helloStateMachine.checkRequestMessage(this.helloMessage);
+		helloStateMachine.checkResponseMessage(this.helloMessage, this.authenticationRequestMessage);
+
+		ProtocolStateMachine authenticationStateMachine = new ProtocolStateMachine(protocolContext);
+		authenticationStateMachine.checkRequestMessage(this.authenticationDataMessage);
+		authenticationStateMachine.checkResponseMessage(this.authenticationDataMessage, this.finishedMessage);
+		return protocolContext.protocolState;
+	}
+
+	private static class SimpleProtocolContext implements ProtocolContext {
+
+		private ProtocolState protocolState;
+
+		public ProtocolState getProtocolState() {
+			return this.protocolState;
+		}
+
+		public void setProtocolState(ProtocolState protocolState) {
+			this.protocolState = protocolState;
+		}
+
+		public void removeProtocolState() {
+			this.protocolState = null;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.benchmarks;
+
+import be.bosa.eid.server.Address;
+import be.bosa.eid.server.Identity;
+import be.bosa.eid.server.impl.tlv.TlvParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of the identity and address files of the eID card.
+ */
+@State(Scope.Benchmark)
+public class TlvParserBenchmark {
+
+	private byte[] identityFile;
+	private byte[] addressFile;
+
+	@Setup
+	public void setup() {
+		BenchmarkData benchmarkData = new BenchmarkData();
+		this.identityFile = benchmarkData.getIdentityFile();
+		this.addressFile = benchmarkData.getAddressFile();
+	}
+
+	@Benchmark
+	public Identity parseIdentity() {
+		return TlvParser.parse(this.identityFile, Identity.class);
+	}
+
+	@Benchmark
+	public Address parseAddress() {
+		return TlvParser.parse(this.addressFile, Address.class);
+	}
+}
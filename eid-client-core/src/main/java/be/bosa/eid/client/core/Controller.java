@@ -28,10 +28,13 @@ import be.bosa.commons.eid.dialogs.DefaultBeIDCardsUI;
 import be.bosa.commons.eid.dialogs.Messages;
 import be.bosa.commons.eid.dialogs.Messages.MESSAGE_ID;
 import be.bosa.eid.client.core.io.EIdClientSSLSocketFactory;
+import be.bosa.eid.client.core.io.FilesDigester;
 import be.bosa.eid.client.core.io.HttpURLConnectionHttpReceiver;
 import be.bosa.eid.client.core.io.HttpURLConnectionHttpTransmitter;
 import be.bosa.eid.client.core.io.LocalProtocolContext;
+import be.bosa.eid.client.core.sc.CardFileCache;
 import be.bosa.eid.client.core.sc.TaskRunner;
+import be.bosa.eid.client_server.shared.message.AbstractProtocolMessage;
 import be.bosa.eid.client_server.shared.message.AdministrationMessage;
 import be.bosa.eid.client_server.shared.message.AuthSignRequestMessage;
 import be.bosa.eid.client_server.shared.message.AuthSignResponseMessage;
@@ -53,6 +56,7 @@ import be.bosa.eid.client_server.shared.message.SignCertificatesDataMessage;
 import be.bosa.eid.client_server.shared.message.SignCertificatesRequestMessage;
 import be.bosa.eid.client_server.shared.message.SignRequestMessage;
 import be.bosa.eid.client_server.shared.message.SignatureDataMessage;
+import be.bosa.eid.client_server.shared.protocol.ContentEncoding;
 import be.bosa.eid.client_server.shared.protocol.ProtocolException;
 import be.bosa.eid.client_server.shared.protocol.ProtocolStateMachine;
 import be.bosa.eid.client_server.shared.protocol.Transport;
@@ -62,7 +66,6 @@ import javax.smartcardio.CardPermission;
 import javax.swing.*;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -72,12 +75,11 @@ import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.URL;
 import java.security.AccessController;
-import java.security.DigestInputStream;
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivilegedAction;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -98,8 +100,14 @@ public class Controller {
 	private final Runtime runtime;
 	private final BeIDCards beIDCards;
 	private final ProtocolStateMachine protocolStateMachine;
-	private static final int BUFFER_SIZE = 1024 * 10;
+	private static final int FILES_DIGEST_PROGRESS_MAX = 1000;
 	private final String requestId;
+	private final CardFileCache cardFileCache;
+	private final Unmarshaller unmarshaller;
+	private boolean socketFactoryInstalled;
+	private String protocolToken;
+	private boolean binaryFrames;
+	private boolean encodeBodies;
 
 	public Controller(EidClientFrame view, Runtime runtime) {
 		this.view = view;
@@ -108,6 +116,9 @@ public class Controller {
 		this.beIDCards = new BeIDCards(new DefaultBeIDCardsUI());
 		this.protocolStateMachine = new ProtocolStateMachine(new LocalProtocolContext(view));
 		this.requestId = UUID.randomUUID().toString();
+		this.cardFileCache = new CardFileCache(view,
+				runtime.isPersistentCardFileCacheEnabled() ? CardFileCache.getDefaultCacheDirectory() : null);
+		this.unmarshaller = new Unmarshaller(new ClientServerProtocolMessageCatalog());
 	}
 
 	private Object sendMessage(Object message) throws IOException, ProtocolException {
@@ -124,7 +135,10 @@ public class Controller {
 	private Object exchangeMessageWithBackend(Object message) throws IOException {
 		HttpURLConnection connection = getServerConnection();
 		HttpURLConnectionHttpTransmitter httpTransmitter = new HttpURLConnectionHttpTransmitter(connection);
-		Transport.transfer(message, httpTransmitter);
+		if (this.protocolToken != null) {
+			httpTransmitter.addHeader(AbstractProtocolMessage.PROTOCOL_TOKEN_HTTP_HEADER, this.protocolToken);
+		}
+		Transport.transfer(message, httpTransmitter, this.binaryFrames, this.encodeBodies);
 
 		int responseCode = connection.getResponseCode();
 		if (responseCode != HttpURLConnection.HTTP_OK) {
@@ -139,9 +153,19 @@ public class Controller {
 			throw new IOException("Error sending message to service. HTTP status code: " + msg);
 		}
 
-		Unmarshaller unmarshaller = new Unmarshaller(new ClientServerProtocolMessageCatalog());
+		String protocolToken = connection.getHeaderField(AbstractProtocolMessage.PROTOCOL_TOKEN_HTTP_HEADER);
+		if (protocolToken != null) {
+			this.protocolToken = protocolToken;
+		}
+		if (Transport.isBinaryProtocolVersion(connection.getHeaderField(AbstractProtocolMessage.ACCEPT_VERSION_HTTP_HEADER))) {
+			this.binaryFrames = true;
+		}
+		if (ContentEncoding.isSupported(connection.getHeaderField(ContentEncoding.ACCEPT_ENCODING_HTTP_HEADER))) {
+			this.encodeBodies = true;
+		}
+
 		HttpURLConnectionHttpReceiver httpReceiver = new HttpURLConnectionHttpReceiver(connection);
-		return unmarshaller.receive(httpReceiver);
+		return this.unmarshaller.receive(httpReceiver);
 	}
 
 	private void printHttpResponseContent(HttpURLConnection connection) {
@@ -149,9 +173,8 @@ public class Controller {
 		if (errorStream == null) {
 			return;
 		}
-		BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream));
 		String line;
-		try {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream))) {
 			while ((line = reader.readLine()) != null) {
 				this.view.addDetailMessage(line);
 			}
@@ -226,40 +249,46 @@ public class Controller {
 
 		try {
 			String language = runtime.getLanguage().orElse("en");
-			HelloMessage helloMessage = new HelloMessage(language, requestId);
+			HelloMessage helloMessage = new HelloMessage(language, requestId, ContentEncoding.GZIP);
+			helloMessage.acceptVersion = Transport.BINARY_PROTOCOL_VERSION;
+			helloMessage.javaVersion = System.getProperty("java.version");
+			helloMessage.javaVendor = System.getProperty("java.vendor");
+			helloMessage.osName = System.getProperty("os.name");
+			helloMessage.osArch = System.getProperty("os.arch");
+			helloMessage.osVersion = System.getProperty("os.version");
 			Object resultMessage = sendMessage(helloMessage);
 			if (resultMessage instanceof CheckClientMessage) {
 				addDetailMessage("Need to check the client secure environment...");
 				ClientEnvironmentMessage clientEnvMessage = new ClientEnvironmentMessage();
-				clientEnvMessage.javaVersion = System.getProperty("java.version");
-				clientEnvMessage.javaVendor = System.getProperty("java.vendor");
-				clientEnvMessage.osName = System.getProperty("os.name");
-				clientEnvMessage.osArch = System.getProperty("os.arch");
-				clientEnvMessage.osVersion = System.getProperty("os.version");
+				clientEnvMessage.javaVersion = helloMessage.javaVersion;
+				clientEnvMessage.javaVendor = helloMessage.javaVendor;
+				clientEnvMessage.osName = helloMessage.osName;
+				clientEnvMessage.osArch = helloMessage.osArch;
+				clientEnvMessage.osVersion = helloMessage.osVersion;
 
 				resultMessage = sendMessage(clientEnvMessage);
-				if (resultMessage instanceof InsecureClientMessage) {
-					InsecureClientMessage insecureClientMessage = (InsecureClientMessage) resultMessage;
-					if (insecureClientMessage.warnOnly) {
-						int result = JOptionPane.showConfirmDialog(view,
-								"Your system has been marked as insecure client environment.\n"
-										+ "Do you want to continue the eID operation?",
-								"Insecure Client Environment", JOptionPane.OK_CANCEL_OPTION,
-								JOptionPane.WARNING_MESSAGE);
-						if (JOptionPane.OK_OPTION != result) {
-							setStatusMessage(Status.ERROR, MESSAGE_ID.SECURITY_ERROR);
-							addDetailMessage("insecure client environment");
-							return;
-						}
-						resultMessage = sendMessage(new ContinueInsecureMessage());
-					} else {
-						JOptionPane.showMessageDialog(view,
-								"Your system has been marked as insecure client environment.",
-								"Insecure Client Environment", JOptionPane.ERROR_MESSAGE);
+			}
+			if (resultMessage instanceof InsecureClientMessage) {
+				InsecureClientMessage insecureClientMessage = (InsecureClientMessage) resultMessage;
+				if (insecureClientMessage.warnOnly) {
+					int result = JOptionPane.showConfirmDialog(view,
+							"Your system has been marked as insecure client environment.\n"
+									+ "Do you want to continue the eID operation?",
+							"Insecure Client Environment", JOptionPane.OK_CANCEL_OPTION,
+							JOptionPane.WARNING_MESSAGE);
+					if (JOptionPane.OK_OPTION != result) {
 						setStatusMessage(Status.ERROR, MESSAGE_ID.SECURITY_ERROR);
-						addDetailMessage("received an insecure client environment message");
+						addDetailMessage("insecure client environment");
 						return;
 					}
+					resultMessage = sendMessage(new ContinueInsecureMessage());
+				} else {
+					JOptionPane.showMessageDialog(view,
+							"Your system has been marked as insecure client environment.",
+							"Insecure Client Environment", JOptionPane.ERROR_MESSAGE);
+					setStatusMessage(Status.ERROR, MESSAGE_ID.SECURITY_ERROR);
+					addDetailMessage("received an insecure client environment message");
+					return;
 				}
 			}
 
@@ -436,23 +465,24 @@ public class Controller {
 				setStatusMessage(Status.NORMAL, MESSAGE_ID.READING_IDENTITY);
 			}
 
-			byte[] signCertFile = beidCard.readFile(FileType.NonRepudiationCertificate);
+			TaskRunner taskRunner = new TaskRunner(this.view);
+			byte[] signCertFile = cardFileCache.readFile(beidCard, FileType.NonRepudiationCertificate, taskRunner);
 			addDetailMessage("Size sign cert file: " + signCertFile.length);
 
-			byte[] citizenCaCertFile = beidCard.readFile(FileType.CACertificate);
+			byte[] citizenCaCertFile = cardFileCache.readFile(beidCard, FileType.CACertificate, taskRunner);
 			addDetailMessage("Size citizen CA cert file: " + citizenCaCertFile.length);
 
-			byte[] rootCaCertFile = beidCard.readFile(FileType.RootCertificate);
+			byte[] rootCaCertFile = cardFileCache.readFile(beidCard, FileType.RootCertificate, taskRunner);
 			addDetailMessage("Size root CA cert file: " + rootCaCertFile.length);
 
 			byte[] identityFile = null;
 			byte[] identitySignFile = null;
 			if (includeIdentity) {
 				addDetailMessage("reading identity file");
-				identityFile = beidCard.readFile(FileType.Identity);
+				identityFile = cardFileCache.readFile(beidCard, FileType.Identity, taskRunner);
 				if (includeIntegrityData) {
 					addDetailMessage("reading identity sign file");
-					identitySignFile = beidCard.readFile(FileType.IdentitySignature);
+					identitySignFile = cardFileCache.readFile(beidCard, FileType.IdentitySignature, taskRunner);
 				}
 			}
 
@@ -460,23 +490,23 @@ public class Controller {
 			byte[] addressSignFile = null;
 			if (includeAddress) {
 				addDetailMessage("reading address file");
-				addressFile = beidCard.readFile(FileType.Address);
+				addressFile = cardFileCache.readFile(beidCard, FileType.Address, taskRunner);
 				if (includeIntegrityData) {
 					addDetailMessage("reading address sign file");
-					addressSignFile = beidCard.readFile(FileType.AddressSignature);
+					addressSignFile = cardFileCache.readFile(beidCard, FileType.AddressSignature, taskRunner);
 				}
 			}
 
 			byte[] photoFile = null;
 			if (includePhoto) {
 				addDetailMessage("reading photo file");
-				photoFile = beidCard.readFile(FileType.Photo);
+				photoFile = cardFileCache.readFile(beidCard, FileType.Photo, taskRunner);
 			}
 
 			byte[] nrnCertFile = null;
 			if (identitySignFile != null || addressSignFile != null) {
 				addDetailMessage("reading NRN certificate file");
-				nrnCertFile = beidCard.readFile(FileType.RRNCertificate);
+				nrnCertFile = cardFileCache.readFile(beidCard, FileType.RRNCertificate, taskRunner);
 			}
 
 			return new SignCertificatesDataMessage(signCertFile, citizenCaCertFile, rootCaCertFile, identityFile,
@@ -488,43 +518,43 @@ public class Controller {
 		File[] selectedFiles = view.selectFilesToSign();
 
 		setStatusMessage(Status.NORMAL, MESSAGE_ID.DIGESTING_FILES);
+		checkFilesDigestAlgo(filesDigestAlgo);
 		FileDigestsDataMessage fileDigestsDataMessage = new FileDigestsDataMessage();
 		fileDigestsDataMessage.fileDigestInfos = new LinkedList<>();
 		long totalSize = 0;
 		for (File selectedFile : selectedFiles) {
 			totalSize += selectedFile.length();
 		}
-		int progressMax = (int) (totalSize / BUFFER_SIZE);
-		view.resetProgress(progressMax);
+		view.resetProgress(FILES_DIGEST_PROGRESS_MAX);
 
 		addDetailMessage("Total data size to digest: " + (totalSize / 1024) + " KiB");
 		for (File selectedFile : selectedFiles) {
 			addDetailMessage(selectedFile.getAbsolutePath() + ": " + (selectedFile.length() / 1024) + " KiB");
+		}
 
-			MessageDigest messageDigest = getMessageDigest(filesDigestAlgo);
-			DigestInputStream digestInputStream = new DigestInputStream(new FileInputStream(selectedFile), messageDigest);
-			byte[] buffer = new byte[BUFFER_SIZE];
-			while (digestInputStream.read(buffer) != -1) {
-				view.increaseProgress();
-			}
-			digestInputStream.close();
-
+		/*
+		 * The files are digested concurrently, so the digest time is bound by
+		 * the disk instead of by a single core. The digester throttles the
+		 * progress reports, and the view coalesces them on the EDT.
+		 */
+		List<byte[]> digests = new FilesDigester(filesDigestAlgo).digest(selectedFiles, (digestedBytes, totalBytes) ->
+				view.setProgress(totalBytes == 0 ? FILES_DIGEST_PROGRESS_MAX
+						: (int) (digestedBytes * FILES_DIGEST_PROGRESS_MAX / totalBytes)));
+		for (int idx = 0; idx < selectedFiles.length; idx++) {
 			fileDigestsDataMessage.fileDigestInfos.add(filesDigestAlgo);
-			fileDigestsDataMessage.fileDigestInfos.add(toHex(messageDigest.digest()));
-			fileDigestsDataMessage.fileDigestInfos.add(selectedFile.getName());
+			fileDigestsDataMessage.fileDigestInfos.add(toHex(digests.get(idx)));
+			fileDigestsDataMessage.fileDigestInfos.add(selectedFiles[idx].getName());
 		}
 		view.setProgressIndeterminate();
 
 		return sendMessage(fileDigestsDataMessage);
 	}
 
-	private MessageDigest getMessageDigest(String filesDigestAlgo) throws NoSuchAlgorithmException {
+	private void checkFilesDigestAlgo(String filesDigestAlgo) {
 		addDetailMessage("Files digest algorithm: " + filesDigestAlgo);
 		if (!SUPPORTED_FILES_DIGEST_ALGOS.contains(filesDigestAlgo)) {
 			throw new SecurityException("files digest algo not supported: " + filesDigestAlgo);
 		}
-
-		return MessageDigest.getInstance(filesDigestAlgo);
 	}
 
 
@@ -561,9 +591,10 @@ public class Controller {
 			maxProgress += (1050 / 255) + 1; // Root cert file
 			this.view.resetProgress(maxProgress);
 
-			byte[] signCertFile = beidCard.readFile(FileType.NonRepudiationCertificate);
-			byte[] citizenCaCertFile = beidCard.readFile(FileType.CACertificate);
-			byte[] rootCaCertFile = beidCard.readFile(FileType.RootCertificate);
+			TaskRunner taskRunner = new TaskRunner(this.view);
+			byte[] signCertFile = cardFileCache.readFile(beidCard, FileType.NonRepudiationCertificate, taskRunner);
+			byte[] citizenCaCertFile = cardFileCache.readFile(beidCard, FileType.CACertificate, taskRunner);
+			byte[] rootCaCertFile = cardFileCache.readFile(beidCard, FileType.RootCertificate, taskRunner);
 
 			this.view.setProgressIndeterminate();
 
@@ -703,13 +734,13 @@ public class Controller {
 			this.view.resetProgress(maxProgress);
 
 			TaskRunner taskRunner = new TaskRunner(this.view);
-			byte[] authnCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.AuthentificationCertificate));
-			byte[] citCaCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.CACertificate));
-			byte[] rootCaCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.RootCertificate));
+			byte[] authnCertFile = cardFileCache.readFile(beidCard, FileType.AuthentificationCertificate, taskRunner);
+			byte[] citCaCertFile = cardFileCache.readFile(beidCard, FileType.CACertificate, taskRunner);
+			byte[] rootCaCertFile = cardFileCache.readFile(beidCard, FileType.RootCertificate, taskRunner);
 			byte[] signCertFile = null;
 			if (authnRequest.includeCertificates) {
 				addDetailMessage("Reading sign certificate file...");
-				signCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.NonRepudiationCertificate));
+				signCertFile = cardFileCache.readFile(beidCard, FileType.NonRepudiationCertificate, taskRunner);
 				addDetailMessage("Size non-repud cert file: " + signCertFile.length);
 			}
 			if (authnRequest.includeIdentity || authnRequest.includeAddress || authnRequest.includePhoto) {
@@ -718,27 +749,27 @@ public class Controller {
 
 			byte[] identityData = null;
 			if (authnRequest.includeIdentity) {
-				identityData = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.Identity));
+				identityData = cardFileCache.readFile(beidCard, FileType.Identity, taskRunner);
 			}
 			byte[] addressData = null;
 			if (authnRequest.includeAddress) {
-				addressData = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.Address));
+				addressData = cardFileCache.readFile(beidCard, FileType.Address, taskRunner);
 			}
 			byte[] photoData = null;
 			if (authnRequest.includePhoto) {
-				photoData = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.Photo));
+				photoData = cardFileCache.readFile(beidCard, FileType.Photo, taskRunner);
 			}
 			byte[] identitySignatureData = null;
 			byte[] addressSignatureData = null;
 			byte[] rrnCertData = null;
 			if (authnRequest.includeIntegrityData) {
 				if (authnRequest.includeIdentity) {
-					identitySignatureData = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.IdentitySignature));
+					identitySignatureData = cardFileCache.readFile(beidCard, FileType.IdentitySignature, taskRunner);
 				}
 				if (authnRequest.includeAddress) {
-					addressSignatureData = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.AddressSignature));
+					addressSignatureData = cardFileCache.readFile(beidCard, FileType.AddressSignature, taskRunner);
 				}
-				rrnCertData = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.RRNCertificate));
+				rrnCertData = cardFileCache.readFile(beidCard, FileType.RRNCertificate, taskRunner);
 			}
 
 			this.view.setProgressIndeterminate();
@@ -755,6 +786,7 @@ public class Controller {
 					signatureValue, authnCertFile, citCaCertFile, rootCaCertFile, signCertFile, identityData, addressData,
 					photoData, identitySignatureData, addressSignatureData, rrnCertData, encodedServerCertificate,
 					signedTransactionMessage);
+			authenticationDataMessage.challenge = Base64.getEncoder().encodeToString(authnRequest.challenge);
 			return sendMessage(authenticationDataMessage);
 		}
 	}
@@ -816,20 +848,20 @@ public class Controller {
 
 			TaskRunner taskRunner = new TaskRunner(this.view);
 
-			byte[] idFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.Identity));
+			byte[] idFile = cardFileCache.readFile(beidCard, FileType.Identity, taskRunner);
 			addDetailMessage("Size identity file: " + idFile.length);
 
 			byte[] addressFile = null;
 			if (includeAddress) {
 				addDetailMessage("Read address file...");
-				addressFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.Address));
+				addressFile = cardFileCache.readFile(beidCard, FileType.Address, taskRunner);
 				addDetailMessage("Size address file: " + addressFile.length);
 			}
 
 			byte[] photoFile = null;
 			if (includePhoto) {
 				addDetailMessage("Read photo file...");
-				photoFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.Photo));
+				photoFile = cardFileCache.readFile(beidCard, FileType.Photo, taskRunner);
 			}
 
 			byte[] identitySignatureFile = null;
@@ -838,16 +870,16 @@ public class Controller {
 			byte[] rootCertFile = null;
 			if (includeIntegrityData) {
 				addDetailMessage("Read identity signature file...");
-				identitySignatureFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.IdentitySignature));
+				identitySignatureFile = cardFileCache.readFile(beidCard, FileType.IdentitySignature, taskRunner);
 				if (includeAddress) {
 					addDetailMessage("Read address signature file...");
-					addressSignatureFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.AddressSignature));
+					addressSignatureFile = cardFileCache.readFile(beidCard, FileType.AddressSignature, taskRunner);
 				}
 				addDetailMessage("Read national registry certificate file...");
-				rrnCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.RRNCertificate));
+				rrnCertFile = cardFileCache.readFile(beidCard, FileType.RRNCertificate, taskRunner);
 				addDetailMessage("size RRN cert file: " + rrnCertFile.length);
 				addDetailMessage("reading root certificate file...");
-				rootCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.RootCertificate));
+				rootCertFile = cardFileCache.readFile(beidCard, FileType.RootCertificate, taskRunner);
 				addDetailMessage("size Root CA cert file: " + rootCertFile.length);
 			}
 
@@ -856,20 +888,20 @@ public class Controller {
 			byte[] caCertFile = null;
 			if (includeCertificates) {
 				addDetailMessage("reading authn certificate file...");
-				authnCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.AuthentificationCertificate));
+				authnCertFile = cardFileCache.readFile(beidCard, FileType.AuthentificationCertificate, taskRunner);
 				addDetailMessage("size authn cert file: " + authnCertFile.length);
 
 				addDetailMessage("reading sign certificate file...");
-				signCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.NonRepudiationCertificate));
+				signCertFile = cardFileCache.readFile(beidCard, FileType.NonRepudiationCertificate, taskRunner);
 				addDetailMessage("size non-repud cert file: " + signCertFile.length);
 
 				addDetailMessage("reading citizen CA certificate file...");
-				caCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.CACertificate));
+				caCertFile = cardFileCache.readFile(beidCard, FileType.CACertificate, taskRunner);
 				addDetailMessage("size Cit CA cert file: " + caCertFile.length);
 
 				if (rootCertFile == null) {
 					addDetailMessage("reading root certificate file...");
-					rootCertFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.RootCertificate));
+					rootCertFile = cardFileCache.readFile(beidCard, FileType.RootCertificate, taskRunner);
 					addDetailMessage("size Root CA cert file: " + rootCertFile.length);
 				}
 			}
@@ -909,8 +941,16 @@ public class Controller {
 	}
 
 
+	/**
+	 * All protocol messages go to the same URL through the same socket factory,
+	 * so the JRE keeps reusing one kept-alive connection for the whole protocol
+	 * run. New connections still resume the TLS session of the previous ones.
+	 */
 	private HttpURLConnection getServerConnection() throws IOException {
-		EIdClientSSLSocketFactory.installSocketFactory(this.view);
+		if (!this.socketFactoryInstalled) {
+			EIdClientSSLSocketFactory.installSocketFactory(this.view);
+			this.socketFactoryInstalled = true;
+		}
 		return (HttpURLConnection) runtime.getEidServiceUrl().openConnection();
 	}
 
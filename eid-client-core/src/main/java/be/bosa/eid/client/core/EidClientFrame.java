@@ -28,6 +28,7 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The main application frame.
@@ -41,6 +42,7 @@ public class EidClientFrame extends JFrame implements View {
 	private Messages messages;
 	private JProgressBar progressBar;
 	private int progress;
+	private final AtomicInteger pendingProgress = new AtomicInteger(-1);
 
 	public EidClientFrame(Runtime runtime) {
 		this.runtime = runtime;
@@ -282,6 +284,19 @@ public class EidClientFrame extends JFrame implements View {
 		progressBar.setValue(progress);
 	}
 
+	/**
+	 * Can be called from any thread. Updates that arrive while a previous one
+	 * is still queued on the EDT are coalesced into that one.
+	 */
+	public void setProgress(int value) {
+		if (pendingProgress.getAndSet(value) == -1) {
+			SwingUtilities.invokeLater(() -> {
+				progress = pendingProgress.getAndSet(-1);
+				progressBar.setValue(progress);
+			});
+		}
+	}
+
 	private void invokeAndWait(Runnable action) {
 		try {
 			SwingUtilities.invokeAndWait(action);
@@ -30,6 +30,8 @@ public interface Runtime {
 
 	Optional<String> getForegroundColor();
 
+	boolean isPersistentCardFileCacheEnabled();
+
 	void gotoTargetPage(String requestId);
 
 	void gotoCancelPage();
@@ -49,4 +49,6 @@ public interface View {
 	void resetProgress(int max);
 
 	void increaseProgress();
+
+	void setProgress(int value);
 }
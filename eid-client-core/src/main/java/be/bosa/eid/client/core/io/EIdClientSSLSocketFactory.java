@@ -198,6 +198,13 @@ public class EIdClientSSLSocketFactory extends SSLSocketFactory implements Hands
 			 * This could also be caused by an SSL session renewal.
 			 */
 			this.view.addDetailMessage("SSL session Id mismatch");
+		} else if (this.sslSessionId != null) {
+			/*
+			 * A new connection was needed, e.g. because the server closed the
+			 * kept-alive one, but the JSSE session cache of the original socket
+			 * factory resumed the SSL session, so channel binding still holds.
+			 */
+			this.view.addDetailMessage("SSL session resumed");
 		}
 		this.sslSessionId = sslSessionId;
 
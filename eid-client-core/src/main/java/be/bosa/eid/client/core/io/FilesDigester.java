@@ -0,0 +1,180 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Digests a set of files concurrently, one file per thread, reading each file
+ * through a {@link FileChannel} with a large buffer.
+ * <p>
+ * Progress is reported as the number of digested bytes over all files, at most
+ * once per {@link #PROGRESS_INTERVAL_MILLIS}, plus once when done.
+ * </p>
+ */
+public class FilesDigester {
+
+	public static final int BUFFER_SIZE = 1024 * 1024;
+
+	public static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+	/**
+	 * Receives the progress of a digest operation. Can be called from any of
+	 * the digesting threads, but never concurrently.
+	 */
+	public interface ProgressListener {
+
+		void progress(long digestedBytes, long totalBytes);
+	}
+
+	private final String digestAlgo;
+	private final int threads;
+
+	public FilesDigester(String digestAlgo, int threads) {
+		this.digestAlgo = digestAlgo;
+		this.threads = threads;
+	}
+
+	public FilesDigester(String digestAlgo) {
+		this(digestAlgo, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Gives back the digests of the given files, in the same order.
+	 */
+	public List<byte[]> digest(File[] files, ProgressListener progressListener)
+			throws IOException, NoSuchAlgorithmException {
+		MessageDigest.getInstance(digestAlgo);
+
+		long totalSize = 0;
+		for (File file : files) {
+			totalSize += file.length();
+		}
+		Progress progress = new Progress(totalSize, progressListener);
+
+		int poolSize = Math.max(1, Math.min(threads, files.length));
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executorService = Executors.newFixedThreadPool(poolSize, runnable -> {
+			Thread thread = new Thread(runnable, "files-digester-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<byte[]>> futures = new ArrayList<>(files.length);
+			for (File file : files) {
+				futures.add(executorService.submit(() -> digest(file, progress)));
+			}
+
+			List<byte[]> digests = new ArrayList<>(files.length);
+			for (Future<byte[]> future : futures) {
+				digests.add(getDigest(future));
+			}
+			progress.done();
+			return digests;
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private byte[] digest(File file, Progress progress) throws IOException, NoSuchAlgorithmException {
+		MessageDigest messageDigest = MessageDigest.getInstance(digestAlgo);
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			int read;
+			while ((read = channel.read(buffer)) != -1) {
+				if (Thread.interrupted()) {
+					throw new InterruptedIOException("digesting " + file.getName() + " interrupted");
+				}
+				messageDigest.update(buffer.array(), 0, read);
+				buffer.clear();
+				progress.add(read);
+			}
+		}
+		return messageDigest.digest();
+	}
+
+	private static byte[] getDigest(Future<byte[]> future) throws IOException, NoSuchAlgorithmException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof NoSuchAlgorithmException) {
+				throw (NoSuchAlgorithmException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Sums the digested bytes of all threads and throttles the reports to the
+	 * listener, so a fast disk does not flood the UI with updates.
+	 */
+	private static class Progress {
+
+		private static final long INTERVAL_NANOS = PROGRESS_INTERVAL_MILLIS * 1000 * 1000;
+
+		private final long totalSize;
+		private final ProgressListener listener;
+		private final AtomicLong digested = new AtomicLong();
+		private final AtomicLong lastReport = new AtomicLong(System.nanoTime());
+
+		Progress(long totalSize, ProgressListener listener) {
+			this.totalSize = totalSize;
+			this.listener = listener;
+		}
+
+		void add(long bytes) {
+			long now = System.nanoTime();
+			long last = lastReport.get();
+			digested.addAndGet(bytes);
+			if (now - last >= INTERVAL_NANOS && lastReport.compareAndSet(last, now)) {
+				synchronized (this) {
+					listener.progress(digested.get(), totalSize);
+				}
+			}
+		}
+
+		synchronized void done() {
+			listener.progress(digested.get(), totalSize);
+		}
+	}
+}
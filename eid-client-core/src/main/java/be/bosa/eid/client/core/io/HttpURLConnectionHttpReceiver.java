@@ -30,6 +30,10 @@ import java.util.stream.Collectors;
 
 /**
  * Implementation of an {@link HttpReceiver} based on the {@link HttpURLConnection}.
+ * <p>
+ * The body is read completely and the stream is closed, so the JRE can keep
+ * the underlying (TLS) connection alive for the next protocol message.
+ * </p>
  *
  * @author Frank Cornelis
  */
@@ -46,9 +50,9 @@ public class HttpURLConnectionHttpReceiver implements HttpReceiver {
 
 	@Override
 	public byte[] getBody() {
-		try {
+		try (InputStream inputStream = connection.getInputStream()) {
 			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			copy(connection.getInputStream(), outputStream);
+			copy(inputStream, outputStream);
 			return outputStream.toByteArray();
 		} catch (IOException e) {
 			throw new RuntimeException("IO error: " + e.getMessage());
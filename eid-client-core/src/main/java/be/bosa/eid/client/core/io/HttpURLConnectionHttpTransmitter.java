@@ -26,6 +26,10 @@ import java.net.ProtocolException;
 
 /**
  * Implementation of an {@link HttpTransmitter} using {@link HttpURLConnection}.
+ * <p>
+ * Messages are always sent with a content length, also the ones without body,
+ * so proxies and load balancers keep the connection alive between messages.
+ * </p>
  *
  * @author Frank Cornelis
  */
@@ -42,7 +46,7 @@ public class HttpURLConnectionHttpTransmitter implements HttpTransmitter {
 		this.connection.setUseCaches(false);
 		this.connection.setAllowUserInteraction(false);
 		this.connection.setRequestProperty("Content-Type", "application/octet-stream");
-		this.connection.setChunkedStreamingMode(1);
+		this.connection.setFixedLengthStreamingMode(0);
 		this.connection.setDoInput(true);
 		this.connection.setDoOutput(true);
 
@@ -51,7 +55,6 @@ public class HttpURLConnectionHttpTransmitter implements HttpTransmitter {
 		} catch (ProtocolException e) {
 			throw new RuntimeException("protocol error: " + e.getMessage(), e);
 		}
-		
 	}
 
 	@Override
@@ -61,12 +64,9 @@ public class HttpURLConnectionHttpTransmitter implements HttpTransmitter {
 
 	@Override
 	public void setBody(byte[] bodyValue) {
-		try {
-			connection.setChunkedStreamingMode(bodyValue.length);
-
-			OutputStream connectionOutputStream = connection.getOutputStream();
+		connection.setFixedLengthStreamingMode(bodyValue.length);
+		try (OutputStream connectionOutputStream = connection.getOutputStream()) {
 			connectionOutputStream.write(bodyValue);
-			connectionOutputStream.close();
 		} catch (IOException e) {
 			throw new RuntimeException("IO error: " + e.getMessage(), e);
 		}
@@ -0,0 +1,213 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client.core.sc;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.exception.BeIDException;
+import be.bosa.eid.client.core.EidClientFrame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of the files read from eID cards. Every file is read at most once per
+ * card during a run of the eID Client.
+ * <p>
+ * Optionally the certificate files, which never change during the life of a
+ * card, are also kept in the user profile, so returning users do not have to
+ * wait for them to be read again. These are keyed by the card number and the
+ * chip number, as read from the small identity file.
+ */
+public class CardFileCache {
+
+	private static final Set<FileType> PERSISTENT_FILE_TYPES = EnumSet.of(FileType.AuthentificationCertificate,
+			FileType.NonRepudiationCertificate, FileType.CACertificate, FileType.RootCertificate,
+			FileType.RRNCertificate);
+
+	private static final int CARD_NUMBER_TAG = 1;
+
+	private static final int CHIP_NUMBER_TAG = 2;
+
+	private final EidClientFrame view;
+
+	private final File cacheDirectory;
+
+	/*
+	 * The card itself is used as key for a card of which the identity file
+	 * could not be parsed, so its files are only cached during this run.
+	 */
+	private final Map<BeIDCard, Object> cardKeys = new IdentityHashMap<>();
+
+	private final Map<Object, Map<FileType, byte[]>> files = new HashMap<>();
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param cacheDirectory directory to keep the certificate files in, or
+	 *                       <code>null</code> to only cache during this run.
+	 */
+	public CardFileCache(EidClientFrame view, File cacheDirectory) {
+		this.view = view;
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Gives back the default location of the persistent cache, within the
+	 * user profile.
+	 */
+	public static File getDefaultCacheDirectory() {
+		return new File(new File(System.getProperty("user.home"), ".eid-client"), "card-files");
+	}
+
+	public byte[] readFile(BeIDCard beidCard, FileType fileType, TaskRunner taskRunner)
+			throws InterruptedException, BeIDException {
+		Object cardKey = this.cacheDirectory != null ? getCardKey(beidCard, taskRunner) : beidCard;
+		Map<FileType, byte[]> cardFiles = this.files.computeIfAbsent(cardKey, key -> new EnumMap<>(FileType.class));
+		byte[] file = cardFiles.get(fileType);
+		if (file != null) {
+			return file;
+		}
+
+		boolean persistent = cardKey instanceof String && PERSISTENT_FILE_TYPES.contains(fileType);
+		if (persistent) {
+			file = loadFile((String) cardKey, fileType);
+		}
+		if (file == null) {
+			file = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(fileType));
+			if (persistent) {
+				storeFile((String) cardKey, fileType, file);
+			}
+		}
+		cardFiles.put(fileType, file);
+		return file;
+	}
+
+	/**
+	 * Identifies the card by its card number and chip number. The identity file
+	 * is read anyway by most operations, and is only a couple of hundred bytes.
+	 */
+	private Object getCardKey(BeIDCard beidCard, TaskRunner taskRunner) throws InterruptedException, BeIDException {
+		Object cardKey = this.cardKeys.get(beidCard);
+		if (cardKey != null) {
+			return cardKey;
+		}
+		byte[] identityFile = taskRunner.runWithRetry(beidCard, () -> beidCard.readFile(FileType.Identity));
+		cardKey = getCardKey(identityFile);
+		if (cardKey == null) {
+			this.view.addDetailMessage("Could not identify the card, not caching its files");
+			cardKey = beidCard;
+		}
+
+		this.cardKeys.put(beidCard, cardKey);
+		this.files.computeIfAbsent(cardKey, key -> new EnumMap<>(FileType.class)).put(FileType.Identity, identityFile);
+		return cardKey;
+	}
+
+	/**
+	 * Gives back the key of the persistent cache for the card with the given
+	 * identity file, or <code>null</code> in case the identity file is
+	 * malformed.
+	 */
+	public static String getCardKey(byte[] identityFile) {
+		byte[] cardNumber = null;
+		byte[] chipNumber = null;
+		int idx = 0;
+		while (idx < identityFile.length && (cardNumber == null || chipNumber == null)) {
+			int tag = identityFile[idx++] & 0xff;
+			int length = 0;
+			byte lengthByte;
+			do {
+				if (idx >= identityFile.length || length > identityFile.length) {
+					return null;
+				}
+				lengthByte = identityFile[idx++];
+				length = (length << 7) | (lengthByte & 0x7f);
+			} while ((lengthByte & 0x80) != 0);
+			if (length > identityFile.length - idx) {
+				return null;
+			}
+			if (tag == CARD_NUMBER_TAG) {
+				cardNumber = Arrays.copyOfRange(identityFile, idx, idx + length);
+			} else if (tag == CHIP_NUMBER_TAG) {
+				chipNumber = Arrays.copyOfRange(identityFile, idx, idx + length);
+			}
+			idx += length;
+		}
+		if (cardNumber == null || chipNumber == null || chipNumber.length == 0) {
+			return null;
+		}
+		/*
+		 * The card number becomes a directory name, so only digits and letters
+		 * are accepted.
+		 */
+		String cardNumberValue = new String(cardNumber, StandardCharsets.US_ASCII).trim();
+		if (!cardNumberValue.matches("[0-9A-Za-z]+")) {
+			return null;
+		}
+		return cardNumberValue + "-" + toHex(chipNumber);
+	}
+
+	private static String toHex(byte[] data) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : data) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	private byte[] loadFile(String cardKey, FileType fileType) {
+		File file = new File(new File(this.cacheDirectory, cardKey), fileType.name());
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			byte[] data = Files.readAllBytes(file.toPath());
+			this.view.addDetailMessage("Cached " + fileType + " file: " + data.length + " bytes");
+			return data.length != 0 ? data : null;
+		} catch (IOException e) {
+			this.view.addDetailMessage("Could not read cached " + fileType + " file: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void storeFile(String cardKey, FileType fileType, byte[] data) {
+		File cardDirectory = new File(this.cacheDirectory, cardKey);
+		try {
+			Files.createDirectories(cardDirectory.toPath());
+			File temporaryFile = File.createTempFile(fileType.name(), ".tmp", cardDirectory);
+			temporaryFile.setReadable(false, false);
+			temporaryFile.setReadable(true, true);
+			Files.write(temporaryFile.toPath(), data);
+			Files.move(temporaryFile.toPath(), new File(cardDirectory, fileType.name()).toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			this.view.addDetailMessage("Could not cache " + fileType + " file: " + e.getMessage());
+		}
+	}
+}
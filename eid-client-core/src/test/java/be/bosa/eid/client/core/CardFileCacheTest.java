@@ -0,0 +1,154 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client.core;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.eid.client.core.sc.BeIDTask;
+import be.bosa.eid.client.core.sc.CardFileCache;
+import be.bosa.eid.client.core.sc.TaskRunner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CardFileCacheTest {
+
+	private static final byte[] CHIP_NUMBER = {0x53, 0x4c, 0x49, 0x4e, 0x33, 0x66, 0x00, 0x29, 0x6c, (byte) 0xff,
+			0x26, 0x23, 0x66, 0x0b, 0x08, 0x24};
+
+	private static final byte[] AUTHN_CERTIFICATE = "authentication certificate".getBytes(StandardCharsets.US_ASCII);
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private EidClientFrame view;
+
+	private TaskRunner taskRunner;
+
+	@Before
+	public void setUp() throws Exception {
+		this.view = mock(EidClientFrame.class);
+		this.taskRunner = mock(TaskRunner.class);
+		when(this.taskRunner.runWithRetry(any(BeIDCard.class), any(BeIDTask.class)))
+				.thenAnswer(invocation -> ((BeIDTask<?>) invocation.getArguments()[1]).run());
+	}
+
+	@Test
+	public void testPersistentCacheHit() throws Exception {
+		// setup
+		BeIDCard card = mockCard(identityFile("591123456789"));
+		new CardFileCache(this.view, this.temporaryFolder.getRoot())
+				.readFile(card, FileType.AuthentificationCertificate, this.taskRunner);
+		BeIDCard sameCard = mockCard(identityFile("591123456789"));
+
+		// operate
+		byte[] result = new CardFileCache(this.view, this.temporaryFolder.getRoot())
+				.readFile(sameCard, FileType.AuthentificationCertificate, this.taskRunner);
+
+		// verify
+		assertArrayEquals(AUTHN_CERTIFICATE, result);
+		verify(card).readFile(FileType.AuthentificationCertificate);
+		verify(sameCard, never()).readFile(FileType.AuthentificationCertificate);
+	}
+
+	@Test
+	public void testPersistentCacheMissForOtherCardNumber() throws Exception {
+		// setup
+		BeIDCard card = mockCard(identityFile("591123456789"));
+		new CardFileCache(this.view, this.temporaryFolder.getRoot())
+				.readFile(card, FileType.AuthentificationCertificate, this.taskRunner);
+		BeIDCard otherCard = mockCard(identityFile("591987654321"));
+
+		// operate
+		byte[] result = new CardFileCache(this.view, this.temporaryFolder.getRoot())
+				.readFile(otherCard, FileType.AuthentificationCertificate, this.taskRunner);
+
+		// verify
+		assertArrayEquals(AUTHN_CERTIFICATE, result);
+		verify(otherCard).readFile(FileType.AuthentificationCertificate);
+		assertEquals(2, this.temporaryFolder.getRoot().list().length);
+	}
+
+	@Test
+	public void testTruncatedIdentityFile() throws Exception {
+		// setup
+		byte[] identityFile = identityFile("591123456789");
+		BeIDCard card = mockCard(Arrays.copyOf(identityFile, 20));
+		CardFileCache cardFileCache = new CardFileCache(this.view, this.temporaryFolder.getRoot());
+
+		// operate
+		byte[] result = cardFileCache.readFile(card, FileType.AuthentificationCertificate, this.taskRunner);
+		cardFileCache.readFile(card, FileType.AuthentificationCertificate, this.taskRunner);
+
+		// verify
+		assertArrayEquals(AUTHN_CERTIFICATE, result);
+		verify(card, times(1)).readFile(FileType.AuthentificationCertificate);
+		assertEquals(0, this.temporaryFolder.getRoot().list().length);
+	}
+
+	@Test
+	public void testMalformedIdentityFiles() {
+		byte[] identityFile = identityFile("591123456789");
+		int chipNumberEnd = 2 + 12 + 2 + CHIP_NUMBER.length;
+		for (int length = 0; length < chipNumberEnd; length++) {
+			assertNull("length " + length, CardFileCache.getCardKey(Arrays.copyOf(identityFile, length)));
+		}
+		assertNull(CardFileCache.getCardKey(new byte[]{1, (byte) 0xff}));
+		assertNull(CardFileCache.getCardKey(new byte[]{1, (byte) 0x81, (byte) 0x80, (byte) 0x80, 0x7f}));
+		assertNull(CardFileCache.getCardKey(identityFile("../../etc")));
+		assertEquals("591123456789-534c494e336600296cff2623660b0824", CardFileCache.getCardKey(identityFile));
+	}
+
+	private BeIDCard mockCard(byte[] identityFile) throws Exception {
+		BeIDCard card = mock(BeIDCard.class);
+		when(card.readFile(FileType.Identity)).thenReturn(identityFile);
+		when(card.readFile(FileType.AuthentificationCertificate)).thenReturn(AUTHN_CERTIFICATE);
+		return card;
+	}
+
+	private static byte[] identityFile(String cardNumber) {
+		ByteArrayOutputStream identityFile = new ByteArrayOutputStream();
+		byte[] cardNumberBytes = cardNumber.getBytes(StandardCharsets.US_ASCII);
+		identityFile.write(1);
+		identityFile.write(cardNumberBytes.length);
+		identityFile.write(cardNumberBytes, 0, cardNumberBytes.length);
+		identityFile.write(2);
+		identityFile.write(CHIP_NUMBER.length);
+		identityFile.write(CHIP_NUMBER, 0, CHIP_NUMBER.length);
+		identityFile.write(3);
+		identityFile.write(2);
+		identityFile.write('0');
+		identityFile.write('1');
+		return identityFile.toByteArray();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client.core;
+
+import be.bosa.eid.client.core.io.FilesDigester;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilesDigesterTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void digestFiles() throws Exception {
+		// setup
+		Random random = new Random(1234);
+		int[] sizes = {0, 1, FilesDigester.BUFFER_SIZE, 3 * FilesDigester.BUFFER_SIZE + 17, 12345};
+		File[] files = new File[sizes.length];
+		long totalSize = 0;
+		for (int idx = 0; idx < sizes.length; idx++) {
+			byte[] data = new byte[sizes[idx]];
+			random.nextBytes(data);
+			files[idx] = temporaryFolder.newFile("file-" + idx);
+			Files.write(files[idx].toPath(), data);
+			totalSize += data.length;
+		}
+		AtomicLong lastDigested = new AtomicLong(-1);
+		AtomicLong lastTotal = new AtomicLong(-1);
+
+		// operate
+		List<byte[]> result = new FilesDigester("SHA-256", 3).digest(files, (digestedBytes, totalBytes) -> {
+			assertTrue(digestedBytes >= lastDigested.get());
+			lastDigested.set(digestedBytes);
+			lastTotal.set(totalBytes);
+		});
+
+		// verify
+		assertEquals(files.length, result.size());
+		for (int idx = 0; idx < files.length; idx++) {
+			byte[] expected = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(files[idx].toPath()));
+			assertArrayEquals(expected, result.get(idx));
+		}
+		assertEquals(totalSize, lastDigested.get());
+		assertEquals(totalSize, lastTotal.get());
+	}
+
+	@Test(expected = IOException.class)
+	public void missingFile() throws Exception {
+		new FilesDigester("SHA-256").digest(new File[]{new File(temporaryFolder.getRoot(), "missing")},
+				(digestedBytes, totalBytes) -> {
+				});
+	}
+}
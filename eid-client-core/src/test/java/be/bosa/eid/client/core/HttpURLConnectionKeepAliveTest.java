@@ -0,0 +1,194 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client.core;
+
+import be.bosa.eid.client.core.io.HttpURLConnectionHttpReceiver;
+import be.bosa.eid.client.core.io.HttpURLConnectionHttpTransmitter;
+import be.bosa.eid.client_server.shared.message.ClientServerProtocolMessageCatalog;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.client_server.shared.message.SignRequestMessage;
+import be.bosa.eid.client_server.shared.protocol.HttpTransmitter;
+import be.bosa.eid.client_server.shared.protocol.Transport;
+import be.bosa.eid.client_server.shared.protocol.Unmarshaller;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpURLConnectionKeepAliveTest {
+
+	private HttpServer httpServer;
+
+	private URL url;
+
+	private final BlockingQueue<Object> responseMessages = new LinkedBlockingQueue<>();
+
+	private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void setUp() throws Exception {
+		this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.httpServer.createContext("/eid-service", this::handle);
+		this.httpServer.start();
+		this.url = new URL("http://localhost:" + this.httpServer.getAddress().getPort() + "/eid-service");
+	}
+
+	@After
+	public void tearDown() {
+		this.httpServer.stop(0);
+	}
+
+	@Test
+	public void testConnectionIsReusedWithSharedUnmarshaller() throws Exception {
+		// setup
+		byte[] digestValue = new byte[64 * 1024];
+		digestValue[digestValue.length - 1] = 1;
+		this.responseMessages.add(new SignRequestMessage(digestValue, "SHA-256", "first document", true, true, true));
+		this.responseMessages.add(new SignRequestMessage(new byte[]{2}, "SHA-512", null, false, false, false));
+		Unmarshaller unmarshaller = new Unmarshaller(new ClientServerProtocolMessageCatalog());
+
+		// operate
+		SignRequestMessage first = (SignRequestMessage) exchange(unmarshaller);
+		SignRequestMessage second = (SignRequestMessage) exchange(unmarshaller);
+
+		// verify
+		assertArrayEquals(digestValue, first.digestValue);
+		assertEquals("first document", first.description);
+		assertTrue(first.removeCard);
+		assertArrayEquals(new byte[]{2}, second.digestValue);
+		assertEquals("SHA-512", second.digestAlgo);
+		assertNull(second.description);
+		assertFalse(second.removeCard);
+		assertFalse(second.logoff);
+		assertFalse(second.requireSecureReader);
+		assertEquals(2, this.clientPorts.size());
+		assertEquals("kept-alive connection", this.clientPorts.get(0), this.clientPorts.get(1));
+	}
+
+	@Test
+	public void testResponseBodyIsDrainedAndClosed() throws Exception {
+		// setup
+		byte[] body = new byte[10000];
+		body[body.length - 1] = 1;
+		TrackingInputStream inputStream = new TrackingInputStream(body);
+		HttpURLConnection connection = new HttpURLConnection(this.url) {
+
+			@Override
+			public InputStream getInputStream() {
+				return inputStream;
+			}
+
+			@Override
+			public void connect() {
+			}
+
+			@Override
+			public void disconnect() {
+			}
+
+			@Override
+			public boolean usingProxy() {
+				return false;
+			}
+		};
+
+		// operate
+		byte[] result = new HttpURLConnectionHttpReceiver(connection).getBody();
+
+		// verify
+		assertArrayEquals(body, result);
+		assertEquals(0, inputStream.available());
+		assertTrue(inputStream.closed);
+	}
+
+	private Object exchange(Unmarshaller unmarshaller) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
+		Transport.transfer(new FinishedMessage(), new HttpURLConnectionHttpTransmitter(connection));
+		assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+		return unmarshaller.receive(new HttpURLConnectionHttpReceiver(connection));
+	}
+
+	private void handle(HttpExchange httpExchange) throws IOException {
+		this.clientPorts.add(httpExchange.getRemoteAddress().getPort());
+		try (InputStream requestBody = httpExchange.getRequestBody()) {
+			while (requestBody.read() != -1) {
+				// drain the request
+			}
+		}
+		Transport.transfer(this.responseMessages.remove(), new HttpTransmitter() {
+
+			@Override
+			public boolean isSecure() {
+				return true;
+			}
+
+			@Override
+			public void addHeader(String headerName, String headerValue) {
+				httpExchange.getResponseHeaders().add(headerName, headerValue);
+			}
+
+			@Override
+			public void setBody(byte[] bodyValue) {
+				try {
+					httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bodyValue.length);
+					try (OutputStream responseBody = httpExchange.getResponseBody()) {
+						responseBody.write(bodyValue);
+					}
+				} catch (IOException e) {
+					throw new RuntimeException("IO error: " + e.getMessage(), e);
+				}
+			}
+		});
+		httpExchange.close();
+	}
+
+	private static final class TrackingInputStream extends ByteArrayInputStream {
+
+		private boolean closed;
+
+		private TrackingInputStream(byte[] data) {
+			super(data);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.closed = true;
+			super.close();
+		}
+	}
+}
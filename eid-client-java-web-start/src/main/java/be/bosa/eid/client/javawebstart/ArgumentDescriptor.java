@@ -27,7 +27,8 @@ public enum ArgumentDescriptor {
 	CANCEL_PAGE("cancelPage", false),
 	AUTHORIZATION_ERROR_PAGE("authorizationErrorPage", false),
 	BACKGROUND_COLOR("backgroundColor", false),
-	FOREGROUND_COLOR("foregroundColor", false);
+	FOREGROUND_COLOR("foregroundColor", false),
+	CARD_FILE_CACHE("cardFileCache", false);
 
 	private final String name;
 	private final boolean required;
@@ -41,6 +41,7 @@ import java.util.stream.Collectors;
 import static be.bosa.eid.client.javawebstart.ArgumentDescriptor.AUTHORIZATION_ERROR_PAGE;
 import static be.bosa.eid.client.javawebstart.ArgumentDescriptor.BACKGROUND_COLOR;
 import static be.bosa.eid.client.javawebstart.ArgumentDescriptor.CANCEL_PAGE;
+import static be.bosa.eid.client.javawebstart.ArgumentDescriptor.CARD_FILE_CACHE;
 import static be.bosa.eid.client.javawebstart.ArgumentDescriptor.EID_SERVICE_URL;
 import static be.bosa.eid.client.javawebstart.ArgumentDescriptor.FOREGROUND_COLOR;
 import static be.bosa.eid.client.javawebstart.ArgumentDescriptor.LANGUAGE;
@@ -96,6 +97,11 @@ public class RuntimeImpl implements Runtime {
 		return getOptionalArgument(FOREGROUND_COLOR);
 	}
 
+	@Override
+	public boolean isPersistentCardFileCacheEnabled() {
+		return getOptionalArgument(CARD_FILE_CACHE).map(Boolean::parseBoolean).orElse(false);
+	}
+
 	@Override
 	public void gotoTargetPage(String requestId) {
 		getOptionalArgument(TARGET_PAGE).map(url -> addRequestIdToUrl(url, requestId)).ifPresent(this::goToPage);
@@ -31,9 +31,24 @@ public abstract class AbstractProtocolMessage {
 
 	public static final int PROTOCOL_VERSION = 1;
 
-	@HttpHeader(HTTP_HEADER_PREFIX + "Version")
+	public static final String PROTOCOL_VERSION_HTTP_HEADER = HTTP_HEADER_PREFIX + "Version";
+
+	@HttpHeader(PROTOCOL_VERSION_HTTP_HEADER)
 	@ProtocolVersion
 	public static final int protocolVersion = PROTOCOL_VERSION;
 
 	public static final String TYPE_HTTP_HEADER = HTTP_HEADER_PREFIX + "Type";
+
+	/**
+	 * Carries the protocol state when the server runs in stateless mode. The
+	 * client echoes the last received value in its next request.
+	 */
+	public static final String PROTOCOL_TOKEN_HTTP_HEADER = HTTP_HEADER_PREFIX + "Token";
+
+	/**
+	 * Carries the highest protocol version a party supports. The server answers
+	 * a {@link HelloMessage} with this header when it supports the binary wire
+	 * format advertised by the client.
+	 */
+	public static final String ACCEPT_VERSION_HTTP_HEADER = HTTP_HEADER_PREFIX + "AcceptVersion";
 }
@@ -26,17 +26,20 @@ import be.bosa.eid.client_server.shared.annotation.ProtocolStateAllowed;
 import be.bosa.eid.client_server.shared.annotation.ResponsesAllowed;
 import be.bosa.eid.client_server.shared.protocol.ProtocolState;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.List;
 
 /**
  * Authentication Data transfer object.
+ * <p>
+ * The identity, address and photo files and their signatures are exposed as
+ * views on the HTTP body instead of copies.
+ * </p>
  *
  * @author Frank Cornelis
  */
@@ -98,6 +101,13 @@ public class AuthenticationDataMessage extends AbstractProtocolMessage {
 	@HttpHeader(HTTP_HEADER_PREFIX + "TransactionMessageSignatureSize")
 	public Integer transactionMessageSignatureSize;
 
+	/**
+	 * The authentication challenge, Base64 encoded. Echoed so that the eID
+	 * Service can verify self-verifying challenges on any node.
+	 */
+	@HttpHeader(HTTP_HEADER_PREFIX + "Challenge")
+	public String challenge;
+
 	@HttpBody
 	@NotNull
 	public byte[] body;
@@ -196,6 +206,13 @@ public class AuthenticationDataMessage extends AbstractProtocolMessage {
 		return result;
 	}
 
+	private ByteBuffer slice(int idx, int count) {
+		if (idx + count > this.body.length) {
+			throw new RuntimeException("body too small");
+		}
+		return ByteBuffer.wrap(this.body, idx, count).slice();
+	}
+
 	@PostConstruct
 	public void postConstruct() {
 		int idx = 0;
@@ -213,59 +230,53 @@ public class AuthenticationDataMessage extends AbstractProtocolMessage {
 		this.signatureValue = copy(this.body, idx, this.signatureValueSize);
 		idx += this.signatureValueSize;
 
-		byte[] authnCertFile = copy(this.body, idx, this.authnCertFileSize);
+		this.authnCert = getCertificate(idx, this.authnCertFileSize);
 		idx += this.authnCertFileSize;
-		this.authnCert = getCertificate(authnCertFile);
 
-		byte[] citizenCaCertFile = copy(this.body, idx, this.caCertFileSize);
+		this.citizenCaCert = getCertificate(idx, this.caCertFileSize);
 		idx += this.caCertFileSize;
-		this.citizenCaCert = getCertificate(citizenCaCertFile);
 
-		byte[] rootCaCertFile = copy(this.body, idx, this.rootCertFileSize);
+		this.rootCaCert = getCertificate(idx, this.rootCertFileSize);
 		idx += this.rootCertFileSize;
-		this.rootCaCert = getCertificate(rootCaCertFile);
 
 		if (this.signCertFileSize != null) {
-			byte[] signCertFile = copy(this.body, idx, this.signCertFileSize);
+			this.signCert = getCertificate(idx, this.signCertFileSize);
 			idx += this.signCertFileSize;
-			this.signCert = getCertificate(signCertFile);
 		}
 
 		if (this.identityFileSize != null) {
-			this.identityData = copy(this.body, idx, this.identityFileSize);
+			this.identityData = slice(idx, this.identityFileSize);
 			idx += this.identityFileSize;
 		}
 
 		if (this.addressFileSize != null) {
-			this.addressData = copy(this.body, idx, this.addressFileSize);
+			this.addressData = slice(idx, this.addressFileSize);
 			idx += this.addressFileSize;
 		}
 
 		if (this.photoFileSize != null) {
-			this.photoData = copy(this.body, idx, this.photoFileSize);
+			this.photoData = slice(idx, this.photoFileSize);
 			idx += this.photoFileSize;
 		}
 
 		if (this.identitySignatureFileSize != null) {
-			this.identitySignatureData = copy(this.body, idx, this.identitySignatureFileSize);
+			this.identitySignatureData = slice(idx, this.identitySignatureFileSize);
 			idx += this.identitySignatureFileSize;
 		}
 
 		if (this.addressSignatureFileSize != null) {
-			this.addressSignatureData = copy(this.body, idx, this.addressSignatureFileSize);
+			this.addressSignatureData = slice(idx, this.addressSignatureFileSize);
 			idx += this.addressSignatureFileSize;
 		}
 
 		if (this.rrnCertFileSize != null) {
-			byte[] rrnCertData = copy(this.body, idx, this.rrnCertFileSize);
-			this.rrnCertificate = getCertificate(rrnCertData);
+			this.rrnCertificate = getCertificate(idx, this.rrnCertFileSize);
 			idx += this.rrnCertFileSize;
 		}
 
 		if (this.serverCertFileSize != null) {
-			byte[] serverCertData = copy(this.body, idx, this.serverCertFileSize);
-			this.encodedServerCertificate = serverCertData;
-			this.serverCertificate = getCertificate(serverCertData);
+			this.encodedServerCertificate = copy(this.body, idx, this.serverCertFileSize);
+			this.serverCertificate = getCertificate(idx, this.serverCertFileSize);
 			idx += this.serverCertFileSize;
 		}
 
@@ -275,16 +286,12 @@ public class AuthenticationDataMessage extends AbstractProtocolMessage {
 		}
 	}
 
-	private X509Certificate getCertificate(byte[] certData) {
-		CertificateFactory certificateFactory;
-		try {
-			certificateFactory = CertificateFactory.getInstance("X.509");
-		} catch (CertificateException e) {
-			throw new RuntimeException("cert factory error: " + e.getMessage(), e);
+	private X509Certificate getCertificate(int idx, int count) {
+		if (idx + count > this.body.length) {
+			throw new RuntimeException("body too small");
 		}
-
 		try {
-			return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certData));
+			return CertificateCache.getInstance().getCertificate(this.body, idx, count);
 		} catch (CertificateException e) {
 			/*
 			 * Can happen in case of missing certificates. Missing certificates
@@ -301,11 +308,11 @@ public class AuthenticationDataMessage extends AbstractProtocolMessage {
 	public X509Certificate citizenCaCert;
 	public X509Certificate rootCaCert;
 	public X509Certificate signCert;
-	public byte[] identityData;
-	public byte[] addressData;
-	public byte[] photoData;
-	public byte[] identitySignatureData;
-	public byte[] addressSignatureData;
+	public ByteBuffer identityData;
+	public ByteBuffer addressData;
+	public ByteBuffer photoData;
+	public ByteBuffer identitySignatureData;
+	public ByteBuffer addressSignatureData;
 	public X509Certificate rrnCertificate;
 	public X509Certificate serverCertificate;
 	public byte[] encodedServerCertificate;
@@ -0,0 +1,180 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client_server.shared.message;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of parsed X509 certificates, keyed by the SHA-256 digest of
+ * their DER encoding.
+ * <p>
+ * The citizen CA, root CA and national registry certificates are the same for
+ * large groups of citizens, so most of them are only parsed once. When the
+ * cache is full, the least recently used certificate is removed. The citizen
+ * certificates, which are only seen once in a while, therefore do not push out
+ * the shared ones.
+ * </p>
+ */
+public final class CertificateCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+	private static final CertificateCache INSTANCE = new CertificateCache(DEFAULT_MAXIMUM_SIZE);
+
+	private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY = ThreadLocal.withInitial(() -> {
+		try {
+			return CertificateFactory.getInstance("X.509");
+		} catch (CertificateException e) {
+			throw new RuntimeException("cert factory error: " + e.getMessage(), e);
+		}
+	});
+
+	private static final ThreadLocal<MessageDigest> MESSAGE_DIGEST = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("digest error: " + e.getMessage(), e);
+		}
+	});
+
+	private final int maximumSize;
+
+	private final Map<ByteBuffer, X509Certificate> certificates;
+
+	private final ReentrantLock certificatesLock = new ReentrantLock();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param maximumSize the maximum number of cached certificates.
+	 */
+	public CertificateCache(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximum size should be positive");
+		}
+		this.maximumSize = maximumSize;
+		this.certificates = new LinkedHashMap<ByteBuffer, X509Certificate>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, X509Certificate> eldest) {
+				return size() > CertificateCache.this.maximumSize;
+			}
+		};
+	}
+
+	/**
+	 * Gives back the cache that is used by the protocol messages.
+	 */
+	public static CertificateCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gives back the parsed certificate.
+	 *
+	 * @param encodedCertificate the DER encoded certificate.
+	 * @throws CertificateException in case the data does not hold a certificate.
+	 */
+	public X509Certificate getCertificate(byte[] encodedCertificate) throws CertificateException {
+		return getCertificate(encodedCertificate, 0, encodedCertificate.length);
+	}
+
+	/**
+	 * Gives back the parsed certificate encoded in the given range of the data.
+	 *
+	 * @throws CertificateException in case the data does not hold a certificate.
+	 */
+	public X509Certificate getCertificate(byte[] data, int offset, int length) throws CertificateException {
+		MessageDigest messageDigest = MESSAGE_DIGEST.get();
+		messageDigest.update(data, offset, length);
+		ByteBuffer fingerprint = ByteBuffer.wrap(messageDigest.digest());
+
+		X509Certificate certificate;
+		this.certificatesLock.lock();
+		try {
+			certificate = this.certificates.get(fingerprint);
+		} finally {
+			this.certificatesLock.unlock();
+		}
+		if (certificate != null) {
+			this.hitCount.increment();
+			return certificate;
+		}
+		this.missCount.increment();
+
+		// parse outside of the lock, a concurrent miss at worst parses twice
+		certificate = (X509Certificate) CERTIFICATE_FACTORY.get()
+				.generateCertificate(new ByteArrayInputStream(data, offset, length));
+		this.certificatesLock.lock();
+		try {
+			this.certificates.put(fingerprint, certificate);
+		} finally {
+			this.certificatesLock.unlock();
+		}
+		return certificate;
+	}
+
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+	public int getSize() {
+		this.certificatesLock.lock();
+		try {
+			return this.certificates.size();
+		} finally {
+			this.certificatesLock.unlock();
+		}
+	}
+
+	public int getMaximumSize() {
+		return this.maximumSize;
+	}
+
+	/**
+	 * Removes all cached certificates.
+	 */
+	public void clear() {
+		this.certificatesLock.lock();
+		try {
+			this.certificates.clear();
+		} finally {
+			this.certificatesLock.unlock();
+		}
+	}
+}
@@ -21,6 +21,7 @@ import be.bosa.eid.client_server.shared.annotation.HttpHeader;
 import be.bosa.eid.client_server.shared.annotation.MessageDiscriminator;
 import be.bosa.eid.client_server.shared.annotation.ResponsesAllowed;
 import be.bosa.eid.client_server.shared.annotation.StartRequestMessage;
+import be.bosa.eid.client_server.shared.protocol.ContentEncoding;
 import be.bosa.eid.client_server.shared.protocol.ProtocolState;
 
 /**
@@ -28,9 +29,9 @@ import be.bosa.eid.client_server.shared.protocol.ProtocolState;
  *
  * @author Frank Cornelis
  */
-@ResponsesAllowed({IdentificationRequestMessage.class, CheckClientMessage.class, AuthenticationRequestMessage.class,
-		AdministrationMessage.class, SignRequestMessage.class, FilesDigestRequestMessage.class,
-		SignCertificatesRequestMessage.class, FinishedMessage.class})
+@ResponsesAllowed({IdentificationRequestMessage.class, CheckClientMessage.class, InsecureClientMessage.class,
+		AuthenticationRequestMessage.class, AdministrationMessage.class, SignRequestMessage.class,
+		FilesDigestRequestMessage.class, SignCertificatesRequestMessage.class, FinishedMessage.class})
 @StartRequestMessage(ProtocolState.INIT)
 public class HelloMessage extends AbstractProtocolMessage {
 
@@ -44,6 +45,38 @@ public class HelloMessage extends AbstractProtocolMessage {
 	@HttpHeader(HTTP_HEADER_PREFIX + "RequestId")
 	public String requestId;
 
+	/**
+	 * The {@link ContentEncoding}s the client supports, comma separated.
+	 */
+	@HttpHeader(ContentEncoding.ACCEPT_ENCODING_HTTP_HEADER)
+	public String acceptEncoding;
+
+	/**
+	 * The highest protocol version the client supports.
+	 */
+	@HttpHeader(ACCEPT_VERSION_HTTP_HEADER)
+	public Integer acceptVersion;
+
+	/**
+	 * The optional client environment, as in {@link ClientEnvironmentMessage}.
+	 * When present, an eID Service that checks the client environment does so
+	 * right away instead of answering with a {@link CheckClientMessage} first.
+	 */
+	@HttpHeader(HTTP_HEADER_PREFIX + "JavaVersion")
+	public String javaVersion;
+
+	@HttpHeader(HTTP_HEADER_PREFIX + "JavaVendor")
+	public String javaVendor;
+
+	@HttpHeader(HTTP_HEADER_PREFIX + "OSName")
+	public String osName;
+
+	@HttpHeader(HTTP_HEADER_PREFIX + "OSArch")
+	public String osArch;
+
+	@HttpHeader(HTTP_HEADER_PREFIX + "OSVersion")
+	public String osVersion;
+
 	public HelloMessage() {
 		super();
 	}
@@ -52,4 +85,9 @@ public class HelloMessage extends AbstractProtocolMessage {
 		this.language = language;
 		this.requestId = requestId;
 	}
+
+	public HelloMessage(String language, String requestId, String acceptEncoding) {
+		this(language, requestId);
+		this.acceptEncoding = acceptEncoding;
+	}
 }
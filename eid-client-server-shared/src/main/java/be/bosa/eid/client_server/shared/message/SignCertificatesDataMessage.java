@@ -26,18 +26,21 @@ import be.bosa.eid.client_server.shared.annotation.ProtocolStateAllowed;
 import be.bosa.eid.client_server.shared.annotation.ResponsesAllowed;
 import be.bosa.eid.client_server.shared.protocol.ProtocolState;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Signature Certificates/Identity Data Transfer Object.
+ * <p>
+ * The identity, address and photo files and their signatures are exposed as
+ * views on the HTTP body instead of copies.
+ * </p>
  *
  * @author Frank Cornelis
  */
@@ -147,27 +150,25 @@ public class SignCertificatesDataMessage extends AbstractProtocolMessage {
 				null, null, null, null);
 	}
 
-	private byte[] copy(byte[] source, int idx, int count) {
-		byte[] result = new byte[count];
-		System.arraycopy(source, idx, result, 0, count);
-		return result;
+	private ByteBuffer slice(int idx, int count) {
+		if (idx + count > this.body.length) {
+			throw new RuntimeException("body too small");
+		}
+		return ByteBuffer.wrap(this.body, idx, count).slice();
 	}
 
 	@PostConstruct
 	public void postConstruct() {
 		int idx = 0;
 
-		byte[] signCertFile = copy(this.body, idx, this.signCertFileSize);
+		X509Certificate signCert = getCertificate(idx, this.signCertFileSize);
 		idx += this.signCertFileSize;
-		X509Certificate signCert = getCertificate(signCertFile);
 
-		byte[] citizenCaCertFile = copy(this.body, idx, this.caCertFileSize);
+		X509Certificate citizenCaCert = getCertificate(idx, this.caCertFileSize);
 		idx += this.caCertFileSize;
-		X509Certificate citizenCaCert = getCertificate(citizenCaCertFile);
 
-		byte[] rootCaCertFile = copy(this.body, idx, this.rootCertFileSize);
+		this.rootCertificate = getCertificate(idx, this.rootCertFileSize);
 		idx += this.rootCertFileSize;
-		this.rootCertificate = getCertificate(rootCaCertFile);
 
 		this.certificateChain = new LinkedList<>();
 		this.certificateChain.add(signCert);
@@ -175,49 +176,45 @@ public class SignCertificatesDataMessage extends AbstractProtocolMessage {
 		this.certificateChain.add(this.rootCertificate);
 
 		if (this.identityFileSize != null) {
-			this.identityData = copy(this.body, idx, this.identityFileSize);
+			this.identityData = slice(idx, this.identityFileSize);
 			idx += this.identityFileSize;
 		}
 		if (this.addressFileSize != null) {
-			this.addressData = copy(this.body, idx, this.addressFileSize);
+			this.addressData = slice(idx, this.addressFileSize);
 			idx += this.addressFileSize;
 		}
 		if (this.photoFileSize != null) {
-			this.photoData = copy(this.body, idx, this.photoFileSize);
+			this.photoData = slice(idx, this.photoFileSize);
 			idx += this.photoFileSize;
 		}
 		if (this.identitySignatureFileSize != null) {
-			this.identitySignatureData = copy(this.body, idx, this.identitySignatureFileSize);
+			this.identitySignatureData = slice(idx, this.identitySignatureFileSize);
 			idx += this.identitySignatureFileSize;
 		}
 		if (this.addressSignatureFileSize != null) {
-			this.addressSignatureData = copy(this.body, idx, this.addressSignatureFileSize);
+			this.addressSignatureData = slice(idx, this.addressSignatureFileSize);
 			idx += this.addressSignatureFileSize;
 		}
 		if (this.rrnCertFileSize != null) {
-			byte[] nrnCertData = copy(this.body, idx, this.rrnCertFileSize);
+			this.rrnCertificate = getCertificate(idx, this.rrnCertFileSize);
 			idx += this.rrnCertFileSize;
-			this.rrnCertificate = getCertificate(nrnCertData);
 		}
 	}
 
-	public byte[] identityData;
-	public byte[] addressData;
-	public byte[] photoData;
-	public byte[] identitySignatureData;
-	public byte[] addressSignatureData;
+	public ByteBuffer identityData;
+	public ByteBuffer addressData;
+	public ByteBuffer photoData;
+	public ByteBuffer identitySignatureData;
+	public ByteBuffer addressSignatureData;
 	public X509Certificate rrnCertificate;
 	public X509Certificate rootCertificate;
 
-	private X509Certificate getCertificate(byte[] certData) {
-		CertificateFactory certificateFactory;
-		try {
-			certificateFactory = CertificateFactory.getInstance("X.509");
-		} catch (CertificateException e) {
-			throw new RuntimeException("cert factory error: " + e.getMessage(), e);
+	private X509Certificate getCertificate(int idx, int count) {
+		if (idx + count > this.body.length) {
+			throw new RuntimeException("body too small");
 		}
 		try {
-			return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certData));
+			return CertificateCache.getInstance().getCertificate(this.body, idx, count);
 		} catch (CertificateException e) {
 			/*
 			 * Can happen in case of missing certificates. Missing certificates
@@ -26,12 +26,10 @@ import be.bosa.eid.client_server.shared.annotation.ProtocolStateAllowed;
 import be.bosa.eid.client_server.shared.annotation.ResponsesAllowed;
 import be.bosa.eid.client_server.shared.protocol.ProtocolState;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.LinkedList;
 import java.util.List;
@@ -107,17 +105,14 @@ public class SignatureDataMessage extends AbstractProtocolMessage {
 		this.signatureValue = copy(this.body, idx, this.signatureValueSize);
 		idx += this.signatureValueSize;
 
-		byte[] signCertFile = copy(this.body, idx, this.signCertFileSize);
+		X509Certificate signCert = getCertificate(idx, this.signCertFileSize);
 		idx += this.signCertFileSize;
-		X509Certificate signCert = getCertificate(signCertFile);
 
-		byte[] citizenCaCertFile = copy(this.body, idx, this.caCertFileSize);
+		X509Certificate citizenCaCert = getCertificate(idx, this.caCertFileSize);
 		idx += this.caCertFileSize;
-		X509Certificate citizenCaCert = getCertificate(citizenCaCertFile);
 
-		byte[] rootCaCertFile = copy(this.body, idx, this.rootCertFileSize);
+		X509Certificate rootCaCert = getCertificate(idx, this.rootCertFileSize);
 		idx += this.rootCertFileSize;
-		X509Certificate rootCaCert = getCertificate(rootCaCertFile);
 
 		this.certificateChain = new LinkedList<>();
 		this.certificateChain.add(signCert);
@@ -125,16 +120,12 @@ public class SignatureDataMessage extends AbstractProtocolMessage {
 		this.certificateChain.add(rootCaCert);
 	}
 
-	private X509Certificate getCertificate(byte[] certData) {
-		CertificateFactory certificateFactory;
-		try {
-			certificateFactory = CertificateFactory.getInstance("X.509");
-		} catch (CertificateException e) {
-			throw new RuntimeException("cert factory error: " + e.getMessage(), e);
+	private X509Certificate getCertificate(int idx, int count) {
+		if (idx + count > this.body.length) {
+			throw new RuntimeException("body too small");
 		}
-
 		try {
-			return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certData));
+			return CertificateCache.getInstance().getCertificate(this.body, idx, count);
 		} catch (CertificateException e) {
 			/*
 			 * Can happen in case of missing certificates. Missing certificates
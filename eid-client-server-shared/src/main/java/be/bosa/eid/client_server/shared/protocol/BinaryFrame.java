@@ -0,0 +1,340 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client_server.shared.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary wire format of the protocol messages.
+ * <p>
+ * Instead of spreading the fields over HTTP headers, the complete message is
+ * encoded as a single length-prefixed frame in the HTTP body. Only the
+ * protocol version remains an HTTP header, so the {@link Unmarshaller} knows
+ * which format to expect.
+ * </p>
+ * <pre>
+ * frame  = length:int32 type:string count:uint8 field* body
+ * field  = name:string ('I' int32 | 'Z' uint8 | 'S' string)
+ * body   = 0 | 1 length:int32 byte* | 2 count:int32 item*
+ * item   = 0 string | 1 length:uint16 byte*
+ * string = length:uint16 utf8-byte*
+ * </pre>
+ * Fields are identified by their Java field name, and unknown fields are
+ * skipped. List items that are lowercase hexadecimal strings, like the file
+ * digests, are sent as the bytes they represent.
+ */
+final class BinaryFrame {
+
+	/**
+	 * The value of the protocol version HTTP header for this wire format.
+	 */
+	static final int PROTOCOL_VERSION = 2;
+
+	private static final int MAX_FIELDS = 255;
+
+	private static final byte INT_FIELD = 'I';
+
+	private static final byte BOOLEAN_FIELD = 'Z';
+
+	private static final byte STRING_FIELD = 'S';
+
+	private static final byte NO_BODY = 0;
+
+	private static final byte BYTES_BODY = 1;
+
+	private static final byte LIST_BODY = 2;
+
+	private static final byte STRING_ITEM = 0;
+
+	private static final byte HEX_ITEM = 1;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private BinaryFrame() {
+	}
+
+	/**
+	 * Encodes the given message as a binary frame.
+	 */
+	@SuppressWarnings("unchecked")
+	static byte[] encode(MessageCodec messageCodec, Object message) {
+		MessageCodec.HeaderField discriminatorField = messageCodec.getDiscriminatorField();
+		if (discriminatorField == null) {
+			throw new RuntimeException("no message discriminator field found on " + messageCodec.getMessageClass().getName());
+		}
+
+		List<MessageCodec.HeaderField> fields = new ArrayList<>();
+		for (MessageCodec.HeaderField headerField : messageCodec.getHeaderFields()) {
+			if (!headerField.isFinal() && headerField.get(message) != null) {
+				fields.add(headerField);
+			}
+		}
+		if (fields.size() > MAX_FIELDS) {
+			throw new RuntimeException("too many fields on " + messageCodec.getMessageClass().getName());
+		}
+
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(frame)) {
+			output.writeInt(0);
+			writeString(output, (String) discriminatorField.get(message));
+			output.writeByte(fields.size());
+			for (MessageCodec.HeaderField field : fields) {
+				writeString(output, field.fieldName);
+				Object value = field.get(message);
+				if (value instanceof Integer) {
+					output.writeByte(INT_FIELD);
+					output.writeInt((Integer) value);
+				} else if (value instanceof Boolean) {
+					output.writeByte(BOOLEAN_FIELD);
+					output.writeBoolean((Boolean) value);
+				} else {
+					output.writeByte(STRING_FIELD);
+					writeString(output, field.format(value));
+				}
+			}
+
+			MessageCodec.FieldAccessor bodyField = messageCodec.getBodyField();
+			Object body = bodyField != null ? bodyField.get(message) : null;
+			if (body == null) {
+				output.writeByte(NO_BODY);
+			} else if (messageCodec.isListBody()) {
+				List<String> items = (List<String>) body;
+				output.writeByte(LIST_BODY);
+				output.writeInt(items.size());
+				for (String item : items) {
+					writeItem(output, item);
+				}
+			} else {
+				byte[] bytes = (byte[]) body;
+				output.writeByte(BYTES_BODY);
+				output.writeInt(bytes.length);
+				output.write(bytes);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("frame encoding error: " + e.getMessage(), e);
+		}
+
+		byte[] result = frame.toByteArray();
+		int length = result.length - 4;
+		result[0] = (byte) (length >>> 24);
+		result[1] = (byte) (length >>> 16);
+		result[2] = (byte) (length >>> 8);
+		result[3] = (byte) length;
+		return result;
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xffff) {
+			throw new RuntimeException("string too long for message frame");
+		}
+		output.writeShort(bytes.length);
+		output.write(bytes);
+	}
+
+	private static void writeItem(DataOutputStream output, String item) throws IOException {
+		byte[] hex = parseHex(item);
+		if (hex != null) {
+			output.writeByte(HEX_ITEM);
+			output.writeShort(hex.length);
+			output.write(hex);
+		} else {
+			output.writeByte(STRING_ITEM);
+			writeString(output, item);
+		}
+	}
+
+	/**
+	 * Gives back the bytes of a lowercase hexadecimal string, or
+	 * <code>null</code> if the string is something else. Only lowercase strings
+	 * qualify, as decoding has to give back exactly the same string.
+	 */
+	private static byte[] parseHex(String item) {
+		int length = item.length();
+		if (length == 0 || length % 2 != 0 || length / 2 > 0xffff) {
+			return null;
+		}
+		byte[] result = new byte[length / 2];
+		for (int idx = 0; idx < length; idx += 2) {
+			int high = hexValue(item.charAt(idx));
+			int low = hexValue(item.charAt(idx + 1));
+			if (high < 0 || low < 0) {
+				return null;
+			}
+			result[idx / 2] = (byte) (high << 4 | low);
+		}
+		return result;
+	}
+
+	private static int hexValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		return -1;
+	}
+
+	/**
+	 * Decodes the given binary frame into a new message object, using the codecs
+	 * of the message catalog.
+	 *
+	 * @param messageCodecs the message codecs per discriminator value.
+	 */
+	static Object decode(byte[] frame, Map<String, MessageCodec> messageCodecs) {
+		if (frame == null || frame.length < 4) {
+			throw new RuntimeException("missing message frame");
+		}
+		try {
+			ByteBuffer input = ByteBuffer.wrap(frame);
+			int length = input.getInt();
+			if (length != frame.length - 4) {
+				throw new RuntimeException("message frame length mismatch");
+			}
+
+			String type = readString(input);
+			MessageCodec messageCodec = messageCodecs.get(type);
+			if (messageCodec == null) {
+				throw new RuntimeException("unsupported message: " + type);
+			}
+			Object message = messageCodec.newInstance();
+
+			int fieldCount = input.get() & 0xff;
+			for (int fieldIdx = 0; fieldIdx < fieldCount; fieldIdx++) {
+				String fieldName = readString(input);
+				Object value;
+				byte fieldType = input.get();
+				switch (fieldType) {
+					case INT_FIELD:
+						value = input.getInt();
+						break;
+					case BOOLEAN_FIELD:
+						value = input.get() != 0;
+						break;
+					case STRING_FIELD:
+						value = readString(input);
+						break;
+					default:
+						throw new RuntimeException("unsupported field type: " + fieldType);
+				}
+
+				MessageCodec.HeaderField field = messageCodec.getHeaderFieldByFieldName(fieldName);
+				if (field == null || field.isFinal()) {
+					continue;
+				}
+				if (value instanceof String) {
+					value = field.parse((String) value);
+				} else if (!isAssignable(field.type, value)) {
+					throw new RuntimeException("field type mismatch: " + fieldName);
+				}
+				field.set(message, value);
+			}
+
+			MessageCodec.FieldAccessor bodyField = messageCodec.getBodyField();
+			byte bodyType = input.get();
+			Object body;
+			switch (bodyType) {
+				case NO_BODY:
+					body = null;
+					break;
+				case BYTES_BODY:
+					byte[] bytes = new byte[checkLength(input.getInt(), input)];
+					input.get(bytes);
+					body = bytes;
+					break;
+				case LIST_BODY:
+					int count = checkLength(input.getInt(), input);
+					List<String> items = new ArrayList<>(count);
+					for (int itemIdx = 0; itemIdx < count; itemIdx++) {
+						items.add(readItem(input));
+					}
+					body = items;
+					break;
+				default:
+					throw new RuntimeException("unsupported body type: " + bodyType);
+			}
+			if (input.hasRemaining()) {
+				throw new RuntimeException("trailing data after message frame");
+			}
+			if (body != null) {
+				if (bodyField == null || (body instanceof List) != messageCodec.isListBody()) {
+					throw new RuntimeException("unexpected body for message: " + type);
+				}
+				bodyField.set(message, body);
+			}
+			return message;
+		} catch (BufferUnderflowException e) {
+			throw new RuntimeException("truncated message frame", e);
+		}
+	}
+
+	private static String readString(ByteBuffer input) {
+		int length = input.getShort() & 0xffff;
+		if (length > input.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		String result = new String(input.array(), input.position(), length, StandardCharsets.UTF_8);
+		input.position(input.position() + length);
+		return result;
+	}
+
+	private static String readItem(ByteBuffer input) {
+		byte itemType = input.get();
+		if (itemType == STRING_ITEM) {
+			return readString(input);
+		}
+		if (itemType != HEX_ITEM) {
+			throw new RuntimeException("unsupported item type: " + itemType);
+		}
+		int length = checkLength(input.getShort() & 0xffff, input);
+		char[] hex = new char[length * 2];
+		for (int idx = 0; idx < length; idx++) {
+			byte b = input.get();
+			hex[idx * 2] = HEX[(b >> 4) & 0xf];
+			hex[idx * 2 + 1] = HEX[b & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Lengths are client input, so never allocate more than what is left in
+	 * the frame.
+	 */
+	private static int checkLength(int length, ByteBuffer input) {
+		if (length < 0 || length > input.remaining()) {
+			throw new RuntimeException("invalid length in message frame: " + length);
+		}
+		return length;
+	}
+
+	private static boolean isAssignable(Class<?> type, Object value) {
+		if (value instanceof Integer) {
+			return Integer.class.equals(type) || Integer.TYPE.equals(type);
+		}
+		return Boolean.class.equals(type) || Boolean.TYPE.equals(type);
+	}
+}
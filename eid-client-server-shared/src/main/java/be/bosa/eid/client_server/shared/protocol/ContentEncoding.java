@@ -0,0 +1,126 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client_server.shared.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the HTTP body of protocol messages.
+ * <p>
+ * The eID Client advertises the encodings it supports in the
+ * {@code HelloMessage}. A server that supports them as well echoes the
+ * {@link #ACCEPT_ENCODING_HTTP_HEADER} on the response, after which the client
+ * compresses the bodies of its messages. Compressed bodies are marked with the
+ * {@link #CONTENT_ENCODING_HTTP_HEADER}. Protocol specific headers are used
+ * instead of the standard HTTP ones, so proxies and servlet filters leave the
+ * bodies alone.
+ * </p>
+ */
+public final class ContentEncoding {
+
+	public static final String ACCEPT_ENCODING_HTTP_HEADER = "X-EIdServerProtocol-AcceptEncoding";
+
+	public static final String CONTENT_ENCODING_HTTP_HEADER = "X-EIdServerProtocol-ContentEncoding";
+
+	public static final String GZIP = "gzip";
+
+	/**
+	 * Smaller bodies, like challenges and digests, do not get any smaller.
+	 */
+	public static final int MIN_ENCODED_BODY_SIZE = 512;
+
+	/**
+	 * Decoding stops beyond this size, so a small compressed body cannot make
+	 * the receiver allocate an arbitrary amount of memory.
+	 */
+	public static final int MAX_DECODED_BODY_SIZE = 1024 * 1024;
+
+	private ContentEncoding() {
+	}
+
+	/**
+	 * Checks whether the given list of encodings, as advertised by the other
+	 * party, contains an encoding we support.
+	 */
+	public static boolean isSupported(String encodings) {
+		if (encodings == null) {
+			return false;
+		}
+		for (String encoding : encodings.split(",")) {
+			if (GZIP.equalsIgnoreCase(encoding.trim())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compresses the given body.
+	 *
+	 * @return the compressed body, or <code>null</code> if compressing does not
+	 * make the body any smaller.
+	 */
+	static byte[] encode(byte[] body) {
+		if (body == null || body.length < MIN_ENCODED_BODY_SIZE) {
+			return null;
+		}
+		ByteArrayOutputStream encodedBody = new ByteArrayOutputStream(body.length / 2);
+		try (GZIPOutputStream outputStream = new GZIPOutputStream(encodedBody)) {
+			outputStream.write(body);
+		} catch (IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		}
+		return encodedBody.size() < body.length ? encodedBody.toByteArray() : null;
+	}
+
+	/**
+	 * Decompresses the given body according to the given content encoding.
+	 *
+	 * @param encoding the value of the {@link #CONTENT_ENCODING_HTTP_HEADER}, can
+	 *                 be <code>null</code> for bodies that are not encoded.
+	 */
+	static byte[] decode(String encoding, byte[] body) {
+		if (encoding == null || body == null) {
+			return body;
+		}
+		if (!GZIP.equalsIgnoreCase(encoding.trim())) {
+			throw new RuntimeException("unsupported content encoding: " + encoding);
+		}
+
+		ByteArrayOutputStream decodedBody = new ByteArrayOutputStream(
+				Math.min(body.length * 4, MAX_DECODED_BODY_SIZE));
+		try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = inputStream.read(buffer)) != -1) {
+				if (decodedBody.size() + n > MAX_DECODED_BODY_SIZE) {
+					throw new SecurityException("decoded body larger than " + MAX_DECODED_BODY_SIZE + " bytes");
+				}
+				decodedBody.write(buffer, 0, n);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("content encoding error: " + e.getMessage(), e);
+		}
+		return decodedBody.toByteArray();
+	}
+}
@@ -0,0 +1,412 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client_server.shared.protocol;
+
+import be.bosa.eid.client_server.shared.annotation.HttpBody;
+import be.bosa.eid.client_server.shared.annotation.HttpHeader;
+import be.bosa.eid.client_server.shared.annotation.MessageDiscriminator;
+import be.bosa.eid.client_server.shared.annotation.NotNull;
+import be.bosa.eid.client_server.shared.annotation.PostConstruct;
+import be.bosa.eid.client_server.shared.annotation.ProtocolVersion;
+import be.bosa.eid.client_server.shared.annotation.ValidateSemanticalIntegrity;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Precompiled marshalling meta-data of a single protocol message class.
+ * <p>
+ * All annotation scanning and reflective lookups happen once when the codec
+ * is created. The {@link Unmarshaller} creates the codecs of all catalog
+ * classes when processing the catalog, the {@link Transport} shares the same
+ * codecs.
+ * </p>
+ */
+final class MessageCodec {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final ClassValue<MessageCodec> CODECS = new ClassValue<MessageCodec>() {
+		@Override
+		protected MessageCodec computeValue(Class<?> messageClass) {
+			return new MessageCodec(messageClass);
+		}
+	};
+
+	private final Class<?> messageClass;
+
+	private final MethodHandle constructor;
+
+	private final String constructorError;
+
+	private final List<HeaderField> headerFields;
+
+	private final Map<String, HeaderField> headerFieldsByName;
+
+	private final Map<String, HeaderField> headerFieldsByFieldName;
+
+	private final HeaderField discriminatorField;
+
+	private final HeaderField protocolVersionField;
+
+	private final List<FieldAccessor> notNullFields;
+
+	private final FieldAccessor bodyField;
+
+	private final boolean listBody;
+
+	private final List<MethodHandle> postConstructMethods;
+
+	private final MethodHandle semanticValidatorConstructor;
+
+	/**
+	 * Gives back the codec for the given message class. Codecs are created only
+	 * once per class.
+	 */
+	static MessageCodec forClass(Class<?> messageClass) {
+		return CODECS.get(messageClass);
+	}
+
+	private MessageCodec(Class<?> messageClass) {
+		this.messageClass = messageClass;
+
+		MethodHandle constructor;
+		String constructorError;
+		try {
+			constructor = LOOKUP.findConstructor(messageClass, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(Object.class));
+			constructorError = null;
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			// only a problem when we actually have to unmarshall this message
+			constructor = null;
+			constructorError = e.getMessage();
+		}
+		this.constructor = constructor;
+		this.constructorError = constructorError;
+
+		List<HeaderField> headerFields = new ArrayList<>();
+		Map<String, HeaderField> headerFieldsByName = new HashMap<>();
+		Map<String, HeaderField> headerFieldsByFieldName = new HashMap<>();
+		HeaderField discriminatorField = null;
+		HeaderField protocolVersionField = null;
+		List<FieldAccessor> notNullFields = new ArrayList<>();
+		FieldAccessor bodyField = null;
+		for (Field field : messageClass.getFields()) {
+			if (field.getAnnotation(HttpBody.class) != null) {
+				if (bodyField != null) {
+					throw new RuntimeException("multiple @HttpBody fields detected on " + messageClass.getName());
+				}
+				bodyField = new FieldAccessor(field);
+			}
+
+			if (field.getAnnotation(NotNull.class) != null) {
+				notNullFields.add(new FieldAccessor(field));
+			}
+
+			HttpHeader httpHeaderAnnotation = field.getAnnotation(HttpHeader.class);
+			if (httpHeaderAnnotation != null) {
+				HeaderField headerField = new HeaderField(httpHeaderAnnotation.value(), field);
+				headerFields.add(headerField);
+				headerFieldsByName.putIfAbsent(toKey(headerField.name), headerField);
+				headerFieldsByFieldName.putIfAbsent(headerField.fieldName, headerField);
+				if (field.getAnnotation(MessageDiscriminator.class) != null) {
+					discriminatorField = headerField;
+				}
+				if (field.getAnnotation(ProtocolVersion.class) != null) {
+					protocolVersionField = headerField;
+				}
+			}
+		}
+		this.headerFields = Collections.unmodifiableList(headerFields);
+		this.headerFieldsByName = headerFieldsByName;
+		this.headerFieldsByFieldName = headerFieldsByFieldName;
+		this.discriminatorField = discriminatorField;
+		this.protocolVersionField = protocolVersionField;
+		this.notNullFields = Collections.unmodifiableList(notNullFields);
+		this.bodyField = bodyField;
+		this.listBody = bodyField != null && List.class.equals(bodyField.type);
+
+		List<MethodHandle> postConstructMethods = new ArrayList<>();
+		for (Method method : messageClass.getMethods()) {
+			if (method.getAnnotation(PostConstruct.class) != null) {
+				try {
+					postConstructMethods.add(LOOKUP.unreflect(method).asType(MethodType.methodType(void.class, Object.class)));
+				} catch (IllegalAccessException e) {
+					throw new RuntimeException("@PostConstruct error: " + e.getMessage(), e);
+				}
+			}
+		}
+		this.postConstructMethods = Collections.unmodifiableList(postConstructMethods);
+
+		ValidateSemanticalIntegrity validateSemanticalIntegrity = messageClass.getAnnotation(ValidateSemanticalIntegrity.class);
+		if (validateSemanticalIntegrity != null) {
+			try {
+				this.semanticValidatorConstructor = LOOKUP
+						.findConstructor(validateSemanticalIntegrity.value(), MethodType.methodType(void.class))
+						.asType(MethodType.methodType(SemanticValidator.class));
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new RuntimeException("error: " + e.getMessage(), e);
+			}
+		} else {
+			this.semanticValidatorConstructor = null;
+		}
+	}
+
+	private static String toKey(String headerName) {
+		return headerName.toLowerCase(Locale.ENGLISH);
+	}
+
+	Class<?> getMessageClass() {
+		return this.messageClass;
+	}
+
+	Object newInstance() {
+		if (this.constructor == null) {
+			throw new RuntimeException("error: " + this.constructorError);
+		}
+		try {
+			return (Object) this.constructor.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException("error: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back all HTTP header fields, in declaration order.
+	 */
+	List<HeaderField> getHeaderFields() {
+		return this.headerFields;
+	}
+
+	/**
+	 * Gives back the HTTP header field for the given (case insensitive) HTTP
+	 * header name, or <code>null</code> if the message has no such field.
+	 */
+	HeaderField getHeaderField(String headerName) {
+		if (null == headerName) {
+			throw new RuntimeException("header name should not be null");
+		}
+		return this.headerFieldsByName.get(toKey(headerName));
+	}
+
+	/**
+	 * Gives back the HTTP header field for the given Java field name, or
+	 * <code>null</code> if the message has no such field.
+	 */
+	HeaderField getHeaderFieldByFieldName(String fieldName) {
+		return this.headerFieldsByFieldName.get(fieldName);
+	}
+
+	/**
+	 * Gives back the {@link MessageDiscriminator} field, or <code>null</code>
+	 * if the message has none.
+	 */
+	HeaderField getDiscriminatorField() {
+		return this.discriminatorField;
+	}
+
+	/**
+	 * Gives back the {@link ProtocolVersion} field, or <code>null</code> if the
+	 * message has none.
+	 */
+	HeaderField getProtocolVersionField() {
+		return this.protocolVersionField;
+	}
+
+	/**
+	 * Gives back the name of the first {@link NotNull} field that has a
+	 * <code>null</code> value, or <code>null</code> if all are set.
+	 */
+	String findNullField(Object message) {
+		for (FieldAccessor notNullField : this.notNullFields) {
+			if (notNullField.get(message) == null) {
+				return notNullField.fieldName;
+			}
+		}
+		return null;
+	}
+
+	FieldAccessor getBodyField() {
+		return this.bodyField;
+	}
+
+	boolean isListBody() {
+		return this.listBody;
+	}
+
+	@SuppressWarnings("unchecked")
+	void validateSemantics(Object message) throws SemanticValidatorException {
+		if (this.semanticValidatorConstructor == null) {
+			return;
+		}
+
+		SemanticValidator<Object> validator;
+		try {
+			validator = (SemanticValidator<Object>) this.semanticValidatorConstructor.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException("error: " + e.getMessage(), e);
+		}
+		validator.validate(message);
+	}
+
+	void postConstruct(Object message) {
+		for (MethodHandle postConstructMethod : this.postConstructMethods) {
+			try {
+				postConstructMethod.invokeExact(message);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException("@PostConstruct method invocation error: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Precompiled field accessor.
+	 */
+	static class FieldAccessor {
+
+		final String fieldName;
+
+		final Class<?> type;
+
+		private final MethodHandle getter;
+
+		private final MethodHandle setter;
+
+		FieldAccessor(Field field) {
+			this.fieldName = field.getName();
+			this.type = field.getType();
+
+			boolean staticField = Modifier.isStatic(field.getModifiers());
+			try {
+				MethodHandle getter = LOOKUP.unreflectGetter(field);
+				if (staticField) {
+					getter = MethodHandles.dropArguments(getter, 0, Object.class);
+				}
+				this.getter = getter.asType(GETTER_TYPE);
+
+				if (Modifier.isFinal(field.getModifiers())) {
+					this.setter = null;
+				} else {
+					MethodHandle setter = LOOKUP.unreflectSetter(field);
+					if (staticField) {
+						setter = MethodHandles.dropArguments(setter, 0, Object.class);
+					}
+					this.setter = setter.asType(SETTER_TYPE);
+				}
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("error accessing field: " + field.getName(), e);
+			}
+		}
+
+		Object get(Object message) {
+			try {
+				return (Object) this.getter.invokeExact(message);
+			} catch (Throwable e) {
+				throw new RuntimeException("error reading field: " + this.fieldName, e);
+			}
+		}
+
+		void set(Object message, Object value) {
+			try {
+				this.setter.invokeExact(message, value);
+			} catch (Throwable e) {
+				throw new RuntimeException("error: " + e.getMessage(), e);
+			}
+		}
+
+		boolean isFinal() {
+			return this.setter == null;
+		}
+	}
+
+	/**
+	 * Precompiled HTTP header field, including its string conversions.
+	 */
+	static class HeaderField extends FieldAccessor {
+
+		final String name;
+
+		private final Function<String, Object> parser;
+
+		private final Function<Object, String> formatter;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		HeaderField(String name, Field field) {
+			super(field);
+			this.name = name;
+
+			Class<?> type = field.getType();
+			if (String.class.equals(type)) {
+				this.parser = value -> value;
+				this.formatter = value -> (String) value;
+			} else if (Integer.TYPE.equals(type) || Integer.class.equals(type)) {
+				this.parser = Integer::parseInt;
+				this.formatter = value -> ((Integer) value).toString();
+			} else if (Boolean.TYPE.equals(type) || Boolean.class.equals(type)) {
+				this.parser = Boolean::parseBoolean;
+				this.formatter = value -> ((Boolean) value).toString();
+			} else if (type.isEnum()) {
+				Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+				this.parser = value -> Enum.valueOf(enumType, value);
+				this.formatter = value -> ((Enum<?>) value).name();
+			} else {
+				this.parser = value -> {
+					throw new RuntimeException("unsupported http header field type: " + type);
+				};
+				this.formatter = value -> {
+					throw new RuntimeException("unsupported field type: " + type.getName());
+				};
+			}
+		}
+
+		/**
+		 * Converts the HTTP header value to the field type.
+		 */
+		Object parse(String headerValue) {
+			return this.parser.apply(headerValue);
+		}
+
+		/**
+		 * Converts the field value to its HTTP header value.
+		 */
+		String format(Object fieldValue) {
+			return this.formatter.apply(fieldValue);
+		}
+	}
+}
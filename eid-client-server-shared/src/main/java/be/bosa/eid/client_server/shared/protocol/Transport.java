@@ -17,26 +17,46 @@
 
 package be.bosa.eid.client_server.shared.protocol;
 
-import be.bosa.eid.client_server.shared.annotation.HttpBody;
-import be.bosa.eid.client_server.shared.annotation.HttpHeader;
-import be.bosa.eid.client_server.shared.annotation.NotNull;
-
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.lang.reflect.Field;
 import java.util.List;
 
 /**
  * Transport component is responsible for governing the process of converting
  * Java objects into data streams using a HTTP transport component.
+ * <p>
+ * Uses the same precompiled {@link MessageCodec} as the {@link Unmarshaller},
+ * so no reflective lookups take place per message.
+ * </p>
  *
  * @author Frank Cornelis
  */
 public class Transport {
 
+	/**
+	 * The protocol version of the binary wire format, where the complete
+	 * message is encoded as a single frame in the HTTP body.
+	 */
+	public static final int BINARY_PROTOCOL_VERSION = BinaryFrame.PROTOCOL_VERSION;
+
 	private Transport() {
 	}
 
+	/**
+	 * Checks whether the given protocol version HTTP header value denotes the
+	 * binary wire format, or a later version that also supports it.
+	 */
+	public static boolean isBinaryProtocolVersion(String protocolVersion) {
+		if (protocolVersion == null) {
+			return false;
+		}
+		try {
+			return Integer.parseInt(protocolVersion.trim()) >= BINARY_PROTOCOL_VERSION;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Transfers the given data objects over the HTTP transport component.
 	 *
@@ -44,35 +64,55 @@ public class Transport {
 	 * @param httpTransmitter the transport component.
 	 */
 	public static void transfer(Object dataObject, HttpTransmitter httpTransmitter) {
+		transfer(dataObject, httpTransmitter, false, false);
+	}
+
+	/**
+	 * Transfers the given data objects over the HTTP transport component.
+	 *
+	 * @param dataObject      the data objects to transfer.
+	 * @param httpTransmitter the transport component.
+	 * @param binaryFrame     <code>true</code> to use the {@link #BINARY_PROTOCOL_VERSION}
+	 *                        wire format, only allowed when the other party accepts it.
+	 * @param encodeBody      <code>true</code> to compress the body, only allowed
+	 *                        when the other party accepts a {@link ContentEncoding}.
+	 */
+	public static void transfer(Object dataObject, HttpTransmitter httpTransmitter, boolean binaryFrame,
+			boolean encodeBody) {
 		if (!httpTransmitter.isSecure()) {
 			throw new SecurityException("Client service connection not trusted");
 		}
 
 		// TODO: semantic integrity validation
-		Class<?> dataClass = dataObject.getClass();
-		Field[] fields = dataClass.getFields();
-		try {
-			inputValidation(dataObject, fields);
-		} catch (Exception e) {
-			throw new IllegalArgumentException("error: " + e.getMessage(), e);
+		MessageCodec messageCodec = MessageCodec.forClass(dataObject.getClass());
+		String nullField = messageCodec.findNullField(dataObject);
+		if (nullField != null) {
+			throw new IllegalArgumentException("error: input validation error: empty field: " + nullField);
 		}
 
-		Field bodyField = addHeaders(dataObject, httpTransmitter, fields);
-		addBody(dataObject, httpTransmitter, bodyField);
+		if (binaryFrame) {
+			MessageCodec.HeaderField protocolVersionField = messageCodec.getProtocolVersionField();
+			if (protocolVersionField == null) {
+				throw new RuntimeException("no protocol version field found on " + dataObject.getClass().getName());
+			}
+			httpTransmitter.addHeader(protocolVersionField.name, Integer.toString(BINARY_PROTOCOL_VERSION));
+			setBody(httpTransmitter, BinaryFrame.encode(messageCodec, dataObject), encodeBody);
+			return;
+		}
+
+		addHeaders(dataObject, httpTransmitter, messageCodec);
+		addBody(dataObject, httpTransmitter, messageCodec, encodeBody);
 	}
 
 	@SuppressWarnings("unchecked")
-	private static void addBody(Object dataObject, HttpTransmitter httpTransmitter, Field bodyField) {
+	private static void addBody(Object dataObject, HttpTransmitter httpTransmitter, MessageCodec messageCodec,
+			boolean encodeBody) {
+		MessageCodec.FieldAccessor bodyField = messageCodec.getBodyField();
 		if (bodyField == null) {
 			return;
 		}
 
-		Object bodyValue;
-		try {
-			bodyValue = bodyField.get(dataObject);
-		} catch (IllegalArgumentException | IllegalAccessException e) {
-			throw new RuntimeException("error reading field: " + bodyField.getName());
-		}
+		Object bodyValue = bodyField.get(dataObject);
 
 		byte[] body;
 		if (bodyValue instanceof List<?>) {
@@ -87,65 +127,25 @@ public class Transport {
 			body = (byte[]) bodyValue;
 		}
 
-		httpTransmitter.setBody(body);
+		setBody(httpTransmitter, body, encodeBody);
 	}
 
-	private static Field addHeaders(Object dataObject, HttpTransmitter httpTransmitter, Field[] fields) {
-		Field bodyField = null;
-		for (Field field : fields) {
-			HttpBody httpBodyAnnotation = field.getAnnotation(HttpBody.class);
-			if (httpBodyAnnotation != null) {
-				if (bodyField == null) {
-					bodyField = field;
-				} else {
-					throw new RuntimeException("multiple @HttpBody fields detected");
-				}
-			}
-
-			HttpHeader httpHeaderAnnotation = field.getAnnotation(HttpHeader.class);
-			if (null == httpHeaderAnnotation) {
-				continue;
-			}
-
-			Object fieldValue;
-			try {
-				fieldValue = field.get(dataObject);
-			} catch (Exception e) {
-				throw new RuntimeException("error reading field: " + field.getName());
-			}
-
-			if (fieldValue != null) {
-				String httpHeaderName = httpHeaderAnnotation.value();
-				String httpHeaderValue;
-				if (String.class.equals(field.getType())) {
-					httpHeaderValue = (String) fieldValue;
-				} else if (Integer.TYPE.equals(field.getType()) || Integer.class.equals(field.getType())) {
-					httpHeaderValue = ((Integer) fieldValue).toString();
-					// TODO: make this more generic
-				} else if (Boolean.TYPE.equals(field.getType()) || Boolean.class.equals(field.getType())) {
-					httpHeaderValue = ((Boolean) fieldValue).toString();
-				} else if (field.getType().isEnum()) {
-					httpHeaderValue = ((Enum<?>) fieldValue).name();
-				} else {
-					throw new RuntimeException("unsupported field type: " + field.getType().getName());
-				}
-				httpTransmitter.addHeader(httpHeaderName, httpHeaderValue);
+	private static void setBody(HttpTransmitter httpTransmitter, byte[] body, boolean encodeBody) {
+		if (encodeBody) {
+			byte[] encodedBody = ContentEncoding.encode(body);
+			if (encodedBody != null) {
+				httpTransmitter.addHeader(ContentEncoding.CONTENT_ENCODING_HTTP_HEADER, ContentEncoding.GZIP);
+				body = encodedBody;
 			}
 		}
-
-		return bodyField;
+		httpTransmitter.setBody(body);
 	}
 
-	private static void inputValidation(Object dataObject, Field[] fields) throws IllegalArgumentException, IllegalAccessException {
-		for (Field field : fields) {
-			NotNull notEmptyAnnotation = field.getAnnotation(NotNull.class);
-			if (null == notEmptyAnnotation) {
-				continue;
-			}
-
-			Object fieldValue = field.get(dataObject);
-			if (null == fieldValue) {
-				throw new IllegalArgumentException("input validation error: empty field: " + field.getName());
+	private static void addHeaders(Object dataObject, HttpTransmitter httpTransmitter, MessageCodec messageCodec) {
+		for (MessageCodec.HeaderField headerField : messageCodec.getHeaderFields()) {
+			Object fieldValue = headerField.get(dataObject);
+			if (fieldValue != null) {
+				httpTransmitter.addHeader(headerField.name, headerField.format(fieldValue));
 			}
 		}
 	}
@@ -17,21 +17,15 @@
 
 package be.bosa.eid.client_server.shared.protocol;
 
-import be.bosa.eid.client_server.shared.annotation.HttpBody;
 import be.bosa.eid.client_server.shared.annotation.HttpHeader;
 import be.bosa.eid.client_server.shared.annotation.MessageDiscriminator;
-import be.bosa.eid.client_server.shared.annotation.NotNull;
-import be.bosa.eid.client_server.shared.annotation.PostConstruct;
 import be.bosa.eid.client_server.shared.annotation.ProtocolVersion;
-import be.bosa.eid.client_server.shared.annotation.ValidateSemanticalIntegrity;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -46,13 +40,17 @@ import java.util.Map;
  * Keep this class stateless as it can be shared across different HTTP requests
  * inside the server service servlet.
  * </p>
+ * <p>
+ * All reflective meta-data of the catalog classes is compiled into a
+ * {@link MessageCodec} per class when processing the catalog.
+ * </p>
  *
  * @author Frank Cornelis
  */
 public class Unmarshaller {
 
 	private String protocolMessageDiscriminatorHeaderName;
-	private Map<String, Class<?>> protocolMessageClasses;
+	private Map<String, MessageCodec> protocolMessageCodecs;
 	private String protocolVersionHeaderName;
 	private Integer protocolVersion;
 
@@ -64,7 +62,7 @@ public class Unmarshaller {
 	}
 
 	private void processMessageCatalog(ProtocolMessageCatalog catalog) {
-		this.protocolMessageClasses = new HashMap<>();
+		this.protocolMessageCodecs = new HashMap<>();
 
 		for (Class<?> messageClass : catalog.getCatalogClasses()) {
 			Field discriminatorField = findDiscriminatorField(messageClass);
@@ -85,10 +83,10 @@ public class Unmarshaller {
 			} catch (IllegalArgumentException | IllegalAccessException e) {
 				throw new RuntimeException("error reading field: " + e.getMessage());
 			}
-			if (this.protocolMessageClasses.containsKey(discriminatorValue)) {
+			if (this.protocolMessageCodecs.containsKey(discriminatorValue)) {
 				throw new RuntimeException("discriminator field not unique for: " + messageClass.getName());
 			}
-			this.protocolMessageClasses.put(discriminatorValue, messageClass);
+			this.protocolMessageCodecs.put(discriminatorValue, MessageCodec.forClass(messageClass));
 
 			Field protocolVersionField = findProtocolVersionField(messageClass);
 			httpHeaderAnnotation = protocolVersionField.getAnnotation(HttpHeader.class);
@@ -177,23 +175,25 @@ public class Unmarshaller {
 	 */
 	public Object receive(HttpReceiver httpReceiver) {
 		verifySecureChannel(httpReceiver);
-		verifyProtocolVersion(httpReceiver);
+		int protocolVersion = getProtocolVersion(httpReceiver);
 
-		Class<?> protocolMessageClass = getProtocolMessageClass(httpReceiver);
+		MessageCodec messageCodec;
 		Object transferObject;
-		try {
-			transferObject = protocolMessageClass.newInstance();
-		} catch (InstantiationException | IllegalAccessException e) {
-			throw new RuntimeException("error: " + e.getMessage(), e);
+		if (protocolVersion == Transport.BINARY_PROTOCOL_VERSION) {
+			transferObject = BinaryFrame.decode(getBody(httpReceiver), this.protocolMessageCodecs);
+			messageCodec = MessageCodec.forClass(transferObject.getClass());
+		} else {
+			messageCodec = getProtocolMessageCodec(httpReceiver);
+			transferObject = messageCodec.newInstance();
+
+			injectHttpHeaderFields(httpReceiver, messageCodec, transferObject);
+			injectHttpBody(httpReceiver, messageCodec, transferObject);
 		}
 
-		injectHttpHeaderFields(httpReceiver, protocolMessageClass, transferObject);
-		injectHttpBody(httpReceiver, transferObject, protocolMessageClass.getFields());
+		inputValidation(messageCodec, transferObject);
+		semanticValidation(messageCodec, transferObject);
 
-		inputValidation(transferObject, protocolMessageClass.getFields());
-		semanticValidation(protocolMessageClass, transferObject);
-
-		postConstructSemantics(protocolMessageClass, transferObject);
+		messageCodec.postConstruct(transferObject);
 
 		return transferObject;
 	}
@@ -204,188 +204,93 @@ public class Unmarshaller {
 		}
 	}
 
-	private void verifyProtocolVersion(HttpReceiver httpReceiver) {
+	/**
+	 * Gives back the protocol version of the received message. Besides the
+	 * version of the message catalog, the binary wire format is supported.
+	 */
+	private int getProtocolVersion(HttpReceiver httpReceiver) {
 		String protocolVersionHeader = httpReceiver.getHeaderValue(this.protocolVersionHeaderName);
 		if (null == protocolVersionHeader) {
 			throw new RuntimeException("no protocol version header");
 		}
 
 		Integer protocolVersion = Integer.parseInt(protocolVersionHeader);
-		if (!this.protocolVersion.equals(protocolVersion)) {
+		if (!this.protocolVersion.equals(protocolVersion) && protocolVersion != Transport.BINARY_PROTOCOL_VERSION) {
 			throw new RuntimeException("protocol version mismatch");
 		}
+		return protocolVersion;
 	}
 
-	private Class<?> getProtocolMessageClass(HttpReceiver httpReceiver) {
+	private static byte[] getBody(HttpReceiver httpReceiver) {
+		return ContentEncoding.decode(
+				httpReceiver.getHeaderValue(ContentEncoding.CONTENT_ENCODING_HTTP_HEADER), httpReceiver.getBody());
+	}
+
+	private MessageCodec getProtocolMessageCodec(HttpReceiver httpReceiver) {
 		String discriminatorValue = httpReceiver.getHeaderValue(this.protocolMessageDiscriminatorHeaderName);
-		Class<?> protocolMessageClass = this.protocolMessageClasses.get(discriminatorValue);
-		if (protocolMessageClass == null) {
+		MessageCodec messageCodec = this.protocolMessageCodecs.get(discriminatorValue);
+		if (messageCodec == null) {
 			throw new RuntimeException("unsupported message: " + discriminatorValue);
 		}
-		return protocolMessageClass;
+		return messageCodec;
 	}
 
-	private void injectHttpBody(HttpReceiver httpReceiver, Object transferObject, Field[] fields) {
-		Field bodyField = null;
-		for (Field field : fields) {
-			HttpBody httpBodyAnnotation = field.getAnnotation(HttpBody.class);
-			if (httpBodyAnnotation != null) {
-				if (bodyField == null) {
-					bodyField = field;
-				} else {
-					throw new RuntimeException("multiple body fields detected");
-				}
-			}
+	private void injectHttpBody(HttpReceiver httpReceiver, MessageCodec messageCodec, Object transferObject) {
+		MessageCodec.FieldAccessor bodyField = messageCodec.getBodyField();
+		if (bodyField == null) {
+			return;
 		}
 
-		if (bodyField != null) {
-			byte[] body = httpReceiver.getBody();
-			Object bodyValue;
-			if (List.class.equals(bodyField.getType())) {
-				List<String> bodyList = new LinkedList<>();
-				BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body)));
-				String line;
-				try {
-					while (null != (line = reader.readLine())) {
-						bodyList.add(line);
-					}
-				} catch (IOException e) {
-					throw new RuntimeException("IO error: " + e.getMessage());
-				}
-				bodyValue = bodyList;
-			} else {
-				bodyValue = body;
-			}
+		byte[] body = getBody(httpReceiver);
+		Object bodyValue;
+		if (messageCodec.isListBody()) {
+			List<String> bodyList = new LinkedList<>();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body)));
+			String line;
 			try {
-				bodyField.set(transferObject, bodyValue);
-			} catch (Exception e) {
-				throw new RuntimeException("error: " + e.getMessage(), e);
-			}
-		}
-	}
-
-	private void postConstructSemantics(Class<?> protocolMessageClass, Object transferObject) {
-		Method[] methods = protocolMessageClass.getMethods();
-		for (Method method : methods) {
-			PostConstruct postConstructAnnotation = method.getAnnotation(PostConstruct.class);
-			if (null != postConstructAnnotation) {
-				try {
-					method.invoke(transferObject);
-				} catch (InvocationTargetException e) {
-					Throwable methodException = e.getTargetException();
-					if (methodException instanceof RuntimeException) {
-						throw (RuntimeException) methodException;
-					}
-					throw new RuntimeException("@PostConstruct method invocation error: " + methodException.getMessage(), methodException);
-				} catch (IllegalAccessException e) {
-					throw new RuntimeException("@PostConstruct error: " + e.getMessage(), e);
+				while (null != (line = reader.readLine())) {
+					bodyList.add(line);
 				}
+			} catch (IOException e) {
+				throw new RuntimeException("IO error: " + e.getMessage());
 			}
+			bodyValue = bodyList;
+		} else {
+			bodyValue = body;
 		}
+		bodyField.set(transferObject, bodyValue);
 	}
 
-	@SuppressWarnings("unchecked")
-	private void semanticValidation(Class<?> protocolMessageClass, Object transferObject) {
-		ValidateSemanticalIntegrity validateSemanticalIntegrity = protocolMessageClass.getAnnotation(ValidateSemanticalIntegrity.class);
-		if (validateSemanticalIntegrity == null) {
-			return;
-		}
-
-		SemanticValidator validator;
+	private void semanticValidation(MessageCodec messageCodec, Object transferObject) {
 		try {
-			validator = validateSemanticalIntegrity.value().newInstance();
-		} catch (InstantiationException | IllegalAccessException e) {
-			throw new RuntimeException("error: " + e.getMessage(), e);
-		}
-
-		try {
-			validator.validate(transferObject);
+			messageCodec.validateSemantics(transferObject);
 		} catch (SemanticValidatorException e) {
 			throw new RuntimeException("semantic validation error: " + e.getMessage());
 		}
 	}
 
-	private void inputValidation(Object transferObject, Field[] fields) {
-		for (Field field : fields) {
-			NotNull notNullAnnotation = field.getAnnotation(NotNull.class);
-			if (null == notNullAnnotation) {
-				continue;
-			}
-
-			// XXX: doesn't make sense for primitive fields
-			Object fieldValue;
-			try {
-				fieldValue = field.get(transferObject);
-			} catch (Exception e) {
-				throw new RuntimeException("error: " + e.getMessage(), e);
-			}
-			if (fieldValue == null) {
-				throw new RuntimeException("field should not be null: " + field.getName());
-			}
+	private void inputValidation(MessageCodec messageCodec, Object transferObject) {
+		// XXX: doesn't make sense for primitive fields
+		String nullField = messageCodec.findNullField(transferObject);
+		if (nullField != null) {
+			throw new RuntimeException("field should not be null: " + nullField);
 		}
 	}
 
-	private void injectHttpHeaderFields(HttpReceiver httpReceiver, Class<?> protocolMessageClass, Object transferObject) {
-		try {
-			for (String headerName : httpReceiver.getHeaderNames()) {
-				Field httpHeaderField = findHttpHeaderField(protocolMessageClass, headerName);
-				if (httpHeaderField == null) continue;
-
-				String headerValue = httpReceiver.getHeaderValue(headerName);
-				if ((httpHeaderField.getModifiers() & Modifier.FINAL) != 0) {
-					String constantValue;
-					if (String.class.equals(httpHeaderField.getType())) {
-						constantValue = (String) httpHeaderField.get(transferObject);
-					} else if (Integer.TYPE.equals(httpHeaderField.getType())) {
-						constantValue = ((Integer) httpHeaderField.get(transferObject)).toString();
-					} else {
-						throw new RuntimeException("unsupported type: " + httpHeaderField.getType().getName());
-					}
-
-					if (!constantValue.equals(headerValue)) {
-						throw new RuntimeException("constant value mismatch: " + httpHeaderField.getName() + "; expected value: " + constantValue + "; actual value: " + headerValue);
-					}
-				} else {
-					if (String.class.equals(httpHeaderField.getType())) {
-						httpHeaderField.set(transferObject, headerValue);
-					} else if (Integer.TYPE.equals(httpHeaderField.getType()) || Integer.class.equals(httpHeaderField.getType())) {
-						Integer intValue = Integer.parseInt(headerValue);
-						httpHeaderField.set(transferObject, intValue);
-						// TODO make this type handling more generic
-					} else if (Boolean.TYPE.equals(httpHeaderField.getType()) || Boolean.class.equals(httpHeaderField.getType())) {
-						Boolean boolValue = Boolean.parseBoolean(headerValue);
-						httpHeaderField.set(transferObject, boolValue);
-					} else if (httpHeaderField.getType().isEnum()) {
-						Enum<?> e = (Enum<?>) httpHeaderField.getType().getEnumConstants()[0];
-						Object value = Enum.valueOf(e.getClass(), headerValue);
-						httpHeaderField.set(transferObject, value);
-					} else {
-						throw new RuntimeException("unsupported http header field type: " + httpHeaderField.getType());
-					}
-				}
-			}
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
-		}
-	}
+	private void injectHttpHeaderFields(HttpReceiver httpReceiver, MessageCodec messageCodec, Object transferObject) {
+		for (String headerName : httpReceiver.getHeaderNames()) {
+			MessageCodec.HeaderField httpHeaderField = messageCodec.getHeaderField(headerName);
+			if (httpHeaderField == null) continue;
 
-	private Field findHttpHeaderField(Class<?> protocolMessageClass, String headerName) {
-		if (null == headerName) {
-			throw new RuntimeException("header name should not be null");
-		}
-
-		Field[] fields = protocolMessageClass.getFields();
-		for (Field field : fields) {
-			HttpHeader httpHeaderAnnotation = field.getAnnotation(HttpHeader.class);
-			if (httpHeaderAnnotation == null) {
-				continue;
-			}
-			String fieldHttpHeaderName = httpHeaderAnnotation.value();
-			if (headerName.equalsIgnoreCase(fieldHttpHeaderName)) {
-				return field;
+			String headerValue = httpReceiver.getHeaderValue(headerName);
+			if (httpHeaderField.isFinal()) {
+				String constantValue = httpHeaderField.format(httpHeaderField.get(transferObject));
+				if (!constantValue.equals(headerValue)) {
+					throw new RuntimeException("constant value mismatch: " + httpHeaderField.fieldName + "; expected value: " + constantValue + "; actual value: " + headerValue);
+				}
+			} else {
+				httpHeaderField.set(transferObject, httpHeaderField.parse(headerValue));
 			}
 		}
-
-		return null;
 	}
 }
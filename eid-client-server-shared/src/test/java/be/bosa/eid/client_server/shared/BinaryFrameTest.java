@@ -0,0 +1,132 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client_server.shared;
+
+import be.bosa.eid.client_server.shared.message.ClientServerProtocolMessageCatalog;
+import be.bosa.eid.client_server.shared.message.ErrorCode;
+import be.bosa.eid.client_server.shared.message.FileDigestsDataMessage;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.client_server.shared.message.IdentityDataMessage;
+import be.bosa.eid.client_server.shared.protocol.HttpReceiver;
+import be.bosa.eid.client_server.shared.protocol.HttpTransmitter;
+import be.bosa.eid.client_server.shared.protocol.Transport;
+import be.bosa.eid.client_server.shared.protocol.Unmarshaller;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BinaryFrameTest {
+
+	private final Unmarshaller unmarshaller = new Unmarshaller(new ClientServerProtocolMessageCatalog());
+
+	@Test
+	public void identityDataMessage() throws Exception {
+		IdentityDataMessage identityDataMessage = new IdentityDataMessage("identity".getBytes(), "address".getBytes(),
+				null, null, null, null, null, null, null, null);
+
+		MessageBuffer messageBuffer = new MessageBuffer();
+		Transport.transfer(identityDataMessage, messageBuffer, true, false);
+
+		assertEquals(Arrays.asList("X-EIdServerProtocol-Version"), messageBuffer.getHeaderNames());
+		assertEquals("2", messageBuffer.getHeaderValue("X-EIdServerProtocol-Version"));
+
+		IdentityDataMessage result = (IdentityDataMessage) this.unmarshaller.receive(messageBuffer);
+		assertEquals((Integer) 8, result.identityFileSize);
+		assertEquals((Integer) 7, result.addressFileSize);
+		assertNull(result.photoFileSize);
+		assertArrayEquals("identity".getBytes(), result.idFile);
+		assertArrayEquals("address".getBytes(), result.addressFile);
+	}
+
+	@Test
+	public void fileDigestsDataMessage() {
+		FileDigestsDataMessage fileDigestsDataMessage = new FileDigestsDataMessage();
+		fileDigestsDataMessage.fileDigestInfos = Arrays.asList("SHA-256",
+				"9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08", "CAFE", "ab", "", "abc");
+
+		MessageBuffer messageBuffer = new MessageBuffer();
+		Transport.transfer(fileDigestsDataMessage, messageBuffer, true, true);
+
+		FileDigestsDataMessage result = (FileDigestsDataMessage) this.unmarshaller.receive(messageBuffer);
+		assertEquals(fileDigestsDataMessage.fileDigestInfos, result.fileDigestInfos);
+	}
+
+	@Test
+	public void finishedMessageWithErrorCode() {
+		MessageBuffer messageBuffer = new MessageBuffer();
+		Transport.transfer(new FinishedMessage(ErrorCode.CERTIFICATE_EXPIRED), messageBuffer, true, false);
+
+		FinishedMessage result = (FinishedMessage) this.unmarshaller.receive(messageBuffer);
+		assertEquals(ErrorCode.CERTIFICATE_EXPIRED, result.errorCode);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void truncatedFrame() throws Exception {
+		MessageBuffer messageBuffer = new MessageBuffer();
+		Transport.transfer(new IdentityDataMessage("identity".getBytes(), null, null, null, null, null, null, null,
+				null, null), messageBuffer, true, false);
+		messageBuffer.body = Arrays.copyOf(messageBuffer.body, messageBuffer.body.length - 1);
+
+		this.unmarshaller.receive(messageBuffer);
+	}
+
+	private static class MessageBuffer implements HttpTransmitter, HttpReceiver {
+
+		private final Map<String, String> headers = new HashMap<>();
+
+		private byte[] body;
+
+		@Override
+		public boolean isSecure() {
+			return true;
+		}
+
+		@Override
+		public void addHeader(String headerName, String headerValue) {
+			this.headers.put(headerName, headerValue);
+		}
+
+		@Override
+		public void setBody(byte[] bodyValue) {
+			this.body = bodyValue;
+		}
+
+		@Override
+		public List<String> getHeaderNames() {
+			return new ArrayList<>(this.headers.keySet());
+		}
+
+		@Override
+		public String getHeaderValue(String headerName) {
+			return this.headers.get(headerName);
+		}
+
+		@Override
+		public byte[] getBody() {
+			return this.body;
+		}
+	}
+}
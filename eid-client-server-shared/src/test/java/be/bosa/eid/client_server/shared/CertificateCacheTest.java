@@ -0,0 +1,122 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.client_server.shared;
+
+import be.bosa.eid.client_server.shared.message.CertificateCache;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CertificateCacheTest {
+
+	@Test
+	public void parsedCertificateIsReused() throws Exception {
+		byte[] encodedCertificate = readCertificate("/test-certificate.der");
+		byte[] body = new byte[encodedCertificate.length + 10];
+		System.arraycopy(encodedCertificate, 0, body, 5, encodedCertificate.length);
+		CertificateCache certificateCache = new CertificateCache(10);
+
+		X509Certificate certificate = certificateCache.getCertificate(encodedCertificate);
+		X509Certificate sliceCertificate = certificateCache.getCertificate(body, 5, encodedCertificate.length);
+
+		assertSame(certificate, sliceCertificate);
+		assertEquals("CN=Test Certificate", certificate.getSubjectX500Principal().getName());
+		assertEquals(1, certificateCache.getHitCount());
+		assertEquals(1, certificateCache.getMissCount());
+		assertEquals(1, certificateCache.getSize());
+	}
+
+	@Test
+	public void invalidCertificateIsNotCached() throws Exception {
+		CertificateCache certificateCache = new CertificateCache(10);
+
+		try {
+			certificateCache.getCertificate(new byte[1300]);
+			fail();
+		} catch (CertificateException e) {
+			// expected
+		}
+		assertEquals(0, certificateCache.getSize());
+	}
+
+	@Test
+	public void cacheIsBounded() throws Exception {
+		byte[] encodedCertificate = readCertificate("/test-certificate.der");
+		byte[] encodedCertificate2 = readCertificate("/test-certificate-2.der");
+		CertificateCache certificateCache = new CertificateCache(1);
+
+		certificateCache.getCertificate(encodedCertificate);
+		X509Certificate certificate2 = certificateCache.getCertificate(encodedCertificate2);
+
+		assertEquals(1, certificateCache.getSize());
+		assertSame(certificate2, certificateCache.getCertificate(encodedCertificate2));
+		assertEquals(2, certificateCache.getMissCount());
+		assertEquals(1, certificateCache.getHitCount());
+	}
+
+	@Test
+	public void leastRecentlyUsedCertificateIsEvicted() throws Exception {
+		byte[] encodedCertificate = readCertificate("/test-certificate.der");
+		byte[] encodedCertificate2 = readCertificate("/test-certificate-2.der");
+		byte[] encodedCertificate3 = readCertificate("/test-certificate-3.der");
+		CertificateCache certificateCache = new CertificateCache(2);
+
+		X509Certificate certificate = certificateCache.getCertificate(encodedCertificate);
+		certificateCache.getCertificate(encodedCertificate2);
+		certificateCache.getCertificate(encodedCertificate);
+		certificateCache.getCertificate(encodedCertificate3);
+
+		assertEquals(2, certificateCache.getSize());
+		assertSame(certificate, certificateCache.getCertificate(encodedCertificate));
+		certificateCache.getCertificate(encodedCertificate2);
+		assertEquals(4, certificateCache.getMissCount());
+		assertEquals(2, certificateCache.getHitCount());
+	}
+
+	@Test
+	public void clearRemovesCertificates() throws Exception {
+		byte[] encodedCertificate = readCertificate("/test-certificate.der");
+		CertificateCache certificateCache = new CertificateCache(10);
+
+		X509Certificate certificate = certificateCache.getCertificate(encodedCertificate);
+		certificateCache.clear();
+		X509Certificate reparsedCertificate = certificateCache.getCertificate(encodedCertificate);
+
+		assertEquals(certificate, reparsedCertificate);
+		assertEquals(2, certificateCache.getMissCount());
+	}
+
+	private byte[] readCertificate(String resourceName) throws Exception {
+		try (InputStream inputStream = CertificateCacheTest.class.getResourceAsStream(resourceName)) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int count;
+			while ((count = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, count);
+			}
+			return outputStream.toByteArray();
+		}
+	}
+}
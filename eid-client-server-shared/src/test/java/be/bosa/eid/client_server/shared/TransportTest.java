@@ -29,6 +29,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -58,6 +61,35 @@ public class TransportTest {
 		verify(mockHttpTransmitter).setBody(MESSAGE.getBytes());
 	}
 
+	@Test
+	public void transmitEncodedIdentityDataMessage() {
+		IdentityDataMessage identityDataMessage = new IdentityDataMessage();
+		identityDataMessage.identityFileSize = 4096;
+		identityDataMessage.body = new byte[4096];
+
+		when(mockHttpTransmitter.isSecure()).thenReturn(true);
+
+		Transport.transfer(identityDataMessage, mockHttpTransmitter, false, true);
+
+		verify(mockHttpTransmitter).addHeader("X-EIdServerProtocol-ContentEncoding", "gzip");
+		verify(mockHttpTransmitter, never()).setBody(identityDataMessage.body);
+		verify(mockHttpTransmitter).setBody(any(byte[].class));
+	}
+
+	@Test
+	public void transmitSmallBodyNotEncoded() {
+		IdentityDataMessage identityDataMessage = new IdentityDataMessage();
+		identityDataMessage.identityFileSize = 20;
+		identityDataMessage.body = MESSAGE.getBytes();
+
+		when(mockHttpTransmitter.isSecure()).thenReturn(true);
+
+		Transport.transfer(identityDataMessage, mockHttpTransmitter, false, true);
+
+		verify(mockHttpTransmitter, never()).addHeader(eq("X-EIdServerProtocol-ContentEncoding"), any(String.class));
+		verify(mockHttpTransmitter).setBody(MESSAGE.getBytes());
+	}
+
 	@Test
 	public void transmitFinishedMessage() {
 		FinishedMessage finishedMessage = new FinishedMessage();
@@ -38,9 +38,12 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.mockito.Mockito.when;
 
@@ -289,6 +292,53 @@ public class UnmarshallerTest {
 		unmarshaller.receive(mockHttpReceiver);
 	}
 
+	@Test
+	public void receiveEncodedIdentityDataMessage() throws IOException {
+		ProtocolMessageCatalog catalog = new ClientServerProtocolMessageCatalog();
+		Unmarshaller unmarshaller = new Unmarshaller(catalog);
+
+		when(mockHttpReceiver.isSecure()).thenReturn(true);
+		when(mockHttpReceiver.getHeaderNames()).thenReturn(
+				Arrays.asList("X-EIdServerProtocol-Version", "X-EIdServerProtocol-Type", "X-EIdServerProtocol-IdentityFileSize", "X-EIdServerProtocol-ContentEncoding")
+		);
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-Version")).thenReturn("1");
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-Type")).thenReturn("IdentityDataMessage");
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-IdentityFileSize")).thenReturn("11");
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-ContentEncoding")).thenReturn("gzip");
+		when(mockHttpReceiver.getBody()).thenReturn(gzip("hello world".getBytes()));
+
+		IdentityDataMessage result = (IdentityDataMessage) unmarshaller.receive(mockHttpReceiver);
+
+		Assert.assertArrayEquals("hello world".getBytes(), result.body);
+		Assert.assertArrayEquals("hello world".getBytes(), result.idFile);
+	}
+
+	@Test(expected = SecurityException.class)
+	public void receiveEncodedBodyLargerThanMaximum() throws IOException {
+		ProtocolMessageCatalog catalog = new ClientServerProtocolMessageCatalog();
+		Unmarshaller unmarshaller = new Unmarshaller(catalog);
+
+		when(mockHttpReceiver.isSecure()).thenReturn(true);
+		when(mockHttpReceiver.getHeaderNames()).thenReturn(
+				Arrays.asList("X-EIdServerProtocol-Version", "X-EIdServerProtocol-Type", "X-EIdServerProtocol-IdentityFileSize")
+		);
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-Version")).thenReturn("1");
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-Type")).thenReturn("IdentityDataMessage");
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-IdentityFileSize")).thenReturn("10");
+		when(mockHttpReceiver.getHeaderValue("X-EIdServerProtocol-ContentEncoding")).thenReturn("gzip");
+		when(mockHttpReceiver.getBody()).thenReturn(gzip(new byte[10 * 1024 * 1024]));
+
+		unmarshaller.receive(mockHttpReceiver);
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+			gzipOutputStream.write(data);
+		}
+		return outputStream.toByteArray();
+	}
+
 	// TODO: test semantical validator
 
 	public static final class MyRuntimeException extends RuntimeException {
@@ -0,0 +1,103 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import be.bosa.eid.server.EidServiceServlet;
+import be.bosa.eid.server.impl.handler.AuthenticationDataMessageHandler;
+import be.bosa.eid.server.impl.handler.HelloMessageHandler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Embedded Jetty running an eID Service per {@link Flow}, configured with the
+ * load generator services.
+ */
+public class EmbeddedEidServer {
+
+	private final Server server;
+
+	private final ServerConnector connector;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param port        the port to listen on, or 0 for any free port.
+	 * @param maxThreads  the maximum number of request threads.
+	 * @param initParams  additional init-params for all eID Services, e.g. to
+	 *                    enable asynchronous processing.
+	 */
+	public EmbeddedEidServer(int port, int maxThreads, Map<String, String> initParams) {
+		this.server = new Server(new QueuedThreadPool(maxThreads));
+		this.connector = new ServerConnector(this.server);
+		this.connector.setPort(port);
+		this.server.addConnector(this.connector);
+
+		ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+		context.setContextPath("/");
+		for (Flow flow : Flow.values()) {
+			ServletHolder servletHolder = context.addServlet(EidServiceServlet.class, "/" + flow.getPath());
+			servletHolder.setName(flow.getPath());
+			servletHolder.setAsyncSupported(true);
+			servletHolder.setInitParameter("SkipSecureConnectionCheck", "true");
+			switch (flow) {
+				case IDENTIFICATION:
+					servletHolder.setInitParameter(HelloMessageHandler.INCLUDE_ADDRESS_INIT_PARAM_NAME, "true");
+					break;
+				case AUTHENTICATION:
+					servletHolder.setInitParameter(
+							AuthenticationDataMessageHandler.AUTHN_SERVICE_INIT_PARAM_NAME + "Class",
+							LoadGeneratorAuthenticationService.class.getName());
+					servletHolder.setInitParameter(HelloMessageHandler.INCLUDE_IDENTITY_INIT_PARAM_NAME, "true");
+					servletHolder.setInitParameter(HelloMessageHandler.INCLUDE_ADDRESS_INIT_PARAM_NAME, "true");
+					break;
+				case SIGNING:
+					servletHolder.setInitParameter(HelloMessageHandler.SIGNATURE_SERVICE_INIT_PARAM_NAME + "Class",
+							LoadGeneratorSignatureService.class.getName());
+					break;
+				default:
+					throw new IllegalArgumentException("unsupported flow: " + flow);
+			}
+			initParams.forEach(servletHolder::setInitParameter);
+		}
+		this.server.setHandler(context);
+	}
+
+	public void start() throws Exception {
+		this.server.start();
+	}
+
+	public void stop() throws Exception {
+		this.server.stop();
+	}
+
+	/**
+	 * Gives back the base URL of the eID Services. The host is
+	 * <code>localhost</code>, as the eID Client only talks plain HTTP to the
+	 * local host.
+	 */
+	public URL getBaseUrl() throws MalformedURLException {
+		return new URL("http://localhost:" + this.connector.getLocalPort() + "/");
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+/**
+ * The protocol runs a simulated citizen can go through. Every flow is served
+ * by its own eID Service servlet.
+ */
+public enum Flow {
+
+	IDENTIFICATION("identification"),
+
+	AUTHENTICATION("authentication"),
+
+	SIGNING("signing");
+
+	private final String path;
+
+	Flow(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * Gives back the path, relative to the base URL, of the eID Service
+	 * serving this flow.
+	 */
+	public String getPath() {
+		return this.path;
+	}
+}
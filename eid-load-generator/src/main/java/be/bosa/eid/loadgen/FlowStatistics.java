@@ -0,0 +1,60 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import be.bosa.eid.server.impl.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of the protocol runs of a single {@link Flow}.
+ */
+public class FlowStatistics {
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	private final LongAdder errorCount = new LongAdder();
+
+	private final AtomicReference<String> firstError = new AtomicReference<>();
+
+	public void recordSuccess(long nanos) {
+		this.latencies.record(nanos);
+	}
+
+	public void recordError(Exception exception) {
+		this.errorCount.increment();
+		this.firstError.compareAndSet(null, exception.getMessage());
+	}
+
+	public LatencyHistogram getLatencies() {
+		return this.latencies;
+	}
+
+	public long getErrorCount() {
+		return this.errorCount.sum();
+	}
+
+	/**
+	 * Gives back the message of the first error, or <code>null</code> if all
+	 * protocol runs succeeded.
+	 */
+	public String getFirstError() {
+		return this.firstError.get();
+	}
+}
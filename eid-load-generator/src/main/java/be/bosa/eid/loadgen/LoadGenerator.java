@@ -0,0 +1,228 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import be.bosa.eid.server.impl.VirtualThreads;
+import be.bosa.eid.server.impl.metrics.LatencyHistogram;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator. Has a number of simulated citizens go through the
+ * eID protocol flows concurrently, either against an embedded eID Service or
+ * against an existing deployment, and reports the throughput and latency of
+ * every flow.
+ */
+public class LoadGenerator {
+
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	private final List<Flow> flows;
+
+	private final int citizens;
+
+	private final int cards;
+
+	private final long warmupNanos;
+
+	private final long durationNanos;
+
+	private final Map<Flow, FlowStatistics> statistics = new EnumMap<>(Flow.class);
+
+	public LoadGenerator(List<Flow> flows, int citizens, int cards, long warmupSeconds, long durationSeconds) {
+		this.flows = flows;
+		this.citizens = citizens;
+		this.cards = cards;
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+		this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+		for (Flow flow : flows) {
+			this.statistics.put(flow, new FlowStatistics());
+		}
+	}
+
+	/**
+	 * Runs the load against the eID Services below the given base URL, and
+	 * gives back the statistics of the runs that started after the warmup.
+	 */
+	public Map<Flow, FlowStatistics> run(URL baseUrl) throws GeneralSecurityException, IOException,
+			InterruptedException {
+		Map<Flow, URL> serviceUrls = new EnumMap<>(Flow.class);
+		for (Flow flow : this.flows) {
+			serviceUrls.put(flow, new URL(baseUrl, flow.getPath()));
+		}
+
+		/*
+		 * Key generation is expensive, so citizens share a limited number of
+		 * cards.
+		 */
+		TestPki testPki = new TestPki();
+		List<SimulatedCard> simulatedCards = new ArrayList<>();
+		for (int idx = 0; idx < this.cards; idx++) {
+			simulatedCards.add(testPki.issueCard(TestPki.nationalNumber(idx), "Alice", "SPECIMEN"));
+		}
+
+		ExecutorService executorService = VirtualThreads.isSupported()
+				? VirtualThreads.newVirtualThreadPerTaskExecutor()
+				: Executors.newFixedThreadPool(this.citizens);
+		long measureStart = System.nanoTime() + this.warmupNanos;
+		long end = measureStart + this.durationNanos;
+		for (int idx = 0; idx < this.citizens; idx++) {
+			SimulatedCitizen citizen = new SimulatedCitizen(simulatedCards.get(idx % simulatedCards.size()));
+			int firstFlow = idx;
+			executorService.execute(() -> {
+				int iteration = firstFlow;
+				while (System.nanoTime() < end) {
+					Flow flow = this.flows.get(iteration++ % this.flows.size());
+					long start = System.nanoTime();
+					try {
+						citizen.run(flow, serviceUrls.get(flow));
+						if (start >= measureStart) {
+							this.statistics.get(flow).recordSuccess(System.nanoTime() - start);
+						}
+					} catch (IOException | GeneralSecurityException | RuntimeException e) {
+						if (start >= measureStart) {
+							this.statistics.get(flow).recordError(e);
+						}
+					}
+				}
+			});
+		}
+		executorService.shutdown();
+		executorService.awaitTermination(this.warmupNanos + this.durationNanos + TimeUnit.MINUTES.toNanos(1),
+				TimeUnit.NANOSECONDS);
+		return Collections.unmodifiableMap(this.statistics);
+	}
+
+	/**
+	 * Prints the throughput and latency percentiles per flow.
+	 */
+	public void report(PrintStream out) {
+		double seconds = this.durationNanos / 1e9;
+		out.println(String.format("%-16s %9s %7s %9s %9s %9s %9s %9s", "flow", "runs", "errors", "runs/s",
+				"p50 ms", "p90 ms", "p99 ms", "max ms"));
+		this.statistics.forEach((flow, flowStatistics) -> {
+			LatencyHistogram latencies = flowStatistics.getLatencies();
+			out.println(String.format("%-16s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f", flow.getPath(),
+					latencies.getCount(), flowStatistics.getErrorCount(), latencies.getCount() / seconds,
+					latencies.getValueAtQuantile(0.5) / NANOS_PER_MILLI,
+					latencies.getValueAtQuantile(0.9) / NANOS_PER_MILLI,
+					latencies.getValueAtQuantile(0.99) / NANOS_PER_MILLI, latencies.getMax() / NANOS_PER_MILLI));
+		});
+		this.statistics.forEach((flow, flowStatistics) -> {
+			if (flowStatistics.getFirstError() != null) {
+				out.println("first " + flow.getPath() + " error: " + flowStatistics.getFirstError());
+			}
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addOption(Option.builder("u").longOpt("url").hasArg()
+				.desc("base URL of the eID Services, per default an embedded eID Service is started").build());
+		options.addOption(Option.builder("c").longOpt("citizens").hasArg()
+				.desc("number of concurrent citizens (default 100)").build());
+		options.addOption(Option.builder("d").longOpt("duration").hasArg()
+				.desc("measurement duration in seconds (default 60)").build());
+		options.addOption(Option.builder("w").longOpt("warmup").hasArg()
+				.desc("warmup duration in seconds (default 10)").build());
+		options.addOption(Option.builder("f").longOpt("flows").hasArg()
+				.desc("comma separated flows: identification, authentication, signing (default all)").build());
+		options.addOption(Option.builder().longOpt("cards").hasArg()
+				.desc("number of distinct simulated cards (default 32)").build());
+		options.addOption(Option.builder().longOpt("server-threads").hasArg()
+				.desc("maximum request threads of the embedded eID Service (default 200)").build());
+		options.addOption(Option.builder().longOpt("async")
+				.desc("enable asynchronous processing within the embedded eID Service").build());
+		options.addOption(Option.builder("h").longOpt("help").desc("print this help").build());
+
+		CommandLine commandLine;
+		try {
+			commandLine = new DefaultParser().parse(options, args);
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			new HelpFormatter().printHelp("load-generator", options);
+			System.exit(1);
+			return;
+		}
+		if (commandLine.hasOption("h")) {
+			new HelpFormatter().printHelp("load-generator", options);
+			return;
+		}
+
+		int citizens = Integer.parseInt(commandLine.getOptionValue("c", "100"));
+		List<Flow> flows = new ArrayList<>();
+		for (String flow : commandLine.getOptionValue("f", "identification,authentication,signing").split(",")) {
+			flows.add(Flow.valueOf(flow.trim().toUpperCase()));
+		}
+		/*
+		 * Otherwise the JRE keeps at most 5 idle connections per server, and
+		 * most protocol runs would have to set up a new connection.
+		 */
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", Integer.toString(citizens));
+		}
+
+		LoadGenerator loadGenerator = new LoadGenerator(flows, citizens,
+				Integer.parseInt(commandLine.getOptionValue("cards", "32")),
+				Long.parseLong(commandLine.getOptionValue("w", "10")),
+				Long.parseLong(commandLine.getOptionValue("d", "60")));
+
+		EmbeddedEidServer embeddedEidServer = null;
+		URL baseUrl;
+		if (commandLine.hasOption("u")) {
+			String url = commandLine.getOptionValue("u");
+			baseUrl = new URL(url.endsWith("/") ? url : url + "/");
+		} else {
+			Map<String, String> initParams = new HashMap<>();
+			if (commandLine.hasOption("async")) {
+				initParams.put("AsyncProcessing", "true");
+			}
+			embeddedEidServer = new EmbeddedEidServer(0,
+					Integer.parseInt(commandLine.getOptionValue("server-threads", "200")), initParams);
+			embeddedEidServer.start();
+			baseUrl = embeddedEidServer.getBaseUrl();
+		}
+		try {
+			System.out.println("running " + citizens + " citizens against " + baseUrl);
+			loadGenerator.run(baseUrl);
+			loadGenerator.report(System.out);
+		} finally {
+			if (embeddedEidServer != null) {
+				embeddedEidServer.stop();
+			}
+		}
+	}
+}
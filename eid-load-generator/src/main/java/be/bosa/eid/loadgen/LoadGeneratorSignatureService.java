@@ -0,0 +1,59 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import be.bosa.eid.server.spi.AddressDTO;
+import be.bosa.eid.server.spi.DigestInfo;
+import be.bosa.eid.server.spi.IdentityDTO;
+import be.bosa.eid.server.spi.SignatureService;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Signature service of the embedded eID Service. Has every citizen sign the
+ * SHA-256 digest of a random document, and trusts every signing certificate
+ * chain.
+ */
+public class LoadGeneratorSignatureService implements SignatureService {
+
+	private static final String DIGEST_ALGO = "SHA-256";
+
+	private static final int DOCUMENT_SIZE = 1024;
+
+	public String getFilesDigestAlgorithm() {
+		return null;
+	}
+
+	public DigestInfo preSign(String requestId, List<DigestInfo> digestInfos,
+							  List<X509Certificate> signingCertificateChain, IdentityDTO identity, AddressDTO address,
+							  byte[] photo) throws NoSuchAlgorithmException {
+		byte[] document = new byte[DOCUMENT_SIZE];
+		ThreadLocalRandom.current().nextBytes(document);
+		byte[] digestValue = MessageDigest.getInstance(DIGEST_ALGO).digest(document);
+		return new DigestInfo(digestValue, DIGEST_ALGO, "load test document");
+	}
+
+	public void postSign(String requestId, byte[] signatureValue, List<X509Certificate> signingCertificateChain)
+			throws SecurityException {
+		// the eID Service already verified the signature value
+	}
+}
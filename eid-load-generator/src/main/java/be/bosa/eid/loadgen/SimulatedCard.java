@@ -0,0 +1,210 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import be.bosa.eid.server.impl.handler.SignatureDataMessageHandler;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Software emulation of an eID card. Holds the keys and certificates issued
+ * by the {@link TestPki}, together with the identity and address files of the
+ * card holder in the TLV format of a real card.
+ */
+public class SimulatedCard {
+
+	private static final int CARD_VALIDITY_BEGIN_TAG = 3;
+
+	private static final int CARD_VALIDITY_END_TAG = 4;
+
+	private static final int NATIONAL_NUMBER_TAG = 6;
+
+	private static final DateTimeFormatter CARD_VALIDITY_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+	private static final byte[] IDENTITY_FILE_TEMPLATE = load("id-alice.tlv");
+
+	private static final byte[] ADDRESS_FILE = load("address-alice.tlv");
+
+	private final String nationalNumber;
+
+	private final PrivateKey authnPrivateKey;
+
+	private final PrivateKey signPrivateKey;
+
+	private final byte[] authnCertFile;
+
+	private final byte[] signCertFile;
+
+	private final byte[] citizenCaCertFile;
+
+	private final byte[] rootCaCertFile;
+
+	private final byte[] identityFile;
+
+	public SimulatedCard(String nationalNumber, PrivateKey authnPrivateKey, X509Certificate authnCertificate,
+						 PrivateKey signPrivateKey, X509Certificate signCertificate,
+						 X509Certificate citizenCaCertificate, X509Certificate rootCaCertificate)
+			throws CertificateEncodingException {
+		this.nationalNumber = nationalNumber;
+		this.authnPrivateKey = authnPrivateKey;
+		this.signPrivateKey = signPrivateKey;
+		this.authnCertFile = authnCertificate.getEncoded();
+		this.signCertFile = signCertificate.getEncoded();
+		this.citizenCaCertFile = citizenCaCertificate.getEncoded();
+		this.rootCaCertFile = rootCaCertificate.getEncoded();
+		this.identityFile = createIdentityFile(nationalNumber);
+	}
+
+	private static byte[] load(String resourceName) {
+		try (InputStream inputStream = SimulatedCard.class.getResourceAsStream("/" + resourceName)) {
+			if (inputStream == null) {
+				throw new IOException("resource not found: " + resourceName);
+			}
+			return IOUtils.toByteArray(inputStream);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot load card file: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Copies the identity file template, replacing the national number so it
+	 * matches the one within the certificates, and the card validity so the
+	 * card has not expired.
+	 */
+	private static byte[] createIdentityFile(String nationalNumber) {
+		LocalDate today = LocalDate.now();
+		Map<Integer, String> values = new HashMap<>();
+		values.put(CARD_VALIDITY_BEGIN_TAG, today.minusYears(1).format(CARD_VALIDITY_FORMAT));
+		values.put(CARD_VALIDITY_END_TAG, today.plusYears(9).format(CARD_VALIDITY_FORMAT));
+		values.put(NATIONAL_NUMBER_TAG, nationalNumber);
+
+		ByteArrayOutputStream identityFile = new ByteArrayOutputStream();
+		int idx = 0;
+		while (idx < IDENTITY_FILE_TEMPLATE.length) {
+			int tagStart = idx;
+			int tag = IDENTITY_FILE_TEMPLATE[idx++] & 0xff;
+			int length = 0;
+			byte lengthByte;
+			do {
+				lengthByte = IDENTITY_FILE_TEMPLATE[idx++];
+				length = (length << 7) | (lengthByte & 0x7f);
+			} while ((lengthByte & 0x80) != 0);
+			if (values.containsKey(tag)) {
+				byte[] value = values.get(tag).getBytes(StandardCharsets.US_ASCII);
+				identityFile.write(tag);
+				identityFile.write(value.length);
+				identityFile.write(value, 0, value.length);
+			} else {
+				identityFile.write(IDENTITY_FILE_TEMPLATE, tagStart, idx - tagStart + length);
+			}
+			idx += length;
+		}
+		return identityFile.toByteArray();
+	}
+
+	/**
+	 * Signs the given data with the authentication key, like the card does for
+	 * an eID authentication.
+	 */
+	public byte[] signAuthentication(byte[] toBeSigned) throws GeneralSecurityException {
+		Signature signature = Signature.getInstance("SHA256withRSA");
+		signature.initSign(this.authnPrivateKey);
+		signature.update(toBeSigned);
+		return signature.sign();
+	}
+
+	/**
+	 * Signs the given digest value with the non-repudiation key, like the card
+	 * does for an eID signature.
+	 */
+	public byte[] sign(byte[] digestValue, String digestAlgo) throws GeneralSecurityException {
+		ByteArrayOutputStream digestInfo = new ByteArrayOutputStream();
+		switch (digestAlgo) {
+			case "SHA-1":
+			case "SHA1":
+				digestInfo.write(SignatureDataMessageHandler.SHA1_DIGEST_INFO_PREFIX, 0,
+						SignatureDataMessageHandler.SHA1_DIGEST_INFO_PREFIX.length);
+				break;
+			case "SHA-224":
+				digestInfo.write(SignatureDataMessageHandler.SHA224_DIGEST_INFO_PREFIX, 0,
+						SignatureDataMessageHandler.SHA224_DIGEST_INFO_PREFIX.length);
+				break;
+			case "SHA-256":
+				digestInfo.write(SignatureDataMessageHandler.SHA256_DIGEST_INFO_PREFIX, 0,
+						SignatureDataMessageHandler.SHA256_DIGEST_INFO_PREFIX.length);
+				break;
+			case "SHA-384":
+				digestInfo.write(SignatureDataMessageHandler.SHA384_DIGEST_INFO_PREFIX, 0,
+						SignatureDataMessageHandler.SHA384_DIGEST_INFO_PREFIX.length);
+				break;
+			case "SHA-512":
+				digestInfo.write(SignatureDataMessageHandler.SHA512_DIGEST_INFO_PREFIX, 0,
+						SignatureDataMessageHandler.SHA512_DIGEST_INFO_PREFIX.length);
+				break;
+			default:
+				throw new GeneralSecurityException("unsupported digest algorithm: " + digestAlgo);
+		}
+		digestInfo.write(digestValue, 0, digestValue.length);
+
+		Signature signature = Signature.getInstance("NONEwithRSA");
+		signature.initSign(this.signPrivateKey);
+		signature.update(digestInfo.toByteArray());
+		return signature.sign();
+	}
+
+	public String getNationalNumber() {
+		return this.nationalNumber;
+	}
+
+	public byte[] getAuthnCertFile() {
+		return this.authnCertFile;
+	}
+
+	public byte[] getSignCertFile() {
+		return this.signCertFile;
+	}
+
+	public byte[] getCitizenCaCertFile() {
+		return this.citizenCaCertFile;
+	}
+
+	public byte[] getRootCaCertFile() {
+		return this.rootCaCertFile;
+	}
+
+	public byte[] getIdentityFile() {
+		return this.identityFile;
+	}
+
+	public byte[] getAddressFile() {
+		return ADDRESS_FILE;
+	}
+}
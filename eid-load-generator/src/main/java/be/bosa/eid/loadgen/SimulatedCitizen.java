@@ -0,0 +1,191 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import be.bosa.eid.client.core.io.HttpURLConnectionHttpReceiver;
+import be.bosa.eid.client.core.io.HttpURLConnectionHttpTransmitter;
+import be.bosa.eid.client_server.shared.message.AbstractProtocolMessage;
+import be.bosa.eid.client_server.shared.message.AuthenticationContract;
+import be.bosa.eid.client_server.shared.message.AuthenticationDataMessage;
+import be.bosa.eid.client_server.shared.message.AuthenticationRequestMessage;
+import be.bosa.eid.client_server.shared.message.ClientServerProtocolMessageCatalog;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.client_server.shared.message.HelloMessage;
+import be.bosa.eid.client_server.shared.message.IdentificationRequestMessage;
+import be.bosa.eid.client_server.shared.message.IdentityDataMessage;
+import be.bosa.eid.client_server.shared.message.SignRequestMessage;
+import be.bosa.eid.client_server.shared.message.SignatureDataMessage;
+import be.bosa.eid.client_server.shared.protocol.ContentEncoding;
+import be.bosa.eid.client_server.shared.protocol.Transport;
+import be.bosa.eid.client_server.shared.protocol.Unmarshaller;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * A citizen going through the eID protocol with a {@link SimulatedCard},
+ * speaking HTTP to the eID Service like the eID Client does.
+ */
+public class SimulatedCitizen {
+
+	private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+	private final SimulatedCard card;
+
+	private final Unmarshaller unmarshaller = new Unmarshaller(new ClientServerProtocolMessageCatalog());
+
+	private String sessionCookie;
+
+	private boolean binaryFrames;
+
+	private boolean encodeBodies;
+
+	public SimulatedCitizen(SimulatedCard card) {
+		this.card = card;
+	}
+
+	/**
+	 * Runs a complete protocol run of the given flow against the eID Service at
+	 * the given URL.
+	 *
+	 * @throws IOException in case the eID Service did not finish the protocol
+	 *                     run successfully.
+	 */
+	public void run(Flow flow, URL serviceUrl) throws IOException, GeneralSecurityException {
+		this.sessionCookie = null;
+		this.binaryFrames = false;
+		this.encodeBodies = false;
+		HelloMessage helloMessage = new HelloMessage("en", null, ContentEncoding.GZIP);
+		helloMessage.acceptVersion = Transport.BINARY_PROTOCOL_VERSION;
+		helloMessage.javaVersion = System.getProperty("java.version");
+		helloMessage.javaVendor = System.getProperty("java.vendor");
+		helloMessage.osName = System.getProperty("os.name");
+		helloMessage.osArch = System.getProperty("os.arch");
+		helloMessage.osVersion = System.getProperty("os.version");
+		Object requestMessage = exchange(serviceUrl, helloMessage);
+		Object responseMessage;
+		switch (flow) {
+			case IDENTIFICATION:
+				responseMessage = exchange(serviceUrl, identify(expect(requestMessage,
+						IdentificationRequestMessage.class)));
+				break;
+			case AUTHENTICATION:
+				responseMessage = exchange(serviceUrl, authenticate(expect(requestMessage,
+						AuthenticationRequestMessage.class)));
+				break;
+			case SIGNING:
+				responseMessage = exchange(serviceUrl, sign(expect(requestMessage, SignRequestMessage.class)));
+				break;
+			default:
+				throw new IllegalArgumentException("unsupported flow: " + flow);
+		}
+		FinishedMessage finishedMessage = expect(responseMessage, FinishedMessage.class);
+		if (finishedMessage.errorCode != null) {
+			throw new IOException("protocol run failed: " + finishedMessage.errorCode);
+		}
+	}
+
+	private IdentityDataMessage identify(IdentificationRequestMessage message) throws IOException {
+		if (message.includePhoto || message.includeIntegrityData) {
+			throw new IOException("simulated cards hold neither photo nor integrity data");
+		}
+		return new IdentityDataMessage(this.card.getIdentityFile(),
+				message.includeAddress ? this.card.getAddressFile() : null, null, null, null, null,
+				message.includeCertificates ? this.card.getRootCaCertFile() : null,
+				message.includeCertificates ? this.card.getAuthnCertFile() : null,
+				message.includeCertificates ? this.card.getSignCertFile() : null,
+				message.includeCertificates ? this.card.getCitizenCaCertFile() : null);
+	}
+
+	private AuthenticationDataMessage authenticate(AuthenticationRequestMessage message)
+			throws IOException, GeneralSecurityException {
+		if (message.includePhoto || message.includeIntegrityData) {
+			throw new IOException("simulated cards hold neither photo nor integrity data");
+		}
+		if (message.includeHostname || message.includeInetAddress || message.sessionIdChannelBinding
+				|| message.serverCertificateChannelBinding) {
+			throw new IOException("channel binding not supported by simulated citizens");
+		}
+		byte[] salt = new byte[20];
+		SECURE_RANDOM.nextBytes(salt);
+		AuthenticationContract authenticationContract = new AuthenticationContract(salt, null, null, null, null,
+				message.challenge);
+		byte[] signatureValue = this.card.signAuthentication(authenticationContract.calculateToBeSigned());
+		AuthenticationDataMessage authenticationDataMessage = new AuthenticationDataMessage(salt, null,
+				signatureValue, this.card.getAuthnCertFile(), this.card.getCitizenCaCertFile(),
+				this.card.getRootCaCertFile(), message.includeCertificates ? this.card.getSignCertFile() : null,
+				message.includeIdentity ? this.card.getIdentityFile() : null,
+				message.includeAddress ? this.card.getAddressFile() : null, null, null, null, null, null, null);
+		authenticationDataMessage.challenge = Base64.getEncoder().encodeToString(message.challenge);
+		return authenticationDataMessage;
+	}
+
+	private SignatureDataMessage sign(SignRequestMessage message) throws GeneralSecurityException {
+		byte[] signatureValue = this.card.sign(message.digestValue, message.digestAlgo);
+		return new SignatureDataMessage(signatureValue, this.card.getSignCertFile(),
+				this.card.getCitizenCaCertFile(), this.card.getRootCaCertFile());
+	}
+
+	/**
+	 * Sends the given message within the HTTP session of the current protocol
+	 * run, and gives back the response message.
+	 */
+	private Object exchange(URL serviceUrl, Object message) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) serviceUrl.openConnection();
+		if (this.sessionCookie != null) {
+			connection.setRequestProperty("Cookie", this.sessionCookie);
+		}
+		try {
+			Transport.transfer(message, new HttpURLConnectionHttpTransmitter(connection), this.binaryFrames,
+					this.encodeBodies);
+			int responseCode = connection.getResponseCode();
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				throw new IOException("HTTP error " + responseCode + " for " + message.getClass().getSimpleName());
+			}
+			String setCookie = connection.getHeaderField("Set-Cookie");
+			if (setCookie != null) {
+				int separatorIdx = setCookie.indexOf(';');
+				this.sessionCookie = separatorIdx != -1 ? setCookie.substring(0, separatorIdx) : setCookie;
+			}
+			if (Transport.isBinaryProtocolVersion(connection.getHeaderField(AbstractProtocolMessage.ACCEPT_VERSION_HTTP_HEADER))) {
+				this.binaryFrames = true;
+			}
+			if (ContentEncoding.isSupported(connection.getHeaderField(ContentEncoding.ACCEPT_ENCODING_HTTP_HEADER))) {
+				this.encodeBodies = true;
+			}
+			return this.unmarshaller.receive(new HttpURLConnectionHttpReceiver(connection));
+		} catch (RuntimeException e) {
+			throw new IOException("error exchanging " + message.getClass().getSimpleName() + ": " + e.getMessage(),
+					e);
+		}
+	}
+
+	private static <T> T expect(Object message, Class<T> messageClass) throws IOException {
+		if (!messageClass.isInstance(message)) {
+			String received = message instanceof FinishedMessage
+					? "FinishedMessage " + ((FinishedMessage) message).errorCode
+					: message.getClass().getSimpleName();
+			throw new IOException("expected " + messageClass.getSimpleName() + ", received " + received);
+		}
+		return messageClass.cast(message);
+	}
+}
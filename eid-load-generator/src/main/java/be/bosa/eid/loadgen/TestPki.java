@@ -0,0 +1,182 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.V3TBSCertificateGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throw-away PKI mimicking the Belgian eID hierarchy: a root CA, a citizen
+ * CA, and per card an authentication and a non-repudiation certificate. None
+ * of these certificates chain up to a real eID root.
+ */
+public class TestPki {
+
+	private static final int KEY_SIZE = 2048;
+
+	private static final long VALIDITY = TimeUnit.DAYS.toMillis(365);
+
+	private final KeyPair rootKeyPair;
+
+	private final X509Certificate rootCertificate;
+
+	private final KeyPair citizenCaKeyPair;
+
+	private final X509Certificate citizenCaCertificate;
+
+	private final AtomicLong serialNumber = new AtomicLong(1);
+
+	public TestPki() throws GeneralSecurityException {
+		X500Name rootName = new X500Name("C=BE,CN=Load Test Root CA");
+		this.rootKeyPair = generateKeyPair();
+		this.rootCertificate = createCertificate(rootName, this.rootKeyPair.getPublic(), rootName,
+				this.rootKeyPair.getPrivate(), true, KeyUsage.keyCertSign | KeyUsage.cRLSign);
+
+		X500Name citizenCaName = new X500Name("C=BE,CN=Load Test Citizen CA");
+		this.citizenCaKeyPair = generateKeyPair();
+		this.citizenCaCertificate = createCertificate(citizenCaName, this.citizenCaKeyPair.getPublic(), rootName,
+				this.rootKeyPair.getPrivate(), true, KeyUsage.keyCertSign | KeyUsage.cRLSign);
+	}
+
+	/**
+	 * Issues a new card to the citizen with the given national number and
+	 * name. The card gets fresh authentication and non-repudiation keys.
+	 */
+	public SimulatedCard issueCard(String nationalNumber, String givenName, String surname)
+			throws GeneralSecurityException {
+		KeyPair authnKeyPair = generateKeyPair();
+		X509Certificate authnCertificate = createCertificate(
+				citizenName(givenName, surname, "Authentication", nationalNumber), authnKeyPair.getPublic(),
+				citizenCaName(), this.citizenCaKeyPair.getPrivate(), false, KeyUsage.digitalSignature);
+
+		KeyPair signKeyPair = generateKeyPair();
+		X509Certificate signCertificate = createCertificate(
+				citizenName(givenName, surname, "Signature", nationalNumber), signKeyPair.getPublic(),
+				citizenCaName(), this.citizenCaKeyPair.getPrivate(), false, KeyUsage.nonRepudiation);
+
+		return new SimulatedCard(nationalNumber, authnKeyPair.getPrivate(), authnCertificate,
+				signKeyPair.getPrivate(), signCertificate, this.citizenCaCertificate, this.rootCertificate);
+	}
+
+	public X509Certificate getRootCertificate() {
+		return this.rootCertificate;
+	}
+
+	public X509Certificate getCitizenCaCertificate() {
+		return this.citizenCaCertificate;
+	}
+
+	private X500Name citizenCaName() {
+		return X500Name.getInstance(this.citizenCaCertificate.getSubjectX500Principal().getEncoded());
+	}
+
+	private static X500Name citizenName(String givenName, String surname, String usage, String nationalNumber) {
+		return new X500Name("C=BE,CN=" + givenName + " " + surname + " (" + usage + "),SURNAME=" + surname
+				+ ",GIVENNAME=" + givenName + ",SERIALNUMBER=" + nationalNumber);
+	}
+
+	private static KeyPair generateKeyPair() throws GeneralSecurityException {
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(KEY_SIZE);
+		return keyPairGenerator.generateKeyPair();
+	}
+
+	private X509Certificate createCertificate(X500Name subject, PublicKey subjectPublicKey, X500Name issuer,
+											  PrivateKey issuerPrivateKey, boolean ca, int keyUsage)
+			throws GeneralSecurityException {
+		AlgorithmIdentifier signatureAlgorithm = new AlgorithmIdentifier(
+				PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE);
+		long now = System.currentTimeMillis();
+
+		V3TBSCertificateGenerator tbsCertificateGenerator = new V3TBSCertificateGenerator();
+		tbsCertificateGenerator.setSerialNumber(new ASN1Integer(this.serialNumber.getAndIncrement()));
+		tbsCertificateGenerator.setSignature(signatureAlgorithm);
+		tbsCertificateGenerator.setIssuer(issuer);
+		tbsCertificateGenerator.setSubject(subject);
+		tbsCertificateGenerator.setStartDate(new Time(new Date(now - TimeUnit.HOURS.toMillis(1))));
+		tbsCertificateGenerator.setEndDate(new Time(new Date(now + VALIDITY)));
+		tbsCertificateGenerator.setSubjectPublicKeyInfo(SubjectPublicKeyInfo.getInstance(subjectPublicKey.getEncoded()));
+		try {
+			ExtensionsGenerator extensionsGenerator = new ExtensionsGenerator();
+			if (ca) {
+				extensionsGenerator.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+			}
+			extensionsGenerator.addExtension(Extension.keyUsage, true, new KeyUsage(keyUsage));
+			tbsCertificateGenerator.setExtensions(extensionsGenerator.generate());
+			TBSCertificate tbsCertificate = tbsCertificateGenerator.generateTBSCertificate();
+
+			Signature signature = Signature.getInstance("SHA256withRSA");
+			signature.initSign(issuerPrivateKey);
+			signature.update(tbsCertificate.getEncoded());
+			ASN1EncodableVector certificateSequence = new ASN1EncodableVector();
+			certificateSequence.add(tbsCertificate);
+			certificateSequence.add(signatureAlgorithm);
+			certificateSequence.add(new DERBitString(signature.sign()));
+			Certificate certificate = Certificate.getInstance(new DERSequence(certificateSequence));
+
+			CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+			return (X509Certificate) certificateFactory
+					.generateCertificate(new ByteArrayInputStream(certificate.getEncoded()));
+		} catch (IOException e) {
+			throw new GeneralSecurityException("cannot encode certificate: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back a distinct, well-formed Belgian national number for every
+	 * sequence number, for people born from the 1st of January 1971 on.
+	 */
+	public static String nationalNumber(int sequenceNumber) {
+		LocalDate birthDate = LocalDate.of(1971, 1, 1).plusDays(sequenceNumber / 997);
+		long base = Long.parseLong(birthDate.format(DateTimeFormatter.ofPattern("yyMMdd"))) * 1000
+				+ sequenceNumber % 997 + 1;
+		long checksum = 97 - base % 97;
+		return String.format("%09d%02d", base, checksum);
+	}
+}
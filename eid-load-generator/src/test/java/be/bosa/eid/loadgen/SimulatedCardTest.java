@@ -0,0 +1,99 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.loadgen;
+
+import be.bosa.eid.server.Identity;
+import be.bosa.eid.server.impl.UserIdentifierUtil;
+import be.bosa.eid.server.impl.tlv.TlvParser;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulatedCardTest {
+
+	private static TestPki testPki;
+
+	private static SimulatedCard simulatedCard;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		testPki = new TestPki();
+		simulatedCard = testPki.issueCard(TestPki.nationalNumber(0), "Alice", "SPECIMEN");
+	}
+
+	@Test
+	public void testCertificateChain() throws Exception {
+		X509Certificate authnCertificate = getCertificate(simulatedCard.getAuthnCertFile());
+		X509Certificate signCertificate = getCertificate(simulatedCard.getSignCertFile());
+		X509Certificate citizenCaCertificate = getCertificate(simulatedCard.getCitizenCaCertFile());
+		X509Certificate rootCertificate = getCertificate(simulatedCard.getRootCaCertFile());
+
+		authnCertificate.verify(citizenCaCertificate.getPublicKey());
+		signCertificate.verify(citizenCaCertificate.getPublicKey());
+		citizenCaCertificate.verify(rootCertificate.getPublicKey());
+		rootCertificate.verify(rootCertificate.getPublicKey());
+		authnCertificate.checkValidity();
+		assertEquals(simulatedCard.getNationalNumber(), UserIdentifierUtil.getUserId(authnCertificate));
+		assertEquals(simulatedCard.getNationalNumber(), UserIdentifierUtil.getUserId(signCertificate));
+	}
+
+	@Test
+	public void testIdentityFileMatchesCard() {
+		Identity identity = TlvParser.parse(simulatedCard.getIdentityFile(), Identity.class);
+
+		assertEquals(simulatedCard.getNationalNumber(), identity.nationalNumber);
+		assertEquals("SPECIMEN", identity.name);
+		assertTrue(identity.cardValidityDateEnd.after(new GregorianCalendar()));
+	}
+
+	@Test
+	public void testSignatures() throws Exception {
+		byte[] toBeSigned = "to be signed".getBytes();
+		Signature authnSignature = Signature.getInstance("SHA256withRSA");
+		authnSignature.initVerify(getCertificate(simulatedCard.getAuthnCertFile()));
+		authnSignature.update(toBeSigned);
+		assertTrue(authnSignature.verify(simulatedCard.signAuthentication(toBeSigned)));
+
+		byte[] digestValue = MessageDigest.getInstance("SHA-256").digest(toBeSigned);
+		Signature signSignature = Signature.getInstance("SHA256withRSA");
+		signSignature.initVerify(getCertificate(simulatedCard.getSignCertFile()).getPublicKey());
+		signSignature.update(toBeSigned);
+		assertTrue(signSignature.verify(simulatedCard.sign(digestValue, "SHA-256")));
+	}
+
+	@Test
+	public void testNationalNumbers() {
+		assertEquals("71010100112", TestPki.nationalNumber(0));
+		assertEquals(11, TestPki.nationalNumber(5000).length());
+		assertTrue(!TestPki.nationalNumber(996).equals(TestPki.nationalNumber(997)));
+	}
+
+	private static X509Certificate getCertificate(byte[] certFile) throws Exception {
+		CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+		return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certFile));
+	}
+}
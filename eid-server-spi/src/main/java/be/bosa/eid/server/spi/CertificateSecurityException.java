@@ -24,4 +24,11 @@ package be.bosa.eid.server.spi;
  * @author Frank Cornelis
  */
 public class CertificateSecurityException extends SecurityException {
+
+	public CertificateSecurityException() {
+	}
+
+	public CertificateSecurityException(String message) {
+		super(message);
+	}
 }
@@ -23,4 +23,11 @@ package be.bosa.eid.server.spi;
  * @author Frank Cornelis
  */
 public class ExpiredCertificateSecurityException extends CertificateSecurityException {
+
+	public ExpiredCertificateSecurityException() {
+	}
+
+	public ExpiredCertificateSecurityException(String message) {
+		super(message);
+	}
 }
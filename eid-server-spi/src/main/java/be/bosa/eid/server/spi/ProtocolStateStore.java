@@ -0,0 +1,51 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.spi;
+
+/**
+ * Interface for protocol state store components. Via such a component the eID
+ * Server Service keeps the state of a protocol run outside of the HTTP
+ * session, e.g. within an external key-value store shared by all nodes of a
+ * cluster. Implementations should be safe to be called concurrently.
+ */
+public interface ProtocolStateStore {
+
+	/**
+	 * Gives back the state stored under the given key, or <code>null</code> in
+	 * case there is none or it has expired.
+	 *
+	 * @param key the unique, random identifier of the protocol run.
+	 */
+	byte[] load(String key);
+
+	/**
+	 * Stores the state of a protocol run, replacing any previous state.
+	 *
+	 * @param key   the unique, random identifier of the protocol run.
+	 * @param state the serialized protocol state.
+	 * @param ttl   the time-to-live of the state in milliseconds.
+	 */
+	void store(String key, byte[] state, long ttl);
+
+	/**
+	 * Removes the state of a finished protocol run.
+	 *
+	 * @param key the unique, random identifier of the protocol run.
+	 */
+	void remove(String key);
+}
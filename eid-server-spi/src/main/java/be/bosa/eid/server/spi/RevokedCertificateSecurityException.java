@@ -23,4 +23,11 @@ package be.bosa.eid.server.spi;
  * @author Frank Cornelis
  */
 public class RevokedCertificateSecurityException extends CertificateSecurityException {
+
+	public RevokedCertificateSecurityException() {
+	}
+
+	public RevokedCertificateSecurityException(String message) {
+		super(message);
+	}
 }
@@ -23,4 +23,11 @@ package be.bosa.eid.server.spi;
  * @author Frank Cornelis
  */
 public class TrustCertificateSecurityException extends CertificateSecurityException {
+
+	public TrustCertificateSecurityException() {
+	}
+
+	public TrustCertificateSecurityException(String message) {
+		super(message);
+	}
 }
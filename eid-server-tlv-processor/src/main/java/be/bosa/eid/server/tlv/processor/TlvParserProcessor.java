@@ -0,0 +1,331 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.tlv.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Annotation processor that generates a reflection free TLV parser for every
+ * class that has <code>@TlvField</code> annotated fields.
+ * <p>
+ * For a class <code>com.example.Foo</code> the parser
+ * <code>com.example.Foo_TlvParser</code> is generated. The
+ * <code>TlvParser</code> of the eID Server picks it up at runtime. Classes
+ * that cannot be handled by generated code (e.g. private fields) are skipped,
+ * for these the <code>TlvParser</code> keeps using reflection.
+ * </p>
+ */
+@SupportedAnnotationTypes(TlvParserProcessor.TLV_FIELD_ANNOTATION)
+public class TlvParserProcessor extends AbstractProcessor {
+
+	static final String TLV_FIELD_ANNOTATION = "be.bosa.eid.server.impl.tlv.TlvField";
+
+	static final String CONVERT_DATA_ANNOTATION = "be.bosa.eid.server.impl.tlv.ConvertData";
+
+	static final String GENERATED_TLV_PARSER_INTERFACE = "be.bosa.eid.server.impl.tlv.GeneratedTlvParser";
+
+	static final String DATA_CONVERTOR_INTERFACE = "be.bosa.eid.server.impl.tlv.DataConvertor";
+
+	static final String DATA_CONVERTOR_EXCEPTION = "be.bosa.eid.server.impl.tlv.DataConvertorException";
+
+	/**
+	 * Should be kept in sync with the TlvParser.
+	 */
+	static final String GENERATED_PARSER_SUFFIX = "_TlvParser";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeElement tlvFieldAnnotation = this.processingEnv.getElementUtils().getTypeElement(TLV_FIELD_ANNOTATION);
+		if (tlvFieldAnnotation == null) {
+			return false;
+		}
+
+		Map<TypeElement, List<VariableElement>> tlvClasses = new LinkedHashMap<>();
+		for (VariableElement field : ElementFilter.fieldsIn(roundEnv.getElementsAnnotatedWith(tlvFieldAnnotation))) {
+			TypeElement tlvClass = (TypeElement) field.getEnclosingElement();
+			tlvClasses.computeIfAbsent(tlvClass, k -> new ArrayList<>()).add(field);
+		}
+
+		for (Map.Entry<TypeElement, List<VariableElement>> tlvClass : tlvClasses.entrySet()) {
+			List<TlvFieldInfo> tlvFields = new ArrayList<>();
+			String skipReason = checkClass(tlvClass.getKey());
+			for (VariableElement field : tlvClass.getValue()) {
+				if (skipReason != null) {
+					break;
+				}
+				TlvFieldInfo tlvFieldInfo = new TlvFieldInfo(field);
+				skipReason = tlvFieldInfo.skipReason;
+				tlvFields.add(tlvFieldInfo);
+			}
+			if (skipReason != null) {
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+						"no TLV parser generated, falling back to reflection: " + skipReason, tlvClass.getKey());
+				continue;
+			}
+
+			try {
+				generateParser(tlvClass.getKey(), tlvFields);
+			} catch (IOException e) {
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"error generating TLV parser: " + e.getMessage(), tlvClass.getKey());
+			}
+		}
+		return false;
+	}
+
+	private String checkClass(TypeElement tlvClass) {
+		if (tlvClass.getKind() != ElementKind.CLASS || tlvClass.getModifiers().contains(Modifier.ABSTRACT)) {
+			return "not a concrete class";
+		}
+		for (Element element = tlvClass; element instanceof TypeElement; element = element.getEnclosingElement()) {
+			TypeElement typeElement = (TypeElement) element;
+			if (typeElement.getModifiers().contains(Modifier.PRIVATE)) {
+				return "private class";
+			}
+			if (typeElement.getNestingKind() == NestingKind.MEMBER && !typeElement.getModifiers().contains(Modifier.STATIC)) {
+				return "inner class";
+			}
+			if (typeElement.getNestingKind() == NestingKind.LOCAL || typeElement.getNestingKind() == NestingKind.ANONYMOUS) {
+				return "local class";
+			}
+		}
+
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(tlvClass.getEnclosedElements());
+		for (ExecutableElement constructor : constructors) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return null;
+			}
+		}
+		return "no default constructor";
+	}
+
+	private void generateParser(TypeElement tlvClass, List<TlvFieldInfo> tlvFields) throws IOException {
+		String className = tlvClass.getQualifiedName().toString();
+		PackageElement packageElement = this.processingEnv.getElementUtils().getPackageOf(tlvClass);
+		String packageName = packageElement.isUnnamed() ? null : packageElement.getQualifiedName().toString();
+		String binaryName = this.processingEnv.getElementUtils().getBinaryName(tlvClass).toString();
+		String parserClassName = binaryName.replace('$', '_') + GENERATED_PARSER_SUFFIX;
+		String parserSimpleName = packageName == null ? parserClassName : parserClassName.substring(packageName.length() + 1);
+
+		Map<Integer, List<TlvFieldInfo>> tlvFieldsByTag = new TreeMap<>();
+		for (TlvFieldInfo tlvField : tlvFields) {
+			tlvFieldsByTag.computeIfAbsent(tlvField.tag, k -> new ArrayList<>()).add(tlvField);
+		}
+
+		JavaFileObject sourceFile = this.processingEnv.getFiler().createSourceFile(parserClassName, tlvClass);
+		try (Writer writer = sourceFile.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+			if (packageName != null) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("/**");
+			out.println(" * TLV parser for {@link " + className + "}.");
+			out.println(" * Generated by " + TlvParserProcessor.class.getName() + ", do not edit.");
+			out.println(" */");
+			out.println("public final class " + parserSimpleName + " implements " + GENERATED_TLV_PARSER_INTERFACE + "<" + className + "> {");
+			out.println();
+			for (TlvFieldInfo tlvField : tlvFields) {
+				if (tlvField.convertor != null) {
+					out.println("\tprivate static final " + DATA_CONVERTOR_INTERFACE + "<?> " + tlvField.convertorConstant()
+							+ " = new " + tlvField.convertor + "();");
+					out.println();
+				}
+			}
+			out.println("\t@Override");
+			out.println("\tpublic " + className + " parse(byte[] file, int offset, int fileLength) throws " + DATA_CONVERTOR_EXCEPTION + " {");
+			out.println("\t\t" + className + " tlvObject = new " + className + "();");
+			out.println();
+			out.println("\t\tint idx = offset;");
+			out.println("\t\tint end = offset + fileLength;");
+			out.println("\t\twhile (idx < end - 1) {");
+			out.println("\t\t\tint tag = file[idx];");
+			out.println("\t\t\tidx++;");
+			out.println("\t\t\tbyte lengthByte = file[idx];");
+			out.println("\t\t\tint length = lengthByte & 0x7f;");
+			out.println("\t\t\twhile ((lengthByte & 0x80) == 0x80) {");
+			out.println("\t\t\t\tidx++;");
+			out.println("\t\t\t\tlengthByte = file[idx];");
+			out.println("\t\t\t\tlength = (length << 7) + (lengthByte & 0x7f);");
+			out.println("\t\t\t}");
+			out.println("\t\t\tidx++;");
+			out.println("\t\t\tswitch (tag) {");
+			for (Map.Entry<Integer, List<TlvFieldInfo>> tag : tlvFieldsByTag.entrySet()) {
+				if (tag.getKey() == 0) {
+					// tag 0 is padding
+					continue;
+				}
+				out.println("\t\t\t\tcase " + tag.getKey() + ": {");
+				out.println("\t\t\t\t\tif (idx + length > end) {");
+				out.println("\t\t\t\t\t\tthrow new IndexOutOfBoundsException(\"value of tag " + tag.getKey() + " exceeds the file\");");
+				out.println("\t\t\t\t\t}");
+				for (TlvFieldInfo tlvField : tag.getValue()) {
+					generateFieldAssignment(out, tlvField);
+				}
+				out.println("\t\t\t\t\tbreak;");
+				out.println("\t\t\t\t}");
+			}
+			out.println("\t\t\t\tdefault:");
+			out.println("\t\t\t\t\tbreak;");
+			out.println("\t\t\t}");
+			out.println("\t\t\tidx += length;");
+			out.println("\t\t}");
+			out.println("\t\treturn tlvObject;");
+			out.println("\t}");
+			out.println("}");
+		}
+	}
+
+	private void generateFieldAssignment(PrintWriter out, TlvFieldInfo tlvField) {
+		String valueVariable = tlvField.name + "Value";
+		String fieldAccess = "tlvObject." + tlvField.name;
+		switch (tlvField.kind) {
+			case CONVERTED:
+				out.println("\t\t\t\t\tbyte[] " + tlvField.name + "Data = new byte[length];");
+				out.println("\t\t\t\t\tSystem.arraycopy(file, idx, " + tlvField.name + "Data, 0, length);");
+				out.println("\t\t\t\t\t" + tlvField.boxedType + " " + valueVariable + " = (" + tlvField.boxedType + ") (Object) "
+						+ tlvField.convertorConstant() + ".convert(" + tlvField.name + "Data);");
+				break;
+			case STRING:
+				out.println("\t\t\t\t\tString " + valueVariable + " = new String(file, idx, length, java.nio.charset.StandardCharsets.UTF_8);");
+				break;
+			case BOOLEAN:
+				out.println("\t\t\t\t\tboolean " + valueVariable + " = true;");
+				break;
+			case BYTES:
+				out.println("\t\t\t\t\tbyte[] " + valueVariable + " = new byte[length];");
+				out.println("\t\t\t\t\tSystem.arraycopy(file, idx, " + valueVariable + ", 0, length);");
+				break;
+		}
+		if (!tlvField.primitive) {
+			out.println("\t\t\t\t\tif (" + fieldAccess + " != null) {");
+			out.println("\t\t\t\t\t\tthrow new RuntimeException(\"field was already set: " + tlvField.name + "\");");
+			out.println("\t\t\t\t\t}");
+		}
+		out.println("\t\t\t\t\t" + fieldAccess + " = " + valueVariable + ";");
+	}
+
+	private enum FieldKind {
+		CONVERTED, STRING, BOOLEAN, BYTES
+	}
+
+	private class TlvFieldInfo {
+
+		private final String name;
+
+		private final int tag;
+
+		private final boolean primitive;
+
+		private final String boxedType;
+
+		private FieldKind kind;
+
+		private String convertor;
+
+		private String skipReason;
+
+		TlvFieldInfo(VariableElement field) {
+			this.name = field.getSimpleName().toString();
+			TypeMirror type = field.asType();
+			this.primitive = type.getKind().isPrimitive();
+			this.boxedType = this.primitive
+					? processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).getQualifiedName().toString()
+					: processingEnv.getTypeUtils().erasure(type).toString();
+
+			Integer tag = null;
+			for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+				String annotationName = ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+				AnnotationValue value = getValue(annotation);
+				if (TLV_FIELD_ANNOTATION.equals(annotationName)) {
+					tag = (Integer) value.getValue();
+				} else if (CONVERT_DATA_ANNOTATION.equals(annotationName)) {
+					TypeElement convertorElement = (TypeElement) ((DeclaredType) value.getValue()).asElement();
+					this.convertor = convertorElement.getQualifiedName().toString();
+					if (!convertorElement.getModifiers().contains(Modifier.PUBLIC)) {
+						this.skipReason = "data convertor " + this.convertor + " is not public";
+					}
+				}
+			}
+			this.tag = tag;
+
+			Set<Modifier> modifiers = field.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+				this.skipReason = "field " + this.name + " should be a non-private, non-static, non-final field";
+			}
+
+			if (this.convertor != null) {
+				this.kind = FieldKind.CONVERTED;
+			} else if (type.getKind() == TypeKind.BOOLEAN) {
+				this.kind = FieldKind.BOOLEAN;
+			} else if (type.getKind() == TypeKind.ARRAY && ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE) {
+				this.kind = FieldKind.BYTES;
+			} else if (String.class.getName().equals(this.boxedType)) {
+				this.kind = FieldKind.STRING;
+			} else {
+				this.skipReason = "unsupported field type: " + type;
+			}
+		}
+
+		private AnnotationValue getValue(AnnotationMirror annotation) {
+			for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+				if ("value".contentEquals(entry.getKey().getSimpleName())) {
+					return entry.getValue();
+				}
+			}
+			return null;
+		}
+
+		private String convertorConstant() {
+			return "CONVERTOR_" + this.name.toUpperCase();
+		}
+	}
+}
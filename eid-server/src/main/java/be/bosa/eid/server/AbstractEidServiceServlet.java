@@ -18,33 +18,61 @@
 package be.bosa.eid.server;
 
 import be.bosa.eid.client_server.shared.annotation.ResponsesAllowed;
+import be.bosa.eid.client_server.shared.message.AbstractProtocolMessage;
 import be.bosa.eid.client_server.shared.message.ClientServerProtocolMessageCatalog;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.client_server.shared.message.HelloMessage;
+import be.bosa.eid.client_server.shared.protocol.ContentEncoding;
+import be.bosa.eid.client_server.shared.protocol.HttpTransmitter;
 import be.bosa.eid.client_server.shared.protocol.ProtocolException;
 import be.bosa.eid.client_server.shared.protocol.ProtocolStateMachine;
 import be.bosa.eid.client_server.shared.protocol.Transport;
 import be.bosa.eid.client_server.shared.protocol.Unmarshaller;
+import be.bosa.eid.server.impl.AsyncMessageExchange;
 import be.bosa.eid.server.impl.CleanSessionProtocolStateListener;
+import be.bosa.eid.server.impl.ConcurrencyLimitedExecutor;
+import be.bosa.eid.server.impl.CryptoPool;
 import be.bosa.eid.server.impl.HttpServletProtocolContext;
 import be.bosa.eid.server.impl.HttpServletRequestHttpReceiver;
 import be.bosa.eid.server.impl.HttpServletResponseHttpTransmitter;
+import be.bosa.eid.server.impl.OffHeapProtocolStateStore;
+import be.bosa.eid.server.impl.ProtocolTokenCodec;
+import be.bosa.eid.server.impl.ProtocolStateHttpServletRequest;
+import be.bosa.eid.server.impl.ProtocolStateSerializer;
+import be.bosa.eid.server.impl.ProtocolStateSession;
 import be.bosa.eid.server.impl.RequestContext;
+import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.StatelessChallengeCodec;
+import be.bosa.eid.server.impl.VirtualThreads;
 import be.bosa.eid.server.impl.handler.MessageHandler;
+import be.bosa.eid.server.impl.metrics.MessageMetrics;
+import be.bosa.eid.server.spi.ProtocolStateStore;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import javax.management.ObjectName;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.security.Security;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The eID server service abstract Servlet. This abstract servlet is the basis
@@ -63,6 +91,71 @@ public abstract class AbstractEidServiceServlet extends HttpServlet {
 
 	private boolean skipSecureConnectionCheck;
 
+	private static final String STATELESS_PROTOCOL_SECRET_INIT_PARAM = "StatelessProtocolSecret";
+
+	private static final String STATELESS_PROTOCOL_TOKEN_TTL_INIT_PARAM = "StatelessProtocolTokenTtl";
+
+	private ProtocolTokenCodec protocolTokenCodec;
+
+	private static final String PROTOCOL_STATE_STORE_INIT_PARAM = "ProtocolStateStore";
+
+	private static final String PROTOCOL_STATE_STORE_TTL_INIT_PARAM = "ProtocolStateStoreTtl";
+
+	private static final String PROTOCOL_STATE_STORE_OFF_HEAP_RECORDS_INIT_PARAM = "ProtocolStateStoreOffHeapRecords";
+
+	private static final String PROTOCOL_STATE_STORE_OFF_HEAP_RECORD_SIZE_INIT_PARAM = "ProtocolStateStoreOffHeapRecordSize";
+
+	private static final String PROTOCOL_STATE_STORE_OFF_HEAP_FILE_INIT_PARAM = "ProtocolStateStoreOffHeapFile";
+
+	private ServiceLocator<ProtocolStateStore> protocolStateStoreLocator;
+
+	private ProtocolStateStore offHeapProtocolStateStore;
+
+	private long protocolStateStoreTtl;
+
+	private static final String ASYNC_PROCESSING_INIT_PARAM = "AsyncProcessing";
+
+	private static final String ASYNC_POOL_SIZE_INIT_PARAM = "AsyncPoolSize";
+
+	private static final String ASYNC_QUEUE_SIZE_INIT_PARAM = "AsyncQueueSize";
+
+	private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+
+	private static final String ASYNC_TIMEOUT_INIT_PARAM = "AsyncTimeout";
+
+	private static final long DEFAULT_ASYNC_TIMEOUT = 60 * 1000;
+
+	private static final String VIRTUAL_THREADS_INIT_PARAM = "VirtualThreads";
+
+	private static final String VIRTUAL_THREADS_MAX_CONCURRENCY_INIT_PARAM = "VirtualThreadsMaxConcurrency";
+
+	private static final int DEFAULT_VIRTUAL_THREADS_MAX_CONCURRENCY = 1000;
+
+	private ExecutorService asyncExecutorService;
+
+	private Executor asyncExecutor;
+
+	private long asyncTimeout;
+
+	private final AsyncMessageExchange.MessageProcessor asyncMessageProcessor = new AsyncMessageExchange.MessageProcessor() {
+
+		@Override
+		public Object process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+			return processMessage(request, response);
+		}
+
+		@Override
+		public void transfer(Object responseMessage, boolean binaryFrame, HttpTransmitter httpTransmitter) {
+			transferMessage(responseMessage, binaryFrame, httpTransmitter);
+		}
+	};
+
+	private static final String METRICS_INIT_PARAM = "Metrics";
+
+	private MessageMetrics messageMetrics;
+
+	private ObjectName messageMetricsObjectName;
+
 	static {
 		Security.addProvider(new BouncyCastleProvider());
 	}
@@ -84,6 +177,168 @@ public abstract class AbstractEidServiceServlet extends HttpServlet {
 			this.skipSecureConnectionCheck = Boolean.parseBoolean(skipSecureConnectionCheck);
 			LOG.debug("skipping secure connection check: " + this.skipSecureConnectionCheck);
 		}
+
+		String statelessProtocolSecret = config.getInitParameter(STATELESS_PROTOCOL_SECRET_INIT_PARAM);
+		if (statelessProtocolSecret != null) {
+			/*
+			 * The token carries the authentication challenge, so without
+			 * single-use challenges a captured token could be replayed.
+			 */
+			if (config.getInitParameter(StatelessChallengeCodec.SECRET_INIT_PARAM_NAME) == null) {
+				throw new ServletException("stateless protocol mode requires "
+						+ StatelessChallengeCodec.SECRET_INIT_PARAM_NAME);
+			}
+			String tokenTtl = config.getInitParameter(STATELESS_PROTOCOL_TOKEN_TTL_INIT_PARAM);
+			long ttl = tokenTtl != null ? Long.parseLong(tokenTtl.trim()) : ProtocolTokenCodec.DEFAULT_TTL;
+			this.protocolTokenCodec = new ProtocolTokenCodec(statelessProtocolSecret, ttl);
+			LOG.debug("stateless protocol mode, token TTL: " + ttl);
+		}
+
+		if (Boolean.parseBoolean(config.getInitParameter(METRICS_INIT_PARAM))) {
+			this.messageMetrics = new MessageMetrics();
+			registerMessageMetrics(config);
+		}
+
+		/*
+		 * The store is called twice per message, and typically holds a
+		 * connection pool to the key-value store, so it is resolved only once
+		 * unless configured otherwise.
+		 */
+		this.protocolStateStoreLocator = new ServiceLocator<>(PROTOCOL_STATE_STORE_INIT_PARAM, config,
+				ServiceLocator.Resolution.SINGLETON);
+		this.protocolStateStoreLocator.setMessageMetrics(this.messageMetrics);
+		String offHeapRecords = config.getInitParameter(PROTOCOL_STATE_STORE_OFF_HEAP_RECORDS_INIT_PARAM);
+		if (offHeapRecords != null) {
+			this.offHeapProtocolStateStore = createOffHeapProtocolStateStore(config, Integer.parseInt(offHeapRecords.trim()));
+		}
+		if (isProtocolStateStoreEnabled()) {
+			if (this.protocolTokenCodec != null) {
+				throw new ServletException("stateless protocol mode cannot be combined with a protocol state store");
+			}
+			String storeTtl = config.getInitParameter(PROTOCOL_STATE_STORE_TTL_INIT_PARAM);
+			this.protocolStateStoreTtl = storeTtl != null ? Long.parseLong(storeTtl.trim()) : ProtocolTokenCodec.DEFAULT_TTL;
+			LOG.debug("protocol state store, TTL: " + this.protocolStateStoreTtl);
+		}
+
+		boolean virtualThreads = Boolean.parseBoolean(config.getInitParameter(VIRTUAL_THREADS_INIT_PARAM));
+		if (virtualThreads && !VirtualThreads.isSupported()) {
+			LOG.warn("virtual threads require Java 21 or later, ignored");
+			virtualThreads = false;
+		}
+		if (virtualThreads) {
+			/*
+			 * Every message gets its own virtual thread, so blocking service
+			 * calls do not hold on to an OS thread. The limiter keeps the
+			 * services from being flooded with concurrent calls.
+			 */
+			String maxConcurrencyParam = config.getInitParameter(VIRTUAL_THREADS_MAX_CONCURRENCY_INIT_PARAM);
+			int maxConcurrency = maxConcurrencyParam != null ? Integer.parseInt(maxConcurrencyParam.trim())
+					: DEFAULT_VIRTUAL_THREADS_MAX_CONCURRENCY;
+			this.asyncExecutorService = VirtualThreads.newVirtualThreadPerTaskExecutor();
+			this.asyncExecutor = new ConcurrencyLimitedExecutor(this.asyncExecutorService, maxConcurrency);
+			LOG.debug("virtual threads, maximum concurrency: " + maxConcurrency);
+		} else if (Boolean.parseBoolean(config.getInitParameter(ASYNC_PROCESSING_INIT_PARAM))) {
+			String poolSizeParam = config.getInitParameter(ASYNC_POOL_SIZE_INIT_PARAM);
+			int poolSize = poolSizeParam != null ? Integer.parseInt(poolSizeParam.trim())
+					: 2 * Runtime.getRuntime().availableProcessors();
+			String queueSizeParam = config.getInitParameter(ASYNC_QUEUE_SIZE_INIT_PARAM);
+			int queueSize = queueSizeParam != null ? Integer.parseInt(queueSizeParam.trim()) : DEFAULT_ASYNC_QUEUE_SIZE;
+			this.asyncExecutorService = createAsyncExecutor(poolSize, queueSize);
+			this.asyncExecutor = this.asyncExecutorService;
+			LOG.debug("asynchronous processing, pool size: " + poolSize + ", queue size: " + queueSize);
+		}
+		if (this.asyncExecutor != null) {
+			String asyncTimeoutParam = config.getInitParameter(ASYNC_TIMEOUT_INIT_PARAM);
+			this.asyncTimeout = asyncTimeoutParam != null ? Long.parseLong(asyncTimeoutParam.trim())
+					: DEFAULT_ASYNC_TIMEOUT;
+			LOG.debug("asynchronous processing timeout: " + this.asyncTimeout);
+		}
+	}
+
+	/**
+	 * The queue is bounded, so an overloaded eID Service answers with a 503
+	 * right away instead of queueing messages until they time out.
+	 */
+	static ExecutorService createAsyncExecutor(int poolSize, int queueSize) {
+		AtomicInteger threadCount = new AtomicInteger();
+		return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), runnable -> {
+			Thread thread = new Thread(runnable, "eid-service-worker-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Publishes the message metrics as MXBean, and as servlet context attribute
+	 * for the {@link EidMetricsServlet}.
+	 */
+	private void registerMessageMetrics(ServletConfig config) {
+		String servletName = config.getServletName();
+		config.getServletContext().setAttribute(MessageMetrics.CONTEXT_ATTRIBUTE_PREFIX + servletName,
+				this.messageMetrics);
+		try {
+			ObjectName objectName = new ObjectName(
+					"be.bosa.eid.server:type=MessageMetrics,name=" + ObjectName.quote(servletName));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this.messageMetrics, objectName);
+			this.messageMetricsObjectName = objectName;
+		} catch (Exception e) {
+			LOG.warn("could not register message metrics MXBean: " + e.getMessage());
+		}
+		LOG.debug("message metrics enabled");
+	}
+
+	/**
+	 * Gives back the message metrics, or <code>null</code> when the metrics are
+	 * disabled.
+	 */
+	protected MessageMetrics getMessageMetrics() {
+		return this.messageMetrics;
+	}
+
+	@Override
+	public void destroy() {
+		if (this.asyncExecutorService != null) {
+			this.asyncExecutorService.shutdown();
+		}
+		if (this.messageMetrics != null) {
+			getServletContext().removeAttribute(MessageMetrics.CONTEXT_ATTRIBUTE_PREFIX + getServletName());
+		}
+		if (this.messageMetricsObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.messageMetricsObjectName);
+			} catch (Exception e) {
+				LOG.warn("could not unregister message metrics MXBean: " + e.getMessage());
+			}
+		}
+		CryptoPool.getInstance().clear();
+		super.destroy();
+	}
+
+	private ProtocolStateStore createOffHeapProtocolStateStore(ServletConfig config, int records) throws ServletException {
+		String recordSizeParam = config.getInitParameter(PROTOCOL_STATE_STORE_OFF_HEAP_RECORD_SIZE_INIT_PARAM);
+		int recordSize = recordSizeParam != null ? Integer.parseInt(recordSizeParam.trim())
+				: OffHeapProtocolStateStore.DEFAULT_RECORD_SIZE;
+		String file = config.getInitParameter(PROTOCOL_STATE_STORE_OFF_HEAP_FILE_INIT_PARAM);
+		if (file == null) {
+			return OffHeapProtocolStateStore.allocateDirect(records, recordSize);
+		}
+		try {
+			return OffHeapProtocolStateStore.map(new File(file), records, recordSize);
+		} catch (IOException e) {
+			throw new ServletException("cannot map protocol state store file: " + file, e);
+		}
+	}
+
+	private boolean isProtocolStateStoreEnabled() {
+		return this.offHeapProtocolStateStore != null || this.protocolStateStoreLocator.isConfigured();
+	}
+
+	private ProtocolStateStore getProtocolStateStore() throws ServletException {
+		if (this.offHeapProtocolStateStore != null) {
+			return this.offHeapProtocolStateStore;
+		}
+		return this.protocolStateStoreLocator.locateService();
 	}
 
 	@Override
@@ -106,11 +361,41 @@ public abstract class AbstractEidServiceServlet extends HttpServlet {
 	 */
 	protected abstract <T> MessageHandler<T> getMessageHandler(Class<T> messageClass);
 
-	@SuppressWarnings("unchecked")
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException {
 		LOG.debug("doPost");
 
+		if (this.asyncExecutor != null && request.isAsyncSupported()) {
+			AsyncContext asyncContext = request.startAsync();
+			asyncContext.setTimeout(this.asyncTimeout);
+			try {
+				new AsyncMessageExchange(asyncContext, request, response, this.asyncExecutor, this.asyncMessageProcessor)
+						.start();
+			} catch (IOException e) {
+				asyncContext.complete();
+				throw new ServletException("IO error: " + e.getMessage(), e);
+			}
+			return;
+		}
+
+		Object responseMessage = processMessage(request, response);
+
+		/*
+		 * Marshall outgoing message.
+		 */
+		if (responseMessage != null) {
+			HttpServletResponseHttpTransmitter httpTransmitter = new HttpServletResponseHttpTransmitter(response);
+			boolean binaryFrame = Transport.isBinaryProtocolVersion(
+					request.getHeader(AbstractProtocolMessage.PROTOCOL_VERSION_HTTP_HEADER));
+			transferMessage(responseMessage, binaryFrame, httpTransmitter);
+		}
+	}
+
+	/**
+	 * Handles the incoming message, and gives back the response message.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object processMessage(HttpServletRequest request, HttpServletResponse response) throws ServletException {
 		/*
 		 * First retrieve the HTTP headers. The unmarshaller may digest the
 		 * body, which makes it impossible to retrieve the headers afterwards.
@@ -121,67 +406,180 @@ public abstract class AbstractEidServiceServlet extends HttpServlet {
 			String headerName = headerNamesEnum.nextElement();
 			httpHeaders.put(headerName, request.getHeader(headerName));
 		}
-		/*
-		 * Incoming message unmarshaller.
-		 */
-		HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(request, this.skipSecureConnectionCheck);
-		Object transferObject;
-		transferObject = this.unmarshaller.receive(httpReceiver);
 
-		/*
-		 * Protocol state checker for incoming message.
-		 */
-		HttpServletProtocolContext protocolContext = new HttpServletProtocolContext(request);
-		ProtocolStateMachine protocolStateMachine = new ProtocolStateMachine(protocolContext);
-		CleanSessionProtocolStateListener cleanSessionProtocolStateListener = new CleanSessionProtocolStateListener(request);
-		protocolStateMachine.addProtocolStateListener(cleanSessionProtocolStateListener);
-		RequestContext requestContext = new RequestContext(request);
-		protocolStateMachine.addProtocolStateListener(requestContext);
+		MessageMetrics messageMetrics = this.messageMetrics;
+		Class<?> messageClass = null;
 		try {
-			protocolStateMachine.checkRequestMessage(transferObject);
-		} catch (ProtocolException e) {
-			throw new RuntimeException("Protocol error", e);
-		}
+			/*
+			 * In stateless mode the protocol state travels within a token instead
+			 * of the HTTP session. With a protocol state store the token only
+			 * carries the key of the protocol run.
+			 */
+			ProtocolStateSession protocolStateSession = null;
+			if (this.protocolTokenCodec != null || isProtocolStateStoreEnabled()) {
+				protocolStateSession = getProtocolStateSession(request);
+				request = new ProtocolStateHttpServletRequest(request, protocolStateSession);
+			}
 
-		/*
-		 * Message dispatcher
-		 */
-		Class<?> messageClass = transferObject.getClass();
-		MessageHandler messageHandler = getMessageHandler(messageClass);
-		if (messageHandler == null) {
-			throw new ServletException("unsupported message");
-		}
-		HttpSession session = request.getSession();
-		Object responseMessage = messageHandler.handleMessage(transferObject, httpHeaders, request, session);
+			/*
+			 * Incoming message unmarshaller.
+			 */
+			long start = System.nanoTime();
+			HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(request, this.skipSecureConnectionCheck);
+			Object transferObject;
+			transferObject = this.unmarshaller.receive(httpReceiver);
+			messageClass = transferObject.getClass();
+			long unmarshalled = System.nanoTime();
+
+			/*
+			 * Protocol state checker for incoming message.
+			 */
+			HttpServletProtocolContext protocolContext = new HttpServletProtocolContext(request);
+			ProtocolStateMachine protocolStateMachine = new ProtocolStateMachine(protocolContext);
+			CleanSessionProtocolStateListener cleanSessionProtocolStateListener = new CleanSessionProtocolStateListener(request);
+			protocolStateMachine.addProtocolStateListener(cleanSessionProtocolStateListener);
+			RequestContext requestContext = new RequestContext(request);
+			protocolStateMachine.addProtocolStateListener(requestContext);
+			try {
+				protocolStateMachine.checkRequestMessage(transferObject);
+			} catch (ProtocolException e) {
+				throw new RuntimeException("Protocol error", e);
+			}
+			long requestChecked = System.nanoTime();
+
+			/*
+			 * Message dispatcher
+			 */
+			MessageHandler messageHandler = getMessageHandler(messageClass);
+			if (messageHandler == null) {
+				throw new ServletException("unsupported message");
+			}
+			HttpSession session = request.getSession();
+			if (messageMetrics != null) {
+				messageMetrics.startSpiTiming();
+			}
+			Object responseMessage = messageHandler.handleMessage(transferObject, httpHeaders, request, session);
+			long handled = System.nanoTime();
+
+			/*
+			 * Check outgoing messages for protocol constraints.
+			 */
+			ResponsesAllowed responsesAllowedAnnotation = messageClass.getAnnotation(ResponsesAllowed.class);
+			if (responsesAllowedAnnotation != null) {
+				/*
+				 * Make sure the message handlers respect the protocol.
+				 */
+				if (responseMessage == null) {
+					throw new ServletException("null response message while @ResponsesAllowed constraint was set");
+				}
+				Class<?>[] responsesAllowed = responsesAllowedAnnotation.value();
+				if (!isOfClass(responseMessage, responsesAllowed)) {
+					throw new ServletException("response message type incorrect");
+				}
+			}
+
+			/*
+			 * Protocol state checker for outgoing message.
+			 */
+			protocolStateMachine.checkResponseMessage(transferObject, responseMessage);
+
+			if (messageMetrics != null) {
+				long responseChecked = System.nanoTime();
+				messageMetrics.record(messageClass, MessageMetrics.Phase.UNMARSHAL, unmarshalled - start);
+				messageMetrics.record(messageClass, MessageMetrics.Phase.STATE_CHECK,
+						requestChecked - unmarshalled + responseChecked - handled);
+				messageMetrics.record(messageClass, MessageMetrics.Phase.HANDLER, handled - requestChecked);
+				messageMetrics.record(messageClass, MessageMetrics.Phase.SPI, messageMetrics.getSpiNanos());
+				if (responseMessage instanceof FinishedMessage) {
+					messageMetrics.recordFinishedMessage((FinishedMessage) responseMessage);
+				}
+			}
 
-		/*
-		 * Check outgoing messages for protocol constraints.
-		 */
-		ResponsesAllowed responsesAllowedAnnotation = messageClass.getAnnotation(ResponsesAllowed.class);
-		if (responsesAllowedAnnotation != null) {
 			/*
-			 * Make sure the message handlers respect the protocol.
+			 * Let the client know it can compress the bodies of its next
+			 * messages, and use the binary wire format. Clients that did not
+			 * advertise this get no headers.
 			 */
-			if (responseMessage == null) {
-				throw new ServletException("null response message while @ResponsesAllowed constraint was set");
+			if (transferObject instanceof HelloMessage) {
+				HelloMessage helloMessage = (HelloMessage) transferObject;
+				if (ContentEncoding.isSupported(helloMessage.acceptEncoding)) {
+					response.setHeader(ContentEncoding.ACCEPT_ENCODING_HTTP_HEADER, ContentEncoding.GZIP);
+				}
+				if (helloMessage.acceptVersion != null
+						&& helloMessage.acceptVersion >= Transport.BINARY_PROTOCOL_VERSION) {
+					response.setHeader(AbstractProtocolMessage.ACCEPT_VERSION_HTTP_HEADER,
+							Integer.toString(Transport.BINARY_PROTOCOL_VERSION));
+				}
+			}
+
+			if (protocolStateSession != null) {
+				saveProtocolStateSession(protocolStateSession, response);
 			}
-			Class<?>[] responsesAllowed = responsesAllowedAnnotation.value();
-			if (!isOfClass(responseMessage, responsesAllowed)) {
-				throw new ServletException("response message type incorrect");
+
+			return responseMessage;
+		} catch (ServletException | RuntimeException e) {
+			if (messageMetrics != null) {
+				messageMetrics.recordError(messageClass);
 			}
+			throw e;
 		}
+	}
 
-		/*
-		 * Protocol state checker for outgoing message.
-		 */
-		protocolStateMachine.checkResponseMessage(transferObject, responseMessage);
+	/**
+	 * Marshalls the outgoing message, using the same wire format as the
+	 * incoming message.
+	 */
+	private void transferMessage(Object responseMessage, boolean binaryFrame, HttpTransmitter httpTransmitter) {
+		long start = System.nanoTime();
+		Transport.transfer(responseMessage, httpTransmitter, binaryFrame, false);
+		if (this.messageMetrics != null) {
+			this.messageMetrics.record(responseMessage.getClass(), MessageMetrics.Phase.MARSHAL,
+					System.nanoTime() - start);
+		}
+	}
 
-		/*
-		 * Marshall outgoing message.
-		 */
-		if (responseMessage != null) {
-			HttpServletResponseHttpTransmitter httpTransmitter = new HttpServletResponseHttpTransmitter(response);
-			Transport.transfer(responseMessage, httpTransmitter);
+	private ProtocolStateSession getProtocolStateSession(HttpServletRequest request) throws ServletException {
+		String protocolToken = request.getHeader(AbstractProtocolMessage.PROTOCOL_TOKEN_HTTP_HEADER);
+		if (this.protocolTokenCodec == null) {
+			int maxInactiveInterval = (int) (this.protocolStateStoreTtl / 1000);
+			byte[] state = protocolToken != null ? getProtocolStateStore().load(protocolToken) : null;
+			if (state == null) {
+				if (protocolToken != null) {
+					LOG.warn("unknown or expired protocol run from " + request.getRemoteAddr());
+				}
+				return new ProtocolStateSession(getServletContext(), maxInactiveInterval);
+			}
+			return ProtocolStateSerializer.deserialize(state, getServletContext(), maxInactiveInterval);
+		}
+
+		if (protocolToken == null) {
+			return new ProtocolStateSession(getServletContext(), (int) (this.protocolTokenCodec.getTtl() / 1000));
+		}
+		try {
+			return this.protocolTokenCodec.decode(protocolToken, getServletContext());
+		} catch (SecurityException e) {
+			LOG.warn("invalid protocol token from " + request.getRemoteAddr() + ": " + e.getMessage());
+			throw new ServletException("invalid protocol token", e);
+		}
+	}
+
+	private void saveProtocolStateSession(ProtocolStateSession protocolStateSession, HttpServletResponse response)
+			throws ServletException {
+		if (this.protocolTokenCodec == null) {
+			ProtocolStateStore protocolStateStore = getProtocolStateStore();
+			if (protocolStateSession.isEmpty()) {
+				protocolStateStore.remove(protocolStateSession.getId());
+				return;
+			}
+			protocolStateStore.store(protocolStateSession.getId(), ProtocolStateSerializer.serialize(protocolStateSession),
+					this.protocolStateStoreTtl);
+			response.setHeader(AbstractProtocolMessage.PROTOCOL_TOKEN_HTTP_HEADER, protocolStateSession.getId());
+			return;
+		}
+
+		if (!protocolStateSession.isEmpty()) {
+			response.setHeader(AbstractProtocolMessage.PROTOCOL_TOKEN_HTTP_HEADER,
+					this.protocolTokenCodec.encode(protocolStateSession));
 		}
 	}
 
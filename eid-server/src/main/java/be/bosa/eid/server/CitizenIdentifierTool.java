@@ -0,0 +1,170 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.CitizenIdentifierGenerator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line tool converting national registry numbers into non-reversible
+ * citizen identifiers (NRCID), e.g. to migrate existing user tables.
+ * <p>
+ * Reads one national registry number per line and writes
+ * <code>nationalNumber,NRCID</code> lines, in the same order. The secret is
+ * taken from the <code>NRCID_SECRET</code> environment variable so it does
+ * not show up in the process list.
+ * </p>
+ * <pre>
+ * NRCID_SECRET=... java -cp ... be.bosa.eid.server.CitizenIdentifierTool \
+ *     --orgId org --appId app [--threads n] [input [output]]
+ * </pre>
+ */
+public class CitizenIdentifierTool {
+
+	public static final String SECRET_ENV_NAME = "NRCID_SECRET";
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final String USAGE = "usage: " + CitizenIdentifierTool.class.getName()
+			+ " --orgId <orgId> --appId <appId> [--threads <n>] [input [output]]\n"
+			+ "the secret is read from the " + SECRET_ENV_NAME + " environment variable, "
+			+ "input and output default to stdin and stdout";
+
+	private CitizenIdentifierTool() {
+		super();
+	}
+
+	public static void main(String[] args) throws IOException {
+		String orgId = null;
+		String appId = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> files = new ArrayList<>();
+		try {
+			for (int idx = 0; idx < args.length; idx++) {
+				switch (args[idx]) {
+					case "--orgId":
+						orgId = args[++idx];
+						break;
+					case "--appId":
+						appId = args[++idx];
+						break;
+					case "--threads":
+						threads = Integer.parseInt(args[++idx]);
+						break;
+					case "-h":
+					case "--help":
+						System.out.println(USAGE);
+						return;
+					default:
+						files.add(args[idx]);
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		if (files.size() > 2 || threads < 1) {
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		String secret = System.getenv(SECRET_ENV_NAME);
+		if (secret == null) {
+			System.err.println(SECRET_ENV_NAME + " environment variable not set");
+			System.exit(1);
+			return;
+		}
+
+		CitizenIdentifierGenerator generator;
+		try {
+			generator = new CitizenIdentifierGenerator(secret, orgId, appId);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try (Reader reader = files.size() > 0
+				? Files.newBufferedReader(Paths.get(files.get(0)), StandardCharsets.UTF_8)
+				: new InputStreamReader(System.in, StandardCharsets.UTF_8);
+			 Writer writer = files.size() > 1
+					 ? Files.newBufferedWriter(Paths.get(files.get(1)), StandardCharsets.UTF_8)
+					 : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+			long count = convert(generator, new BufferedReader(reader), new BufferedWriter(writer), pool);
+			System.err.println("converted " + count + " national registry numbers");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Converts the national registry numbers read from the given reader, one
+	 * per line, into <code>nationalNumber,NRCID</code> lines. Blank lines are
+	 * skipped. The input is processed in chunks, so memory use does not depend
+	 * on the input size.
+	 *
+	 * @return the number of converted national registry numbers.
+	 */
+	static long convert(CitizenIdentifierGenerator generator, BufferedReader reader, BufferedWriter writer,
+						ForkJoinPool pool) throws IOException {
+		long count = 0;
+		List<String> userIds = new ArrayList<>(CHUNK_SIZE);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			userIds.add(line);
+			if (userIds.size() == CHUNK_SIZE) {
+				count += write(userIds, generator.generate(userIds, pool), writer);
+				userIds.clear();
+			}
+		}
+		if (!userIds.isEmpty()) {
+			count += write(userIds, generator.generate(userIds, pool), writer);
+		}
+		writer.flush();
+		return count;
+	}
+
+	private static int write(List<String> userIds, List<String> nrcids, BufferedWriter writer) throws IOException {
+		for (int idx = 0; idx < userIds.size(); idx++) {
+			writer.write(userIds.get(idx));
+			writer.write(',');
+			writer.write(nrcids.get(idx));
+			writer.newLine();
+		}
+		return userIds.size();
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.client_server.shared.message.CertificateCache;
+import be.bosa.eid.server.impl.ChallengePool;
+import be.bosa.eid.server.impl.CryptoPool;
+import be.bosa.eid.server.impl.metrics.LatencyHistogram;
+import be.bosa.eid.server.impl.metrics.MessageMetrics;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exposes the message metrics of all eID service servlets within the web
+ * application in the Prometheus text format. Only servlets configured with the
+ * <code>Metrics</code> init-param are included.
+ */
+public class EidMetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Log LOG = LogFactory.getLog(EidMetricsServlet.class);
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		LOG.debug("doGet");
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache, no-store");
+		PrintWriter writer = response.getWriter();
+		writeMetrics(getMessageMetrics(), writer);
+		writer.flush();
+	}
+
+	private Map<String, MessageMetrics> getMessageMetrics() {
+		Map<String, MessageMetrics> messageMetrics = new TreeMap<>();
+		ServletContext servletContext = getServletContext();
+		for (String attributeName : Collections.list(servletContext.getAttributeNames())) {
+			if (attributeName.startsWith(MessageMetrics.CONTEXT_ATTRIBUTE_PREFIX)) {
+				String servletName = attributeName.substring(MessageMetrics.CONTEXT_ATTRIBUTE_PREFIX.length());
+				messageMetrics.put(servletName, (MessageMetrics) servletContext.getAttribute(attributeName));
+			}
+		}
+		return messageMetrics;
+	}
+
+	static void writeMetrics(Map<String, MessageMetrics> messageMetrics, PrintWriter writer) {
+		writer.println("# HELP eid_message_phase_seconds Processing time per message type and phase.");
+		writer.println("# TYPE eid_message_phase_seconds summary");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getPhaseLatencies().forEach((message, phases) ->
+						phases.forEach((phase, histogram) -> writeSummary(writer, "eid_message_phase_seconds",
+								"servlet=\"" + escape(servletName) + "\",message=\"" + escape(message)
+										+ "\",phase=\"" + phase.name().toLowerCase() + "\"", histogram))));
+
+		writer.println("# HELP eid_spi_call_seconds Duration of the calls to the service provider implementations.");
+		writer.println("# TYPE eid_spi_call_seconds summary");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getSpiLatencies().forEach((method, histogram) -> writeSummary(writer, "eid_spi_call_seconds",
+						"servlet=\"" + escape(servletName) + "\",method=\"" + escape(method) + "\"", histogram)));
+
+		writer.println("# HELP eid_message_errors_total Messages that failed processing, per message type.");
+		writer.println("# TYPE eid_message_errors_total counter");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getErrorCounts().forEach((message, count) -> writer.println("eid_message_errors_total{servlet=\""
+						+ escape(servletName) + "\",message=\"" + escape(message) + "\"} " + count)));
+
+		writer.println("# HELP eid_finished_messages_total Finished messages sent, per error code.");
+		writer.println("# TYPE eid_finished_messages_total counter");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getFinishedMessageCounts().forEach((errorCode, count) -> writer.println(
+						"eid_finished_messages_total{servlet=\"" + escape(servletName) + "\",error_code=\""
+								+ escape(errorCode) + "\"} " + count)));
+
+		writer.println("# HELP eid_certificate_validation_cache_requests_total "
+				+ "Lookups in the certificate validation caches, per result.");
+		writer.println("# TYPE eid_certificate_validation_cache_requests_total counter");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getValidationCaches().forEach((cacheName, validationCache) -> {
+					String labels = "servlet=\"" + escape(servletName) + "\",cache=\"" + escape(cacheName) + "\"";
+					writer.println("eid_certificate_validation_cache_requests_total{" + labels + ",result=\"hit\"} "
+							+ validationCache.getHitCount());
+					writer.println("eid_certificate_validation_cache_requests_total{" + labels + ",result=\"miss\"} "
+							+ validationCache.getMissCount());
+				}));
+		writer.println("# HELP eid_certificate_validation_cache_size Validation results held by the cache.");
+		writer.println("# TYPE eid_certificate_validation_cache_size gauge");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getValidationCaches().forEach((cacheName, validationCache) -> writer.println(
+						"eid_certificate_validation_cache_size{servlet=\"" + escape(servletName) + "\",cache=\""
+								+ escape(cacheName) + "\"} " + validationCache.getSize())));
+
+		writer.println("# HELP eid_audit_queue_depth Audit events waiting to be dispatched.");
+		writer.println("# TYPE eid_audit_queue_depth gauge");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getAuditDispatchers().forEach((dispatcherName, auditDispatcher) -> writer.println(
+						"eid_audit_queue_depth{servlet=\"" + escape(servletName) + "\",dispatcher=\""
+								+ escape(dispatcherName) + "\"} " + auditDispatcher.getQueueDepth())));
+		writer.println("# HELP eid_audit_events_total Audit events handled by the dispatcher, per outcome.");
+		writer.println("# TYPE eid_audit_events_total counter");
+		messageMetrics.forEach((servletName, metrics) ->
+				metrics.getAuditDispatchers().forEach((dispatcherName, auditDispatcher) -> {
+					String labels = "servlet=\"" + escape(servletName) + "\",dispatcher=\"" + escape(dispatcherName)
+							+ "\"";
+					writer.println("eid_audit_events_total{" + labels + ",outcome=\"dispatched\"} "
+							+ auditDispatcher.getDispatchedCount());
+					writer.println("eid_audit_events_total{" + labels + ",outcome=\"spilled\"} "
+							+ auditDispatcher.getSpilledCount());
+					writer.println("eid_audit_events_total{" + labels + ",outcome=\"dropped\"} "
+							+ auditDispatcher.getDroppedCount());
+					writer.println("eid_audit_events_total{" + labels + ",outcome=\"failed\"} "
+							+ auditDispatcher.getFailedCount());
+				}));
+
+		CryptoPool cryptoPool = CryptoPool.getInstance();
+		writer.println("# HELP eid_crypto_pool_borrows_total JCA primitives borrowed from the crypto pool.");
+		writer.println("# TYPE eid_crypto_pool_borrows_total counter");
+		writer.println("eid_crypto_pool_borrows_total " + cryptoPool.getBorrowCount());
+		writer.println("# HELP eid_crypto_pool_created_total JCA primitives created for the crypto pool.");
+		writer.println("# TYPE eid_crypto_pool_created_total counter");
+		writer.println("eid_crypto_pool_created_total " + cryptoPool.getCreatedCount());
+		writer.println("# HELP eid_crypto_pool_size JCA primitives held by the crypto pool of all live threads.");
+		writer.println("# TYPE eid_crypto_pool_size gauge");
+		writer.println("eid_crypto_pool_size " + cryptoPool.getPoolSize());
+		writer.println("# HELP eid_crypto_pool_borrow_seconds Average time to borrow a JCA primitive.");
+		writer.println("# TYPE eid_crypto_pool_borrow_seconds gauge");
+		writer.println("eid_crypto_pool_borrow_seconds " + cryptoPool.getAverageBorrowNanos() / NANOS_PER_SECOND);
+
+		CertificateCache certificateCache = CertificateCache.getInstance();
+		writer.println("# HELP eid_certificate_cache_requests_total Lookups in the parsed certificate cache, per result.");
+		writer.println("# TYPE eid_certificate_cache_requests_total counter");
+		writer.println("eid_certificate_cache_requests_total{result=\"hit\"} " + certificateCache.getHitCount());
+		writer.println("eid_certificate_cache_requests_total{result=\"miss\"} " + certificateCache.getMissCount());
+		writer.println("# HELP eid_certificate_cache_size Parsed certificates held by the certificate cache.");
+		writer.println("# TYPE eid_certificate_cache_size gauge");
+		writer.println("eid_certificate_cache_size " + certificateCache.getSize());
+
+		ChallengePool challengePool = ChallengePool.getInstance();
+		writer.println("# HELP eid_challenge_pool_challenges_total Authentication challenges handed out, per source.");
+		writer.println("# TYPE eid_challenge_pool_challenges_total counter");
+		writer.println("eid_challenge_pool_challenges_total{source=\"pool\"} " + challengePool.getPoolHitCount());
+		writer.println("eid_challenge_pool_challenges_total{source=\"generated\"} " + challengePool.getPoolMissCount());
+		writer.println("# HELP eid_challenge_pool_contention_total Waits for a random generator in use by another thread.");
+		writer.println("# TYPE eid_challenge_pool_contention_total counter");
+		writer.println("eid_challenge_pool_contention_total " + challengePool.getContentionCount());
+		writer.println("# HELP eid_challenge_pool_refills_total Refills of the challenge pool.");
+		writer.println("# TYPE eid_challenge_pool_refills_total counter");
+		writer.println("eid_challenge_pool_refills_total " + challengePool.getRefillCount());
+		writer.println("# HELP eid_challenge_pool_reseeds_total Reseeds of the challenge random generators.");
+		writer.println("# TYPE eid_challenge_pool_reseeds_total counter");
+		writer.println("eid_challenge_pool_reseeds_total " + challengePool.getReseedCount());
+		writer.println("# HELP eid_challenge_pool_size Pre-generated challenges available.");
+		writer.println("# TYPE eid_challenge_pool_size gauge");
+		writer.println("eid_challenge_pool_size " + challengePool.getSize());
+	}
+
+	private static void writeSummary(PrintWriter writer, String name, String labels, LatencyHistogram histogram) {
+		if (histogram.getCount() == 0) {
+			return;
+		}
+		for (double quantile : QUANTILES) {
+			writer.println(name + "{" + labels + ",quantile=\"" + quantile + "\"} "
+					+ histogram.getValueAtQuantile(quantile) / NANOS_PER_SECOND);
+		}
+		writer.println(name + "_sum{" + labels + "} " + histogram.getSum() / NANOS_PER_SECOND);
+		writer.println(name + "_count{" + labels + "} " + histogram.getCount());
+	}
+
+	private static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
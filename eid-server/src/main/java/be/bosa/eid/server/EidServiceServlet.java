@@ -18,7 +18,9 @@
 package be.bosa.eid.server;
 
 import be.bosa.eid.client_server.shared.message.AbstractProtocolMessage;
+import be.bosa.eid.server.impl.CertificateValidationCache;
 import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
 import be.bosa.eid.server.impl.handler.AuthSignResponseMessageHandler;
 import be.bosa.eid.server.impl.handler.AuthenticationDataMessageHandler;
 import be.bosa.eid.server.impl.handler.ClientEnvironmentMessageHandler;
@@ -31,6 +33,7 @@ import be.bosa.eid.server.impl.handler.InitParam;
 import be.bosa.eid.server.impl.handler.MessageHandler;
 import be.bosa.eid.server.impl.handler.SignCertificatesDataMessageHandler;
 import be.bosa.eid.server.impl.handler.SignatureDataMessageHandler;
+import be.bosa.eid.server.impl.metrics.MessageMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -88,6 +91,8 @@ public class EidServiceServlet extends AbstractEidServiceServlet {
 
 	private Map<Class<?>, MessageHandler<?>> messageHandlers;
 
+	private Map<String, Object> sharedComponents;
+
 	public EidServiceServlet() {
 		LOG.debug("constructor");
 	}
@@ -116,10 +121,15 @@ public class EidServiceServlet extends AbstractEidServiceServlet {
 			this.messageHandlers.put(protocolMessageClass, messageHandler);
 		}
 
+		this.sharedComponents = new HashMap<>();
+		MessageMetrics messageMetrics = getMessageMetrics();
+		if (messageMetrics != null) {
+			this.sharedComponents.put(MessageMetrics.class.getName(), messageMetrics);
+		}
 		Collection<MessageHandler<?>> messageHandlers = this.messageHandlers.values();
 		for (MessageHandler<?> messageHandler : messageHandlers) {
 			try {
-				injectInitParams(config, messageHandler);
+				injectInitParams(config, messageHandler, this.sharedComponents);
 			} catch (Exception e) {
 				throw new ServletException("error injecting init-param into message handler field: " + e.getMessage(),
 						e);
@@ -128,9 +138,36 @@ public class EidServiceServlet extends AbstractEidServiceServlet {
 		}
 	}
 
+	@Override
+	public void destroy() {
+		LOG.debug("destroy");
+		if (this.sharedComponents != null) {
+			for (Object sharedComponent : this.sharedComponents.values()) {
+				if (sharedComponent instanceof AuditDispatcher) {
+					((AuditDispatcher) sharedComponent).close();
+				}
+			}
+		}
+		super.destroy();
+	}
+
 	public static void injectInitParams(ServletConfig config, MessageHandler<?> messageHandler)
 			throws ServletException, IllegalArgumentException, IllegalAccessException {
+		injectInitParams(config, messageHandler, new HashMap<>());
+	}
+
+	/**
+	 * Injects the init-params into the message handler fields. Caches and audit
+	 * dispatchers are stateful, and are shared between all message handlers
+	 * injected with the same <code>sharedComponents</code> map. The service
+	 * locators time their calls in the {@link MessageMetrics} of that map, if
+	 * any, and the caches and audit dispatchers are registered there.
+	 */
+	public static void injectInitParams(ServletConfig config, MessageHandler<?> messageHandler,
+										Map<String, Object> sharedComponents)
+			throws ServletException, IllegalArgumentException, IllegalAccessException {
 		Class<?> messageHandlerClass = messageHandler.getClass();
+		MessageMetrics messageMetrics = (MessageMetrics) sharedComponents.get(MessageMetrics.class.getName());
 		Field[] fields = messageHandlerClass.getDeclaredFields();
 		for (Field field : fields) {
 			InitParam initParamAnnotation = field.getAnnotation(InitParam.class);
@@ -145,6 +182,39 @@ public class EidServiceServlet extends AbstractEidServiceServlet {
 				 * We always inject a service locator.
 				 */
 				ServiceLocator<Object> fieldValue = new ServiceLocator<>(initParamName, config);
+				fieldValue.setMessageMetrics(messageMetrics);
+				field.set(messageHandler, fieldValue);
+				continue;
+			}
+			if (CertificateValidationCache.class.equals(fieldType)) {
+				/*
+				 * Disabled caches simply pass through.
+				 */
+				Object fieldValue = sharedComponents.computeIfAbsent(fieldType.getName() + ":" + initParamName,
+						key -> {
+							CertificateValidationCache validationCache = new CertificateValidationCache(initParamName,
+									config);
+							if (messageMetrics != null) {
+								messageMetrics.registerValidationCache(initParamName, validationCache);
+							}
+							return validationCache;
+						});
+				field.set(messageHandler, fieldValue);
+				continue;
+			}
+			if (AuditDispatcher.class.equals(fieldType)) {
+				/*
+				 * Synchronous per default, so simply delegates to the audit
+				 * service locator.
+				 */
+				Object fieldValue = sharedComponents.computeIfAbsent(fieldType.getName() + ":" + initParamName,
+						key -> {
+							AuditDispatcher auditDispatcher = new AuditDispatcher(initParamName, config);
+							if (messageMetrics != null) {
+								messageMetrics.registerAuditDispatcher(initParamName, auditDispatcher);
+							}
+							return auditDispatcher;
+						});
 				field.set(messageHandler, fieldValue);
 				continue;
 			}
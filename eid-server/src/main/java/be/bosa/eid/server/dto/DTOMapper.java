@@ -17,17 +17,37 @@
 
 package be.bosa.eid.server.dto;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.util.Arrays;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Data Transfer Object Mapper.
+ * <p>
+ * The annotations of a class are only inspected the first time it gets mapped
+ * to a given class. The resulting mapping plan is cached, so mapping itself
+ * comes down to copying the fields.
+ * </p>
  *
  * @author Frank Cornelis
  */
 public class DTOMapper {
 
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, MappingPlan>> MAPPING_PLANS = new ConcurrentHashMap<>();
+
+	private static final ConcurrentMap<Class<?>, ValueConvertor<Object, Object>> VALUE_CONVERTORS = new ConcurrentHashMap<>();
+
 	/**
 	 * Maps an object to an object of the given class.
 	 *
@@ -39,47 +59,23 @@ public class DTOMapper {
 	public <T> T map(Object fromObject, Class<T> toClass) {
 		if (fromObject == null) return null;
 
-		T to = instantiateClass(toClass);
-		Arrays.stream(fromObject.getClass().getDeclaredFields())
-				.forEach(fromField -> mapField(fromObject, toClass, to, fromField));
-		return to;
-	}
-
-	private <T> void mapField(Object from, Class<T> toClass, T to, Field fromField) {
-		findMatchingMapsToAnnotations(fromField, toClass).forEach(mapsToAnnotation -> {
-			String toFieldName = mapsToAnnotation.field().isEmpty() ? fromField.getName() : mapsToAnnotation.field();
-			try {
-				getField(toClass, toFieldName).set(to, getAndConvertFieldValue(from, fromField, mapsToAnnotation));
-			} catch (IllegalAccessException e) {
-				throw new RuntimeException("could not write field " + toFieldName + ": " + e.getMessage(), e);
-			}
-		});
+		MappingPlan mappingPlan = MAPPING_PLANS
+				.computeIfAbsent(fromObject.getClass(), fromClass -> new ConcurrentHashMap<>())
+				.computeIfAbsent(toClass, key -> new MappingPlan(fromObject.getClass(), toClass));
+		return toClass.cast(mappingPlan.map(fromObject));
 	}
 
 	@SuppressWarnings("unchecked")
-	private Object getAndConvertFieldValue(Object from, Field fromField, MapsTo mapsToAnnotation) {
-		Object value;
-		try {
-			value = fromField.get(from);
-		} catch (IllegalAccessException e1) {
-			throw new RuntimeException("could not read field: " + fromField.getName());
-		}
-
-		Class<? extends ValueConvertor<?, ?>> valueConvertorClass = mapsToAnnotation.convertor();
-		if (IdenticalValueConvertor.class.equals(valueConvertorClass)) return value;
-
-		ValueConvertor<Object, Object> valueConvertor = (ValueConvertor<Object, Object>) instantiateClass(valueConvertorClass);
-
-		try {
-			value = valueConvertor.convert(value);
-		} catch (ValueConvertorException e) {
-			throw new RuntimeException("could not convert value of field: " + fromField.getName());
-		}
-
-		return value;
+	private static ValueConvertor<Object, Object> getValueConvertor(Class<? extends ValueConvertor<?, ?>> valueConvertorClass) {
+		/*
+		 * Value convertors are stateless, so a single instance per convertor
+		 * class is shared by all mapping plans.
+		 */
+		return VALUE_CONVERTORS.computeIfAbsent(valueConvertorClass,
+				clazz -> (ValueConvertor<Object, Object>) instantiateClass(clazz));
 	}
 
-	private <T> T instantiateClass(Class<T> clazz) {
+	private static <T> T instantiateClass(Class<T> clazz) {
 		try {
 			return clazz.newInstance();
 		} catch (InstantiationException | IllegalAccessException e) {
@@ -87,7 +83,7 @@ public class DTOMapper {
 		}
 	}
 
-	private <T> Field getField(Class<T> clazz, String fieldName) {
+	private static Field getField(Class<?> clazz, String fieldName) {
 		try {
 			return clazz.getDeclaredField(fieldName);
 		} catch (NoSuchFieldException e) {
@@ -95,11 +91,100 @@ public class DTOMapper {
 		}
 	}
 
-	private Stream<MapsTo> findMatchingMapsToAnnotations(Field field, Class<?> toClass) {
-		Mapping mappingAnnotation = field.getAnnotation(Mapping.class);
-		if (mappingAnnotation == null) return Stream.empty();
+	/**
+	 * The field copies needed to map objects of one class to another class.
+	 */
+	private static class MappingPlan {
+
+		private final Class<?> toClass;
+		private final MethodHandle constructor;
+		private final FieldCopy[] fieldCopies;
+
+		MappingPlan(Class<?> fromClass, Class<?> toClass) {
+			this.toClass = toClass;
+			try {
+				this.constructor = LOOKUP.findConstructor(toClass, MethodType.methodType(void.class))
+						.asType(CONSTRUCTOR_TYPE);
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new RuntimeException("could not create new instance of " + toClass.getName());
+			}
+
+			List<FieldCopy> fieldCopies = new ArrayList<>();
+			for (Field fromField : fromClass.getDeclaredFields()) {
+				Mapping mappingAnnotation = fromField.getAnnotation(Mapping.class);
+				if (mappingAnnotation == null) continue;
+
+				for (MapsTo mapsToAnnotation : mappingAnnotation.value()) {
+					if (toClass.equals(mapsToAnnotation.value())) {
+						fieldCopies.add(new FieldCopy(fromField, toClass, mapsToAnnotation));
+					}
+				}
+			}
+			this.fieldCopies = fieldCopies.toArray(new FieldCopy[0]);
+		}
+
+		Object map(Object from) {
+			Object to;
+			try {
+				to = this.constructor.invokeExact();
+			} catch (Throwable e) {
+				throw new RuntimeException("could not create new instance of " + this.toClass.getName());
+			}
+			for (FieldCopy fieldCopy : this.fieldCopies) {
+				fieldCopy.copy(from, to);
+			}
+			return to;
+		}
+	}
+
+	private static class FieldCopy {
+
+		private final String fromFieldName;
+		private final String toFieldName;
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		private final ValueConvertor<Object, Object> valueConvertor;
+
+		FieldCopy(Field fromField, Class<?> toClass, MapsTo mapsToAnnotation) {
+			this.fromFieldName = fromField.getName();
+			this.toFieldName = mapsToAnnotation.field().isEmpty() ? fromField.getName() : mapsToAnnotation.field();
+			try {
+				this.getter = LOOKUP.unreflectGetter(fromField).asType(GETTER_TYPE);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("could not read field: " + this.fromFieldName);
+			}
+			try {
+				this.setter = LOOKUP.unreflectSetter(getField(toClass, this.toFieldName)).asType(SETTER_TYPE);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("could not write field " + this.toFieldName + ": " + e.getMessage(), e);
+			}
+
+			Class<? extends ValueConvertor<?, ?>> valueConvertorClass = mapsToAnnotation.convertor();
+			this.valueConvertor = IdenticalValueConvertor.class.equals(valueConvertorClass) ? null
+					: getValueConvertor(valueConvertorClass);
+		}
 
-		return Arrays.stream(mappingAnnotation.value())
-				.filter(mapsToAnnotation -> toClass.equals(mapsToAnnotation.value()));
+		void copy(Object from, Object to) {
+			Object value;
+			try {
+				value = (Object) this.getter.invokeExact(from);
+			} catch (Throwable e) {
+				throw new RuntimeException("could not read field: " + this.fromFieldName);
+			}
+
+			if (this.valueConvertor != null) {
+				try {
+					value = this.valueConvertor.convert(value);
+				} catch (ValueConvertorException e) {
+					throw new RuntimeException("could not convert value of field: " + this.fromFieldName);
+				}
+			}
+
+			try {
+				this.setter.invokeExact(to, value);
+			} catch (Throwable e) {
+				throw new RuntimeException("could not write field " + this.toFieldName + ": " + e.getMessage(), e);
+			}
+		}
 	}
 }
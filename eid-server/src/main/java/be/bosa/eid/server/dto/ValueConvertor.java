@@ -18,7 +18,9 @@
 package be.bosa.eid.server.dto;
 
 /**
- * Interface for a value convertor component.
+ * Interface for a value convertor component. A single instance of every
+ * convertor class is shared by all mappings, so implementations must be
+ * stateless.
  *
  * @param <TO>   the type to which to convert to.
  * @param <FROM> the type from which to convert.
@@ -0,0 +1,399 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import be.bosa.eid.client_server.shared.message.AbstractProtocolMessage;
+import be.bosa.eid.client_server.shared.protocol.HttpTransmitter;
+import be.bosa.eid.client_server.shared.protocol.Transport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A single eID protocol message exchange using the Servlet 3.1 non-blocking
+ * I/O. The request body is read via a {@link ReadListener}, the message is
+ * handled on the given executor and the response body is written via a
+ * {@link WriteListener}. No container thread is blocked while waiting for a
+ * slow client or for the SPI implementations.
+ * <p>
+ * When the container times out the exchange, or reports an error, the
+ * exchange is answered with a 503 and marked as done. A worker that is still
+ * processing the message afterwards no longer touches the response.
+ * </p>
+ */
+public class AsyncMessageExchange implements ReadListener, WriteListener, AsyncListener {
+
+	private static final Log LOG = LogFactory.getLog(AsyncMessageExchange.class);
+
+	private static final int MAX_PRESIZED_BODY_SIZE = 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Handles the buffered request, and gives back the response message.
+	 */
+	public interface MessageProcessor {
+
+		Object process(HttpServletRequest request, HttpServletResponse response) throws ServletException;
+
+		/**
+		 * Marshalls the response message.
+		 *
+		 * @param binaryFrame <code>true</code> if the request used the binary wire
+		 *                    format, so the response has to use it as well.
+		 */
+		default void transfer(Object responseMessage, boolean binaryFrame, HttpTransmitter httpTransmitter) {
+			Transport.transfer(responseMessage, httpTransmitter, binaryFrame, false);
+		}
+	}
+
+	private final AsyncContext asyncContext;
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final Executor executor;
+	private final MessageProcessor messageProcessor;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private ServletInputStream inputStream;
+	private ByteArrayOutputStream requestBody;
+
+	private ServletOutputStream outputStream;
+	private byte[] responseBody;
+	private int responseOffset;
+
+	/**
+	 * Guards the response against the container completing the exchange
+	 * concurrently. Not a monitor, so a virtual thread holding it does not pin
+	 * its carrier thread.
+	 */
+	private final ReentrantLock responseLock = new ReentrantLock();
+
+	private boolean done;
+
+	public AsyncMessageExchange(AsyncContext asyncContext, HttpServletRequest request, HttpServletResponse response,
+								Executor executor, MessageProcessor messageProcessor) {
+		this.asyncContext = asyncContext;
+		this.request = request;
+		this.response = response;
+		this.executor = executor;
+		this.messageProcessor = messageProcessor;
+	}
+
+	/**
+	 * Starts reading the request body. Returns immediately, the remainder of
+	 * the exchange is driven by the container and the executor.
+	 */
+	public void start() throws IOException {
+		int contentLength = this.request.getContentLength();
+		this.requestBody = new ByteArrayOutputStream(
+				contentLength >= 0 && contentLength <= MAX_PRESIZED_BODY_SIZE ? contentLength : BUFFER_SIZE);
+		this.asyncContext.addListener(this);
+		this.inputStream = this.request.getInputStream();
+		this.inputStream.setReadListener(this);
+	}
+
+	public void onDataAvailable() throws IOException {
+		int length;
+		while (this.inputStream.isReady() && (length = this.inputStream.read(this.buffer)) != -1) {
+			this.requestBody.write(this.buffer, 0, length);
+		}
+	}
+
+	public void onAllDataRead() {
+		try {
+			this.executor.execute(this::process);
+		} catch (RejectedExecutionException e) {
+			LOG.warn("no worker available for eID message: " + e.getMessage());
+			fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+
+	private void process() {
+		if (isDone()) {
+			LOG.debug("eID message exchange already done, skipping processing");
+			return;
+		}
+		Object responseMessage;
+		try {
+			HttpServletRequest bufferedRequest = new BufferedHttpServletRequest(this.request,
+					this.requestBody.toByteArray());
+			this.requestBody = null;
+			responseMessage = this.messageProcessor.process(bufferedRequest, new GuardedHttpServletResponse(this.response));
+		} catch (ServletException | RuntimeException e) {
+			LOG.error("error processing eID message: " + e.getMessage(), e);
+			fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return;
+		}
+
+		this.responseLock.lock();
+		try {
+			if (this.done) {
+				LOG.warn("eID message exchange timed out during processing, response discarded");
+				return;
+			}
+			if (responseMessage == null) {
+				complete();
+				return;
+			}
+			boolean binaryFrame = Transport.isBinaryProtocolVersion(
+					this.request.getHeader(AbstractProtocolMessage.PROTOCOL_VERSION_HTTP_HEADER));
+			this.messageProcessor.transfer(responseMessage, binaryFrame, new ResponseHttpTransmitter());
+			if (this.responseBody == null) {
+				complete();
+				return;
+			}
+			this.outputStream = this.response.getOutputStream();
+			this.outputStream.setWriteListener(this);
+		} catch (IOException | RuntimeException e) {
+			LOG.error("error writing eID message: " + e.getMessage(), e);
+			fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		} finally {
+			this.responseLock.unlock();
+		}
+	}
+
+	public void onWritePossible() throws IOException {
+		this.responseLock.lock();
+		try {
+			while (!this.done && this.outputStream.isReady()) {
+				if (this.responseOffset == this.responseBody.length) {
+					complete();
+					return;
+				}
+				int length = Math.min(BUFFER_SIZE, this.responseBody.length - this.responseOffset);
+				this.outputStream.write(this.responseBody, this.responseOffset, length);
+				this.responseOffset += length;
+			}
+		} finally {
+			this.responseLock.unlock();
+		}
+	}
+
+	public void onError(Throwable throwable) {
+		LOG.warn("I/O error during eID message exchange: " + throwable.getMessage());
+		fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+	}
+
+	public void onTimeout(AsyncEvent event) {
+		LOG.warn("eID message exchange timed out");
+		fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
+	public void onError(AsyncEvent event) {
+		LOG.warn("eID message exchange error: "
+				+ (event.getThrowable() != null ? event.getThrowable().getMessage() : "unknown"));
+		fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
+	public void onComplete(AsyncEvent event) {
+		this.responseLock.lock();
+		try {
+			this.done = true;
+		} finally {
+			this.responseLock.unlock();
+		}
+	}
+
+	public void onStartAsync(AsyncEvent event) {
+		// empty
+	}
+
+	/**
+	 * Gives back whether the exchange was completed, possibly by the container
+	 * because of a timeout or an error.
+	 */
+	public boolean isDone() {
+		this.responseLock.lock();
+		try {
+			return this.done;
+		} finally {
+			this.responseLock.unlock();
+		}
+	}
+
+	/**
+	 * Should be called while holding the response lock.
+	 */
+	private void complete() {
+		this.done = true;
+		this.asyncContext.complete();
+	}
+
+	private void fail(int statusCode) {
+		this.responseLock.lock();
+		try {
+			if (this.done) {
+				return;
+			}
+			try {
+				if (!this.response.isCommitted()) {
+					this.response.sendError(statusCode);
+				}
+			} catch (IOException | IllegalStateException e) {
+				LOG.debug("could not send error: " + e.getMessage());
+			}
+			complete();
+		} finally {
+			this.responseLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the headers on the response right away, but holds on to the body
+	 * until the response can be written without blocking.
+	 */
+	private class ResponseHttpTransmitter implements HttpTransmitter {
+
+		public boolean isSecure() {
+			/*
+			 * We assume here that the request was already verified as being secure.
+			 */
+			return true;
+		}
+
+		public void addHeader(String headerName, String headerValue) {
+			AsyncMessageExchange.this.response.addHeader(headerName, headerValue);
+		}
+
+		public void setBody(byte[] bodyValue) {
+			AsyncMessageExchange.this.responseBody = bodyValue;
+		}
+	}
+
+	/**
+	 * Drops the headers set by the message handling once the exchange is done,
+	 * as the container may already have recycled the response.
+	 */
+	private class GuardedHttpServletResponse extends HttpServletResponseWrapper {
+
+		GuardedHttpServletResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			ifNotDone(() -> super.setHeader(name, value));
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			ifNotDone(() -> super.addHeader(name, value));
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			ifNotDone(() -> super.setIntHeader(name, value));
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			ifNotDone(() -> super.addIntHeader(name, value));
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			ifNotDone(() -> super.setDateHeader(name, date));
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			ifNotDone(() -> super.addDateHeader(name, date));
+		}
+
+		private void ifNotDone(Runnable action) {
+			AsyncMessageExchange.this.responseLock.lock();
+			try {
+				if (!AsyncMessageExchange.this.done) {
+					action.run();
+				}
+			} finally {
+				AsyncMessageExchange.this.responseLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Gives the message handling a request of which the body was already
+	 * read.
+	 */
+	private static class BufferedHttpServletRequest extends HttpServletRequestWrapper {
+
+		private final byte[] body;
+
+		BufferedHttpServletRequest(HttpServletRequest request, byte[] body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public int getContentLength() {
+			return this.body.length;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			ByteArrayInputStream inputStream = new ByteArrayInputStream(this.body);
+			return new ServletInputStream() {
+
+				@Override
+				public int read() {
+					return inputStream.read();
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) {
+					return inputStream.read(buffer, offset, length);
+				}
+
+				@Override
+				public boolean isFinished() {
+					return inputStream.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setReadListener(ReadListener readListener) {
+					throw new IllegalStateException("request body already read");
+				}
+			};
+		}
+	}
+}
@@ -22,7 +22,6 @@ import org.apache.commons.logging.LogFactory;
 
 import javax.servlet.http.HttpSession;
 import java.io.Serializable;
-import java.security.SecureRandom;
 import java.util.Date;
 
 /**
@@ -45,23 +44,19 @@ public class AuthenticationChallenge implements Serializable {
 
 	private final Date timestamp;
 
-	private static final SecureRandom secureRandom;
-
-	static {
-		secureRandom = new SecureRandom();
-	}
-
 	private AuthenticationChallenge() {
-		/*
-		 * Since SHA-1 is 20 bytes, we also take 20 here. More bytes wouldn't
-		 * bring us anything.
-		 */
-		this.challenge = new byte[20];
-		secureRandom.nextBytes(this.challenge);
-
+		this.challenge = ChallengePool.getInstance().nextChallenge();
 		this.timestamp = new Date();
 	}
 
+	/**
+	 * Restores a challenge from a protocol token.
+	 */
+	AuthenticationChallenge(byte[] challenge, Date timestamp) {
+		this.challenge = challenge;
+		this.timestamp = timestamp;
+	}
+
 	/**
 	 * Generates a challenge and stores it in the given HTTP session for later
 	 * consumption.
@@ -69,7 +64,22 @@ public class AuthenticationChallenge implements Serializable {
 	 * @return the challenge.
 	 */
 	public static byte[] generateChallenge(HttpSession session) {
-		AuthenticationChallenge authenticationChallenge = new AuthenticationChallenge();
+		return generateChallenge(session, null);
+	}
+
+	/**
+	 * Generates a challenge and stores it in the given HTTP session for later
+	 * consumption. When a stateless challenge codec is given, the challenge is
+	 * self-verifying, and is only kept in the HTTP session for eID Clients that
+	 * do not echo it.
+	 *
+	 * @param statelessChallengeCodec the optional stateless challenge codec.
+	 * @return the challenge.
+	 */
+	public static byte[] generateChallenge(HttpSession session, StatelessChallengeCodec statelessChallengeCodec) {
+		AuthenticationChallenge authenticationChallenge = statelessChallengeCodec != null
+				? new AuthenticationChallenge(statelessChallengeCodec.generate(), new Date())
+				: new AuthenticationChallenge();
 		if (session.getAttribute(AUTHN_CHALLENGE_SESSION_ATTRIBUTE) != null) {
 			LOG.warn("overwriting a previous authentication challenge");
 		}
@@ -77,15 +87,15 @@ public class AuthenticationChallenge implements Serializable {
 		return authenticationChallenge.getChallenge();
 	}
 
-	private byte[] getChallenge() {
+	byte[] getChallenge() {
 		/*
-		 * This method indeed is private. We want controlled consumption of the
-		 * authentication challenge.
+		 * This method indeed is not public. We want controlled consumption of
+		 * the authentication challenge. Only the protocol token needs it.
 		 */
 		return this.challenge;
 	}
 
-	private Date getTimestamp() {
+	Date getTimestamp() {
 		return this.timestamp;
 	}
 
@@ -111,6 +121,32 @@ public class AuthenticationChallenge implements Serializable {
 		return authenticationChallenge.getChallenge();
 	}
 
+	/**
+	 * Gives back the authentication challenge. With a stateless challenge
+	 * codec, the challenge echoed by the eID Client is used when present, so
+	 * the HTTP session is not needed. Either way the challenge is checked for
+	 * authenticity, freshness, and single use.
+	 *
+	 * @param echoedChallenge         the challenge as echoed by the eID Client,
+	 *                                can be <code>null</code>.
+	 * @param statelessChallengeCodec the optional stateless challenge codec.
+	 */
+	public static byte[] getAuthnChallenge(HttpSession session, Long maxMaturity, byte[] echoedChallenge,
+										   StatelessChallengeCodec statelessChallengeCodec) {
+		if (statelessChallengeCodec == null) {
+			return getAuthnChallenge(session, maxMaturity);
+		}
+		byte[] challenge;
+		if (echoedChallenge != null) {
+			session.removeAttribute(AUTHN_CHALLENGE_SESSION_ATTRIBUTE);
+			challenge = echoedChallenge;
+		} else {
+			challenge = getAuthnChallenge(session, maxMaturity);
+		}
+		statelessChallengeCodec.verify(challenge);
+		return challenge;
+	}
+
 	/**
 	 * Gives back the authentication challenge. This challenge is checked for
 	 * freshness and can be consumed only once.
@@ -0,0 +1,251 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import be.bosa.eid.server.spi.AuthenticationService;
+import be.bosa.eid.server.spi.CertificateSecurityException;
+import be.bosa.eid.server.spi.ExpiredCertificateSecurityException;
+import be.bosa.eid.server.spi.IdentityIntegrityService;
+import be.bosa.eid.server.spi.RevokedCertificateSecurityException;
+import be.bosa.eid.server.spi.TrustCertificateSecurityException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.ServletConfig;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Cache of certificate chain validation results. Can be put in front of an
+ * {@link AuthenticationService} or an {@link IdentityIntegrityService} so that
+ * repeated validations of the same certificate chain skip the (OCSP/CRL based)
+ * validation of the service.
+ * <p>
+ * The cache is enabled via the <code>init-param</code>
+ * <code>*CacheTtl</code> (e.g. <code>AuthenticationServiceCacheTtl</code>),
+ * holding the time to live of the results in milliseconds. The maximum number
+ * of cached results can be set via <code>*CacheSize</code>. Accepted chains are
+ * never cached beyond the expiry of their certificates. Rejections via a
+ * {@link CertificateSecurityException} (expired, revoked, not trusted) are
+ * cached as well: every hit throws a new exception of the same kind and with
+ * the same message. Other errors are never cached.
+ * </p>
+ * <p>
+ * Note that a revocation of a cached chain is only noticed once its result
+ * expires.
+ * </p>
+ */
+public class CertificateValidationCache {
+
+	private static final Log LOG = LogFactory.getLog(CertificateValidationCache.class);
+
+	public static final String TTL_INIT_PARAM_SUFFIX = "CacheTtl";
+	public static final String SIZE_INIT_PARAM_SUFFIX = "CacheSize";
+
+	public static final int DEFAULT_SIZE = 10000;
+
+	private final long ttl;
+
+	private final int maximumSize;
+
+	private final Map<ByteBuffer, ValidationResult> results = new ConcurrentHashMap<>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	public CertificateValidationCache(String initParam, ServletConfig config) {
+		String ttl = config.getInitParameter(initParam + TTL_INIT_PARAM_SUFFIX);
+		this.ttl = ttl != null ? Long.parseLong(ttl.trim()) : 0;
+
+		String size = config.getInitParameter(initParam + SIZE_INIT_PARAM_SUFFIX);
+		this.maximumSize = size != null ? Integer.parseInt(size.trim()) : DEFAULT_SIZE;
+		if (this.maximumSize < 1) {
+			throw new IllegalArgumentException("invalid cache size for " + initParam + ": " + this.maximumSize);
+		}
+
+		if (isEnabled()) {
+			LOG.debug("certificate validation cache for " + initParam + ", TTL: " + this.ttl + " ms, size: "
+					+ this.maximumSize);
+		}
+	}
+
+	public boolean isEnabled() {
+		return this.ttl > 0;
+	}
+
+	/**
+	 * Gives back the authentication service, with its certificate chain
+	 * validation results cached in case the cache is enabled.
+	 */
+	public AuthenticationService decorate(AuthenticationService authenticationService) {
+		if (!isEnabled() || authenticationService == null) {
+			return authenticationService;
+		}
+		return certificateChain -> validate(certificateChain, authenticationService::validateCertificateChain);
+	}
+
+	/**
+	 * Gives back the identity integrity service, with its national registration
+	 * certificate validation results cached in case the cache is enabled.
+	 */
+	public IdentityIntegrityService decorate(IdentityIntegrityService identityIntegrityService) {
+		if (!isEnabled() || identityIntegrityService == null) {
+			return identityIntegrityService;
+		}
+		return certificateChain -> validate(certificateChain,
+				identityIntegrityService::checkNationalRegistrationCertificate);
+	}
+
+	private void validate(List<X509Certificate> certificateChain, Consumer<List<X509Certificate>> validator) {
+		ByteBuffer fingerprint = getFingerprint(certificateChain);
+		long now = System.currentTimeMillis();
+
+		ValidationResult result = this.results.get(fingerprint);
+		if (result != null && result.expiry > now) {
+			this.hitCount.incrementAndGet();
+			if (result.failureKind != null) {
+				throw result.failureKind.create(result.failureMessage);
+			}
+			return;
+		}
+		this.missCount.incrementAndGet();
+
+		try {
+			validator.accept(certificateChain);
+		} catch (CertificateSecurityException e) {
+			store(fingerprint, new ValidationResult(FailureKind.of(e), e.getMessage(), now + this.ttl));
+			throw e;
+		}
+
+		long expiry = now + this.ttl;
+		for (X509Certificate certificate : certificateChain) {
+			if (certificate != null) {
+				expiry = Math.min(expiry, certificate.getNotAfter().getTime());
+			}
+		}
+		store(fingerprint, new ValidationResult(null, null, expiry));
+	}
+
+	private void store(ByteBuffer fingerprint, ValidationResult result) {
+		if (this.results.size() >= this.maximumSize) {
+			evict();
+		}
+		this.results.put(fingerprint, result);
+	}
+
+	private synchronized void evict() {
+		long now = System.currentTimeMillis();
+		this.results.values().removeIf(result -> result.expiry <= now);
+
+		Iterator<ByteBuffer> iterator = this.results.keySet().iterator();
+		while (this.results.size() >= this.maximumSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	private ByteBuffer getFingerprint(List<X509Certificate> certificateChain) {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = CryptoPool.getInstance().getMessageDigest("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("digest error: " + e.getMessage(), e);
+		}
+		for (X509Certificate certificate : certificateChain) {
+			if (certificate == null) {
+				messageDigest.update((byte) 0);
+				continue;
+			}
+			try {
+				messageDigest.update(certificate.getEncoded());
+			} catch (CertificateEncodingException e) {
+				throw new RuntimeException("certificate encoding error: " + e.getMessage(), e);
+			}
+		}
+		return ByteBuffer.wrap(messageDigest.digest());
+	}
+
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	public int getSize() {
+		return this.results.size();
+	}
+
+	private enum FailureKind {
+
+		EXPIRED(ExpiredCertificateSecurityException::new),
+		REVOKED(RevokedCertificateSecurityException::new),
+		TRUST(TrustCertificateSecurityException::new),
+		OTHER(CertificateSecurityException::new);
+
+		private final Function<String, CertificateSecurityException> factory;
+
+		FailureKind(Function<String, CertificateSecurityException> factory) {
+			this.factory = factory;
+		}
+
+		private static FailureKind of(CertificateSecurityException exception) {
+			if (exception instanceof ExpiredCertificateSecurityException) {
+				return EXPIRED;
+			}
+			if (exception instanceof RevokedCertificateSecurityException) {
+				return REVOKED;
+			}
+			if (exception instanceof TrustCertificateSecurityException) {
+				return TRUST;
+			}
+			return OTHER;
+		}
+
+		private CertificateSecurityException create(String message) {
+			return this.factory.apply(message);
+		}
+	}
+
+	private static final class ValidationResult {
+
+		private final FailureKind failureKind;
+
+		private final String failureMessage;
+
+		private final long expiry;
+
+		private ValidationResult(FailureKind failureKind, String failureMessage, long expiry) {
+			this.failureKind = failureKind;
+			this.failureMessage = failureMessage;
+			this.expiry = expiry;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Source of authentication challenges.
+ * <p>
+ * A single {@link SecureRandom} serializes all callers; on Linux the default
+ * NativePRNG even takes a global lock per call. Challenges are therefore drawn
+ * from a number of independently seeded DRBG stripes, selected by thread.
+ * On top of that a pool of pre-generated challenges is kept, refilled in the
+ * background once it runs low, so that handing out a challenge normally does
+ * not touch a random generator at all.
+ * </p>
+ * <p>
+ * The stripes are seeded from the platform {@link SecureRandom}, and are
+ * reseeded after {@link #RESEED_INTERVAL} challenges.
+ * </p>
+ */
+public final class ChallengePool {
+
+	private static final Log LOG = LogFactory.getLog(ChallengePool.class);
+
+	/**
+	 * Since SHA-1 is 20 bytes, we also take 20 here. More bytes wouldn't bring
+	 * us anything.
+	 */
+	public static final int CHALLENGE_SIZE = 20;
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The number of challenges a stripe generates before it is reseeded.
+	 */
+	public static final int RESEED_INTERVAL = 1 << 16;
+
+	private static final int SEED_SIZE = 32;
+
+	private static final ChallengePool INSTANCE = new ChallengePool(DEFAULT_CAPACITY, ForkJoinPool.commonPool());
+
+	private final SecureRandom seeder = new SecureRandom();
+
+	private final Stripe[] stripes;
+
+	private final Queue<byte[]> challenges = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final int capacity;
+
+	private final Executor refillExecutor;
+
+	private final AtomicBoolean refilling = new AtomicBoolean();
+
+	private final LongAdder poolHitCount = new LongAdder();
+
+	private final LongAdder poolMissCount = new LongAdder();
+
+	private final LongAdder contentionCount = new LongAdder();
+
+	private final LongAdder refillCount = new LongAdder();
+
+	private final LongAdder reseedCount = new LongAdder();
+
+	/**
+	 * Gives back the challenge pool shared by all eID Server components.
+	 */
+	public static ChallengePool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param capacity       the number of pre-generated challenges to keep.
+	 * @param refillExecutor runs the refills of the pool.
+	 */
+	public ChallengePool(int capacity, Executor refillExecutor) {
+		this.capacity = capacity;
+		this.refillExecutor = refillExecutor;
+		// a power of two of at least the number of processors
+		int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+		this.stripes = new Stripe[stripeCount];
+		for (int idx = 0; idx < stripeCount; idx++) {
+			this.stripes[idx] = new Stripe();
+		}
+	}
+
+	/**
+	 * Gives back a fresh challenge, which is never handed out again.
+	 */
+	public byte[] nextChallenge() {
+		byte[] challenge = this.challenges.poll();
+		if (challenge != null) {
+			this.poolHitCount.increment();
+			if (this.size.decrementAndGet() < this.capacity / 2) {
+				scheduleRefill();
+			}
+			return challenge;
+		}
+		this.poolMissCount.increment();
+		scheduleRefill();
+		return generateChallenge();
+	}
+
+	private void scheduleRefill() {
+		if (!this.refilling.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.refillExecutor.execute(this::refill);
+		} catch (RuntimeException e) {
+			LOG.warn("could not schedule challenge pool refill: " + e.getMessage());
+			this.refilling.set(false);
+		}
+	}
+
+	private void refill() {
+		try {
+			this.refillCount.increment();
+			while (this.size.get() < this.capacity) {
+				this.challenges.add(generateChallenge());
+				this.size.incrementAndGet();
+			}
+		} finally {
+			this.refilling.set(false);
+		}
+	}
+
+	private byte[] generateChallenge() {
+		Stripe stripe = this.stripes[(int) Thread.currentThread().getId() & (this.stripes.length - 1)];
+		if (!stripe.lock.tryLock()) {
+			this.contentionCount.increment();
+			stripe.lock.lock();
+		}
+		try {
+			if (stripe.remaining-- == 0) {
+				stripe.reseed();
+			}
+			byte[] challenge = new byte[CHALLENGE_SIZE];
+			stripe.random.nextBytes(challenge);
+			return challenge;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Gives back the number of challenges that came from the pool.
+	 */
+	public long getPoolHitCount() {
+		return this.poolHitCount.sum();
+	}
+
+	/**
+	 * Gives back the number of challenges that had to be generated on the spot
+	 * because the pool was empty.
+	 */
+	public long getPoolMissCount() {
+		return this.poolMissCount.sum();
+	}
+
+	/**
+	 * Gives back the number of times a thread had to wait for a stripe in use
+	 * by another thread.
+	 */
+	public long getContentionCount() {
+		return this.contentionCount.sum();
+	}
+
+	/**
+	 * Gives back the number of pool refills so far.
+	 */
+	public long getRefillCount() {
+		return this.refillCount.sum();
+	}
+
+	/**
+	 * Gives back the number of stripe reseeds so far, including the initial
+	 * seeding.
+	 */
+	public long getReseedCount() {
+		return this.reseedCount.sum();
+	}
+
+	/**
+	 * Gives back the number of pre-generated challenges currently available.
+	 */
+	public int getSize() {
+		return this.size.get();
+	}
+
+	private final class Stripe {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final SecureRandom random = newRandom();
+
+		private int remaining;
+
+		private void reseed() {
+			byte[] seed = new byte[SEED_SIZE];
+			ChallengePool.this.seeder.nextBytes(seed);
+			this.random.setSeed(seed);
+			this.remaining = RESEED_INTERVAL - 1;
+			ChallengePool.this.reseedCount.increment();
+		}
+	}
+
+	/**
+	 * Uses the DRBG of Java 9 and later, or SHA1PRNG otherwise. SHA1PRNG only
+	 * uses the seed we give it before first use, DRBG also seeds itself once.
+	 */
+	private static SecureRandom newRandom() {
+		try {
+			return SecureRandom.getInstance("DRBG");
+		} catch (NoSuchAlgorithmException e) {
+			try {
+				return SecureRandom.getInstance("SHA1PRNG");
+			} catch (NoSuchAlgorithmException e2) {
+				throw new IllegalStateException("no SecureRandom algorithm available", e2);
+			}
+		}
+	}
+}
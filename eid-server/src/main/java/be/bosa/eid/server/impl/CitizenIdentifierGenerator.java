@@ -0,0 +1,178 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Generator of non-reversible citizen identifiers (NRCID), for a fixed
+ * secret, organization and application.
+ * <p>
+ * The secret is decoded and validated once, and every thread keeps its own
+ * initialized HMAC, so generating an identifier only costs the HMAC itself.
+ * The identifiers are the same as those of
+ * {@link UserIdentifierUtil#getNonReversibleCitizenIdentifier(String, String, String, String)}.
+ * </p>
+ */
+public class CitizenIdentifierGenerator {
+
+	private static final Log LOG = LogFactory.getLog(CitizenIdentifierGenerator.class);
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final byte[] suffix;
+
+	private final SecretKeySpec macKey;
+
+	private final Mac prototype;
+
+	private final ThreadLocal<Mac> macs;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param secret the application specific secret. Should be at least 128 bit
+	 *               long. Encoded in hexadecimal format.
+	 * @param orgId  the optional organization identifier.
+	 * @param appId  the optional application identifier.
+	 * @throws IllegalArgumentException if the secret is missing or invalid.
+	 */
+	public CitizenIdentifierGenerator(String secret, String orgId, String appId) {
+		if (secret == null) {
+			throw new IllegalArgumentException("secret key is null");
+		}
+		/*
+		 * Avoid XML formatting issues introduced by some web.xml XML editors.
+		 */
+		secret = secret.trim();
+		if (orgId != null) {
+			orgId = orgId.trim();
+		} else {
+			LOG.warn("it is advised to use an orgId");
+		}
+		if (appId != null) {
+			appId = appId.trim();
+		} else {
+			LOG.warn("it is advised to use an appId");
+		}
+
+		byte[] secretKey;
+		try {
+			secretKey = Hex.decodeHex(secret.toCharArray());
+		} catch (DecoderException e) {
+			LOG.error("secret is not hexadecimal encoded: " + e.getMessage());
+			throw new IllegalArgumentException("secret is not hexadecimal encoded");
+		}
+		if ((128 / 8) > secretKey.length) {
+			/*
+			 * 128 bit is seen as secure these days.
+			 */
+			LOG.warn("secret key is too short");
+			throw new IllegalArgumentException("secret key is too short");
+		}
+
+		/*
+		 * The HMAC input is the user identifier, followed by the application
+		 * and organization identifiers.
+		 */
+		String suffix = "";
+		if (appId != null) {
+			suffix += appId;
+		}
+		if (orgId != null) {
+			suffix += orgId;
+		}
+		this.suffix = suffix.getBytes();
+
+		this.macKey = new SecretKeySpec(secretKey, UserIdentifierUtil.HMAC_ALGO);
+		try {
+			this.prototype = Mac.getInstance(UserIdentifierUtil.HMAC_ALGO);
+			this.prototype.init(this.macKey);
+		} catch (GeneralSecurityException e) {
+			LOG.error("invalid secret key: " + e.getMessage(), e);
+			throw new RuntimeException("invalid secret");
+		}
+		this.macs = ThreadLocal.withInitial(this::newMac);
+	}
+
+	/**
+	 * Gives back the non-reversible citizen identifier of the given user.
+	 *
+	 * @param userId the primary user identifier, i.e. the national registry
+	 *               number.
+	 */
+	public String generate(String userId) {
+		Mac mac = VirtualThreads.isVirtual(Thread.currentThread()) ? newMac() : this.macs.get();
+		mac.update(userId.getBytes());
+		mac.update(this.suffix);
+		byte[] result = mac.doFinal();
+		char[] hex = new char[result.length * 2];
+		for (int idx = 0; idx < result.length; idx++) {
+			hex[idx * 2] = HEX[(result[idx] >> 4) & 0xf];
+			hex[idx * 2 + 1] = HEX[result[idx] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Gives back the non-reversible citizen identifiers of the given users, in
+	 * the same order. The identifiers are generated in parallel by the given
+	 * pool.
+	 */
+	public List<String> generate(List<String> userIds, ForkJoinPool pool) {
+		try {
+			return pool.submit(() -> userIds.parallelStream().map(this::generate)
+					.collect(Collectors.toCollection(() -> new ArrayList<>(userIds.size())))).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("NRCID generation error: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Cloning an initialized HMAC is cheaper than initializing a new one, but
+	 * not all providers support it.
+	 */
+	private Mac newMac() {
+		try {
+			return (Mac) this.prototype.clone();
+		} catch (CloneNotSupportedException e) {
+			try {
+				Mac mac = Mac.getInstance(this.prototype.getAlgorithm(), this.prototype.getProvider());
+				mac.init(this.macKey);
+				return mac;
+			} catch (GeneralSecurityException e2) {
+				throw new RuntimeException("HMAC not available: " + e2.getMessage(), e2);
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Executor that limits the number of tasks running at the same time. Tasks
+ * beyond the limit are handed to the underlying executor right away, but wait
+ * for a permit before they start. With virtual threads such a waiting task
+ * does not hold on to an OS thread.
+ */
+public class ConcurrencyLimitedExecutor implements Executor {
+
+	private final Executor executor;
+
+	private final int maxConcurrency;
+
+	private final Semaphore permits;
+
+	public ConcurrencyLimitedExecutor(Executor executor, int maxConcurrency) {
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException("maximum concurrency should be positive");
+		}
+		this.executor = executor;
+		this.maxConcurrency = maxConcurrency;
+		this.permits = new Semaphore(maxConcurrency, true);
+	}
+
+	public void execute(Runnable task) {
+		this.executor.execute(() -> {
+			this.permits.acquireUninterruptibly();
+			try {
+				task.run();
+			} finally {
+				this.permits.release();
+			}
+		});
+	}
+
+	public int getMaxConcurrency() {
+		return this.maxConcurrency;
+	}
+
+	/**
+	 * Gives back the number of tasks that are currently running.
+	 */
+	public int getActiveCount() {
+		return this.maxConcurrency - this.permits.availablePermits();
+	}
+
+	/**
+	 * Gives back an estimate of the number of tasks waiting for a permit.
+	 */
+	public int getWaitingCount() {
+		return this.permits.getQueueLength();
+	}
+}
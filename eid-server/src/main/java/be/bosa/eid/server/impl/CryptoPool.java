@@ -0,0 +1,221 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-thread pool of JCA primitives, keyed by type, algorithm and provider.
+ * <p>
+ * Looking up a provider and constructing a {@link Signature}, {@link Cipher},
+ * {@link MessageDigest} or {@link Mac} is relatively expensive compared to
+ * the operations the eID Server performs with them. Every thread therefore
+ * keeps one instance per algorithm, which it reuses for all requests.
+ * </p>
+ * <p>
+ * An instance is only valid until the next call for the same algorithm on
+ * the same thread, so it must not be kept beyond the current operation.
+ * Signatures, ciphers and MACs must be initialized before use, which resets
+ * any state left behind. Message digests are reset when handed out.
+ * </p>
+ * <p>
+ * Virtual threads are not pooled: they only live for a single message, so
+ * pooling would only add a map per message.
+ * </p>
+ * <p>
+ * The pools of all threads are registered, so {@link #clear()} can empty them
+ * when the web application stops. Otherwise the container threads would keep
+ * primitives of providers loaded by the web application class loader.
+ * </p>
+ */
+public final class CryptoPool {
+
+	private static final CryptoPool INSTANCE = new CryptoPool();
+
+	private final ThreadLocal<Map<String, Object>> primitives = new ThreadLocal<>();
+
+	private final Map<Thread, Map<String, Object>> threadPrimitives = new WeakHashMap<>();
+
+	private final ReentrantLock threadPrimitivesLock = new ReentrantLock();
+
+	private final LongAdder borrowCount = new LongAdder();
+
+	private final LongAdder borrowNanos = new LongAdder();
+
+	private final LongAdder createdCount = new LongAdder();
+
+	/**
+	 * Gives back the pool shared by all eID Server components.
+	 */
+	public static CryptoPool getInstance() {
+		return INSTANCE;
+	}
+
+	public Signature getSignature(String algorithm) throws NoSuchAlgorithmException {
+		long start = System.nanoTime();
+		String key = "Signature:" + algorithm;
+		Signature signature = (Signature) get(key);
+		if (signature == null) {
+			signature = put(key, Signature.getInstance(algorithm));
+		}
+		borrowed(start);
+		return signature;
+	}
+
+	public Signature getSignature(String algorithm, String provider) throws NoSuchAlgorithmException,
+			NoSuchProviderException {
+		long start = System.nanoTime();
+		String key = "Signature:" + algorithm + ":" + provider;
+		Signature signature = (Signature) get(key);
+		if (signature == null) {
+			signature = put(key, Signature.getInstance(algorithm, provider));
+		}
+		borrowed(start);
+		return signature;
+	}
+
+	public Cipher getCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		long start = System.nanoTime();
+		String key = "Cipher:" + transformation;
+		Cipher cipher = (Cipher) get(key);
+		if (cipher == null) {
+			cipher = put(key, Cipher.getInstance(transformation));
+		}
+		borrowed(start);
+		return cipher;
+	}
+
+	public MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException {
+		long start = System.nanoTime();
+		String key = "MessageDigest:" + algorithm;
+		MessageDigest messageDigest = (MessageDigest) get(key);
+		if (messageDigest == null) {
+			messageDigest = put(key, MessageDigest.getInstance(algorithm));
+		} else {
+			messageDigest.reset();
+		}
+		borrowed(start);
+		return messageDigest;
+	}
+
+	public Mac getMac(String algorithm) throws NoSuchAlgorithmException {
+		long start = System.nanoTime();
+		String key = "Mac:" + algorithm;
+		Mac mac = (Mac) get(key);
+		if (mac == null) {
+			mac = put(key, Mac.getInstance(algorithm));
+		}
+		borrowed(start);
+		return mac;
+	}
+
+	private Object get(String key) {
+		if (VirtualThreads.isVirtual(Thread.currentThread())) {
+			return null;
+		}
+		Map<String, Object> primitives = this.primitives.get();
+		return primitives != null ? primitives.get(key) : null;
+	}
+
+	private <T> T put(String key, T primitive) {
+		if (VirtualThreads.isVirtual(Thread.currentThread())) {
+			return primitive;
+		}
+		Map<String, Object> primitives = this.primitives.get();
+		if (primitives == null) {
+			primitives = new ConcurrentHashMap<>();
+			this.primitives.set(primitives);
+			this.threadPrimitivesLock.lock();
+			try {
+				this.threadPrimitives.put(Thread.currentThread(), primitives);
+			} finally {
+				this.threadPrimitivesLock.unlock();
+			}
+		}
+		primitives.put(key, primitive);
+		this.createdCount.increment();
+		return primitive;
+	}
+
+	private List<Map<String, Object>> getThreadPrimitives() {
+		this.threadPrimitivesLock.lock();
+		try {
+			return new ArrayList<>(this.threadPrimitives.values());
+		} finally {
+			this.threadPrimitivesLock.unlock();
+		}
+	}
+
+	/**
+	 * Drops the primitives pooled by all threads. Threads create new
+	 * primitives again when they need them.
+	 */
+	public void clear() {
+		getThreadPrimitives().forEach(Map::clear);
+	}
+
+	private void borrowed(long start) {
+		this.borrowNanos.add(System.nanoTime() - start);
+		this.borrowCount.increment();
+	}
+
+	/**
+	 * Gives back the number of primitives handed out so far.
+	 */
+	public long getBorrowCount() {
+		return this.borrowCount.sum();
+	}
+
+	/**
+	 * Gives back the average time, in nanoseconds, needed to hand out a
+	 * primitive. This includes the creation of primitives the current thread
+	 * did not have yet.
+	 */
+	public long getAverageBorrowNanos() {
+		long count = this.borrowCount.sum();
+		return count == 0 ? 0 : this.borrowNanos.sum() / count;
+	}
+
+	/**
+	 * Gives back the number of primitives created for the pools so far.
+	 */
+	public long getCreatedCount() {
+		return this.createdCount.sum();
+	}
+
+	/**
+	 * Gives back the number of primitives currently held by the pools of all
+	 * live threads together.
+	 */
+	public long getPoolSize() {
+		return getThreadPrimitives().stream().mapToLong(Map::size).sum();
+	}
+}
@@ -38,6 +38,8 @@ public class HttpServletRequestHttpReceiver implements HttpReceiver {
 
 	private static final Log LOG = LogFactory.getLog(HttpServletRequestHttpReceiver.class);
 
+	private static final int MAX_PRESIZED_BODY_SIZE = 1024 * 1024;
+
 	private final HttpServletRequest httpServletRequest;
 
 	private final boolean skipSecureConnectionCheck;
@@ -55,6 +57,17 @@ public class HttpServletRequestHttpReceiver implements HttpReceiver {
 	public byte[] getBody() {
 		try {
 			ServletInputStream inputStream = this.httpServletRequest.getInputStream();
+			int contentLength = this.httpServletRequest.getContentLength();
+			if (contentLength >= 0 && contentLength <= MAX_PRESIZED_BODY_SIZE) {
+				/*
+				 * Read directly into an array of the right size, so the message
+				 * sections can be views on this single array. Larger bodies are
+				 * not allocated up front, as the content length is client input.
+				 */
+				byte[] body = new byte[contentLength];
+				IOUtils.readFully(inputStream, body);
+				return body;
+			}
 			return IOUtils.toByteArray(inputStream);
 		} catch (IOException e) {
 			throw new RuntimeException("IO error: " + e.getMessage(), e);
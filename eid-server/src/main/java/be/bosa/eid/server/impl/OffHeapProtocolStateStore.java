@@ -0,0 +1,412 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import be.bosa.eid.server.spi.ProtocolStateStore;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Protocol state store that keeps the state of the protocol runs outside of
+ * the Java heap, in fixed-size records within a direct or a memory-mapped
+ * buffer. Only a small index from key to record lives on the heap.
+ * <p>
+ * The buffer starts with a header: magic (int), format version (int), record
+ * size (int) and number of records (int). A memory-mapped file with another
+ * header is reset. Record layout: key length (int, 0 for a free record),
+ * expiry (long), state length (int), key ({@value #MAX_KEY_SIZE} bytes),
+ * state.
+ * </p>
+ * <p>
+ * Operations on a key are serialized via a lock stripe chosen by the key, so
+ * protocol runs do not wait on each other. Expired records are evicted in the
+ * background once the free records run low, and in the calling thread only
+ * when no free record is left at all.
+ * </p>
+ */
+public class OffHeapProtocolStateStore implements ProtocolStateStore {
+
+	private static final Log LOG = LogFactory.getLog(OffHeapProtocolStateStore.class);
+
+	public static final int DEFAULT_RECORD_SIZE = 4096;
+
+	public static final int MAX_KEY_SIZE = 64;
+
+	private static final int MAGIC = 0x65494453;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int FORMAT_VERSION_OFFSET = 4;
+	private static final int RECORD_SIZE_OFFSET = 8;
+	private static final int RECORDS_OFFSET = 12;
+	private static final int HEADER_SIZE = 16;
+
+	private static final int KEY_LENGTH_OFFSET = 0;
+	private static final int EXPIRY_OFFSET = 4;
+	private static final int STATE_LENGTH_OFFSET = 12;
+	private static final int KEY_OFFSET = 16;
+	private static final int STATE_OFFSET = KEY_OFFSET + MAX_KEY_SIZE;
+
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * Background eviction starts once less than this fraction of the records
+	 * is free.
+	 */
+	private static final int EVICTION_THRESHOLD_DIVISOR = 8;
+
+	private final ByteBuffer buffer;
+
+	private final int recordSize;
+
+	private final int records;
+
+	private final Map<String, Integer> index = new ConcurrentHashMap<>();
+
+	private final ConcurrentLinkedQueue<Integer> freeRecords = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger freeCount = new AtomicInteger();
+
+	private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+	private final Executor evictionExecutor;
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	private final LongAdder evictedCount = new LongAdder();
+
+	/**
+	 * Creates a store within a direct buffer.
+	 */
+	public static OffHeapProtocolStateStore allocateDirect(int records, int recordSize) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(getBufferSize(records, recordSize));
+		writeHeader(buffer, records, recordSize);
+		return new OffHeapProtocolStateStore(buffer, records, recordSize, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a store within a memory-mapped file. The protocol runs that were
+	 * stored within an existing file are kept, so they survive a restart. A
+	 * file that was created with another number of records or record size, or
+	 * that is not a protocol state store at all, is reset.
+	 */
+	public static OffHeapProtocolStateStore map(File file, int records, int recordSize) throws IOException {
+		int bufferSize = getBufferSize(records, recordSize);
+		try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if (fileChannel.size() != 0 && !hasHeader(fileChannel, records, recordSize)) {
+				LOG.warn("resetting protocol state store file with different layout: " + file);
+				fileChannel.truncate(0);
+			}
+			ByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
+			writeHeader(buffer, records, recordSize);
+			return new OffHeapProtocolStateStore(buffer, records, recordSize, ForkJoinPool.commonPool());
+		}
+	}
+
+	private static int getBufferSize(int records, int recordSize) {
+		if (records < 1) {
+			throw new IllegalArgumentException("invalid number of records: " + records);
+		}
+		if (recordSize <= STATE_OFFSET) {
+			throw new IllegalArgumentException("record size should exceed " + STATE_OFFSET + " bytes");
+		}
+		long bufferSize = HEADER_SIZE + (long) records * recordSize;
+		if (bufferSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("store too large: " + bufferSize + " bytes");
+		}
+		return (int) bufferSize;
+	}
+
+	private static boolean hasHeader(FileChannel fileChannel, int records, int recordSize) throws IOException {
+		if (fileChannel.size() != getBufferSize(records, recordSize)) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (fileChannel.read(header, header.position()) == -1) {
+				return false;
+			}
+		}
+		return header.getInt(MAGIC_OFFSET) == MAGIC && header.getInt(FORMAT_VERSION_OFFSET) == FORMAT_VERSION
+				&& header.getInt(RECORD_SIZE_OFFSET) == recordSize && header.getInt(RECORDS_OFFSET) == records;
+	}
+
+	private static void writeHeader(ByteBuffer buffer, int records, int recordSize) {
+		buffer.putInt(MAGIC_OFFSET, MAGIC);
+		buffer.putInt(FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+		buffer.putInt(RECORD_SIZE_OFFSET, recordSize);
+		buffer.putInt(RECORDS_OFFSET, records);
+	}
+
+	OffHeapProtocolStateStore(ByteBuffer buffer, int records, int recordSize, Executor evictionExecutor) {
+		this.buffer = buffer;
+		this.records = records;
+		this.recordSize = recordSize;
+		this.evictionExecutor = evictionExecutor;
+		for (int idx = 0; idx < LOCK_STRIPES; idx++) {
+			this.locks[idx] = new ReentrantLock();
+		}
+
+		/*
+		 * A crash can leave a record half written, so only records of which
+		 * all fields are within range are restored.
+		 */
+		long now = System.currentTimeMillis();
+		int dropped = 0;
+		for (int record = 0; record < records; record++) {
+			int offset = getOffset(record);
+			int keyLength = buffer.getInt(offset + KEY_LENGTH_OFFSET);
+			if (keyLength != 0 && isValid(offset, now)) {
+				byte[] key = new byte[keyLength];
+				read(offset + KEY_OFFSET, key);
+				if (this.index.putIfAbsent(new String(key, StandardCharsets.UTF_8), record) == null) {
+					continue;
+				}
+			}
+			if (keyLength != 0) {
+				dropped++;
+			}
+			buffer.putInt(offset + KEY_LENGTH_OFFSET, 0);
+			this.freeRecords.add(record);
+			this.freeCount.incrementAndGet();
+		}
+		if (!this.index.isEmpty()) {
+			LOG.debug("restored protocol runs: " + this.index.size());
+		}
+		if (dropped != 0) {
+			LOG.debug("dropped expired or invalid protocol runs: " + dropped);
+		}
+	}
+
+	private boolean isValid(int offset, long now) {
+		int keyLength = this.buffer.getInt(offset + KEY_LENGTH_OFFSET);
+		int stateLength = this.buffer.getInt(offset + STATE_LENGTH_OFFSET);
+		return keyLength > 0 && keyLength <= MAX_KEY_SIZE
+				&& stateLength >= 0 && stateLength <= this.recordSize - STATE_OFFSET
+				&& this.buffer.getLong(offset + EXPIRY_OFFSET) > now;
+	}
+
+	@Override
+	public byte[] load(String key) {
+		ReentrantLock lock = getLock(key);
+		lock.lock();
+		try {
+			Integer record = this.index.get(key);
+			if (record == null) {
+				return null;
+			}
+			int offset = getOffset(record);
+			if (!isValid(offset, System.currentTimeMillis())) {
+				free(key, record);
+				this.evictedCount.increment();
+				return null;
+			}
+			byte[] state = new byte[this.buffer.getInt(offset + STATE_LENGTH_OFFSET)];
+			read(offset + STATE_OFFSET, state);
+			return state;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void store(String key, byte[] state, long ttl) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		if (keyBytes.length == 0 || keyBytes.length > MAX_KEY_SIZE) {
+			throw new IllegalArgumentException("invalid key size: " + keyBytes.length);
+		}
+		if (state.length > this.recordSize - STATE_OFFSET) {
+			throw new IllegalArgumentException("protocol state too large: " + state.length + " bytes, maximum: "
+					+ (this.recordSize - STATE_OFFSET));
+		}
+
+		ReentrantLock lock = getLock(key);
+		lock.lock();
+		try {
+			Integer record = this.index.get(key);
+			if (record == null) {
+				record = allocate();
+				this.index.put(key, record);
+			}
+			int offset = getOffset(record);
+			this.buffer.putLong(offset + EXPIRY_OFFSET, System.currentTimeMillis() + ttl);
+			this.buffer.putInt(offset + STATE_LENGTH_OFFSET, state.length);
+			write(offset + KEY_OFFSET, keyBytes);
+			write(offset + STATE_OFFSET, state);
+			this.buffer.putInt(offset + KEY_LENGTH_OFFSET, keyBytes.length);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void remove(String key) {
+		ReentrantLock lock = getLock(key);
+		lock.lock();
+		try {
+			Integer record = this.index.get(key);
+			if (record != null) {
+				free(key, record);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private int allocate() {
+		Integer record = pollFreeRecord();
+		if (record == null) {
+			/*
+			 * The background eviction did not keep up, so the caller has to
+			 * free a record itself.
+			 */
+			evictExpired();
+			record = pollFreeRecord();
+		}
+		if (record == null) {
+			throw new IllegalStateException("protocol state store full: " + this.records + " records");
+		}
+		if (this.freeCount.get() < this.records / EVICTION_THRESHOLD_DIVISOR) {
+			scheduleEviction();
+		}
+		return record;
+	}
+
+	private Integer pollFreeRecord() {
+		Integer record = this.freeRecords.poll();
+		if (record != null) {
+			this.freeCount.decrementAndGet();
+		}
+		return record;
+	}
+
+	private void scheduleEviction() {
+		if (!this.evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.evictionExecutor.execute(() -> {
+				try {
+					evictExpired();
+				} finally {
+					this.evicting.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOG.warn("could not schedule protocol state eviction: " + e.getMessage());
+			this.evicting.set(false);
+		}
+	}
+
+	/**
+	 * Only locks the stripe of an expired protocol run while freeing it, so
+	 * the other protocol runs are not held up by the scan.
+	 */
+	private void evictExpired() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, Integer> entry : this.index.entrySet()) {
+			String key = entry.getKey();
+			int record = entry.getValue();
+			if (this.buffer.getLong(getOffset(record) + EXPIRY_OFFSET) >= now) {
+				continue;
+			}
+			ReentrantLock lock = getLock(key);
+			lock.lock();
+			try {
+				Integer current = this.index.get(key);
+				if (current != null && current == record
+						&& this.buffer.getLong(getOffset(record) + EXPIRY_OFFSET) < now) {
+					free(key, record);
+					this.evictedCount.increment();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		LOG.debug("evicted expired protocol runs, free records: " + this.freeCount.get());
+	}
+
+	/**
+	 * Should be called while holding the lock of the key.
+	 */
+	private void free(String key, int record) {
+		this.index.remove(key);
+		this.buffer.putInt(getOffset(record) + KEY_LENGTH_OFFSET, 0);
+		this.freeRecords.add(record);
+		this.freeCount.incrementAndGet();
+	}
+
+	private ReentrantLock getLock(String key) {
+		int hash = key.hashCode();
+		return this.locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+	}
+
+	private int getOffset(int record) {
+		return HEADER_SIZE + record * this.recordSize;
+	}
+
+	private void read(int offset, byte[] value) {
+		ByteBuffer source = this.buffer.duplicate();
+		source.position(offset);
+		source.get(value);
+	}
+
+	private void write(int offset, byte[] value) {
+		ByteBuffer target = this.buffer.duplicate();
+		target.position(offset);
+		target.put(value);
+	}
+
+	/**
+	 * Gives back the number of stored protocol runs, including the expired
+	 * ones that have not been evicted yet.
+	 */
+	public int getSize() {
+		return this.index.size();
+	}
+
+	public int getCapacity() {
+		return this.records;
+	}
+
+	public int getMaximumStateSize() {
+		return this.recordSize - STATE_OFFSET;
+	}
+
+	public long getEvictedCount() {
+		return this.evictedCount.sum();
+	}
+}
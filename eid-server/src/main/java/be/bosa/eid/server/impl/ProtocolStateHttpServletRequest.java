@@ -0,0 +1,46 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpSession;
+
+/**
+ * HTTP servlet request wrapper that replaces the HTTP session by the session
+ * restored from the protocol token or the protocol state store.
+ */
+public class ProtocolStateHttpServletRequest extends HttpServletRequestWrapper {
+
+	private final ProtocolStateSession session;
+
+	public ProtocolStateHttpServletRequest(HttpServletRequest request, ProtocolStateSession session) {
+		super(request);
+		this.session = session;
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return this.session;
+	}
+
+	@Override
+	public HttpSession getSession(boolean create) {
+		return this.session;
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import be.bosa.eid.client_server.shared.protocol.ProtocolState;
+import be.bosa.eid.server.impl.handler.AuthenticationDataMessageHandler;
+import be.bosa.eid.server.impl.handler.HelloMessageHandler;
+import be.bosa.eid.server.impl.handler.SignatureDataMessageHandler;
+
+import javax.servlet.ServletContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes the attributes of a {@link ProtocolStateSession} in a compact
+ * binary form. Well-known attributes are written with a single byte name.
+ * Attribute values are limited to a fixed set of types with their own
+ * encoding; Java serialization is deliberately not supported, as the state
+ * may come from an external store.
+ */
+public final class ProtocolStateSerializer {
+
+	/*
+	 * The index of an attribute name within this list is part of the
+	 * serialized form. Only append to it.
+	 */
+	private static final List<String> KNOWN_ATTRIBUTE_NAMES = Arrays.asList(
+			HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE,
+			AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE,
+			RequestContext.INCLUDE_IDENTITY_SESSION_ATTRIBUTE,
+			RequestContext.INCLUDE_ADDRESS_SESSION_ATTRIBUTE,
+			RequestContext.INCLUDE_PHOTO_SESSION_ATTRIBUTE,
+			RequestContext.INCLUDE_CERTIFICATES_SESSION_ATTRIBUTE,
+			RequestContext.TRANSACTION_MESSAGE_SESSION_ATTRIBUTE,
+			AuthenticationDataMessageHandler.AUTHENTICATED_USER_IDENTIFIER_SESSION_ATTRIBUTE,
+			SignatureDataMessageHandler.DIGEST_VALUE_SESSION_ATTRIBUTE,
+			SignatureDataMessageHandler.DIGEST_ALGO_SESSION_ATTRIBUTE,
+			HelloMessageHandler.CLIENT_LANGUAGE_SESSION_ATTRIBUTE,
+			HelloMessageHandler.REQUEST_ID_ATTRIBUTE);
+
+	private static final int OTHER_ATTRIBUTE_NAME = 0xff;
+
+	private static final byte TYPE_BOOLEAN = 1;
+	private static final byte TYPE_STRING = 2;
+	private static final byte TYPE_BYTES = 3;
+	private static final byte TYPE_PROTOCOL_STATE = 4;
+	private static final byte TYPE_AUTHN_CHALLENGE = 5;
+	private static final byte TYPE_INTEGER = 6;
+	private static final byte TYPE_LONG = 7;
+	/*
+	 * Type 8 used to be Java serialization, it is rejected as unknown type.
+	 */
+
+	private ProtocolStateSerializer() {
+		super();
+	}
+
+	public static byte[] serialize(ProtocolStateSession session) {
+		try {
+			ByteArrayOutputStream state = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(state);
+			write(session, output);
+			output.flush();
+			return state.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("could not serialize protocol state: " + e.getMessage(), e);
+		}
+	}
+
+	public static ProtocolStateSession deserialize(byte[] state, ServletContext servletContext,
+												   int maxInactiveInterval) {
+		try {
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(state));
+			return read(input, servletContext, maxInactiveInterval);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("invalid protocol state: " + e.getMessage(), e);
+		}
+	}
+
+	static void write(ProtocolStateSession session, DataOutputStream output) throws IOException {
+		output.writeUTF(session.getId());
+		output.writeLong(session.getCreationTime());
+		Map<String, Object> attributes = session.getAttributes();
+		output.writeShort(attributes.size());
+		for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+			writeAttribute(output, attribute.getKey(), attribute.getValue());
+		}
+	}
+
+	static ProtocolStateSession read(DataInputStream input, ServletContext servletContext, int maxInactiveInterval)
+			throws IOException {
+		String id = input.readUTF();
+		long creationTime = input.readLong();
+		ProtocolStateSession session = new ProtocolStateSession(id, creationTime, servletContext, maxInactiveInterval);
+		int count = input.readUnsignedShort();
+		for (int idx = 0; idx < count; idx++) {
+			readAttribute(input, session);
+		}
+		return session;
+	}
+
+	private static void writeAttribute(DataOutputStream output, String name, Object value) throws IOException {
+		int nameIdx = KNOWN_ATTRIBUTE_NAMES.indexOf(name);
+		if (nameIdx != -1) {
+			output.writeByte(nameIdx);
+		} else {
+			output.writeByte(OTHER_ATTRIBUTE_NAME);
+			output.writeUTF(name);
+		}
+
+		if (value instanceof Boolean) {
+			output.writeByte(TYPE_BOOLEAN);
+			output.writeBoolean((Boolean) value);
+		} else if (value instanceof String) {
+			output.writeByte(TYPE_STRING);
+			writeBytes(output, ((String) value).getBytes(StandardCharsets.UTF_8));
+		} else if (value instanceof byte[]) {
+			output.writeByte(TYPE_BYTES);
+			writeBytes(output, (byte[]) value);
+		} else if (value instanceof ProtocolState) {
+			output.writeByte(TYPE_PROTOCOL_STATE);
+			output.writeByte(((ProtocolState) value).ordinal());
+		} else if (value instanceof AuthenticationChallenge) {
+			AuthenticationChallenge challenge = (AuthenticationChallenge) value;
+			output.writeByte(TYPE_AUTHN_CHALLENGE);
+			writeBytes(output, challenge.getChallenge());
+			output.writeLong(challenge.getTimestamp().getTime());
+		} else if (value instanceof Integer) {
+			output.writeByte(TYPE_INTEGER);
+			output.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			output.writeByte(TYPE_LONG);
+			output.writeLong((Long) value);
+		} else {
+			throw new IllegalArgumentException("unsupported session attribute type: " + name + ": "
+					+ (value != null ? value.getClass().getName() : null));
+		}
+	}
+
+	private static void readAttribute(DataInputStream input, ProtocolStateSession session)
+			throws IOException {
+		int nameIdx = input.readUnsignedByte();
+		String name;
+		if (nameIdx == OTHER_ATTRIBUTE_NAME) {
+			name = input.readUTF();
+		} else if (nameIdx < KNOWN_ATTRIBUTE_NAMES.size()) {
+			name = KNOWN_ATTRIBUTE_NAMES.get(nameIdx);
+		} else {
+			throw new IOException("unknown attribute name: " + nameIdx);
+		}
+
+		Object value;
+		byte type = input.readByte();
+		switch (type) {
+			case TYPE_BOOLEAN:
+				value = input.readBoolean();
+				break;
+			case TYPE_STRING:
+				value = new String(readBytes(input), StandardCharsets.UTF_8);
+				break;
+			case TYPE_BYTES:
+				value = readBytes(input);
+				break;
+			case TYPE_PROTOCOL_STATE:
+				int protocolState = input.readUnsignedByte();
+				if (protocolState >= ProtocolState.values().length) {
+					throw new IOException("unknown protocol state: " + protocolState);
+				}
+				value = ProtocolState.values()[protocolState];
+				break;
+			case TYPE_AUTHN_CHALLENGE:
+				byte[] challenge = readBytes(input);
+				value = new AuthenticationChallenge(challenge, new Date(input.readLong()));
+				break;
+			case TYPE_INTEGER:
+				value = input.readInt();
+				break;
+			case TYPE_LONG:
+				value = input.readLong();
+				break;
+			default:
+				throw new IOException("unknown attribute type: " + type);
+		}
+		session.setAttribute(name, value);
+	}
+
+	private static void writeBytes(DataOutputStream output, byte[] value) throws IOException {
+		output.writeInt(value.length);
+		output.write(value);
+	}
+
+	private static byte[] readBytes(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0 || length > input.available()) {
+			throw new IOException("invalid length: " + length);
+		}
+		byte[] value = new byte[length];
+		input.readFully(value);
+		return value;
+	}
+}
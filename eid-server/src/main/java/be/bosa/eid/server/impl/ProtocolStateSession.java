@@ -0,0 +1,168 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionContext;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * HTTP session whose attributes are kept within a protocol token or a
+ * {@link be.bosa.eid.server.spi.ProtocolStateStore} instead of the servlet
+ * container, so any node of a cluster can handle any step of a protocol run.
+ */
+public class ProtocolStateSession implements HttpSession {
+
+	private final String id;
+
+	private final long creationTime;
+
+	private final ServletContext servletContext;
+
+	private final boolean isNew;
+
+	private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+	private int maxInactiveInterval;
+
+	/**
+	 * Creates a new session, for the first step of a protocol run.
+	 */
+	public ProtocolStateSession(ServletContext servletContext, int maxInactiveInterval) {
+		this.id = UUID.randomUUID().toString();
+		this.creationTime = System.currentTimeMillis();
+		this.servletContext = servletContext;
+		this.maxInactiveInterval = maxInactiveInterval;
+		this.isNew = true;
+	}
+
+	ProtocolStateSession(String id, long creationTime, ServletContext servletContext, int maxInactiveInterval) {
+		this.id = id;
+		this.creationTime = creationTime;
+		this.servletContext = servletContext;
+		this.maxInactiveInterval = maxInactiveInterval;
+		this.isNew = false;
+	}
+
+	Map<String, Object> getAttributes() {
+		return this.attributes;
+	}
+
+	public boolean isEmpty() {
+		return this.attributes.isEmpty();
+	}
+
+	@Override
+	public long getCreationTime() {
+		return this.creationTime;
+	}
+
+	@Override
+	public String getId() {
+		return this.id;
+	}
+
+	@Override
+	public long getLastAccessedTime() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return this.servletContext;
+	}
+
+	@Override
+	public void setMaxInactiveInterval(int interval) {
+		this.maxInactiveInterval = interval;
+	}
+
+	@Override
+	public int getMaxInactiveInterval() {
+		return this.maxInactiveInterval;
+	}
+
+	@Override
+	@Deprecated
+	public HttpSessionContext getSessionContext() {
+		return null;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return this.attributes.get(name);
+	}
+
+	@Override
+	@Deprecated
+	public Object getValue(String name) {
+		return getAttribute(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(this.attributes.keySet());
+	}
+
+	@Override
+	@Deprecated
+	public String[] getValueNames() {
+		return this.attributes.keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		if (value == null) {
+			removeAttribute(name);
+			return;
+		}
+		this.attributes.put(name, value);
+	}
+
+	@Override
+	@Deprecated
+	public void putValue(String name, Object value) {
+		setAttribute(name, value);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		this.attributes.remove(name);
+	}
+
+	@Override
+	@Deprecated
+	public void removeValue(String name) {
+		removeAttribute(name);
+	}
+
+	@Override
+	public void invalidate() {
+		this.attributes.clear();
+	}
+
+	@Override
+	public boolean isNew() {
+		return this.isNew;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.ServletContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Codec for the protocol token used by the stateless protocol mode. The
+ * attributes of a {@link ProtocolStateSession} are serialized via the
+ * {@link ProtocolStateSerializer}, and encrypted and authenticated using
+ * AES-GCM with a key derived from a secret shared by all nodes of the cluster.
+ * <p>
+ * The key is derived via PBKDF2 with a fixed context label, so a weak secret
+ * is still costly to brute-force from a captured token, and the same secret
+ * used elsewhere does not yield the same key.
+ * </p>
+ */
+public class ProtocolTokenCodec {
+
+	/**
+	 * The default time-to-live of a token in milliseconds.
+	 */
+	public static final long DEFAULT_TTL = AuthenticationChallenge.DEFAULT_MAX_MATURITY;
+
+	private static final byte VERSION = 2;
+
+	/**
+	 * The minimum length of the secret, in characters.
+	 */
+	public static final int MIN_SECRET_LENGTH = 32;
+
+	private static final String KEY_DERIVATION_ALGO = "PBKDF2WithHmacSHA256";
+
+	private static final byte[] KEY_DERIVATION_LABEL = "be.bosa.eid.server.ProtocolTokenCodec.v2"
+			.getBytes(StandardCharsets.UTF_8);
+
+	private static final int KEY_DERIVATION_ITERATIONS = 100000;
+
+	private static final int KEY_SIZE = 256;
+
+	private static final int IV_SIZE = 12;
+
+	private static final int TAG_SIZE = 128;
+
+	private static final SecureRandom secureRandom = new SecureRandom();
+
+	private final SecretKey secretKey;
+
+	private final long ttl;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param secret the secret shared by all nodes.
+	 * @param ttl    the time-to-live of a token in milliseconds.
+	 */
+	public ProtocolTokenCodec(String secret, long ttl) {
+		if (secret == null || secret.isEmpty()) {
+			throw new IllegalArgumentException("missing protocol token secret");
+		}
+		if (secret.length() < MIN_SECRET_LENGTH) {
+			throw new IllegalArgumentException("protocol token secret should be at least " + MIN_SECRET_LENGTH
+					+ " characters");
+		}
+		PBEKeySpec keySpec = new PBEKeySpec(secret.toCharArray(), KEY_DERIVATION_LABEL, KEY_DERIVATION_ITERATIONS,
+				KEY_SIZE);
+		try {
+			byte[] key = SecretKeyFactory.getInstance(KEY_DERIVATION_ALGO).generateSecret(keySpec).getEncoded();
+			this.secretKey = new SecretKeySpec(key, "AES");
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(KEY_DERIVATION_ALGO + " not supported", e);
+		} finally {
+			keySpec.clearPassword();
+		}
+		this.ttl = ttl;
+	}
+
+	public long getTtl() {
+		return this.ttl;
+	}
+
+	/**
+	 * Gives back the protocol token for the given session.
+	 */
+	public String encode(ProtocolStateSession session) {
+		try {
+			ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(payload);
+			output.writeLong(System.currentTimeMillis() + this.ttl);
+			ProtocolStateSerializer.write(session, output);
+			output.flush();
+
+			byte[] iv = new byte[IV_SIZE];
+			secureRandom.nextBytes(iv);
+			Cipher cipher = CryptoPool.getInstance().getCipher("AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, this.secretKey, new GCMParameterSpec(TAG_SIZE, iv));
+			cipher.updateAAD(new byte[]{VERSION});
+			byte[] cipherText = cipher.doFinal(payload.toByteArray());
+
+			byte[] token = new byte[1 + IV_SIZE + cipherText.length];
+			token[0] = VERSION;
+			System.arraycopy(iv, 0, token, 1, IV_SIZE);
+			System.arraycopy(cipherText, 0, token, 1 + IV_SIZE, cipherText.length);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+		} catch (IOException | GeneralSecurityException e) {
+			throw new RuntimeException("could not create protocol token: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Restores the session from the given protocol token.
+	 *
+	 * @throws SecurityException in case the token was tampered with or has
+	 *                           expired.
+	 */
+	public ProtocolStateSession decode(String token, ServletContext servletContext) {
+		byte[] payload;
+		try {
+			byte[] tokenBytes = Base64.getUrlDecoder().decode(token);
+			if (tokenBytes.length < 1 + IV_SIZE || tokenBytes[0] != VERSION) {
+				throw new SecurityException("invalid protocol token");
+			}
+			Cipher cipher = CryptoPool.getInstance().getCipher("AES/GCM/NoPadding");
+			cipher.init(Cipher.DECRYPT_MODE, this.secretKey, new GCMParameterSpec(TAG_SIZE, tokenBytes, 1, IV_SIZE));
+			cipher.updateAAD(tokenBytes, 0, 1);
+			payload = cipher.doFinal(tokenBytes, 1 + IV_SIZE, tokenBytes.length - 1 - IV_SIZE);
+		} catch (IllegalArgumentException | GeneralSecurityException e) {
+			throw new SecurityException("invalid protocol token", e);
+		}
+
+		try {
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+			long expiry = input.readLong();
+			if (System.currentTimeMillis() > expiry) {
+				throw new SecurityException("protocol token expired");
+			}
+			return ProtocolStateSerializer.read(input, servletContext, (int) (this.ttl / 1000));
+		} catch (IOException e) {
+			throw new SecurityException("invalid protocol token payload", e);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Time-partitioned Bloom filter that remembers which items have been seen.
+ * <p>
+ * Items carry the time they were issued, and are only accepted within one
+ * window after that. Every window gets its own Bloom filter, so only the
+ * filters of the current and of the previous window are needed: the filter
+ * of a window is dropped as soon as items of the window after the next one
+ * show up, at which point its items have expired anyway.
+ * </p>
+ * <p>
+ * An item is never reported as new twice, but an item that has not been seen
+ * before is reported as seen with the configured false positive rate.
+ * </p>
+ */
+public class ReplayFilter {
+
+	private static final int LOCK_STRIPES = 64;
+
+	private final long windowMillis;
+
+	private final int bitCount;
+
+	private final int hashCount;
+
+	private final AtomicReferenceArray<Generation> generations = new AtomicReferenceArray<>(2);
+
+	private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param windowMillis      the time in milliseconds within which an item is
+	 *                          accepted.
+	 * @param expectedItems     the number of items expected per window.
+	 * @param falsePositiveRate the accepted probability of reporting a new item
+	 *                          as seen.
+	 */
+	public ReplayFilter(long windowMillis, long expectedItems, double falsePositiveRate) {
+		if (windowMillis <= 0 || expectedItems <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("invalid replay filter parameters");
+		}
+		this.windowMillis = windowMillis;
+		double ln2 = Math.log(2);
+		long bits = (long) Math.ceil(-expectedItems * Math.log(falsePositiveRate) / (ln2 * ln2));
+		if (bits > Integer.MAX_VALUE - Long.SIZE) {
+			throw new IllegalArgumentException("replay filter too large");
+		}
+		this.bitCount = (int) ((bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+		this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / expectedItems * ln2));
+		for (int idx = 0; idx < LOCK_STRIPES; idx++) {
+			this.locks[idx] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Records the given item.
+	 *
+	 * @param hash1     first independent 64 bit hash of the item.
+	 * @param hash2     second independent 64 bit hash of the item.
+	 * @param timestamp the time the item was issued, in milliseconds.
+	 * @return <code>true</code> if the item was not seen before,
+	 * <code>false</code> if it was, or if its window has already been dropped.
+	 */
+	public boolean add(long hash1, long hash2, long timestamp) {
+		Generation generation = getGeneration(Math.floorDiv(timestamp, this.windowMillis));
+		if (generation == null) {
+			return false;
+		}
+		/*
+		 * Setting the bits is atomic per bit, but the same item has to be added
+		 * under a lock, or two threads could both set some of its bits and both
+		 * consider it new.
+		 */
+		ReentrantLock lock = this.locks[(int) (hash1 >>> 1) & (LOCK_STRIPES - 1)];
+		lock.lock();
+		try {
+			boolean seen = true;
+			for (int idx = 0; idx < this.hashCount; idx++) {
+				int bit = (int) Math.floorMod(hash1 + idx * hash2, (long) this.bitCount);
+				long mask = 1L << bit;
+				long previous = generation.bits.getAndAccumulate(bit / Long.SIZE, mask, (value, add) -> value | add);
+				if ((previous & mask) == 0) {
+					seen = false;
+				}
+			}
+			return !seen;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Generation getGeneration(long window) {
+		int slot = (int) (window & 1);
+		while (true) {
+			Generation generation = this.generations.get(slot);
+			if (generation != null) {
+				if (generation.window == window) {
+					return generation;
+				}
+				if (generation.window > window) {
+					return null;
+				}
+			}
+			Generation newGeneration = new Generation(window, this.bitCount);
+			if (this.generations.compareAndSet(slot, generation, newGeneration)) {
+				return newGeneration;
+			}
+		}
+	}
+
+	/**
+	 * Gives back the size of the filter of one window, in bits.
+	 */
+	public int getBitCount() {
+		return this.bitCount;
+	}
+
+	public int getHashCount() {
+		return this.hashCount;
+	}
+
+	private static final class Generation {
+
+		private final long window;
+
+		private final AtomicLongArray bits;
+
+		private Generation(long window, int bitCount) {
+			this.window = window;
+			this.bits = new AtomicLongArray(bitCount / Long.SIZE);
+		}
+	}
+}
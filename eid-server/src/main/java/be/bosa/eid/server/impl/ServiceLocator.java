@@ -17,42 +17,171 @@
 
 package be.bosa.eid.server.impl;
 
+import be.bosa.eid.server.impl.metrics.MessageMetrics;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * Service locator. Can handle both JNDI references as classname references.
  * Classname referencing can be useful in environments where you don't have a
  * full-blown Java EE application container available.
+ * <p>
+ * Per default every {@link #locateService()} invocation resolves the service
+ * again. Via the optional <code>init-param</code> <code>*Resolution</code>
+ * (e.g. <code>AuthenticationServiceResolution</code>) the service can be
+ * resolved only once and cached as a singleton, which must then be safe to
+ * call concurrently. Cached JNDI references can be refreshed periodically via
+ * <code>*RefreshInterval</code> (in milliseconds) to pick up a rebind.
+ * </p>
  *
  * @param <T> the service type.
  * @author Frank Cornelis
  */
 public class ServiceLocator<T> {
 
+	private static final Log LOG = LogFactory.getLog(ServiceLocator.class);
+
+	public static final String RESOLUTION_INIT_PARAM_SUFFIX = "Resolution";
+	public static final String REFRESH_INTERVAL_INIT_PARAM_SUFFIX = "RefreshInterval";
+
+	/**
+	 * The way a service locator resolves its service.
+	 */
+	public enum Resolution {
+		/**
+		 * Resolves the service on every invocation. This is the default.
+		 */
+		PER_CALL,
+		/**
+		 * Resolves the service once and caches the instance.
+		 */
+		SINGLETON
+	}
+
 	private final String jndiLocation;
 
 	private final String className;
 
+	private final Resolution resolution;
+
+	private volatile ResolvedService<T> instance;
+
+	private final long refreshInterval;
+
+	private final Lock resolveLock = new ReentrantLock();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private volatile MessageMetrics messageMetrics;
+
 	public ServiceLocator(String initParam, ServletConfig config) {
-		this.jndiLocation = config.getInitParameter(initParam);
-		this.className = config.getInitParameter(initParam + "Class");
+		this(initParam, config::getInitParameter, Resolution.PER_CALL);
+	}
+
+	/**
+	 * Constructor for services of which the resolution defaults to something
+	 * else than {@link Resolution#PER_CALL}, e.g. because they hold state.
+	 */
+	public ServiceLocator(String initParam, ServletConfig config, Resolution defaultResolution) {
+		this(initParam, config::getInitParameter, defaultResolution);
 	}
 
 	public ServiceLocator(String initParam, FilterConfig config) {
-		this.jndiLocation = config.getInitParameter(initParam);
-		this.className = config.getInitParameter(initParam + "Class");
+		this(initParam, config::getInitParameter, Resolution.PER_CALL);
+	}
+
+	private ServiceLocator(String initParam, Function<String, String> initParameters, Resolution defaultResolution) {
+		this.jndiLocation = initParameters.apply(initParam);
+		this.className = initParameters.apply(initParam + "Class");
+
+		String resolution = initParameters.apply(initParam + RESOLUTION_INIT_PARAM_SUFFIX);
+		this.resolution = resolution != null ? Resolution.valueOf(resolution.trim().toUpperCase()) : defaultResolution;
+
+		String refreshInterval = initParameters.apply(initParam + REFRESH_INTERVAL_INIT_PARAM_SUFFIX);
+		this.refreshInterval = refreshInterval != null ? Long.parseLong(refreshInterval.trim()) : 0;
+
+		if (this.resolution != Resolution.PER_CALL) {
+			LOG.debug("service " + initParam + " resolution: " + this.resolution);
+		}
 	}
 
 	/**
 	 * Locates the service. Can return <code>null</code> in case the
 	 * corresponding <code>init-param</code> was not set.
 	 */
-	@SuppressWarnings("unchecked")
 	public T locateService() throws ServletException {
+		if (!isConfigured()) {
+			return null;
+		}
+		if (this.resolution == Resolution.PER_CALL) {
+			this.missCount.incrementAndGet();
+			return instrument(resolveService());
+		}
+
+		ResolvedService<T> resolvedService = this.instance;
+		if (resolvedService != null && !isRefreshRequired(resolvedService)) {
+			this.hitCount.incrementAndGet();
+			return resolvedService.instrumentedService;
+		}
+
+		/*
+		 * A lock instead of a monitor, as a JNDI lookup may block and would pin
+		 * a virtual thread to its carrier thread.
+		 */
+		this.resolveLock.lock();
+		try {
+			resolvedService = this.instance;
+			if (resolvedService != null && !isRefreshRequired(resolvedService)) {
+				this.hitCount.incrementAndGet();
+				return resolvedService.instrumentedService;
+			}
+
+			this.missCount.incrementAndGet();
+			T service = resolveService();
+			if (resolvedService != null && resolvedService.service != service) {
+				LOG.debug("service rebound: " + this.jndiLocation);
+			}
+			resolvedService = new ResolvedService<>(service, instrument(service));
+			this.instance = resolvedService;
+			return resolvedService.instrumentedService;
+		} finally {
+			this.resolveLock.unlock();
+		}
+	}
+
+	private T instrument(T service) {
+		MessageMetrics messageMetrics = this.messageMetrics;
+		return messageMetrics != null ? messageMetrics.instrument(service) : service;
+	}
+
+	/**
+	 * Times all calls to the located services in the given metrics.
+	 */
+	public void setMessageMetrics(MessageMetrics messageMetrics) {
+		this.messageMetrics = messageMetrics;
+	}
+
+	private boolean isRefreshRequired(ResolvedService<T> resolvedService) {
+		if (this.refreshInterval <= 0 || this.jndiLocation == null) {
+			return false;
+		}
+		return System.currentTimeMillis() - resolvedService.timestamp > this.refreshInterval;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T resolveService() throws ServletException {
 		try {
 			T service;
 			if (this.jndiLocation != null) {
@@ -75,4 +204,45 @@ public class ServiceLocator<T> {
 			throw new ServletException("error: " + e.getMessage(), e);
 		}
 	}
+
+	/**
+	 * Checks whether the corresponding <code>init-param</code> was set.
+	 */
+	public boolean isConfigured() {
+		return this.jndiLocation != null || this.className != null;
+	}
+
+	public Resolution getResolution() {
+		return this.resolution;
+	}
+
+	/**
+	 * Gives back the number of invocations served from the cached instance.
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Gives back the number of invocations that required a JNDI lookup or a
+	 * class instantiation.
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	private static class ResolvedService<T> {
+
+		private final T service;
+
+		private final T instrumentedService;
+
+		private final long timestamp;
+
+		ResolvedService(T service, T instrumentedService) {
+			this.service = service;
+			this.instrumentedService = instrumentedService;
+			this.timestamp = System.currentTimeMillis();
+		}
+	}
 }
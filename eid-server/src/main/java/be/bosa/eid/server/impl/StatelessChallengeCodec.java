@@ -0,0 +1,198 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import be.bosa.eid.server.impl.handler.AuthenticationDataMessageHandler;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Codec for self-verifying authentication challenges.
+ * <p>
+ * Such a challenge carries the time it was issued and an HMAC over a secret
+ * shared by all nodes of the cluster, so any node can check its freshness and
+ * authenticity without the HTTP session it was issued in. A
+ * {@link ReplayFilter}, partitioned by the maximum challenge maturity, makes
+ * sure that every challenge is accepted only once per node.
+ * </p>
+ * <pre>
+ * challenge = version:uint8 timestamp:int64 random:byte[20] hmac:byte[32]
+ * </pre>
+ */
+public class StatelessChallengeCodec {
+
+	private static final Log LOG = LogFactory.getLog(StatelessChallengeCodec.class);
+
+	public static final String SECRET_INIT_PARAM_NAME = "StatelessChallengeSecret";
+
+	public static final String PEAK_RATE_INIT_PARAM_NAME = "StatelessChallengePeakRate";
+
+	/**
+	 * The default number of authentications per second the replay filter is
+	 * sized for.
+	 */
+	public static final int DEFAULT_PEAK_RATE = 100;
+
+	/**
+	 * The probability that a fresh challenge is rejected as a replay.
+	 */
+	public static final double FALSE_POSITIVE_RATE = 1e-6;
+
+	private static final byte VERSION = 1;
+
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	private static final int MAC_SIZE = 32;
+
+	private static final int SIGNED_SIZE = 1 + 8 + ChallengePool.CHALLENGE_SIZE;
+
+	public static final int CHALLENGE_SIZE = SIGNED_SIZE + MAC_SIZE;
+
+	/**
+	 * The tolerated clock difference between the nodes, in milliseconds.
+	 */
+	private static final long MAX_CLOCK_SKEW = 1000 * 60;
+
+	private final SecretKeySpec secretKey;
+
+	private final long maxMaturity;
+
+	private final ReplayFilter replayFilter;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param secret      the secret shared by all nodes, at least
+	 *                    {@link ProtocolTokenCodec#MIN_SECRET_LENGTH}
+	 *                    characters long.
+	 * @param maxMaturity the maximum allowed maturity of a challenge in
+	 *                    milliseconds.
+	 * @param peakRate    the number of authentications per second to size the
+	 *                    replay filter for.
+	 */
+	public StatelessChallengeCodec(String secret, long maxMaturity, int peakRate) {
+		if (secret == null || secret.isEmpty()) {
+			throw new IllegalArgumentException("missing stateless challenge secret");
+		}
+		if (secret.length() < ProtocolTokenCodec.MIN_SECRET_LENGTH) {
+			throw new IllegalArgumentException("stateless challenge secret should be at least "
+					+ ProtocolTokenCodec.MIN_SECRET_LENGTH + " characters");
+		}
+		this.secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+		this.maxMaturity = maxMaturity;
+		long expectedChallenges = Math.max(1, (long) peakRate * ((maxMaturity + 999) / 1000));
+		this.replayFilter = new ReplayFilter(maxMaturity, expectedChallenges, FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * Gives back the codec of the given eID service servlet, or
+	 * <code>null</code> when stateless challenges are not configured. All
+	 * message handlers of a servlet share the same codec, and thus the same
+	 * replay filter.
+	 */
+	public static StatelessChallengeCodec getInstance(ServletConfig config) {
+		String secret = config.getInitParameter(SECRET_INIT_PARAM_NAME);
+		if (secret == null) {
+			return null;
+		}
+		ServletContext servletContext = config.getServletContext();
+		String attributeName = StatelessChallengeCodec.class.getName() + "." + config.getServletName();
+		synchronized (StatelessChallengeCodec.class) {
+			StatelessChallengeCodec codec = (StatelessChallengeCodec) servletContext.getAttribute(attributeName);
+			if (codec == null) {
+				String maxMaturityParam = config
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_MAX_MATURITY_INIT_PARAM_NAME);
+				long maxMaturity = maxMaturityParam != null ? Long.parseLong(maxMaturityParam.trim())
+						: AuthenticationChallenge.DEFAULT_MAX_MATURITY;
+				String peakRateParam = config.getInitParameter(PEAK_RATE_INIT_PARAM_NAME);
+				int peakRate = peakRateParam != null ? Integer.parseInt(peakRateParam.trim()) : DEFAULT_PEAK_RATE;
+				codec = new StatelessChallengeCodec(secret, maxMaturity, peakRate);
+				servletContext.setAttribute(attributeName, codec);
+			}
+			return codec;
+		}
+	}
+
+	/**
+	 * Generates a new challenge.
+	 */
+	public byte[] generate() {
+		ByteBuffer challenge = ByteBuffer.allocate(CHALLENGE_SIZE);
+		challenge.put(VERSION);
+		challenge.putLong(System.currentTimeMillis());
+		challenge.put(ChallengePool.getInstance().nextChallenge());
+		challenge.put(mac(challenge.array()));
+		return challenge.array();
+	}
+
+	/**
+	 * Checks the authenticity and freshness of the given challenge, and
+	 * consumes it.
+	 *
+	 * @throws SecurityException if the challenge is not genuine, too old, or
+	 *                           has been used before.
+	 */
+	public void verify(byte[] challenge) {
+		if (challenge == null || challenge.length != CHALLENGE_SIZE || challenge[0] != VERSION) {
+			throw new SecurityException("invalid challenge");
+		}
+		byte[] mac = mac(challenge);
+		ByteBuffer input = ByteBuffer.wrap(challenge);
+		byte[] challengeMac = new byte[MAC_SIZE];
+		input.position(SIGNED_SIZE);
+		input.get(challengeMac);
+		if (!MessageDigest.isEqual(mac, challengeMac)) {
+			throw new SecurityException("challenge authentication failed");
+		}
+
+		long timestamp = input.getLong(1);
+		long dt = System.currentTimeMillis() - timestamp;
+		if (dt > this.maxMaturity) {
+			throw new SecurityException("maximum challenge maturity reached");
+		}
+		if (dt < -MAX_CLOCK_SKEW) {
+			throw new SecurityException("challenge from the future");
+		}
+
+		// the MAC is uniformly distributed, so it serves as hash of the challenge
+		if (!this.replayFilter.add(input.getLong(SIGNED_SIZE), input.getLong(SIGNED_SIZE + 8), timestamp)) {
+			LOG.warn("replayed challenge");
+			throw new SecurityException("challenge already used");
+		}
+	}
+
+	private byte[] mac(byte[] challenge) {
+		try {
+			Mac mac = CryptoPool.getInstance().getMac(MAC_ALGORITHM);
+			mac.init(this.secretKey);
+			mac.update(challenge, 0, SIGNED_SIZE);
+			return mac.doFinal();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("HMAC error: " + e.getMessage(), e);
+		}
+	}
+}
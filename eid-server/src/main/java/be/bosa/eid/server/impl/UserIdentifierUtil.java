@@ -17,18 +17,15 @@
 
 package be.bosa.eid.server.impl;
 
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import javax.crypto.Mac;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.x500.X500Principal;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class for user identifier construction.
@@ -62,8 +59,16 @@ public class UserIdentifierUtil {
 
 	public static final String HMAC_ALGO = "HmacSHA1";
 
+	private static final int MAXIMUM_GENERATORS = 16;
+
+	private static final Map<List<String>, CitizenIdentifierGenerator> GENERATORS = new ConcurrentHashMap<>();
+
 	/**
 	 * Gives back a non-reversible citizen identifier (NRCID).
+	 * <p>
+	 * The generators of the last few secret, organization and application
+	 * combinations are kept, so repeated calls do not set up the HMAC again.
+	 * </p>
 	 *
 	 * @param userId the primary user identifier, i.e. the national registry
 	 *               number.
@@ -71,71 +76,20 @@ public class UserIdentifierUtil {
 	 * @param appId  the optional application identifier.
 	 * @param secret the application specific secret. Should be at least 128 bit
 	 *               long. Encoded in hexadecimal format.
+	 * @deprecated use a {@link CitizenIdentifierGenerator} that is kept for
+	 * all users of the same organization and application.
 	 */
+	@Deprecated
 	public static String getNonReversibleCitizenIdentifier(String userId, String orgId, String appId, String secret) {
-		if (secret == null) {
-			throw new IllegalArgumentException("secret key is null");
-		}
-		/*
-		 * Avoid XML formatting issues introduced by some web.xml XML editors.
-		 */
-		secret = secret.trim();
-		if (orgId != null) {
-			orgId = orgId.trim();
-		} else {
-			LOG.warn("it is advised to use an orgId");
-		}
-		if (appId != null) {
-			appId = appId.trim();
-		} else {
-			LOG.warn("it is advised to use an appId");
-		}
-
-		/*
-		 * Decode the secret key.
-		 */
-		byte[] secretKey;
-		try {
-			secretKey = Hex.decodeHex(secret.toCharArray());
-		} catch (DecoderException e) {
-			LOG.error("secret is not hexadecimal encoded: " + e.getMessage());
-			throw new IllegalArgumentException("secret is not hexadecimal encoded");
-		}
-		if ((128 / 8) > secretKey.length) {
-			/*
-			 * 128 bit is seen as secure these days.
-			 */
-			LOG.warn("secret key is too short");
-			throw new IllegalArgumentException("secret key is too short");
-		}
-
-		/*
-		 * Construct the HMAC input sequence.
-		 */
-		String input = userId;
-		if (appId != null) {
-			input += appId;
-		}
-		if (orgId != null) {
-			input += orgId;
-		}
-		byte[] inputData = input.getBytes();
-
-		SecretKey macKey = new SecretKeySpec(secretKey, HMAC_ALGO);
-		Mac mac;
-		try {
-			mac = Mac.getInstance(macKey.getAlgorithm());
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException("HMAC algo not available: " + e.getMessage());
-		}
-		try {
-			mac.init(macKey);
-		} catch (InvalidKeyException e) {
-			LOG.error("invalid secret key: " + e.getMessage(), e);
-			throw new RuntimeException("invalid secret");
+		List<String> key = Arrays.asList(secret, orgId, appId);
+		CitizenIdentifierGenerator generator = GENERATORS.get(key);
+		if (generator == null) {
+			generator = new CitizenIdentifierGenerator(secret, orgId, appId);
+			if (GENERATORS.size() >= MAXIMUM_GENERATORS) {
+				GENERATORS.clear();
+			}
+			GENERATORS.put(key, generator);
 		}
-		mac.update(inputData);
-		byte[] resultHMac = mac.doFinal();
-		return new String(Hex.encodeHex(resultHMac)).toUpperCase();
+		return generator.generate(userId);
 	}
 }
@@ -0,0 +1,97 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual threads of Java 21 and later. The eID Server is built
+ * for Java 8, so the virtual thread API is looked up at runtime. On older
+ * runtimes virtual threads are simply not supported.
+ */
+public final class VirtualThreads {
+
+	private static final Log LOG = LogFactory.getLog(VirtualThreads.class);
+
+	private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+	private static final MethodHandle IS_VIRTUAL;
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		MethodHandle newExecutor = null;
+		MethodHandle isVirtual = null;
+		try {
+			newExecutor = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+					MethodType.methodType(ExecutorService.class));
+			isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			LOG.debug("virtual threads not supported by this Java runtime");
+		}
+		NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newExecutor;
+		IS_VIRTUAL = isVirtual;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Checks whether the Java runtime supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * Checks whether the given thread is a virtual thread.
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return (boolean) IS_VIRTUAL.invokeExact(thread);
+		} catch (Throwable e) {
+			throw new IllegalStateException("could not check thread: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for every task.
+	 *
+	 * @throws UnsupportedOperationException in case the Java runtime does not
+	 *                                       support virtual threads.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+			throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+		}
+		try {
+			return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("could not create virtual thread executor: " + e.getMessage(), e);
+		}
+	}
+}
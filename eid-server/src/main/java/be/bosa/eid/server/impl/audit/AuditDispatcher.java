@@ -0,0 +1,457 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl.audit;
+
+import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.spi.AuditService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Dispatcher of audit events to the configured {@link AuditService}.
+ * <p>
+ * Per default the audit service is invoked synchronously, within the request
+ * thread. By setting the <code>init-param</code> <code>AuditServiceAsync</code>
+ * to <code>true</code> the audit events are put on a bounded lock-free queue
+ * instead (<code>AuditServiceQueueSize</code>) and handed to the audit service
+ * in batches (<code>AuditServiceBatchSize</code>) by a background thread. What
+ * happens when the queue is full is determined by
+ * <code>AuditServiceOverflowPolicy</code>, see {@link OverflowPolicy}.
+ * </p>
+ */
+public class AuditDispatcher implements AuditService {
+
+	private static final Log LOG = LogFactory.getLog(AuditDispatcher.class);
+
+	public static final String ASYNC_INIT_PARAM_SUFFIX = "Async";
+	public static final String QUEUE_SIZE_INIT_PARAM_SUFFIX = "QueueSize";
+	public static final String BATCH_SIZE_INIT_PARAM_SUFFIX = "BatchSize";
+	public static final String OVERFLOW_POLICY_INIT_PARAM_SUFFIX = "OverflowPolicy";
+	public static final String SPILL_DIRECTORY_INIT_PARAM_SUFFIX = "SpillDirectory";
+
+	public static final int DEFAULT_QUEUE_SIZE = 4096;
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * What to do with an audit event when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The request thread waits until there is room in the queue. This is
+		 * the default.
+		 */
+		BLOCK,
+		/**
+		 * The oldest queued event is dropped to make room.
+		 */
+		DROP_OLDEST,
+		/**
+		 * The event is appended to a file in
+		 * <code>AuditServiceSpillDirectory</code>, which is required, and
+		 * dispatched once the queue has been drained. The file is only
+		 * readable by the owner, and events left behind by a crash are
+		 * dispatched at the next start.
+		 */
+		SPILL_TO_DISK
+	}
+
+	private final ServiceLocator<AuditService> auditServiceLocator;
+
+	private final boolean async;
+
+	private final int batchSize;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final AuditEventRingBuffer queue;
+
+	private final Path spillFile;
+
+	/*
+	 * Spilling writes to disk on the request thread, a monitor would pin a
+	 * virtual thread to its carrier thread meanwhile.
+	 */
+	private final Lock spillLock = new ReentrantLock();
+
+	private BufferedWriter spillWriter;
+
+	private final AtomicLong pendingSpillCount = new AtomicLong();
+
+	private final Thread dispatchThread;
+
+	private volatile boolean running;
+
+	private volatile boolean dispatchThreadWaiting;
+
+	private final AtomicLong dispatchedCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicLong spilledCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	public AuditDispatcher(String initParam, ServletConfig config) {
+		this(new ServiceLocator<>(initParam, config), initParam, config.getServletName(), config::getInitParameter);
+	}
+
+	/**
+	 * @param name distinguishes the spill files of the dispatchers sharing a
+	 *             spill directory, typically the servlet name.
+	 */
+	AuditDispatcher(ServiceLocator<AuditService> auditServiceLocator, String initParam, String name,
+					Function<String, String> initParameters) {
+		this.auditServiceLocator = auditServiceLocator;
+		this.async = Boolean.parseBoolean(initParameters.apply(initParam + ASYNC_INIT_PARAM_SUFFIX));
+
+		String queueSize = initParameters.apply(initParam + QUEUE_SIZE_INIT_PARAM_SUFFIX);
+		String batchSize = initParameters.apply(initParam + BATCH_SIZE_INIT_PARAM_SUFFIX);
+		this.batchSize = batchSize != null ? Integer.parseInt(batchSize.trim()) : DEFAULT_BATCH_SIZE;
+		if (this.batchSize < 1) {
+			throw new IllegalArgumentException("invalid batch size for " + initParam + ": " + this.batchSize);
+		}
+
+		String overflowPolicy = initParameters.apply(initParam + OVERFLOW_POLICY_INIT_PARAM_SUFFIX);
+		this.overflowPolicy = overflowPolicy != null ? OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase())
+				: OverflowPolicy.BLOCK;
+
+		/*
+		 * The audit events contain personal data, so they are never spilled to
+		 * a shared temporary directory. The file name is stable, so the events
+		 * spilled before a crash are found again.
+		 */
+		String spillDirectory = initParameters.apply(initParam + SPILL_DIRECTORY_INIT_PARAM_SUFFIX);
+		if (this.async && this.overflowPolicy == OverflowPolicy.SPILL_TO_DISK && spillDirectory == null) {
+			throw new IllegalArgumentException(OverflowPolicy.SPILL_TO_DISK + " requires " + initParam
+					+ SPILL_DIRECTORY_INIT_PARAM_SUFFIX);
+		}
+		this.spillFile = spillDirectory != null
+				? new File(spillDirectory.trim(), getSpillFileName(name, initParam)).toPath() : null;
+		if (this.spillFile != null && Files.exists(this.spillFile)) {
+			LOG.warn("found spilled audit events of a previous run: " + this.spillFile);
+			this.pendingSpillCount.set(countSpilledEvents());
+		}
+
+		if (!this.async) {
+			this.queue = null;
+			this.dispatchThread = null;
+			if (this.pendingSpillCount.get() > 0) {
+				List<AuditEvent> events = new ArrayList<>();
+				readSpillFile(events);
+				dispatch(events);
+			}
+			return;
+		}
+
+		this.queue = new AuditEventRingBuffer(queueSize != null ? Integer.parseInt(queueSize.trim()) : DEFAULT_QUEUE_SIZE);
+		this.running = true;
+		this.dispatchThread = new Thread(this::dispatchLoop, "eid-audit-dispatcher");
+		this.dispatchThread.setDaemon(true);
+		this.dispatchThread.start();
+		LOG.debug("asynchronous audit, queue size: " + this.queue.capacity() + ", batch size: " + this.batchSize
+				+ ", overflow policy: " + this.overflowPolicy);
+	}
+
+	/**
+	 * Gives back the audit service to report to, or <code>null</code> in case
+	 * no audit service has been configured. In asynchronous mode this is the
+	 * dispatcher itself.
+	 */
+	public AuditService getAuditService() throws ServletException {
+		if (!this.async) {
+			return this.auditServiceLocator.locateService();
+		}
+		return this.auditServiceLocator.isConfigured() ? this : null;
+	}
+
+	@Override
+	public void authenticated(String userId) {
+		enqueue(new AuditEvent(AuditEvent.Type.AUTHENTICATED, userId, null));
+	}
+
+	@Override
+	public void identified(String userId) {
+		enqueue(new AuditEvent(AuditEvent.Type.IDENTIFIED, userId, null));
+	}
+
+	@Override
+	public void authenticationError(String remoteAddress, X509Certificate clientCertificate) {
+		enqueue(new AuditEvent(AuditEvent.Type.AUTHENTICATION_ERROR, remoteAddress, clientCertificate));
+	}
+
+	@Override
+	public void identityIntegrityError(String remoteAddress) {
+		enqueue(new AuditEvent(AuditEvent.Type.IDENTITY_INTEGRITY_ERROR, remoteAddress, null));
+	}
+
+	@Override
+	public void signatureError(String remoteAddress, X509Certificate clientCertificate) {
+		enqueue(new AuditEvent(AuditEvent.Type.SIGNATURE_ERROR, remoteAddress, clientCertificate));
+	}
+
+	@Override
+	public void signed(String userId) {
+		enqueue(new AuditEvent(AuditEvent.Type.SIGNED, userId, null));
+	}
+
+	private void enqueue(AuditEvent event) {
+		if (!this.running) {
+			LOG.warn("audit dispatcher closed, dispatching synchronously");
+			List<AuditEvent> events = new ArrayList<>(1);
+			events.add(event);
+			dispatch(events);
+			return;
+		}
+
+		while (!this.queue.offer(event)) {
+			switch (this.overflowPolicy) {
+				case DROP_OLDEST:
+					if (this.queue.poll() != null) {
+						this.droppedCount.incrementAndGet();
+						LOG.warn("audit queue full, dropped oldest event");
+					}
+					break;
+				case SPILL_TO_DISK:
+					spill(event);
+					wakeUpDispatchThread();
+					return;
+				default:
+					LockSupport.parkNanos(FULL_PARK_NANOS);
+			}
+		}
+		wakeUpDispatchThread();
+	}
+
+	private void wakeUpDispatchThread() {
+		if (this.dispatchThreadWaiting) {
+			LockSupport.unpark(this.dispatchThread);
+		}
+	}
+
+	private void dispatchLoop() {
+		List<AuditEvent> batch = new ArrayList<>(this.batchSize);
+		while (this.running || this.queue.size() > 0) {
+			AuditEvent event;
+			while (batch.size() < this.batchSize && (event = this.queue.poll()) != null) {
+				batch.add(event);
+			}
+			if (batch.isEmpty() && this.pendingSpillCount.get() > 0) {
+				readSpillFile(batch);
+			}
+			if (batch.isEmpty()) {
+				this.dispatchThreadWaiting = true;
+				if (this.running && this.queue.size() == 0) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				}
+				this.dispatchThreadWaiting = false;
+				continue;
+			}
+			dispatch(batch);
+			batch.clear();
+		}
+	}
+
+	private void dispatch(List<AuditEvent> events) {
+		AuditService auditService;
+		try {
+			auditService = this.auditServiceLocator.locateService();
+		} catch (ServletException | RuntimeException e) {
+			LOG.error("audit service error, lost " + events.size() + " audit events: " + e.getMessage(), e);
+			this.failedCount.addAndGet(events.size());
+			return;
+		}
+		if (auditService == null) {
+			this.failedCount.addAndGet(events.size());
+			return;
+		}
+		for (AuditEvent event : events) {
+			try {
+				event.dispatch(auditService);
+				this.dispatchedCount.incrementAndGet();
+			} catch (RuntimeException e) {
+				LOG.error("audit service error: " + e.getMessage(), e);
+				this.failedCount.incrementAndGet();
+			}
+		}
+	}
+
+	private static String getSpillFileName(String name, String initParam) {
+		String fileName = (name != null ? name + "-" : "") + initParam;
+		return "eid-audit-" + fileName.replaceAll("[^A-Za-z0-9._-]", "_") + ".spill";
+	}
+
+	private long countSpilledEvents() {
+		try (Stream<String> lines = Files.lines(this.spillFile, StandardCharsets.UTF_8)) {
+			return Math.max(1, lines.count());
+		} catch (IOException e) {
+			LOG.error("could not read spilled audit events: " + e.getMessage(), e);
+			return 1;
+		}
+	}
+
+	/**
+	 * Creates the spill file, only accessible by the owner.
+	 */
+	private void createSpillFile() throws IOException {
+		if (Files.exists(this.spillFile)) {
+			return;
+		}
+		try {
+			Files.createFile(this.spillFile,
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			Files.createFile(this.spillFile);
+			File file = this.spillFile.toFile();
+			boolean restricted = file.setReadable(false, false) && file.setWritable(false, false)
+					&& file.setReadable(true, true) && file.setWritable(true, true);
+			if (!restricted) {
+				LOG.warn("could not restrict access to audit spill file: " + this.spillFile);
+			}
+		}
+	}
+
+	private void spill(AuditEvent event) {
+		this.spillLock.lock();
+		try {
+			try {
+				if (this.spillWriter == null) {
+					createSpillFile();
+					this.spillWriter = Files.newBufferedWriter(this.spillFile, StandardCharsets.UTF_8,
+							StandardOpenOption.APPEND);
+				}
+				this.spillWriter.write(event.serialize());
+				this.spillWriter.newLine();
+				this.spillWriter.flush();
+				this.pendingSpillCount.incrementAndGet();
+				this.spilledCount.incrementAndGet();
+			} catch (Exception e) {
+				LOG.error("could not spill audit event, dropped: " + e.getMessage(), e);
+				this.droppedCount.incrementAndGet();
+			}
+		} finally {
+			this.spillLock.unlock();
+		}
+	}
+
+	private void readSpillFile(List<AuditEvent> events) {
+		List<String> lines;
+		this.spillLock.lock();
+		try {
+			try {
+				if (this.spillWriter != null) {
+					this.spillWriter.close();
+					this.spillWriter = null;
+				}
+				lines = Files.readAllLines(this.spillFile, StandardCharsets.UTF_8);
+				Files.delete(this.spillFile);
+			} catch (IOException e) {
+				LOG.error("could not read spilled audit events: " + e.getMessage(), e);
+				this.failedCount.addAndGet(this.pendingSpillCount.getAndSet(0));
+				return;
+			}
+			this.pendingSpillCount.set(0);
+		} finally {
+			this.spillLock.unlock();
+		}
+		for (String line : lines) {
+			try {
+				events.add(AuditEvent.deserialize(line));
+			} catch (Exception e) {
+				LOG.error("invalid spilled audit event: " + e.getMessage(), e);
+				this.failedCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Stops the background thread, after dispatching the queued events.
+	 */
+	public void close() {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		LockSupport.unpark(this.dispatchThread);
+		try {
+			this.dispatchThread.join(CLOSE_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.pendingSpillCount.get() > 0) {
+			List<AuditEvent> events = new ArrayList<>();
+			readSpillFile(events);
+			dispatch(events);
+		}
+	}
+
+	public boolean isAsync() {
+		return this.async;
+	}
+
+	/**
+	 * Gives back the number of audit events waiting in the queue.
+	 */
+	public int getQueueDepth() {
+		return this.queue != null ? this.queue.size() : 0;
+	}
+
+	public int getQueueCapacity() {
+		return this.queue != null ? this.queue.capacity() : 0;
+	}
+
+	public long getDispatchedCount() {
+		return this.dispatchedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return this.droppedCount.get();
+	}
+
+	public long getSpilledCount() {
+		return this.spilledCount.get();
+	}
+
+	public long getFailedCount() {
+		return this.failedCount.get();
+	}
+}
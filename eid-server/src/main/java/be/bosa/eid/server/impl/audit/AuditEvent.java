@@ -0,0 +1,100 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl.audit;
+
+import be.bosa.eid.client_server.shared.message.CertificateCache;
+import be.bosa.eid.server.spi.AuditService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+
+/**
+ * An audit event, waiting to be dispatched to the audit service.
+ */
+final class AuditEvent {
+
+	enum Type {
+		AUTHENTICATED, IDENTIFIED, AUTHENTICATION_ERROR, IDENTITY_INTEGRITY_ERROR, SIGNATURE_ERROR, SIGNED
+	}
+
+	private static final String NONE = "-";
+
+	private final Type type;
+
+	/**
+	 * The user identifier or the remote address, depending on the type.
+	 */
+	private final String value;
+
+	private final X509Certificate certificate;
+
+	AuditEvent(Type type, String value, X509Certificate certificate) {
+		this.type = type;
+		this.value = value;
+		this.certificate = certificate;
+	}
+
+	void dispatch(AuditService auditService) {
+		switch (this.type) {
+			case AUTHENTICATED:
+				auditService.authenticated(this.value);
+				break;
+			case IDENTIFIED:
+				auditService.identified(this.value);
+				break;
+			case AUTHENTICATION_ERROR:
+				auditService.authenticationError(this.value, this.certificate);
+				break;
+			case IDENTITY_INTEGRITY_ERROR:
+				auditService.identityIntegrityError(this.value);
+				break;
+			case SIGNATURE_ERROR:
+				auditService.signatureError(this.value, this.certificate);
+				break;
+			case SIGNED:
+				auditService.signed(this.value);
+				break;
+		}
+	}
+
+	/**
+	 * Gives back the event as a single line of text.
+	 */
+	String serialize() throws CertificateEncodingException {
+		Base64.Encoder encoder = Base64.getEncoder();
+		String value = this.value != null ? encoder.encodeToString(this.value.getBytes(StandardCharsets.UTF_8)) : NONE;
+		String certificate = this.certificate != null ? encoder.encodeToString(this.certificate.getEncoded()) : NONE;
+		return this.type.name() + '\t' + value + '\t' + certificate;
+	}
+
+	static AuditEvent deserialize(String line) throws CertificateException {
+		String[] fields = line.split("\t");
+		if (fields.length != 3) {
+			throw new IllegalArgumentException("invalid audit event: " + line);
+		}
+		Base64.Decoder decoder = Base64.getDecoder();
+		Type type = Type.valueOf(fields[0]);
+		String value = NONE.equals(fields[1]) ? null : new String(decoder.decode(fields[1]), StandardCharsets.UTF_8);
+		X509Certificate certificate = NONE.equals(fields[2]) ? null
+				: CertificateCache.getInstance().getCertificate(decoder.decode(fields[2]));
+		return new AuditEvent(type, value, certificate);
+	}
+}
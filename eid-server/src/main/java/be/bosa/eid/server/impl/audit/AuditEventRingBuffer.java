@@ -0,0 +1,112 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer/multi-consumer ring buffer for audit events.
+ * Every slot carries a sequence number that tells producers and consumers
+ * whether the slot is free or filled for their position.
+ */
+final class AuditEventRingBuffer {
+
+	private final AtomicReferenceArray<AuditEvent> events;
+
+	private final AtomicLongArray sequences;
+
+	private final int mask;
+
+	private final AtomicLong head = new AtomicLong();
+
+	private final AtomicLong tail = new AtomicLong();
+
+	AuditEventRingBuffer(int requestedCapacity) {
+		if (requestedCapacity < 2) {
+			throw new IllegalArgumentException("capacity should be at least 2");
+		}
+		int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+		this.events = new AtomicReferenceArray<>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int idx = 0; idx < capacity; idx++) {
+			this.sequences.set(idx, idx);
+		}
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Adds the event, unless the buffer is full.
+	 *
+	 * @return <code>false</code> in case the buffer is full.
+	 */
+	boolean offer(AuditEvent event) {
+		long position = this.tail.get();
+		while (true) {
+			int idx = (int) (position & this.mask);
+			long difference = this.sequences.get(idx) - position;
+			if (difference == 0) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					this.events.set(idx, event);
+					this.sequences.set(idx, position + 1);
+					return true;
+				}
+				position = this.tail.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = this.tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest event.
+	 *
+	 * @return the oldest event, or <code>null</code> in case the buffer is empty.
+	 */
+	AuditEvent poll() {
+		long position = this.head.get();
+		while (true) {
+			int idx = (int) (position & this.mask);
+			long difference = this.sequences.get(idx) - (position + 1);
+			if (difference == 0) {
+				if (this.head.compareAndSet(position, position + 1)) {
+					AuditEvent event = this.events.getAndSet(idx, null);
+					this.sequences.set(idx, position + this.mask + 1);
+					return event;
+				}
+				position = this.head.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = this.head.get();
+			}
+		}
+	}
+
+	int size() {
+		long size = this.tail.get() - this.head.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+
+	int capacity() {
+		return this.mask + 1;
+	}
+}
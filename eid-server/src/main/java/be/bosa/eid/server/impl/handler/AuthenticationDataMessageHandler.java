@@ -26,9 +26,14 @@ import be.bosa.eid.server.Address;
 import be.bosa.eid.server.Identity;
 import be.bosa.eid.server.impl.AuthenticationChallenge;
 import be.bosa.eid.server.impl.AuthenticationSignatureContextImpl;
+import be.bosa.eid.server.impl.CertificateValidationCache;
+import be.bosa.eid.server.impl.CitizenIdentifierGenerator;
+import be.bosa.eid.server.impl.CryptoPool;
 import be.bosa.eid.server.impl.RequestContext;
 import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.StatelessChallengeCodec;
 import be.bosa.eid.server.impl.UserIdentifierUtil;
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
 import be.bosa.eid.server.impl.tlv.TlvParser;
 import be.bosa.eid.server.spi.AddressDTO;
 import be.bosa.eid.server.spi.AuditService;
@@ -62,6 +67,7 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -73,6 +79,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -94,8 +101,11 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 	@InitParam(AuthenticationDataMessageHandler.AUTHN_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<AuthenticationService> authenticationServiceLocator;
 
+	@InitParam(AuthenticationDataMessageHandler.AUTHN_SERVICE_INIT_PARAM_NAME)
+	private CertificateValidationCache authenticationValidationCache;
+
 	@InitParam(AuthenticationDataMessageHandler.AUDIT_SERVICE_INIT_PARAM_NAME)
-	private ServiceLocator<AuditService> auditServiceLocator;
+	private AuditDispatcher auditDispatcher;
 
 	@InitParam(HelloMessageHandler.CHANNEL_BINDING_SERVICE)
 	private ServiceLocator<ChannelBindingService> channelBindingServiceLocator;
@@ -109,6 +119,8 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 	@InitParam(CHALLENGE_MAX_MATURITY_INIT_PARAM_NAME)
 	private Long maxMaturity;
 
+	private StatelessChallengeCodec statelessChallengeCodec;
+
 	private X509Certificate serverCertificate;
 
 	@InitParam(HelloMessageHandler.SESSION_ID_CHANNEL_BINDING_INIT_PARAM_NAME)
@@ -131,9 +143,14 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 	@InitParam(NRCID_APP_ID_INIT_PARAM_NAME)
 	private String nrcidAppId;
 
+	private CitizenIdentifierGenerator citizenIdentifierGenerator;
+
 	@InitParam(HelloMessageHandler.IDENTITY_INTEGRITY_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<IdentityIntegrityService> identityIntegrityServiceLocator;
 
+	@InitParam(HelloMessageHandler.IDENTITY_INTEGRITY_SERVICE_INIT_PARAM_NAME)
+	private CertificateValidationCache identityIntegrityValidationCache;
+
 	@InitParam(AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<AuthenticationSignatureService> authenticationSignatureServiceLocator;
 
@@ -175,9 +192,10 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 
 		byte[] challenge;
 		try {
-			challenge = AuthenticationChallenge.getAuthnChallenge(session, this.maxMaturity);
+			challenge = AuthenticationChallenge.getAuthnChallenge(session, this.maxMaturity,
+					getEchoedChallenge(message), this.statelessChallengeCodec);
 		} catch (SecurityException e) {
-			AuditService auditService = this.auditServiceLocator.locateService();
+			AuditService auditService = this.auditDispatcher.getAuditService();
 			if (auditService != null) {
 				String remoteAddress = request.getRemoteAddr();
 				auditService.authenticationError(remoteAddress, message.authnCert);
@@ -204,11 +222,11 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 		byte[] toBeSigned = authenticationContract.calculateToBeSigned();
 
 		try {
-			Signature signature = Signature.getInstance("SHA256withRSA");
+			Signature signature = CryptoPool.getInstance().getSignature("SHA256withRSA");
 			signature.initVerify(signingKey);
 			signature.update(toBeSigned);
 			if (!signature.verify(signatureValue)) {
-				AuditService auditService = this.auditServiceLocator.locateService();
+				AuditService auditService = this.auditDispatcher.getAuditService();
 				if (auditService != null) {
 					String remoteAddress = request.getRemoteAddr();
 					auditService.authenticationError(remoteAddress, message.authnCert);
@@ -232,7 +250,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 				throw new SecurityException("missing TransactionMessage signature");
 			}
 			try {
-				Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+				Cipher cipher = CryptoPool.getInstance().getCipher("RSA/ECB/PKCS1Padding");
 				cipher.init(Cipher.DECRYPT_MODE, signingKey);
 				byte[] signatureDigestInfoValue = cipher.doFinal(transactionMessageSignature);
 				ASN1InputStream aIn = new ASN1InputStream(signatureDigestInfoValue);
@@ -246,7 +264,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 				LOG.debug("TransactionMessage signature validated");
 			} catch (GeneralSecurityException | IOException e) {
 				LOG.error("error verifying TransactionMessage signature", e);
-				AuditService auditService = this.auditServiceLocator.locateService();
+				AuditService auditService = this.auditDispatcher.getAuditService();
 				if (auditService != null) {
 					String remoteAddress = request.getRemoteAddr();
 					auditService.authenticationError(remoteAddress, message.authnCert);
@@ -264,7 +282,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 				LOG.warn("could not verify secure channel binding as the server does not know its identity yet");
 			} else {
 				if (!serverCertificate.equals(message.serverCertificate)) {
-					AuditService auditService = this.auditServiceLocator.locateService();
+					AuditService auditService = this.auditDispatcher.getAuditService();
 					if (auditService != null) {
 						String remoteAddress = request.getRemoteAddr();
 						auditService.authenticationError(remoteAddress, message.authnCert);
@@ -276,7 +294,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 		} else {
 			if (this.serverCertificate != null) {
 				if (!this.serverCertificate.equals(message.serverCertificate)) {
-					AuditService auditService = this.auditServiceLocator.locateService();
+					AuditService auditService = this.auditDispatcher.getAuditService();
 					if (auditService != null) {
 						String remoteAddress = request.getRemoteAddr();
 						auditService.authenticationError(remoteAddress, message.authnCert);
@@ -287,7 +305,8 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 			}
 		}
 
-		AuthenticationService authenticationService = this.authenticationServiceLocator.locateService();
+		AuthenticationService authenticationService = this.authenticationValidationCache
+				.decorate(this.authenticationServiceLocator.locateService());
 		List<X509Certificate> certificateChain = new LinkedList<>();
 		certificateChain.add(message.authnCert);
 		certificateChain.add(message.citizenCaCert);
@@ -329,7 +348,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 		session.setAttribute(AUTHENTICATED_USER_IDENTIFIER_SESSION_ATTRIBUTE, userId);
 		identityConsumer.ifPresent(service -> service.setUserId(requestId, userId));
 
-		AuditService auditService = this.auditServiceLocator.locateService();
+		AuditService auditService = this.auditDispatcher.getAuditService();
 		if (auditService != null) {
 			auditService.authenticated(userId);
 		}
@@ -357,7 +376,8 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 				throw new ServletException("photo data not included while requested");
 			}
 		}
-		IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator.locateService();
+		IdentityIntegrityService identityIntegrityService = this.identityIntegrityValidationCache
+				.decorate(this.identityIntegrityServiceLocator.locateService());
 		if (identityIntegrityService != null) {
 			if (message.rrnCertificate == null) {
 				throw new ServletException("national registry certificate not included while requested");
@@ -392,7 +412,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 				if (message.addressSignatureData == null) {
 					throw new ServletException("address signature data not included while requested");
 				}
-				byte[] addressFile = Util.trimRight(message.addressData);
+				ByteBuffer addressFile = Util.trimRight(message.addressData);
 				verifySignature(message.rrnCertificate.getSigAlgName(), message.addressSignatureData, rrnPublicKey,
 						request, addressFile, message.identitySignatureData);
 			}
@@ -406,7 +426,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 
 			identityConsumer.ifPresent(service -> service.setIdentity(requestId, Util.map(identity, IdentityDTO.class)));
 
-			auditService = this.auditServiceLocator.locateService();
+			auditService = this.auditDispatcher.getAuditService();
 			if (auditService != null) {
 				auditService.identified(identity.nationalNumber);
 			}
@@ -416,7 +436,7 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 			identityConsumer.ifPresent(service -> service.setAddress(requestId, Util.map(address, AddressDTO.class)));
 		}
 		if (includePhoto) {
-			identityConsumer.ifPresent(service -> service.setPhoto(requestId, message.photoData));
+			identityConsumer.ifPresent(service -> service.setPhoto(requestId, Util.toByteArray(message.photoData)));
 		}
 		if (includeCertificates) {
 			identityConsumer.ifPresent(service -> service.setCertificates(requestId, message.authnCert, message.signCert, message.citizenCaCert, message.rootCaCert));
@@ -451,8 +471,8 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 	private String getUserId(HttpServletRequest request, AuthenticationDataMessage message) {
 		String userId = UserIdentifierUtil.getUserId(message.authnCert);
 		LOG.info("authenticated: " + userId + " @ " + request.getRemoteAddr());
-		if (this.nrcidSecret != null) {
-			userId = UserIdentifierUtil.getNonReversibleCitizenIdentifier(userId, this.nrcidOrgId, this.nrcidAppId, this.nrcidSecret);
+		if (this.citizenIdentifierGenerator != null) {
+			userId = this.citizenIdentifierGenerator.generate(userId);
 		}
 		return userId;
 	}
@@ -483,11 +503,11 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 		throw new SecurityException("error checking the NRN certificate: " + e.getMessage(), e);
 	}
 
-	private void verifySignature(String signatureAlgo, byte[] signatureData, PublicKey publicKey,
-								 HttpServletRequest request, byte[]... data) throws ServletException {
+	private void verifySignature(String signatureAlgo, ByteBuffer signatureData, PublicKey publicKey,
+								 HttpServletRequest request, ByteBuffer... data) throws ServletException {
 		Signature signature;
 		try {
-			signature = Signature.getInstance(signatureAlgo);
+			signature = CryptoPool.getInstance().getSignature(signatureAlgo);
 		} catch (NoSuchAlgorithmException e) {
 			throw new ServletException("algo error: " + e.getMessage(), e);
 		}
@@ -497,12 +517,13 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 			throw new ServletException("key error: " + e.getMessage(), e);
 		}
 		try {
-			for (byte[] dataItem : data) {
-				signature.update(dataItem);
+			for (ByteBuffer dataItem : data) {
+				signature.update(dataItem.duplicate());
 			}
 
-			if (!signature.verify(signatureData)) {
-				AuditService auditService = this.auditServiceLocator.locateService();
+			if (!signature.verify(signatureData.array(), signatureData.arrayOffset() + signatureData.position(),
+					signatureData.remaining())) {
+				AuditService auditService = this.auditDispatcher.getAuditService();
 				if (auditService != null) {
 					String remoteAddress = request.getRemoteAddr();
 					auditService.identityIntegrityError(remoteAddress);
@@ -540,7 +561,28 @@ public class AuthenticationDataMessageHandler implements MessageHandler<Authenti
 		LOG.debug("SSL session identifier checked");
 	}
 
+	private static byte[] getEchoedChallenge(AuthenticationDataMessage message) {
+		if (message.challenge == null) {
+			return null;
+		}
+		try {
+			return Base64.getDecoder().decode(message.challenge);
+		} catch (IllegalArgumentException e) {
+			throw new SecurityException("invalid challenge encoding");
+		}
+	}
+
 	public void init(ServletConfig config) throws ServletException {
+		this.statelessChallengeCodec = StatelessChallengeCodec.getInstance(config);
+		if (this.nrcidSecret != null) {
+			try {
+				this.citizenIdentifierGenerator = new CitizenIdentifierGenerator(this.nrcidSecret, this.nrcidOrgId,
+						this.nrcidAppId);
+			} catch (IllegalArgumentException e) {
+				throw new ServletException("invalid " + NRCID_SECRET_INIT_PARAM_NAME + ": " + e.getMessage(), e);
+			}
+		}
+
 		String channelBindingServerCertificate = config
 				.getInitParameter(HelloMessageHandler.CHANNEL_BINDING_SERVER_CERTIFICATE);
 		if (channelBindingServerCertificate != null) {
@@ -30,6 +30,7 @@ import be.bosa.eid.client_server.shared.message.SignRequestMessage;
 import be.bosa.eid.server.impl.AuthenticationChallenge;
 import be.bosa.eid.server.impl.RequestContext;
 import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.StatelessChallengeCodec;
 import be.bosa.eid.server.spi.AuthenticationService;
 import be.bosa.eid.server.spi.AuthorizationException;
 import be.bosa.eid.server.spi.DigestInfo;
@@ -110,6 +111,8 @@ public class ClientEnvironmentMessageHandler implements MessageHandler<ClientEnv
 
 	private boolean serverCertificateChannelBinding;
 
+	private StatelessChallengeCodec statelessChallengeCodec;
+
 	@InitParam(HelloMessageHandler.REQUIRE_SECURE_READER_INIT_PARAM_NAME)
 	private boolean requireSecureReader;
 
@@ -129,15 +132,11 @@ public class ClientEnvironmentMessageHandler implements MessageHandler<ClientEnv
 			throw new ServletException("no secure client env service configured");
 		}
 
-		String remoteAddress = request.getRemoteAddr();
-		Integer sslKeySize = (Integer) request.getAttribute("javax.servlet.request.key_size");
-		String userAgent = httpHeaders.get("user-agent");
-		String sslCipherSuite = (String) request.getAttribute("javax.servlet.request.cipher_suite");
-		try {
-			secureClientEnvService.checkSecureClientEnvironment(message.javaVersion, message.javaVendor, message.osName,
-					message.osArch, message.osVersion, userAgent, remoteAddress, sslKeySize, sslCipherSuite);
-		} catch (InsecureClientEnvironmentException e) {
-			return new InsecureClientMessage(e.isWarnOnly());
+		InsecureClientMessage insecureClientMessage = checkSecureClientEnvironment(secureClientEnvService,
+				message.javaVersion, message.javaVendor, message.osName, message.osArch, message.osVersion, httpHeaders,
+				request);
+		if (insecureClientMessage != null) {
+			return insecureClientMessage;
 		}
 
 		if (this.changePin || this.unblockPin) {
@@ -206,7 +205,7 @@ public class ClientEnvironmentMessageHandler implements MessageHandler<ClientEnv
 
 		AuthenticationService authenticationService = this.authenticationServiceLocator.locateService();
 		if (authenticationService != null) {
-			byte[] challenge = AuthenticationChallenge.generateChallenge(session);
+			byte[] challenge = AuthenticationChallenge.generateChallenge(session, this.statelessChallengeCodec);
 			IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator.locateService();
 			boolean includeIntegrityData = identityIntegrityService != null;
 			boolean includeIdentity;
@@ -289,7 +288,32 @@ public class ClientEnvironmentMessageHandler implements MessageHandler<ClientEnv
 		}
 	}
 
+	/**
+	 * Runs the client environment check, also for the environment carried by a
+	 * hello message.
+	 *
+	 * @return the message to answer with when the client environment is
+	 * insecure, <code>null</code> otherwise.
+	 */
+	static InsecureClientMessage checkSecureClientEnvironment(SecureClientEnvironmentService secureClientEnvService,
+			String javaVersion, String javaVendor, String osName, String osArch, String osVersion,
+			Map<String, String> httpHeaders, HttpServletRequest request) {
+		String remoteAddress = request.getRemoteAddr();
+		Integer sslKeySize = (Integer) request.getAttribute("javax.servlet.request.key_size");
+		String userAgent = httpHeaders.get("user-agent");
+		String sslCipherSuite = (String) request.getAttribute("javax.servlet.request.cipher_suite");
+		try {
+			secureClientEnvService.checkSecureClientEnvironment(javaVersion, javaVendor, osName, osArch, osVersion,
+					userAgent, remoteAddress, sslKeySize, sslCipherSuite);
+		} catch (InsecureClientEnvironmentException e) {
+			return new InsecureClientMessage(e.isWarnOnly());
+		}
+		return null;
+	}
+
 	public void init(ServletConfig config) {
+		this.statelessChallengeCodec = StatelessChallengeCodec.getInstance(config);
+
 		SecureRandom secureRandom = new SecureRandom();
 		secureRandom.setSeed(System.currentTimeMillis());
 
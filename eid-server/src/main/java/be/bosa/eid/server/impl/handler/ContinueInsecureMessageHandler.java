@@ -28,6 +28,7 @@ import be.bosa.eid.client_server.shared.message.SignRequestMessage;
 import be.bosa.eid.server.impl.AuthenticationChallenge;
 import be.bosa.eid.server.impl.RequestContext;
 import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.StatelessChallengeCodec;
 import be.bosa.eid.server.spi.AuthenticationService;
 import be.bosa.eid.server.spi.AuthorizationException;
 import be.bosa.eid.server.spi.DigestInfo;
@@ -103,6 +104,8 @@ public class ContinueInsecureMessageHandler implements MessageHandler<ContinueIn
 
 	private boolean serverCertificateChannelBinding;
 
+	private StatelessChallengeCodec statelessChallengeCodec;
+
 	@InitParam(HelloMessageHandler.REQUIRE_SECURE_READER_INIT_PARAM_NAME)
 	private boolean requireSecureReader;
 
@@ -157,7 +160,7 @@ public class ContinueInsecureMessageHandler implements MessageHandler<ContinueIn
 
 		AuthenticationService authenticationService = this.authenticationServiceLocator.locateService();
 		if (authenticationService != null) {
-			byte[] challenge = AuthenticationChallenge.generateChallenge(session);
+			byte[] challenge = AuthenticationChallenge.generateChallenge(session, this.statelessChallengeCodec);
 			IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator.locateService();
 			boolean includeIntegrityData = identityIntegrityService != null;
 			boolean includeIdentity;
@@ -240,6 +243,8 @@ public class ContinueInsecureMessageHandler implements MessageHandler<ContinueIn
 	}
 
 	public void init(ServletConfig config) {
+		this.statelessChallengeCodec = StatelessChallengeCodec.getInstance(config);
+
 		SecureRandom secureRandom = new SecureRandom();
 		secureRandom.setSeed(System.currentTimeMillis());
 
@@ -25,11 +25,13 @@ import be.bosa.eid.client_server.shared.message.FilesDigestRequestMessage;
 import be.bosa.eid.client_server.shared.message.FinishedMessage;
 import be.bosa.eid.client_server.shared.message.HelloMessage;
 import be.bosa.eid.client_server.shared.message.IdentificationRequestMessage;
+import be.bosa.eid.client_server.shared.message.InsecureClientMessage;
 import be.bosa.eid.client_server.shared.message.SignCertificatesRequestMessage;
 import be.bosa.eid.client_server.shared.message.SignRequestMessage;
 import be.bosa.eid.server.impl.AuthenticationChallenge;
 import be.bosa.eid.server.impl.RequestContext;
 import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.StatelessChallengeCodec;
 import be.bosa.eid.server.spi.AuthenticationService;
 import be.bosa.eid.server.spi.AuthorizationException;
 import be.bosa.eid.server.spi.DigestInfo;
@@ -119,6 +121,8 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 
 	private boolean serverCertificateChannelBinding;
 
+	private StatelessChallengeCodec statelessChallengeCodec;
+
 	@InitParam(REQUIRE_SECURE_READER_INIT_PARAM_NAME)
 	private boolean requireSecureReader;
 
@@ -151,7 +155,16 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 
 		SecureClientEnvironmentService secureClientEnvService = this.secureClientEnvServiceLocator.locateService();
 		if (secureClientEnvService != null) {
-			return new CheckClientMessage();
+			if (!hasClientEnvironment(message)) {
+				return new CheckClientMessage();
+			}
+			LOG.debug("checking the client environment of the hello message");
+			InsecureClientMessage insecureClientMessage = ClientEnvironmentMessageHandler
+					.checkSecureClientEnvironment(secureClientEnvService, message.javaVersion, message.javaVendor,
+							message.osName, message.osArch, message.osVersion, httpHeaders, request);
+			if (insecureClientMessage != null) {
+				return insecureClientMessage;
+			}
 		}
 
 		if (this.changePin || this.unblockPin) {
@@ -219,7 +232,7 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 
 		AuthenticationService authenticationService = this.authenticationServiceLocator.locateService();
 		if (authenticationService != null) {
-			byte[] challenge = AuthenticationChallenge.generateChallenge(session);
+			byte[] challenge = AuthenticationChallenge.generateChallenge(session, this.statelessChallengeCodec);
 			IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator.locateService();
 			boolean includeIntegrityData = null != identityIntegrityService;
 			boolean includeIdentity;
@@ -302,7 +315,12 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 				includeIntegrityData, includeCertificates, removeCard, identityDataUsage);
 	}
 
-	private static final String CLIENT_LANGUAGE_SESSION_ATTRIBUTE = HelloMessageHandler.class.getName() + ".clientLanguage";
+	private static boolean hasClientEnvironment(HelloMessage message) {
+		return message.javaVersion != null && message.javaVendor != null && message.osName != null
+				&& message.osArch != null && message.osVersion != null;
+	}
+
+	public static final String CLIENT_LANGUAGE_SESSION_ATTRIBUTE = HelloMessageHandler.class.getName() + ".clientLanguage";
 
 	public static final String REQUEST_ID_ATTRIBUTE = HelloMessageHandler.class.getName() + ".requestId";
 
@@ -316,6 +334,8 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 	}
 
 	public void init(ServletConfig config) {
+		this.statelessChallengeCodec = StatelessChallengeCodec.getInstance(config);
+
 		String hostname = config.getInitParameter(HOSTNAME_INIT_PARAM_NAME);
 		if (hostname != null) {
 			this.includeHostname = true;
@@ -17,13 +17,17 @@
 
 package be.bosa.eid.server.impl.handler;
 
+import be.bosa.eid.client_server.shared.message.CertificateCache;
 import be.bosa.eid.client_server.shared.message.ErrorCode;
 import be.bosa.eid.client_server.shared.message.FinishedMessage;
 import be.bosa.eid.client_server.shared.message.IdentityDataMessage;
 import be.bosa.eid.server.Address;
 import be.bosa.eid.server.Identity;
+import be.bosa.eid.server.impl.CertificateValidationCache;
+import be.bosa.eid.server.impl.CryptoPool;
 import be.bosa.eid.server.impl.RequestContext;
 import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
 import be.bosa.eid.server.impl.tlv.TlvParser;
 import be.bosa.eid.server.spi.AddressDTO;
 import be.bosa.eid.server.spi.AuditService;
@@ -42,7 +46,6 @@ import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
-import java.io.ByteArrayInputStream;
 import java.lang.reflect.Method;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
@@ -51,7 +54,6 @@ import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Date;
@@ -83,8 +85,11 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 	@InitParam(HelloMessageHandler.IDENTITY_INTEGRITY_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<IdentityIntegrityService> identityIntegrityServiceLocator;
 
+	@InitParam(HelloMessageHandler.IDENTITY_INTEGRITY_SERVICE_INIT_PARAM_NAME)
+	private CertificateValidationCache identityIntegrityValidationCache;
+
 	@InitParam(AuthenticationDataMessageHandler.AUDIT_SERVICE_INIT_PARAM_NAME)
-	private ServiceLocator<AuditService> auditServiceLocator;
+	private AuditDispatcher auditDispatcher;
 
 	@InitParam(HelloMessageHandler.IDENTITY_CONSUMER_INIT_PARAM_NAME)
 	private ServiceLocator<IdentityConsumerService> identityConsumerLocator;
@@ -130,7 +135,8 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 			throw new ServletException("authn cert not included while requested");
 		}
 
-		IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator.locateService();
+		IdentityIntegrityService identityIntegrityService = this.identityIntegrityValidationCache
+				.decorate(this.identityIntegrityServiceLocator.locateService());
 		if (identityIntegrityService != null) {
 			/*
 			 * First check if all required identity data is available.
@@ -258,7 +264,7 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 
 		}
 
-		AuditService auditService = this.auditServiceLocator.locateService();
+		AuditService auditService = this.auditDispatcher.getAuditService();
 		if (auditService != null) {
 			String userId = identity.nationalNumber;
 			auditService.identified(userId);
@@ -283,7 +289,7 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 								 byte[]... data) throws ServletException {
 		Signature signature;
 		try {
-			signature = Signature.getInstance(signAlgo);
+			signature = CryptoPool.getInstance().getSignature(signAlgo);
 		} catch (NoSuchAlgorithmException e) {
 			throw new ServletException("algo error: " + e.getMessage(), e);
 		}
@@ -298,7 +304,7 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 			}
 			boolean result = signature.verify(signatureData);
 			if (!result) {
-				AuditService auditService = this.auditServiceLocator.locateService();
+				AuditService auditService = this.auditDispatcher.getAuditService();
 				if (auditService != null) {
 					String remoteAddress = request.getRemoteAddr();
 					auditService.identityIntegrityError(remoteAddress);
@@ -306,7 +312,7 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 				throw new ServletException("signature incorrect");
 			}
 		} catch (SignatureException e) {
-			AuditService auditService = this.auditServiceLocator.locateService();
+			AuditService auditService = this.auditDispatcher.getAuditService();
 			if (auditService != null) {
 				String remoteAddress = request.getRemoteAddr();
 				auditService.identityIntegrityError(remoteAddress);
@@ -322,8 +328,7 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 	 */
 	private X509Certificate getCertificate(byte[] certFile) {
 		try {
-			CertificateFactory certificateFactory = CertificateFactory.getInstance("X509");
-			return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certFile));
+			return CertificateCache.getInstance().getCertificate(certFile);
 		} catch (CertificateException e) {
 			LOG.warn("certificate error: " + e.getMessage(), e);
 			LOG.debug("certificate size: " + certFile.length);
@@ -351,7 +356,7 @@ public class IdentityDataMessageHandler implements MessageHandler<IdentityDataMe
 	private byte[] digestPhoto(String digestAlgoName, byte[] photoFile) {
 		MessageDigest messageDigest;
 		try {
-			messageDigest = MessageDigest.getInstance(digestAlgoName);
+			messageDigest = CryptoPool.getInstance().getMessageDigest(digestAlgoName);
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException("digest error: " + e.getMessage(), e);
 		}
@@ -23,9 +23,11 @@ import be.bosa.eid.client_server.shared.message.SignCertificatesDataMessage;
 import be.bosa.eid.client_server.shared.message.SignRequestMessage;
 import be.bosa.eid.server.Address;
 import be.bosa.eid.server.Identity;
-import be.bosa.eid.server.dto.DTOMapper;
+import be.bosa.eid.server.impl.CertificateValidationCache;
+import be.bosa.eid.server.impl.CryptoPool;
 import be.bosa.eid.server.impl.RequestContext;
 import be.bosa.eid.server.impl.ServiceLocator;
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
 import be.bosa.eid.server.impl.tlv.TlvParser;
 import be.bosa.eid.server.spi.AddressDTO;
 import be.bosa.eid.server.spi.AuditService;
@@ -43,6 +45,7 @@ import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -80,8 +83,11 @@ public class SignCertificatesDataMessageHandler implements MessageHandler<SignCe
 	@InitParam(HelloMessageHandler.IDENTITY_INTEGRITY_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<IdentityIntegrityService> identityIntegrityServiceLocator;
 
+	@InitParam(HelloMessageHandler.IDENTITY_INTEGRITY_SERVICE_INIT_PARAM_NAME)
+	private CertificateValidationCache identityIntegrityValidationCache;
+
 	@InitParam(AuthenticationDataMessageHandler.AUDIT_SERVICE_INIT_PARAM_NAME)
-	private ServiceLocator<AuditService> auditServiceLocator;
+	private AuditDispatcher auditDispatcher;
 
 	@InitParam(HelloMessageHandler.IDENTITY_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<IdentityService> identityServiceLocator;
@@ -142,7 +148,8 @@ public class SignCertificatesDataMessageHandler implements MessageHandler<SignCe
 				}
 			}
 
-			IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator.locateService();
+			IdentityIntegrityService identityIntegrityService = this.identityIntegrityValidationCache
+				.decorate(this.identityIntegrityServiceLocator.locateService());
 			if (identityIntegrityService != null) {
 				if (message.rrnCertificate == null) {
 					throw new ServletException("national registry certificate not included while requested");
@@ -157,7 +164,7 @@ public class SignCertificatesDataMessageHandler implements MessageHandler<SignCe
 						if (message.addressSignatureData == null) {
 							throw new ServletException("missing address data signature");
 						}
-						byte[] addressFile = Util.trimRight(message.addressData);
+						ByteBuffer addressFile = Util.trimRight(message.addressData);
 						verifySignature(message.rrnCertificate.getSigAlgName(), message.addressSignatureData,
 								rrnPublicKey, request, addressFile, message.identitySignatureData);
 					}
@@ -173,12 +180,11 @@ public class SignCertificatesDataMessageHandler implements MessageHandler<SignCe
 		}
 
 		DigestInfo digestInfo;
-		DTOMapper dtoMapper = new DTOMapper();
-		IdentityDTO identityDTO = dtoMapper.map(identity, IdentityDTO.class);
-		AddressDTO addressDTO = dtoMapper.map(address, AddressDTO.class);
+		IdentityDTO identityDTO = Util.map(identity, IdentityDTO.class);
+		AddressDTO addressDTO = Util.map(address, AddressDTO.class);
 		try {
 			digestInfo = signatureService.preSign(getRequestId(session),
-					null, signingCertificateChain, identityDTO, addressDTO, message.photoData);
+					null, signingCertificateChain, identityDTO, addressDTO, Util.toByteArray(message.photoData));
 		} catch (NoSuchAlgorithmException e) {
 			throw new ServletException("no such algo: " + e.getMessage(), e);
 		} catch (AuthorizationException e) {
@@ -204,21 +210,22 @@ public class SignCertificatesDataMessageHandler implements MessageHandler<SignCe
 		// empty
 	}
 
-	private byte[] digestPhoto(String digestAlgoName, byte[] photoFile) {
+	private byte[] digestPhoto(String digestAlgoName, ByteBuffer photoFile) {
 		MessageDigest messageDigest;
 		try {
-			messageDigest = MessageDigest.getInstance(digestAlgoName);
+			messageDigest = CryptoPool.getInstance().getMessageDigest(digestAlgoName);
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException("digest error: " + e.getMessage(), e);
 		}
-		return messageDigest.digest(photoFile);
+		messageDigest.update(photoFile.duplicate());
+		return messageDigest.digest();
 	}
 
-	private void verifySignature(String signatureAlgoName, byte[] signatureData, PublicKey publicKey,
-								 HttpServletRequest request, byte[]... data) throws ServletException {
+	private void verifySignature(String signatureAlgoName, ByteBuffer signatureData, PublicKey publicKey,
+								 HttpServletRequest request, ByteBuffer... data) throws ServletException {
 		Signature signature;
 		try {
-			signature = Signature.getInstance(signatureAlgoName);
+			signature = CryptoPool.getInstance().getSignature(signatureAlgoName);
 		} catch (NoSuchAlgorithmException e) {
 			throw new ServletException("algo error: " + e.getMessage(), e);
 		}
@@ -228,12 +235,13 @@ public class SignCertificatesDataMessageHandler implements MessageHandler<SignCe
 			throw new ServletException("key error: " + e.getMessage(), e);
 		}
 		try {
-			for (byte[] dataItem : data) {
-				signature.update(dataItem);
+			for (ByteBuffer dataItem : data) {
+				signature.update(dataItem.duplicate());
 			}
-			boolean result = signature.verify(signatureData);
+			boolean result = signature.verify(signatureData.array(), signatureData.arrayOffset() + signatureData.position(),
+					signatureData.remaining());
 			if (!result) {
-				AuditService auditService = this.auditServiceLocator.locateService();
+				AuditService auditService = this.auditDispatcher.getAuditService();
 				if (auditService != null) {
 					String remoteAddress = request.getRemoteAddr();
 					auditService.identityIntegrityError(remoteAddress);
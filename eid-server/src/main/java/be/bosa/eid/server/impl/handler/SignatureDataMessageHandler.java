@@ -20,8 +20,10 @@ package be.bosa.eid.server.impl.handler;
 import be.bosa.eid.client_server.shared.message.ErrorCode;
 import be.bosa.eid.client_server.shared.message.FinishedMessage;
 import be.bosa.eid.client_server.shared.message.SignatureDataMessage;
+import be.bosa.eid.server.impl.CryptoPool;
 import be.bosa.eid.server.impl.ServiceLocator;
 import be.bosa.eid.server.impl.UserIdentifierUtil;
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
 import be.bosa.eid.server.spi.AuditService;
 import be.bosa.eid.server.spi.CertificateSecurityException;
 import be.bosa.eid.server.spi.ExpiredCertificateSecurityException;
@@ -84,7 +86,7 @@ public class SignatureDataMessageHandler implements MessageHandler<SignatureData
 	private ServiceLocator<SignatureService> signatureServiceLocator;
 
 	@InitParam(AuthenticationDataMessageHandler.AUDIT_SERVICE_INIT_PARAM_NAME)
-	private ServiceLocator<AuditService> auditServiceLocator;
+	private AuditDispatcher auditDispatcher;
 
 	public static final String DIGEST_VALUE_SESSION_ATTRIBUTE = SignatureDataMessageHandler.class.getName()
 			+ ".digestValue";
@@ -116,11 +118,18 @@ public class SignatureDataMessageHandler implements MessageHandler<SignatureData
 		if (digestAlgo.endsWith("-PSS")) {
 			LOG.debug("verifying RSA/PSS signature");
 			try {
-				Signature signature = Signature.getInstance("RAWRSASSA-PSS", BouncyCastleProvider.PROVIDER_NAME);
+				Signature signature = CryptoPool.getInstance().getSignature("RAWRSASSA-PSS",
+						BouncyCastleProvider.PROVIDER_NAME);
 				if ("SHA-256-PSS".equals(digestAlgo)) {
 					LOG.debug("RSA/PSS SHA256");
 					signature.setParameter(
 							new PSSParameterSpec("SHA-256", "MGF1", new MGF1ParameterSpec("SHA-256"), 32, 1));
+				} else {
+					/*
+					 * The pooled instance may still carry the parameters of a
+					 * previous SHA-256 verification.
+					 */
+					signature.setParameter(PSSParameterSpec.DEFAULT);
 				}
 				signature.initVerify(signingPublicKey);
 				signature.update(expectedDigestValue);
@@ -134,7 +143,7 @@ public class SignatureDataMessageHandler implements MessageHandler<SignatureData
 			}
 		} else {
 			try {
-				Signature signature = Signature.getInstance("RawRSA", BouncyCastleProvider.PROVIDER_NAME);
+				Signature signature = CryptoPool.getInstance().getSignature("RawRSA", BouncyCastleProvider.PROVIDER_NAME);
 				signature.initVerify(signingPublicKey);
 				ByteArrayOutputStream digestInfo = new ByteArrayOutputStream();
 				if ("SHA-1".equals(digestAlgo) || "SHA1".equals(digestAlgo)) {
@@ -158,7 +167,7 @@ public class SignatureDataMessageHandler implements MessageHandler<SignatureData
 				signature.update(digestInfo.toByteArray());
 				boolean result = signature.verify(signatureValue);
 				if (!result) {
-					AuditService auditService = this.auditServiceLocator.locateService();
+					AuditService auditService = this.auditDispatcher.getAuditService();
 					if (auditService != null) {
 						String remoteAddress = request.getRemoteAddr();
 						auditService.signatureError(remoteAddress, signingCertificate);
@@ -171,7 +180,7 @@ public class SignatureDataMessageHandler implements MessageHandler<SignatureData
 			}
 		}
 
-		AuditService auditService = this.auditServiceLocator.locateService();
+		AuditService auditService = this.auditDispatcher.getAuditService();
 		if (auditService != null) {
 			String userId = UserIdentifierUtil.getUserId(signingCertificate);
 			auditService.signed(userId);
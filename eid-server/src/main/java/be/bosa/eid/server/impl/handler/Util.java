@@ -19,8 +19,12 @@ package be.bosa.eid.server.impl.handler;
 
 import be.bosa.eid.server.dto.DTOMapper;
 
+import java.nio.ByteBuffer;
+
 public class Util {
 
+	private static final DTOMapper DTO_MAPPER = new DTOMapper();
+
 	static String getDigestAlgo(int hashSize) {
 		switch (hashSize) {
 			case 20:
@@ -50,7 +54,35 @@ public class Util {
 		return result;
 	}
 
+	/**
+	 * Returns the address file up to its zero padding, as a view on the given
+	 * buffer.
+	 */
+	static ByteBuffer trimRight(ByteBuffer addressFile) {
+		ByteBuffer result = addressFile.duplicate();
+		for (int idx = result.position(); idx < result.limit(); idx++) {
+			if (0 == result.get(idx)) {
+				result.limit(idx);
+				break;
+			}
+		}
+		return result.slice();
+	}
+
+	/**
+	 * Copies the remaining bytes of the buffer, for consumers that need to own
+	 * the data.
+	 */
+	static byte[] toByteArray(ByteBuffer buffer) {
+		if (buffer == null) {
+			return null;
+		}
+		byte[] result = new byte[buffer.remaining()];
+		buffer.duplicate().get(result);
+		return result;
+	}
+
 	static <T> T map(Object object, Class<T> toClass) {
-		return new DTOMapper().map(object, toClass);
+		return DTO_MAPPER.map(object, toClass);
 	}
 }
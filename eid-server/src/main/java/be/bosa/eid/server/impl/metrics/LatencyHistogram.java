@@ -0,0 +1,125 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead latency histogram in the style of HdrHistogram. Every power of
+ * two is split into 8 linear sub-buckets, so any recorded value is known with
+ * a precision of 12.5%. Recording costs four atomic updates (bucket, count,
+ * sum and maximum) and never locks or allocates. Values are in nanoseconds, up
+ * to about 18 minutes.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAX_EXPONENT = 40;
+
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		this.buckets.incrementAndGet(getBucketIndex(value));
+		this.count.increment();
+		this.sum.add(value);
+		this.max.accumulate(value);
+	}
+
+	static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * Gives back the highest value that falls in the given bucket.
+	 */
+	static long getBucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		long lowerBound = (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Gives back the sum of all recorded values, in nanoseconds.
+	 */
+	public long getSum() {
+		return this.sum.sum();
+	}
+
+	/**
+	 * Gives back the highest recorded value, in nanoseconds.
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * Gives back the value, in nanoseconds, below which the given fraction of
+	 * the recorded values fall.
+	 *
+	 * @param quantile a fraction between 0 and 1.
+	 */
+	public long getValueAtQuantile(double quantile) {
+		long total = 0;
+		long[] counts = new long[BUCKET_COUNT];
+		for (int idx = 0; idx < BUCKET_COUNT; idx++) {
+			counts[idx] = this.buckets.get(idx);
+			total += counts[idx];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int idx = 0; idx < BUCKET_COUNT; idx++) {
+			seen += counts[idx];
+			if (seen >= rank) {
+				return Math.min(getBucketUpperBound(idx), getMax());
+			}
+		}
+		return getMax();
+	}
+}
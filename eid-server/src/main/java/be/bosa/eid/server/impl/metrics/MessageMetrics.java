@@ -0,0 +1,271 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl.metrics;
+
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.server.impl.CertificateValidationCache;
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Latency and throughput metrics of an eID Server servlet, per protocol
+ * message type and per processing phase. Calls to the SPI implementations
+ * are timed per SPI method as well. The certificate validation caches and
+ * audit dispatchers of the servlet are registered here, so their counters can
+ * be exported along with the message metrics.
+ */
+public class MessageMetrics implements MessageMetricsMXBean {
+
+	/**
+	 * Prefix of the servlet context attributes under which the eID Server
+	 * servlets publish their metrics, followed by the servlet name.
+	 */
+	public static final String CONTEXT_ATTRIBUTE_PREFIX = MessageMetrics.class.getName() + ".";
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/**
+	 * The phases of processing an incoming message.
+	 */
+	public enum Phase {
+		UNMARSHAL, STATE_CHECK, HANDLER, SPI, MARSHAL
+	}
+
+	private final ConcurrentMap<String, Map<Phase, LatencyHistogram>> phaseLatencies = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, LatencyHistogram> spiLatencies = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, LongAdder> finishedMessageCounts = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, CertificateValidationCache> validationCaches = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, AuditDispatcher> auditDispatchers = new ConcurrentHashMap<>();
+
+	/*
+	 * Time spent in SPI calls by the message being handled on this thread.
+	 */
+	private final ThreadLocal<long[]> spiNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+	public void record(Class<?> messageClass, Phase phase, long nanos) {
+		this.phaseLatencies.computeIfAbsent(messageClass.getSimpleName(), key -> {
+			Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+			for (Phase each : Phase.values()) {
+				latencies.put(each, new LatencyHistogram());
+			}
+			return latencies;
+		}).get(phase).record(nanos);
+	}
+
+	/**
+	 * Counts a message that could not be processed.
+	 *
+	 * @param messageClass the message class, or <code>null</code> in case the
+	 *                     message could not be unmarshalled.
+	 */
+	public void recordError(Class<?> messageClass) {
+		String messageType = messageClass != null ? messageClass.getSimpleName() : "unknown";
+		this.errorCounts.computeIfAbsent(messageType, key -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Counts the outcome of a protocol run.
+	 */
+	public void recordFinishedMessage(FinishedMessage finishedMessage) {
+		String outcome = finishedMessage.errorCode != null ? finishedMessage.errorCode.name() : "OK";
+		this.finishedMessageCounts.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Starts timing the SPI calls for the message handled on the current
+	 * thread.
+	 */
+	public void startSpiTiming() {
+		this.spiNanos.get()[0] = 0;
+	}
+
+	/**
+	 * Gives back the time spent in SPI calls since {@link #startSpiTiming()}.
+	 */
+	public long getSpiNanos() {
+		return this.spiNanos.get()[0];
+	}
+
+	/**
+	 * Wraps the given service so that every call to one of its interface
+	 * methods gets timed.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T instrument(T service) {
+		if (service == null || Proxy.isProxyClass(service.getClass())
+				&& Proxy.getInvocationHandler(service) instanceof SpiInvocationHandler) {
+			return service;
+		}
+		Set<Class<?>> interfaces = new LinkedHashSet<>();
+		for (Class<?> clazz = service.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+			Collections.addAll(interfaces, clazz.getInterfaces());
+		}
+		if (interfaces.isEmpty()) {
+			return service;
+		}
+		return (T) Proxy.newProxyInstance(service.getClass().getClassLoader(), interfaces.toArray(new Class<?>[0]),
+				new SpiInvocationHandler(service));
+	}
+
+	private void recordSpiCall(Method method, long nanos) {
+		this.spiNanos.get()[0] += nanos;
+		String key = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+		this.spiLatencies.computeIfAbsent(key, k -> new LatencyHistogram()).record(nanos);
+	}
+
+	public void registerValidationCache(String name, CertificateValidationCache validationCache) {
+		this.validationCaches.put(name, validationCache);
+	}
+
+	public void registerAuditDispatcher(String name, AuditDispatcher auditDispatcher) {
+		this.auditDispatchers.put(name, auditDispatcher);
+	}
+
+	/**
+	 * Gives back the enabled certificate validation caches, per init-param.
+	 */
+	public Map<String, CertificateValidationCache> getValidationCaches() {
+		Map<String, CertificateValidationCache> validationCaches = new TreeMap<>();
+		this.validationCaches.forEach((name, validationCache) -> {
+			if (validationCache.isEnabled()) {
+				validationCaches.put(name, validationCache);
+			}
+		});
+		return validationCaches;
+	}
+
+	/**
+	 * Gives back the asynchronous audit dispatchers, per init-param.
+	 */
+	public Map<String, AuditDispatcher> getAuditDispatchers() {
+		Map<String, AuditDispatcher> auditDispatchers = new TreeMap<>();
+		this.auditDispatchers.forEach((name, auditDispatcher) -> {
+			if (auditDispatcher.isAsync()) {
+				auditDispatchers.put(name, auditDispatcher);
+			}
+		});
+		return auditDispatchers;
+	}
+
+	/**
+	 * Gives back the latencies per message type and processing phase.
+	 */
+	public Map<String, Map<Phase, LatencyHistogram>> getPhaseLatencies() {
+		return new TreeMap<>(this.phaseLatencies);
+	}
+
+	/**
+	 * Gives back the latencies per SPI method.
+	 */
+	public Map<String, LatencyHistogram> getSpiLatencies() {
+		return new TreeMap<>(this.spiLatencies);
+	}
+
+	public Map<String, Long> getMessageCounts() {
+		Map<String, Long> messageCounts = new TreeMap<>();
+		this.phaseLatencies.forEach((messageType, latencies) ->
+				messageCounts.put(messageType, latencies.get(Phase.HANDLER).getCount()));
+		return messageCounts;
+	}
+
+	public Map<String, Long> getErrorCounts() {
+		return sums(this.errorCounts);
+	}
+
+	public Map<String, Long> getFinishedMessageCounts() {
+		return sums(this.finishedMessageCounts);
+	}
+
+	public Map<String, Double> getMeanLatencyMillis() {
+		return latencyMillis(histogram -> histogram.getCount() == 0 ? 0 : histogram.getSum() / histogram.getCount());
+	}
+
+	public Map<String, Double> getMedianLatencyMillis() {
+		return latencyMillis(histogram -> histogram.getValueAtQuantile(0.5));
+	}
+
+	public Map<String, Double> getP99LatencyMillis() {
+		return latencyMillis(histogram -> histogram.getValueAtQuantile(0.99));
+	}
+
+	public Map<String, Double> getMaxLatencyMillis() {
+		return latencyMillis(LatencyHistogram::getMax);
+	}
+
+	private Map<String, Double> latencyMillis(ToLongFunction<LatencyHistogram> statistic) {
+		Map<String, Double> result = new TreeMap<>();
+		this.phaseLatencies.forEach((messageType, latencies) -> latencies.forEach((phase, histogram) -> {
+			if (histogram.getCount() > 0) {
+				result.put(messageType + "." + phase.name().toLowerCase(),
+						statistic.applyAsLong(histogram) / NANOS_PER_MILLI);
+			}
+		}));
+		this.spiLatencies.forEach((method, histogram) ->
+				result.put("spi." + method, statistic.applyAsLong(histogram) / NANOS_PER_MILLI));
+		return result;
+	}
+
+	private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+		Map<String, Long> result = new TreeMap<>();
+		counters.forEach((key, counter) -> result.put(key, counter.sum()));
+		return result;
+	}
+
+	private class SpiInvocationHandler implements InvocationHandler {
+
+		private final Object service;
+
+		SpiInvocationHandler(Object service) {
+			this.service = service;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				return method.invoke(this.service, args);
+			}
+			long start = System.nanoTime();
+			try {
+				return method.invoke(this.service, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				recordSpiCall(method, System.nanoTime() - start);
+			}
+		}
+	}
+}
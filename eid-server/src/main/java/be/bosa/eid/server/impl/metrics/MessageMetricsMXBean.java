@@ -0,0 +1,52 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view on the {@link MessageMetrics} of an eID Server servlet. Latencies
+ * are keyed by message type and phase (e.g. <code>HelloMessage.handler</code>),
+ * or by SPI method (e.g.
+ * <code>spi.AuthenticationService.validateCertificateChain</code>).
+ */
+public interface MessageMetricsMXBean {
+
+	/**
+	 * Gives back the number of handled messages per message type.
+	 */
+	Map<String, Long> getMessageCounts();
+
+	/**
+	 * Gives back the number of failed messages per message type.
+	 */
+	Map<String, Long> getErrorCounts();
+
+	/**
+	 * Gives back the number of finished protocol runs per error code.
+	 */
+	Map<String, Long> getFinishedMessageCounts();
+
+	Map<String, Double> getMeanLatencyMillis();
+
+	Map<String, Double> getMedianLatencyMillis();
+
+	Map<String, Double> getP99LatencyMillis();
+
+	Map<String, Double> getMaxLatencyMillis();
+}
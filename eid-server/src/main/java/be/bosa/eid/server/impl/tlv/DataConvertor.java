@@ -18,7 +18,8 @@
 package be.bosa.eid.server.impl.tlv;
 
 /**
- * Interface for a data convertor component.
+ * Interface for a data convertor component. Implementations should be
+ * stateless, as generated TLV parsers share a single instance.
  *
  * @param <T> the type to which to convert to.
  * @author Frank Cornelis
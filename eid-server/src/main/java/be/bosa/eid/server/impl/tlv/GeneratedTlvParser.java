@@ -0,0 +1,40 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server.impl.tlv;
+
+/**
+ * Interface implemented by the TLV parsers that are generated at build time by
+ * the eID Server TLV parser annotation processor. Such a parser is named after
+ * the class it parses, suffixed with <code>_TlvParser</code>.
+ *
+ * @param <T> the type of the parsed TLV object.
+ * @see TlvParser
+ */
+public interface GeneratedTlvParser<T> {
+
+	/**
+	 * Parses the given range of a TLV file.
+	 *
+	 * @param file   the array holding the TLV encoded file.
+	 * @param offset the offset of the TLV encoded file within the array.
+	 * @param length the length of the TLV encoded file.
+	 * @return the parsed TLV object.
+	 * @throws DataConvertorException in case the conversion of a field failed.
+	 */
+	T parse(byte[] file, int offset, int length) throws DataConvertorException;
+}
@@ -20,16 +20,23 @@ package be.bosa.eid.server.impl.tlv;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 /**
  * Tag-Length-Value parser. The TLV-format is used in the eID card for encoding
  * of the identity and address files.
+ * <p>
+ * If a parser has been generated at build time for the TLV class (see
+ * {@link GeneratedTlvParser}), this parser is used. Otherwise the file is parsed
+ * via reflection on the meta-data annotations.
+ * </p>
  *
  * @author Frank Cornelis
  */
@@ -37,6 +44,15 @@ public class TlvParser {
 
 	private static final Log LOG = LogFactory.getLog(TlvParser.class);
 
+	static final String GENERATED_PARSER_SUFFIX = "_TlvParser";
+
+	private static final ClassValue<Optional<GeneratedTlvParser<?>>> GENERATED_PARSERS = new ClassValue<Optional<GeneratedTlvParser<?>>>() {
+		@Override
+		protected Optional<GeneratedTlvParser<?>> computeValue(Class<?> tlvClass) {
+			return Optional.ofNullable(loadGeneratedParser(tlvClass));
+		}
+	};
+
 	private TlvParser() {
 		super();
 	}
@@ -46,23 +62,76 @@ public class TlvParser {
 	 * parameter.
 	 */
 	public static <T> T parse(byte[] file, Class<T> tlvClass) {
+		return parse(file, 0, file.length, tlvClass);
+	}
+
+	/**
+	 * Parses the remaining bytes of the given buffer, without copying them in
+	 * case the buffer is backed by an array.
+	 */
+	public static <T> T parse(ByteBuffer file, Class<T> tlvClass) {
+		if (!file.hasArray()) {
+			byte[] data = new byte[file.remaining()];
+			file.duplicate().get(data);
+			return parse(data, tlvClass);
+		}
+		return parse(file.array(), file.arrayOffset() + file.position(), file.remaining(), tlvClass);
+	}
+
+	/**
+	 * Parses the given range of the file using the meta-data annotations within
+	 * the tlvClass parameter.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T parse(byte[] file, int offset, int length, Class<T> tlvClass) {
 		T t;
 		try {
-			t = parseThrowing(file, tlvClass);
+			Optional<GeneratedTlvParser<?>> generatedParser = GENERATED_PARSERS.get(tlvClass);
+			if (generatedParser.isPresent()) {
+				t = ((GeneratedTlvParser<T>) generatedParser.get()).parse(file, offset, length);
+			} else {
+				t = parseThrowing(file, offset, length, tlvClass);
+			}
 		} catch (Exception e) {
 			throw new RuntimeException("error parsing file: " + tlvClass.getName(), e);
 		}
 		return t;
 	}
 
+	/**
+	 * Returns whether a build time generated parser is available for the given
+	 * TLV class.
+	 */
+	public static boolean hasGeneratedParser(Class<?> tlvClass) {
+		return GENERATED_PARSERS.get(tlvClass).isPresent();
+	}
+
+	private static GeneratedTlvParser<?> loadGeneratedParser(Class<?> tlvClass) {
+		String parserClassName = tlvClass.getName().replace('$', '_') + GENERATED_PARSER_SUFFIX;
+		try {
+			Class<?> parserClass = Class.forName(parserClassName, true, tlvClass.getClassLoader());
+			if (!GeneratedTlvParser.class.isAssignableFrom(parserClass)) {
+				LOG.warn("not a generated TLV parser: " + parserClassName);
+				return null;
+			}
+			return (GeneratedTlvParser<?>) parserClass.newInstance();
+		} catch (ClassNotFoundException e) {
+			LOG.debug("no generated TLV parser for " + tlvClass.getName() + ", using reflection");
+			return null;
+		} catch (InstantiationException | IllegalAccessException | LinkageError e) {
+			LOG.warn("could not load generated TLV parser " + parserClassName + ": " + e.getMessage());
+			return null;
+		}
+	}
+
 	private static byte[] copy(byte[] source, int idx, int count) {
 		byte[] result = new byte[count];
 		System.arraycopy(source, idx, result, 0, count);
 		return result;
 	}
 
-	private static <T> T parseThrowing(byte[] file, Class<T> tlvClass) throws InstantiationException,
-			IllegalAccessException, DataConvertorException, UnsupportedEncodingException {
+	private static <T> T parseThrowing(byte[] file, int offset, int fileLength, Class<T> tlvClass)
+			throws InstantiationException, IllegalAccessException, DataConvertorException {
 		Field[] fields = tlvClass.getDeclaredFields();
 		Map<Integer, Set<Field>> tlvFields = new HashMap<>();
 		for (Field field : fields) {
@@ -75,8 +144,9 @@ public class TlvParser {
 		}
 		T tlvObject = tlvClass.newInstance();
 
-		int idx = 0;
-		while (idx < file.length - 1) {
+		int idx = offset;
+		int end = offset + fileLength;
+		while (idx < end - 1) {
 			byte tag = file[idx];
 			idx++;
 			byte lengthByte = file[idx];
@@ -93,29 +163,31 @@ public class TlvParser {
 			}
 			if (tlvFields.containsKey((int) tag)) {
 				Set<Field> tlvFieldSet = tlvFields.get((int) tag);
+				if (idx + length > end) {
+					throw new IndexOutOfBoundsException("value of tag " + tag + " exceeds the file");
+				}
 				for (Field tlvField : tlvFieldSet) {
 					Class<?> tlvType = tlvField.getType();
 					ConvertData convertDataAnnotation = tlvField.getAnnotation(ConvertData.class);
-					byte[] tlvValue = copy(file, idx, length);
 					Object fieldValue;
 					if (convertDataAnnotation != null) {
 						Class<? extends DataConvertor<?>> dataConvertorClass = convertDataAnnotation.value();
 						DataConvertor<?> dataConvertor = dataConvertorClass.newInstance();
-						fieldValue = dataConvertor.convert(tlvValue);
+						fieldValue = dataConvertor.convert(copy(file, idx, length));
 					} else if (String.class == tlvType) {
-						fieldValue = new String(tlvValue, "UTF-8");
+						fieldValue = new String(file, idx, length, StandardCharsets.UTF_8);
 					} else if (Boolean.TYPE == tlvType) {
 						fieldValue = true;
 					} else if (tlvType.isArray() && Byte.TYPE == tlvType.getComponentType()) {
-						fieldValue = tlvValue;
+						fieldValue = copy(file, idx, length);
 					} else {
 						throw new IllegalArgumentException("unsupported field type: " + tlvType.getName());
 					}
 					LOG.debug("setting field: " + tlvField.getName());
+					tlvField.setAccessible(true);
 					if (tlvField.get(tlvObject) != null && !tlvField.getType().isPrimitive()) {
 						throw new RuntimeException("field was already set: " + tlvField.getName());
 					}
-					tlvField.setAccessible(true);
 					tlvField.set(tlvObject, fieldValue);
 				}
 			} else {
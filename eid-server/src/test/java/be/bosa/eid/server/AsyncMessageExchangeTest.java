@@ -0,0 +1,258 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.client_server.shared.message.AbstractProtocolMessage;
+import be.bosa.eid.client_server.shared.message.AuthenticationRequestMessage;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.server.impl.AsyncMessageExchange;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncMessageExchangeTest {
+
+	private static final byte[] REQUEST_BODY = "request body".getBytes();
+
+	private AsyncContext asyncContext;
+	private HttpServletRequest request;
+	private HttpServletResponse response;
+	private TestServletInputStream inputStream;
+	private TestServletOutputStream outputStream;
+
+	@Before
+	public void setUp() throws Exception {
+		this.asyncContext = mock(AsyncContext.class);
+		this.request = mock(HttpServletRequest.class);
+		this.response = mock(HttpServletResponse.class);
+		this.inputStream = new TestServletInputStream(REQUEST_BODY);
+		this.outputStream = new TestServletOutputStream();
+		when(this.request.getContentLength()).thenReturn(REQUEST_BODY.length);
+		when(this.request.getInputStream()).thenReturn(this.inputStream);
+		when(this.response.getOutputStream()).thenReturn(this.outputStream);
+	}
+
+	@Test
+	public void testExchange() throws Exception {
+		byte[] challenge = "challenge".getBytes();
+		byte[][] processedBody = new byte[1][];
+		AsyncMessageExchange exchange = new AsyncMessageExchange(this.asyncContext, this.request, this.response,
+				Runnable::run, (request, response) -> {
+			processedBody[0] = readBody(request);
+			return new AuthenticationRequestMessage(challenge, false, false, false, false, false, false, false, false,
+					false, false, false, false, false, null);
+		});
+
+		exchange.start();
+		this.inputStream.readListener.onDataAvailable();
+		this.inputStream.readListener.onAllDataRead();
+		verify(this.asyncContext, never()).complete();
+		this.outputStream.writeListener.onWritePossible();
+
+		assertArrayEquals(REQUEST_BODY, processedBody[0]);
+		verify(this.response).addHeader(AbstractProtocolMessage.TYPE_HTTP_HEADER, "AuthenticationRequestMessage");
+		assertArrayEquals(challenge, this.outputStream.data.toByteArray());
+		verify(this.asyncContext).complete();
+	}
+
+	@Test
+	public void testExchangeWithoutResponseBody() throws Exception {
+		AsyncMessageExchange exchange = new AsyncMessageExchange(this.asyncContext, this.request, this.response,
+				Runnable::run, (request, response) -> new FinishedMessage());
+
+		exchange.start();
+		this.inputStream.readListener.onDataAvailable();
+		this.inputStream.readListener.onAllDataRead();
+
+		verify(this.response).addHeader(AbstractProtocolMessage.TYPE_HTTP_HEADER, "FinishedMessage");
+		assertNull(this.outputStream.writeListener);
+		verify(this.asyncContext).complete();
+	}
+
+	@Test
+	public void testProcessingError() throws Exception {
+		AsyncMessageExchange exchange = new AsyncMessageExchange(this.asyncContext, this.request, this.response,
+				Runnable::run, (request, response) -> {
+			throw new ServletException("handler error");
+		});
+
+		exchange.start();
+		this.inputStream.readListener.onDataAvailable();
+		this.inputStream.readListener.onAllDataRead();
+
+		verify(this.response).sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		verify(this.response, never()).addHeader(anyString(), anyString());
+		verify(this.asyncContext).complete();
+	}
+
+	@Test
+	public void testReadError() throws Exception {
+		AsyncMessageExchange exchange = new AsyncMessageExchange(this.asyncContext, this.request, this.response,
+				Runnable::run, (request, response) -> new FinishedMessage());
+
+		exchange.start();
+		this.inputStream.readListener.onError(new IOException("connection reset"));
+
+		verify(this.response).sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		verify(this.asyncContext).complete();
+		assertEquals(0, this.outputStream.data.size());
+	}
+
+	@Test
+	public void testTimeoutDuringProcessing() throws Exception {
+		AsyncMessageExchange[] exchange = new AsyncMessageExchange[1];
+		exchange[0] = new AsyncMessageExchange(this.asyncContext, this.request, this.response,
+				Runnable::run, (request, response) -> {
+			exchange[0].onTimeout(new AsyncEvent(this.asyncContext));
+			response.setHeader("X-Test", "late");
+			return new AuthenticationRequestMessage("challenge".getBytes(), false, false, false, false, false, false,
+					false, false, false, false, false, false, false, null);
+		});
+
+		exchange[0].start();
+		verify(this.asyncContext).addListener(exchange[0]);
+		this.inputStream.readListener.onDataAvailable();
+		this.inputStream.readListener.onAllDataRead();
+
+		assertTrue(exchange[0].isDone());
+		verify(this.response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		verify(this.response, never()).setHeader(anyString(), anyString());
+		verify(this.response, never()).addHeader(anyString(), anyString());
+		assertNull(this.outputStream.writeListener);
+		verify(this.asyncContext, times(1)).complete();
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+		ExecutorService executor = AbstractEidServiceServlet.createAsyncExecutor(1, 1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		try {
+			executor.execute(() -> {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			executor.execute(() -> {
+			});
+
+			AsyncMessageExchange exchange = new AsyncMessageExchange(this.asyncContext, this.request, this.response,
+					executor, (request, response) -> new FinishedMessage());
+			exchange.start();
+			this.inputStream.readListener.onDataAvailable();
+			this.inputStream.readListener.onAllDataRead();
+
+			verify(this.response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			verify(this.asyncContext).complete();
+			assertTrue(exchange.isDone());
+		} finally {
+			blocked.countDown();
+			executor.shutdown();
+		}
+	}
+
+	private static byte[] readBody(HttpServletRequest request) {
+		try {
+			return IOUtils.toByteArray(request.getInputStream());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class TestServletInputStream extends ServletInputStream {
+
+		private final ByteArrayInputStream data;
+
+		private ReadListener readListener;
+
+		TestServletInputStream(byte[] data) {
+			this.data = new ByteArrayInputStream(data);
+		}
+
+		@Override
+		public int read() {
+			return this.data.read();
+		}
+
+		@Override
+		public boolean isFinished() {
+			return this.data.available() == 0;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			assertNotNull(readListener);
+			this.readListener = readListener;
+		}
+	}
+
+	private static class TestServletOutputStream extends ServletOutputStream {
+
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+		private WriteListener writeListener;
+
+		@Override
+		public void write(int b) {
+			this.data.write(b);
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			this.writeListener = writeListener;
+		}
+	}
+}
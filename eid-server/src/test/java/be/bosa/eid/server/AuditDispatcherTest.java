@@ -0,0 +1,260 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
+import be.bosa.eid.server.spi.AuditService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.servlet.ServletConfig;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuditDispatcherTest {
+
+	private static final String INIT_PARAM = "AuditService";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private ServletConfig mockServletConfig;
+
+	@Before
+	public void setUp() {
+		this.mockServletConfig = mock(ServletConfig.class);
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "Class"))
+				.thenReturn(RecordingAuditService.class.getName());
+		RecordingAuditService.reset();
+	}
+
+	@Test
+	public void testSynchronousByDefault() throws Exception {
+		AuditDispatcher dispatcher = new AuditDispatcher(INIT_PARAM, this.mockServletConfig);
+
+		AuditService auditService = dispatcher.getAuditService();
+		auditService.authenticated("user");
+
+		assertFalse(dispatcher.isAsync());
+		assertTrue(auditService instanceof RecordingAuditService);
+		assertEquals(Arrays.asList("authenticated:user"), RecordingAuditService.events);
+	}
+
+	@Test
+	public void testAsynchronous() throws Exception {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "Async")).thenReturn("true");
+		AuditDispatcher dispatcher = new AuditDispatcher(INIT_PARAM, this.mockServletConfig);
+
+		AuditService auditService = dispatcher.getAuditService();
+		auditService.authenticated("user");
+		auditService.authenticationError("1.2.3.4", null);
+		auditService.signed("user");
+		dispatcher.close();
+
+		assertSame(dispatcher, auditService);
+		assertEquals(Arrays.asList("authenticated:user", "authenticationError:1.2.3.4", "signed:user"),
+				RecordingAuditService.events);
+		assertEquals(3, dispatcher.getDispatchedCount());
+		assertEquals(0, dispatcher.getQueueDepth());
+	}
+
+	@Test
+	public void testAsynchronousWithoutAuditService() throws Exception {
+		ServletConfig mockServletConfig = mock(ServletConfig.class);
+		when(mockServletConfig.getInitParameter(INIT_PARAM + "Async")).thenReturn("true");
+		AuditDispatcher dispatcher = new AuditDispatcher(INIT_PARAM, mockServletConfig);
+
+		assertNull(dispatcher.getAuditService());
+		dispatcher.close();
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "Async")).thenReturn("true");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "QueueSize")).thenReturn("2");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "BatchSize")).thenReturn("1");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "OverflowPolicy")).thenReturn("drop_oldest");
+		AuditDispatcher dispatcher = new AuditDispatcher(INIT_PARAM, this.mockServletConfig);
+
+		RecordingAuditService.gate = new CountDownLatch(1);
+		AuditService auditService = dispatcher.getAuditService();
+		for (int idx = 1; idx <= 5; idx++) {
+			auditService.identified("user-" + idx);
+		}
+		RecordingAuditService.gate.countDown();
+		dispatcher.close();
+
+		assertTrue(dispatcher.getDroppedCount() >= 2);
+		assertEquals(5, dispatcher.getDispatchedCount() + dispatcher.getDroppedCount());
+		assertTrue(RecordingAuditService.events.contains("identified:user-5"));
+	}
+
+	@Test
+	public void testSpillToDisk() throws Exception {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "Async")).thenReturn("true");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "QueueSize")).thenReturn("2");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "BatchSize")).thenReturn("1");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "OverflowPolicy")).thenReturn("SPILL_TO_DISK");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "SpillDirectory"))
+				.thenReturn(this.temporaryFolder.getRoot().getAbsolutePath());
+		AuditDispatcher dispatcher = new AuditDispatcher(INIT_PARAM, this.mockServletConfig);
+
+		RecordingAuditService.gate = new CountDownLatch(1);
+		AuditService auditService = dispatcher.getAuditService();
+		for (int idx = 1; idx <= 5; idx++) {
+			auditService.identityIntegrityError("10.0.0." + idx);
+		}
+		RecordingAuditService.gate.countDown();
+		dispatcher.close();
+
+		assertTrue(dispatcher.getSpilledCount() >= 2);
+		assertEquals(5, dispatcher.getDispatchedCount());
+		assertEquals(new HashSet<>(Arrays.asList("identityIntegrityError:10.0.0.1", "identityIntegrityError:10.0.0.2",
+				"identityIntegrityError:10.0.0.3", "identityIntegrityError:10.0.0.4", "identityIntegrityError:10.0.0.5")),
+				new HashSet<>(RecordingAuditService.events));
+		assertEquals(0, this.temporaryFolder.getRoot().list().length);
+	}
+
+	@Test
+	public void testSpillToDiskRequiresDirectory() {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "Async")).thenReturn("true");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "OverflowPolicy")).thenReturn("SPILL_TO_DISK");
+
+		try {
+			new AuditDispatcher(INIT_PARAM, this.mockServletConfig);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSpillFileOnlyReadableByOwner() throws Exception {
+		when(this.mockServletConfig.getServletName()).thenReturn("authentication");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "Async")).thenReturn("true");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "QueueSize")).thenReturn("2");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "BatchSize")).thenReturn("1");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "OverflowPolicy")).thenReturn("SPILL_TO_DISK");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "SpillDirectory"))
+				.thenReturn(this.temporaryFolder.getRoot().getAbsolutePath());
+		AuditDispatcher dispatcher = new AuditDispatcher(INIT_PARAM, this.mockServletConfig);
+
+		RecordingAuditService.gate = new CountDownLatch(1);
+		AuditService auditService = dispatcher.getAuditService();
+		for (int idx = 1; idx <= 6; idx++) {
+			auditService.authenticated("user-" + idx);
+		}
+		Path spillFile = this.temporaryFolder.getRoot().toPath().resolve("eid-audit-authentication-AuditService.spill");
+		assertTrue(Files.exists(spillFile));
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(spillFile));
+		}
+		RecordingAuditService.gate.countDown();
+		dispatcher.close();
+
+		assertEquals(6, dispatcher.getDispatchedCount());
+	}
+
+	@Test
+	public void testSpilledEventsReplayedAtStartup() throws Exception {
+		when(this.mockServletConfig.getServletName()).thenReturn("authentication");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "Async")).thenReturn("true");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "OverflowPolicy")).thenReturn("SPILL_TO_DISK");
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "SpillDirectory"))
+				.thenReturn(this.temporaryFolder.getRoot().getAbsolutePath());
+		Path spillFile = this.temporaryFolder.getRoot().toPath().resolve("eid-audit-authentication-AuditService.spill");
+		Files.write(spillFile, Arrays.asList("AUTHENTICATED\t" + base64("user-1") + "\t-",
+				"SIGNED\t" + base64("user-2") + "\t-"), StandardCharsets.UTF_8);
+
+		AuditDispatcher dispatcher = new AuditDispatcher(INIT_PARAM, this.mockServletConfig);
+		dispatcher.close();
+
+		assertEquals(Arrays.asList("authenticated:user-1", "signed:user-2"), RecordingAuditService.events);
+		assertFalse(Files.exists(spillFile));
+	}
+
+	private static String base64(String value) {
+		return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static class RecordingAuditService implements AuditService {
+
+		static final List<String> events = new CopyOnWriteArrayList<>();
+
+		static volatile CountDownLatch gate;
+
+		static void reset() {
+			events.clear();
+			gate = new CountDownLatch(0);
+		}
+
+		private void record(String event) {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			events.add(event);
+		}
+
+		public void authenticated(String userId) {
+			record("authenticated:" + userId);
+		}
+
+		public void identified(String userId) {
+			record("identified:" + userId);
+		}
+
+		public void authenticationError(String remoteAddress, X509Certificate clientCertificate) {
+			record("authenticationError:" + remoteAddress);
+		}
+
+		public void identityIntegrityError(String remoteAddress) {
+			record("identityIntegrityError:" + remoteAddress);
+		}
+
+		public void signatureError(String remoteAddress, X509Certificate clientCertificate) {
+			record("signatureError:" + remoteAddress);
+		}
+
+		public void signed(String userId) {
+			record("signed:" + userId);
+		}
+	}
+}
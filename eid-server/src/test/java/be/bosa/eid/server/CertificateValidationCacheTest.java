@@ -0,0 +1,171 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.CertificateValidationCache;
+import be.bosa.eid.server.spi.AuthenticationService;
+import be.bosa.eid.server.spi.IdentityIntegrityService;
+import be.bosa.eid.server.spi.RevokedCertificateSecurityException;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletConfig;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CertificateValidationCacheTest {
+
+	private static final String INIT_PARAM = "AuthenticationService";
+
+	private ServletConfig mockServletConfig;
+
+	@Before
+	public void setUp() {
+		this.mockServletConfig = mock(ServletConfig.class);
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		CertificateValidationCache cache = new CertificateValidationCache(INIT_PARAM, this.mockServletConfig);
+		AuthenticationService mockAuthenticationService = mock(AuthenticationService.class);
+
+		assertFalse(cache.isEnabled());
+		assertSame(mockAuthenticationService, cache.decorate(mockAuthenticationService));
+	}
+
+	@Test
+	public void testValidChainIsCached() throws Exception {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "CacheTtl")).thenReturn("60000");
+		CertificateValidationCache cache = new CertificateValidationCache(INIT_PARAM, this.mockServletConfig);
+		AuthenticationService mockAuthenticationService = mock(AuthenticationService.class);
+		List<X509Certificate> certificateChain = getCertificateChain(1, System.currentTimeMillis() + 3600 * 1000);
+
+		AuthenticationService authenticationService = cache.decorate(mockAuthenticationService);
+		authenticationService.validateCertificateChain(certificateChain);
+		authenticationService.validateCertificateChain(getCertificateChain(1, System.currentTimeMillis() + 3600 * 1000));
+
+		verify(mockAuthenticationService, times(1)).validateCertificateChain(certificateChain);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testOtherChainIsValidated() throws Exception {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "CacheTtl")).thenReturn("60000");
+		CertificateValidationCache cache = new CertificateValidationCache(INIT_PARAM, this.mockServletConfig);
+		AuthenticationService mockAuthenticationService = mock(AuthenticationService.class);
+
+		AuthenticationService authenticationService = cache.decorate(mockAuthenticationService);
+		authenticationService.validateCertificateChain(getCertificateChain(1, System.currentTimeMillis() + 3600 * 1000));
+		authenticationService.validateCertificateChain(getCertificateChain(2, System.currentTimeMillis() + 3600 * 1000));
+
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testExpiredCertificateIsNotCached() throws Exception {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "CacheTtl")).thenReturn("60000");
+		CertificateValidationCache cache = new CertificateValidationCache(INIT_PARAM, this.mockServletConfig);
+		AuthenticationService mockAuthenticationService = mock(AuthenticationService.class);
+		List<X509Certificate> certificateChain = getCertificateChain(1, System.currentTimeMillis() - 1000);
+
+		AuthenticationService authenticationService = cache.decorate(mockAuthenticationService);
+		authenticationService.validateCertificateChain(certificateChain);
+		authenticationService.validateCertificateChain(certificateChain);
+
+		verify(mockAuthenticationService, times(2)).validateCertificateChain(certificateChain);
+	}
+
+	@Test
+	public void testRejectionIsCached() throws Exception {
+		when(this.mockServletConfig.getInitParameter("IdentityIntegrityServiceCacheTtl")).thenReturn("60000");
+		CertificateValidationCache cache = new CertificateValidationCache("IdentityIntegrityService",
+				this.mockServletConfig);
+		IdentityIntegrityService mockIdentityIntegrityService = mock(IdentityIntegrityService.class);
+		List<X509Certificate> certificateChain = getCertificateChain(1, System.currentTimeMillis() + 3600 * 1000);
+		RevokedCertificateSecurityException revoked = new RevokedCertificateSecurityException("revoked");
+		doThrow(revoked).when(mockIdentityIntegrityService)
+				.checkNationalRegistrationCertificate(certificateChain);
+
+		IdentityIntegrityService identityIntegrityService = cache.decorate(mockIdentityIntegrityService);
+		try {
+			identityIntegrityService.checkNationalRegistrationCertificate(certificateChain);
+			fail();
+		} catch (RevokedCertificateSecurityException e) {
+			assertSame(revoked, e);
+		}
+		for (int i = 0; i < 2; i++) {
+			try {
+				identityIntegrityService.checkNationalRegistrationCertificate(certificateChain);
+				fail();
+			} catch (RevokedCertificateSecurityException e) {
+				assertNotSame(revoked, e);
+				assertEquals("revoked", e.getMessage());
+			}
+		}
+
+		verify(mockIdentityIntegrityService, times(1)).checkNationalRegistrationCertificate(certificateChain);
+	}
+
+	@Test
+	public void testOtherErrorsAreNotCached() throws Exception {
+		when(this.mockServletConfig.getInitParameter(INIT_PARAM + "CacheTtl")).thenReturn("60000");
+		CertificateValidationCache cache = new CertificateValidationCache(INIT_PARAM, this.mockServletConfig);
+		AuthenticationService mockAuthenticationService = mock(AuthenticationService.class);
+		List<X509Certificate> certificateChain = getCertificateChain(1, System.currentTimeMillis() + 3600 * 1000);
+		doThrow(new SecurityException("OCSP responder unavailable")).when(mockAuthenticationService)
+				.validateCertificateChain(certificateChain);
+
+		AuthenticationService authenticationService = cache.decorate(mockAuthenticationService);
+		for (int i = 0; i < 2; i++) {
+			try {
+				authenticationService.validateCertificateChain(certificateChain);
+				fail();
+			} catch (SecurityException e) {
+				// expected
+			}
+		}
+
+		verify(mockAuthenticationService, times(2)).validateCertificateChain(certificateChain);
+		assertEquals(0, cache.getSize());
+	}
+
+	private List<X509Certificate> getCertificateChain(int id, long notAfter) throws Exception {
+		X509Certificate mockCertificate = mock(X509Certificate.class);
+		when(mockCertificate.getEncoded()).thenReturn(new byte[]{1, 2, (byte) id});
+		when(mockCertificate.getNotAfter()).thenReturn(new Date(notAfter));
+		X509Certificate mockCaCertificate = mock(X509Certificate.class);
+		when(mockCaCertificate.getEncoded()).thenReturn(new byte[]{3, 4});
+		when(mockCaCertificate.getNotAfter()).thenReturn(new Date(notAfter));
+		return Arrays.asList(mockCertificate, mockCaCertificate);
+	}
+}
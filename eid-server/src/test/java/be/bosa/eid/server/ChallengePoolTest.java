@@ -0,0 +1,103 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.ChallengePool;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChallengePoolTest {
+
+	@Test
+	public void testEmptyPoolGeneratesAndRefills() {
+		List<Runnable> refills = new ArrayList<>();
+		ChallengePool challengePool = new ChallengePool(8, refills::add);
+
+		byte[] challenge = challengePool.nextChallenge();
+
+		assertEquals(ChallengePool.CHALLENGE_SIZE, challenge.length);
+		assertEquals(1, challengePool.getPoolMissCount());
+		assertEquals(1, refills.size());
+
+		// only one refill is scheduled at a time
+		challengePool.nextChallenge();
+		assertEquals(1, refills.size());
+
+		refills.get(0).run();
+		assertEquals(8, challengePool.getSize());
+		assertEquals(1, challengePool.getRefillCount());
+		assertTrue(challengePool.getReseedCount() >= 1);
+
+		challengePool.nextChallenge();
+		assertEquals(1, challengePool.getPoolHitCount());
+		assertEquals(7, challengePool.getSize());
+	}
+
+	@Test
+	public void testRefillWhenRunningLow() {
+		List<Runnable> refills = new ArrayList<>();
+		ChallengePool challengePool = new ChallengePool(8, refills::add);
+		challengePool.nextChallenge();
+		refills.remove(0).run();
+
+		for (int idx = 0; idx < 4; idx++) {
+			challengePool.nextChallenge();
+		}
+		assertEquals(0, refills.size());
+
+		challengePool.nextChallenge();
+		assertEquals(1, refills.size());
+		assertEquals(1, challengePool.getPoolMissCount());
+	}
+
+	@Test
+	public void testConcurrentChallengesAreUnique() throws Exception {
+		Executor directExecutor = Runnable::run;
+		ChallengePool challengePool = new ChallengePool(64, directExecutor);
+		Set<ByteBuffer> challenges = ConcurrentHashMap.newKeySet();
+		int threadCount = 8;
+		int challengesPerThread = 1000;
+
+		List<Thread> threads = new ArrayList<>();
+		for (int threadIdx = 0; threadIdx < threadCount; threadIdx++) {
+			Thread thread = new Thread(() -> {
+				for (int idx = 0; idx < challengesPerThread; idx++) {
+					challenges.add(ByteBuffer.wrap(challengePool.nextChallenge()));
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(threadCount * challengesPerThread, challenges.size());
+		assertEquals(threadCount * challengesPerThread,
+				challengePool.getPoolHitCount() + challengePool.getPoolMissCount());
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.CitizenIdentifierGenerator;
+import be.bosa.eid.server.impl.UserIdentifierUtil;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class CitizenIdentifierGeneratorTest {
+
+	private static final String SECRET = "112233445566778899AABBCCDDEEFF00112233445566778899";
+
+	@Test
+	public void testGenerate() throws Exception {
+		CitizenIdentifierGenerator generator = new CitizenIdentifierGenerator(SECRET, "org-id", "app-id");
+
+		String result = generator.generate("12345678901");
+
+		Mac mac = Mac.getInstance(UserIdentifierUtil.HMAC_ALGO);
+		mac.init(new SecretKeySpec(Hex.decodeHex(SECRET.toCharArray()), UserIdentifierUtil.HMAC_ALGO));
+		String expected = new String(Hex.encodeHex(mac.doFinal("12345678901app-idorg-id".getBytes()))).toUpperCase();
+		assertEquals(expected, result);
+		assertEquals(expected,
+				UserIdentifierUtil.getNonReversibleCitizenIdentifier("12345678901", "org-id", "app-id", SECRET));
+		assertEquals(expected, generator.generate("12345678901"));
+	}
+
+	@Test
+	public void testDeprecatedUtilityKeepsGeneratorsApart() {
+		for (int idx = 0; idx < 40; idx++) {
+			String orgId = "org-id-" + (idx % 20);
+			assertEquals(new CitizenIdentifierGenerator(SECRET, orgId, "app-id").generate("12345678901"),
+					UserIdentifierUtil.getNonReversibleCitizenIdentifier("12345678901", orgId, "app-id", SECRET));
+		}
+		assertEquals(new CitizenIdentifierGenerator(SECRET, null, "app-id").generate("12345678901"),
+				UserIdentifierUtil.getNonReversibleCitizenIdentifier("12345678901", null, "app-id", SECRET));
+		assertNotEquals(UserIdentifierUtil.getNonReversibleCitizenIdentifier("12345678901", "org-id", "app-id", SECRET),
+				UserIdentifierUtil.getNonReversibleCitizenIdentifier("12345678901", "org-id", "app-id", SECRET + "12"));
+	}
+
+	@Test
+	public void testGenerateBulkKeepsOrder() {
+		CitizenIdentifierGenerator generator = new CitizenIdentifierGenerator(SECRET, "org-id", "app-id");
+		List<String> userIds = new ArrayList<>();
+		for (int idx = 0; idx < 10000; idx++) {
+			userIds.add(String.format("%011d", idx));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		List<String> result;
+		try {
+			result = generator.generate(userIds, pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(userIds.size(), result.size());
+		for (int idx = 0; idx < userIds.size(); idx += 997) {
+			assertEquals(generator.generate(userIds.get(idx)), result.get(idx));
+		}
+	}
+
+	@Test
+	public void testInvalidSecret() {
+		try {
+			new CitizenIdentifierGenerator("not-hex", "org-id", "app-id");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("secret is not hexadecimal encoded", e.getMessage());
+		}
+		try {
+			new CitizenIdentifierGenerator("112233", "org-id", "app-id");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("secret key is too short", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testToolConvert() throws Exception {
+		CitizenIdentifierGenerator generator = new CitizenIdentifierGenerator(SECRET, "org-id", "app-id");
+		StringWriter output = new StringWriter();
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		long count;
+		try {
+			count = CitizenIdentifierTool.convert(generator,
+					new BufferedReader(new StringReader("11111111111\n\n 22222222222 \n")),
+					new BufferedWriter(output), pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(2, count);
+		String newLine = System.lineSeparator();
+		assertEquals("11111111111," + generator.generate("11111111111") + newLine
+				+ "22222222222," + generator.generate("22222222222") + newLine, output.toString());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.ConcurrencyLimitedExecutor;
+import be.bosa.eid.server.impl.VirtualThreads;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimitedExecutorTest {
+
+	@Test
+	public void testLimitsConcurrency() throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(executorService, 2);
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch done = new CountDownLatch(4);
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger maxRunning = new AtomicInteger();
+			for (int idx = 0; idx < 4; idx++) {
+				executor.execute(() -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+					done.countDown();
+				});
+			}
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (executor.getWaitingCount() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(2, executor.getActiveCount());
+			assertEquals(2, executor.getWaitingCount());
+
+			release.countDown();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(2, maxRunning.get());
+			deadline = System.currentTimeMillis() + 5000;
+			while (executor.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, executor.getActiveCount());
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testVirtualThreadsMatchRuntime() {
+		boolean virtualThreadsExpected = !System.getProperty("java.specification.version").startsWith("1.")
+				&& Integer.parseInt(System.getProperty("java.specification.version")) >= 21;
+
+		assertEquals(virtualThreadsExpected, VirtualThreads.isSupported());
+		assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+		if (!virtualThreadsExpected) {
+			try {
+				VirtualThreads.newVirtualThreadPerTaskExecutor();
+				fail();
+			} catch (UnsupportedOperationException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.CryptoPool;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CryptoPoolTest {
+
+	@Test
+	public void testSameThreadReusesInstance() throws Exception {
+		CryptoPool cryptoPool = CryptoPool.getInstance();
+
+		Signature signature = cryptoPool.getSignature("SHA256withRSA");
+
+		assertSame(signature, cryptoPool.getSignature("SHA256withRSA"));
+		assertNotSame(signature, cryptoPool.getSignature("SHA1withRSA"));
+		assertEquals("SHA256withRSA", signature.getAlgorithm());
+	}
+
+	@Test
+	public void testOtherThreadGetsOwnInstance() throws Exception {
+		CryptoPool cryptoPool = CryptoPool.getInstance();
+		Signature signature = cryptoPool.getSignature("SHA256withRSA");
+
+		AtomicReference<Signature> otherSignature = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				otherSignature.set(cryptoPool.getSignature("SHA256withRSA"));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		thread.start();
+		thread.join();
+
+		assertNotSame(signature, otherSignature.get());
+	}
+
+	@Test
+	public void testMessageDigestIsReset() throws Exception {
+		CryptoPool cryptoPool = CryptoPool.getInstance();
+		MessageDigest messageDigest = cryptoPool.getMessageDigest("SHA-256");
+		messageDigest.update("left behind".getBytes());
+
+		byte[] result = cryptoPool.getMessageDigest("SHA-256").digest("hello".getBytes());
+
+		assertArrayEquals(MessageDigest.getInstance("SHA-256").digest("hello".getBytes()), result);
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		CryptoPool cryptoPool = CryptoPool.getInstance();
+		long borrowCount = cryptoPool.getBorrowCount();
+
+		cryptoPool.getMac("HmacSHA1");
+		cryptoPool.getMac("HmacSHA1");
+
+		assertEquals(borrowCount + 2, cryptoPool.getBorrowCount());
+		assertTrue(cryptoPool.getPoolSize() >= 1);
+		assertTrue(cryptoPool.getCreatedCount() >= cryptoPool.getPoolSize());
+		assertTrue(cryptoPool.getAverageBorrowNanos() >= 0);
+	}
+
+	@Test
+	public void testClearDropsPooledInstances() throws Exception {
+		CryptoPool cryptoPool = CryptoPool.getInstance();
+		Signature signature = cryptoPool.getSignature("SHA256withRSA");
+		long createdCount = cryptoPool.getCreatedCount();
+
+		cryptoPool.clear();
+
+		assertEquals(0, cryptoPool.getPoolSize());
+		assertNotSame(signature, cryptoPool.getSignature("SHA256withRSA"));
+		assertTrue(cryptoPool.getCreatedCount() > createdCount);
+	}
+}
@@ -99,6 +99,26 @@ public class DTOMapperTest {
 		assertTrue(result.female);
 	}
 
+	@Test
+	public void testMapReusesMappingPlan() {
+		DTOMapper dtoMapper = new DTOMapper();
+		Identity maleIdentity = new Identity();
+		maleIdentity.name = "male-name";
+		maleIdentity.gender = Gender.MALE;
+		Identity femaleIdentity = new Identity();
+		femaleIdentity.gender = Gender.FEMALE;
+
+		IdentityDTO maleResult = dtoMapper.map(maleIdentity, IdentityDTO.class);
+		IdentityDTO femaleResult = new DTOMapper().map(femaleIdentity, IdentityDTO.class);
+
+		assertEquals("male-name", maleResult.name);
+		assertTrue(maleResult.male);
+		assertFalse(maleResult.female);
+		assertNull(femaleResult.name);
+		assertFalse(femaleResult.male);
+		assertTrue(femaleResult.female);
+	}
+
 	@Test
 	public void testMapNull() {
 		IdentityDTO result = new DTOMapper().map(null, IdentityDTO.class);
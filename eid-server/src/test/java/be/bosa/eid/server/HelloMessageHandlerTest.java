@@ -0,0 +1,138 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.client_server.shared.message.CheckClientMessage;
+import be.bosa.eid.client_server.shared.message.HelloMessage;
+import be.bosa.eid.client_server.shared.message.IdentificationRequestMessage;
+import be.bosa.eid.client_server.shared.message.InsecureClientMessage;
+import be.bosa.eid.server.impl.handler.HelloMessageHandler;
+import be.bosa.eid.server.spi.InsecureClientEnvironmentException;
+import be.bosa.eid.server.spi.SecureClientEnvironmentService;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HelloMessageHandlerTest {
+
+	private HelloMessageHandler testedInstance;
+
+	private Map<String, String> httpHeaders;
+
+	private HttpServletRequest mockServletRequest;
+
+	private HttpSession mockHttpSession;
+
+	@Before
+	public void setUp() throws Exception {
+		this.testedInstance = new HelloMessageHandler();
+		this.httpHeaders = new HashMap<>();
+		this.httpHeaders.put("user-agent", "test-user-agent");
+		this.mockServletRequest = mock(HttpServletRequest.class);
+		this.mockHttpSession = mock(HttpSession.class);
+		SecureClientEnvironmentTestService.reset();
+
+		ServletConfig mockServletConfig = mock(ServletConfig.class);
+		when(mockServletConfig.getInitParameter("SecureClientEnvironmentServiceClass"))
+				.thenReturn(SecureClientEnvironmentTestService.class.getName());
+		EidServiceServlet.injectInitParams(mockServletConfig, this.testedInstance);
+		this.testedInstance.init(mockServletConfig);
+	}
+
+	@Test
+	public void testHelloWithoutClientEnvironment() throws Exception {
+		Object result = this.testedInstance.handleMessage(new HelloMessage("en", null), this.httpHeaders,
+				this.mockServletRequest, this.mockHttpSession);
+
+		assertTrue(result instanceof CheckClientMessage);
+		assertEquals(0, SecureClientEnvironmentTestService.checkCount);
+	}
+
+	@Test
+	public void testHelloWithClientEnvironment() throws Exception {
+		Object result = this.testedInstance.handleMessage(newHelloMessageWithClientEnvironment(), this.httpHeaders,
+				this.mockServletRequest, this.mockHttpSession);
+
+		assertTrue(result instanceof IdentificationRequestMessage);
+		assertEquals(1, SecureClientEnvironmentTestService.checkCount);
+		assertEquals("1.8.0", SecureClientEnvironmentTestService.javaVersion);
+		assertEquals("test-user-agent", SecureClientEnvironmentTestService.userAgent);
+	}
+
+	@Test
+	public void testHelloWithInsecureClientEnvironment() throws Exception {
+		SecureClientEnvironmentTestService.insecure = true;
+
+		Object result = this.testedInstance.handleMessage(newHelloMessageWithClientEnvironment(), this.httpHeaders,
+				this.mockServletRequest, this.mockHttpSession);
+
+		assertTrue(result instanceof InsecureClientMessage);
+		assertTrue(((InsecureClientMessage) result).warnOnly);
+	}
+
+	private static HelloMessage newHelloMessageWithClientEnvironment() {
+		HelloMessage helloMessage = new HelloMessage("en", null);
+		helloMessage.javaVersion = "1.8.0";
+		helloMessage.javaVendor = "test-vendor";
+		helloMessage.osName = "Linux";
+		helloMessage.osArch = "amd64";
+		helloMessage.osVersion = "4.4";
+		return helloMessage;
+	}
+
+	public static class SecureClientEnvironmentTestService implements SecureClientEnvironmentService {
+
+		private static int checkCount;
+
+		private static boolean insecure;
+
+		private static String javaVersion;
+
+		private static String userAgent;
+
+		static void reset() {
+			checkCount = 0;
+			insecure = false;
+			javaVersion = null;
+			userAgent = null;
+		}
+
+		@Override
+		public void checkSecureClientEnvironment(String javaVersion, String javaVendor, String osName, String osArch,
+												 String osVersion, String userAgent, String remoteAddress,
+												 Integer sslKeySize, String sslCipherSuite)
+				throws InsecureClientEnvironmentException {
+			checkCount++;
+			SecureClientEnvironmentTestService.javaVersion = javaVersion;
+			SecureClientEnvironmentTestService.userAgent = userAgent;
+			if (insecure) {
+				throw new InsecureClientEnvironmentException(true);
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.client_server.shared.message.ErrorCode;
+import be.bosa.eid.client_server.shared.message.FinishedMessage;
+import be.bosa.eid.client_server.shared.message.HelloMessage;
+import be.bosa.eid.server.impl.CertificateValidationCache;
+import be.bosa.eid.server.impl.audit.AuditDispatcher;
+import be.bosa.eid.server.impl.metrics.LatencyHistogram;
+import be.bosa.eid.server.impl.metrics.MessageMetrics;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MessageMetricsTest {
+
+	@Test
+	public void testHistogramQuantiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500500000, histogram.getSum());
+		assertWithinPrecision(500000, histogram.getValueAtQuantile(0.5));
+		assertWithinPrecision(990000, histogram.getValueAtQuantile(0.99));
+		assertEquals(0, new LatencyHistogram().getValueAtQuantile(0.5));
+	}
+
+	@Test
+	public void testRecordPerMessageTypeAndPhase() {
+		MessageMetrics messageMetrics = new MessageMetrics();
+
+		messageMetrics.record(HelloMessage.class, MessageMetrics.Phase.HANDLER, 2000000);
+		messageMetrics.record(HelloMessage.class, MessageMetrics.Phase.HANDLER, 2000000);
+		messageMetrics.recordError(HelloMessage.class);
+		messageMetrics.recordError(null);
+		messageMetrics.recordFinishedMessage(new FinishedMessage());
+		messageMetrics.recordFinishedMessage(new FinishedMessage(ErrorCode.CERTIFICATE_EXPIRED));
+
+		assertEquals(Long.valueOf(2), messageMetrics.getMessageCounts().get("HelloMessage"));
+		assertEquals(Long.valueOf(1), messageMetrics.getErrorCounts().get("HelloMessage"));
+		assertEquals(Long.valueOf(1), messageMetrics.getErrorCounts().get("unknown"));
+		assertEquals(Long.valueOf(1), messageMetrics.getFinishedMessageCounts().get("OK"));
+		assertEquals(Long.valueOf(1), messageMetrics.getFinishedMessageCounts().get("CERTIFICATE_EXPIRED"));
+		assertEquals(2.0, messageMetrics.getMeanLatencyMillis().get("HelloMessage.handler"), 0.0);
+	}
+
+	@Test
+	public void testInstrumentTimesServiceCalls() throws Exception {
+		MessageMetrics messageMetrics = new MessageMetrics();
+		Callable<String> service = messageMetrics.instrument(() -> {
+			Thread.sleep(5);
+			return "result";
+		});
+
+		messageMetrics.startSpiTiming();
+		assertEquals("result", service.call());
+
+		assertTrue(messageMetrics.getSpiNanos() >= 5000000);
+		assertEquals(1, messageMetrics.getSpiLatencies().get("Callable.call").getCount());
+		assertTrue(messageMetrics.instrument(service) == service);
+	}
+
+	@Test
+	public void testPrometheusExposition() {
+		MessageMetrics messageMetrics = new MessageMetrics();
+		messageMetrics.record(HelloMessage.class, MessageMetrics.Phase.UNMARSHAL, 1000);
+		messageMetrics.recordFinishedMessage(new FinishedMessage());
+
+		StringWriter result = new StringWriter();
+		EidMetricsServlet.writeMetrics(Collections.singletonMap("eid", messageMetrics), new PrintWriter(result));
+
+		String metrics = result.toString();
+		assertTrue(metrics.contains("# TYPE eid_message_phase_seconds summary"));
+		assertTrue(metrics.contains(
+				"eid_message_phase_seconds_count{servlet=\"eid\",message=\"HelloMessage\",phase=\"unmarshal\"} 1"));
+		assertTrue(metrics.contains("eid_finished_messages_total{servlet=\"eid\",error_code=\"OK\"} 1"));
+	}
+
+	@Test
+	public void testPrometheusExpositionOfCachesAndAuditDispatchers() {
+		MessageMetrics messageMetrics = new MessageMetrics();
+		CertificateValidationCache validationCache = mock(CertificateValidationCache.class);
+		when(validationCache.isEnabled()).thenReturn(true);
+		when(validationCache.getHitCount()).thenReturn(3L);
+		when(validationCache.getMissCount()).thenReturn(1L);
+		CertificateValidationCache disabledValidationCache = mock(CertificateValidationCache.class);
+		AuditDispatcher auditDispatcher = mock(AuditDispatcher.class);
+		when(auditDispatcher.isAsync()).thenReturn(true);
+		when(auditDispatcher.getQueueDepth()).thenReturn(7);
+		when(auditDispatcher.getDroppedCount()).thenReturn(2L);
+		messageMetrics.registerValidationCache("AuthenticationService", validationCache);
+		messageMetrics.registerValidationCache("IdentityIntegrityService", disabledValidationCache);
+		messageMetrics.registerAuditDispatcher("AuditService", auditDispatcher);
+
+		StringWriter result = new StringWriter();
+		EidMetricsServlet.writeMetrics(Collections.singletonMap("eid", messageMetrics), new PrintWriter(result));
+
+		String metrics = result.toString();
+		assertTrue(metrics.contains("eid_certificate_validation_cache_requests_total{servlet=\"eid\","
+				+ "cache=\"AuthenticationService\",result=\"hit\"} 3"));
+		assertTrue(metrics.contains("eid_certificate_validation_cache_requests_total{servlet=\"eid\","
+				+ "cache=\"AuthenticationService\",result=\"miss\"} 1"));
+		assertFalse(metrics.contains("IdentityIntegrityService"));
+		assertTrue(metrics.contains("eid_audit_queue_depth{servlet=\"eid\",dispatcher=\"AuditService\"} 7"));
+		assertTrue(metrics.contains(
+				"eid_audit_events_total{servlet=\"eid\",dispatcher=\"AuditService\",outcome=\"dropped\"} 2"));
+		assertTrue(metrics.contains("# TYPE eid_certificate_cache_requests_total counter"));
+	}
+
+	private void assertWithinPrecision(long expected, long actual) {
+		assertTrue("expected about " + expected + " but was " + actual,
+				Math.abs(actual - expected) <= expected / 8);
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.OffHeapProtocolStateStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class OffHeapProtocolStateStoreTest {
+
+	private static final long TTL = 60 * 1000;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testStoreLoadRemove() {
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.allocateDirect(4, 256);
+
+		store.store("run-1", new byte[]{1, 2, 3}, TTL);
+		store.store("run-2", new byte[]{4}, TTL);
+		store.store("run-1", new byte[]{5, 6}, TTL);
+
+		assertArrayEquals(new byte[]{5, 6}, store.load("run-1"));
+		assertArrayEquals(new byte[]{4}, store.load("run-2"));
+		assertNull(store.load("run-3"));
+		assertEquals(2, store.getSize());
+
+		store.remove("run-1");
+		assertNull(store.load("run-1"));
+		assertEquals(1, store.getSize());
+	}
+
+	@Test
+	public void testExpiredStateIsEvicted() {
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.allocateDirect(2, 256);
+		store.store("expired-1", new byte[]{1}, -1);
+		store.store("expired-2", new byte[]{2}, -1);
+
+		store.store("run", new byte[]{3}, TTL);
+
+		assertArrayEquals(new byte[]{3}, store.load("run"));
+		assertNull(store.load("expired-1"));
+		assertNull(store.load("expired-2"));
+		assertEquals(2, store.getEvictedCount());
+	}
+
+	@Test
+	public void testStoreFull() {
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.allocateDirect(1, 256);
+		store.store("run-1", new byte[]{1}, TTL);
+
+		try {
+			store.store("run-2", new byte[]{2}, TTL);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testStateTooLarge() {
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.allocateDirect(1, 256);
+
+		try {
+			store.store("run", new byte[store.getMaximumStateSize() + 1], TTL);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMemoryMappedStateSurvivesRestart() throws Exception {
+		File file = new File(this.temporaryFolder.getRoot(), "protocol-state");
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.map(file, 4, 256);
+		store.store("run-1", new byte[]{1, 2, 3}, TTL);
+		store.store("run-2", new byte[]{4}, TTL);
+		store.remove("run-2");
+
+		OffHeapProtocolStateStore restoredStore = OffHeapProtocolStateStore.map(file, 4, 256);
+
+		assertArrayEquals(new byte[]{1, 2, 3}, restoredStore.load("run-1"));
+		assertNull(restoredStore.load("run-2"));
+		assertEquals(1, restoredStore.getSize());
+	}
+
+	@Test
+	public void testTornRecordIsDroppedOnRestart() throws Exception {
+		File file = new File(this.temporaryFolder.getRoot(), "protocol-state");
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.map(file, 4, 256);
+		store.store("run-1", new byte[]{1, 2, 3}, TTL);
+		store.store("run-2", new byte[]{4}, TTL);
+
+		// corrupt the state length of the first record
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(16 + 12);
+			randomAccessFile.writeInt(-1);
+		}
+		OffHeapProtocolStateStore restoredStore = OffHeapProtocolStateStore.map(file, 4, 256);
+
+		assertNull(restoredStore.load("run-1"));
+		assertArrayEquals(new byte[]{4}, restoredStore.load("run-2"));
+		assertEquals(1, restoredStore.getSize());
+		restoredStore.store("run-3", new byte[]{5}, TTL);
+		restoredStore.store("run-4", new byte[]{6}, TTL);
+		restoredStore.store("run-5", new byte[]{7}, TTL);
+	}
+
+	@Test
+	public void testFileWithOtherLayoutIsReset() throws Exception {
+		File file = new File(this.temporaryFolder.getRoot(), "protocol-state");
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.map(file, 4, 256);
+		store.store("run-1", new byte[]{1, 2, 3}, TTL);
+
+		OffHeapProtocolStateStore otherStore = OffHeapProtocolStateStore.map(file, 4, 512);
+
+		assertNull(otherStore.load("run-1"));
+		assertEquals(0, otherStore.getSize());
+		otherStore.store("run-2", new byte[400], TTL);
+		assertEquals(400, otherStore.load("run-2").length);
+	}
+
+	@Test
+	public void testConcurrentProtocolRuns() throws Exception {
+		OffHeapProtocolStateStore store = OffHeapProtocolStateStore.allocateDirect(1024, 256);
+		ExecutorService executorService = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int thread = 0; thread < 8; thread++) {
+			int threadId = thread;
+			futures.add(executorService.submit(() -> {
+				for (int run = 0; run < 1000; run++) {
+					String key = "run-" + threadId + "-" + run;
+					byte[] state = key.getBytes();
+					store.store(key, state, TTL);
+					assertArrayEquals(state, store.load(key));
+					store.remove(key);
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executorService.shutdown();
+
+		assertEquals(0, store.getSize());
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.client_server.shared.protocol.ProtocolState;
+import be.bosa.eid.server.impl.AuthenticationChallenge;
+import be.bosa.eid.server.impl.HttpServletProtocolContext;
+import be.bosa.eid.server.impl.ProtocolTokenCodec;
+import be.bosa.eid.server.impl.ProtocolStateSession;
+import be.bosa.eid.server.impl.RequestContext;
+import be.bosa.eid.server.impl.StatelessChallengeCodec;
+import be.bosa.eid.server.impl.handler.SignatureDataMessageHandler;
+import org.junit.Test;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProtocolTokenCodecTest {
+
+	private static final String SECRET = "cluster-secret-of-at-least-32-characters";
+
+	@Test
+	public void testRoundTrip() {
+		ProtocolTokenCodec codec = new ProtocolTokenCodec(SECRET, ProtocolTokenCodec.DEFAULT_TTL);
+		ProtocolStateSession session = new ProtocolStateSession(null, 300);
+		session.setAttribute(HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE, ProtocolState.AUTHENTICATE);
+		byte[] challenge = AuthenticationChallenge.generateChallenge(session);
+		new RequestContext(session).setIncludePhoto(true);
+		SignatureDataMessageHandler.setDigestValue(new byte[]{1, 2, 3}, "SHA-256", session);
+		session.setAttribute("custom", "value");
+
+		String token = codec.encode(session);
+		ProtocolStateSession result = codec.decode(token, null);
+
+		assertFalse(result.isNew());
+		assertEquals(session.getId(), result.getId());
+		assertEquals(session.getCreationTime(), result.getCreationTime());
+		assertEquals(ProtocolState.AUTHENTICATE,
+				result.getAttribute(HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE));
+		assertTrue(new RequestContext(result).includePhoto());
+		assertFalse(new RequestContext(result).includeAddress());
+		assertArrayEquals(new byte[]{1, 2, 3}, SignatureDataMessageHandler.getDigestValue(result));
+		assertEquals("SHA-256", SignatureDataMessageHandler.getDigestAlgo(result));
+		assertEquals("value", result.getAttribute("custom"));
+		assertArrayEquals(challenge, AuthenticationChallenge.getAuthnChallenge(result));
+		assertNull(result.getAttribute(AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE));
+	}
+
+	@Test
+	public void testReplayedTokenIsRejected() {
+		ProtocolTokenCodec codec = new ProtocolTokenCodec(SECRET, ProtocolTokenCodec.DEFAULT_TTL);
+		StatelessChallengeCodec challengeCodec = new StatelessChallengeCodec(SECRET,
+				AuthenticationChallenge.DEFAULT_MAX_MATURITY, StatelessChallengeCodec.DEFAULT_PEAK_RATE);
+		ProtocolStateSession session = new ProtocolStateSession(null, 300);
+		session.setAttribute(HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE, ProtocolState.AUTHENTICATE);
+		byte[] challenge = AuthenticationChallenge.generateChallenge(session, challengeCodec);
+		String token = codec.encode(session);
+
+		ProtocolStateSession result = codec.decode(token, null);
+		assertArrayEquals(challenge,
+				AuthenticationChallenge.getAuthnChallenge(result, null, challenge, challengeCodec));
+
+		// the captured token and authentication message are sent again
+		ProtocolStateSession replayed = codec.decode(token, null);
+		try {
+			AuthenticationChallenge.getAuthnChallenge(replayed, null, challenge, challengeCodec);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+		ProtocolStateSession replayedWithoutEcho = codec.decode(token, null);
+		try {
+			AuthenticationChallenge.getAuthnChallenge(replayedWithoutEcho, null, null, challengeCodec);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testStatelessProtocolRequiresStatelessChallenges() throws Exception {
+		ServletConfig mockServletConfig = mock(ServletConfig.class);
+		when(mockServletConfig.getServletContext()).thenReturn(mock(ServletContext.class));
+		when(mockServletConfig.getInitParameter("StatelessProtocolSecret")).thenReturn(SECRET);
+
+		try {
+			new EidServiceServlet().init(mockServletConfig);
+			fail();
+		} catch (ServletException e) {
+			assertTrue(e.getMessage().contains(StatelessChallengeCodec.SECRET_INIT_PARAM_NAME));
+		}
+	}
+
+	@Test
+	public void testTamperedToken() {
+		ProtocolTokenCodec codec = new ProtocolTokenCodec(SECRET, ProtocolTokenCodec.DEFAULT_TTL);
+		ProtocolStateSession session = new ProtocolStateSession(null, 300);
+		session.setAttribute(HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE, ProtocolState.IDENTIFY);
+		char[] token = codec.encode(session).toCharArray();
+		token[token.length / 2] = token[token.length / 2] == 'A' ? 'B' : 'A';
+
+		try {
+			codec.decode(new String(token), null);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testOtherSecret() {
+		ProtocolStateSession session = new ProtocolStateSession(null, 300);
+		session.setAttribute(HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE, ProtocolState.IDENTIFY);
+		String token = new ProtocolTokenCodec(SECRET, ProtocolTokenCodec.DEFAULT_TTL).encode(session);
+
+		try {
+			new ProtocolTokenCodec("other-cluster-secret-of-32-characters", ProtocolTokenCodec.DEFAULT_TTL).decode(token, null);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnsupportedAttributeType() {
+		ProtocolTokenCodec codec = new ProtocolTokenCodec(SECRET, ProtocolTokenCodec.DEFAULT_TTL);
+		ProtocolStateSession session = new ProtocolStateSession(null, 300);
+		session.setAttribute("custom", new ArrayList<>(Arrays.asList("a", "b")));
+
+		try {
+			codec.encode(session);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected, Java serialization is not supported
+		}
+	}
+
+	@Test
+	public void testSecretTooShort() {
+		try {
+			new ProtocolTokenCodec("cluster-secret", ProtocolTokenCodec.DEFAULT_TTL);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testExpiredToken() {
+		ProtocolTokenCodec codec = new ProtocolTokenCodec(SECRET, -1);
+		ProtocolStateSession session = new ProtocolStateSession(null, 300);
+		session.setAttribute(HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE, ProtocolState.IDENTIFY);
+		String token = codec.encode(session);
+
+		try {
+			codec.decode(token, null);
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("protocol token expired", e.getMessage());
+		}
+	}
+}
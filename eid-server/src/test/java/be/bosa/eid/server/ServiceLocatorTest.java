@@ -0,0 +1,92 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.ServiceLocator;
+import org.junit.Test;
+
+import javax.servlet.ServletConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServiceLocatorTest {
+
+	private static final String INIT_PARAM = "TestService";
+
+	@Test
+	public void testPerCallResolution() throws Exception {
+		ServletConfig mockServletConfig = mock(ServletConfig.class);
+		when(mockServletConfig.getInitParameter(INIT_PARAM + "Class")).thenReturn(TestService.class.getName());
+
+		ServiceLocator<TestService> serviceLocator = new ServiceLocator<>(INIT_PARAM, mockServletConfig);
+
+		assertEquals(ServiceLocator.Resolution.PER_CALL, serviceLocator.getResolution());
+		assertNotSame(serviceLocator.locateService(), serviceLocator.locateService());
+		assertEquals(0, serviceLocator.getHitCount());
+		assertEquals(2, serviceLocator.getMissCount());
+	}
+
+	@Test
+	public void testSingletonResolution() throws Exception {
+		ServletConfig mockServletConfig = mock(ServletConfig.class);
+		when(mockServletConfig.getInitParameter(INIT_PARAM + "Class")).thenReturn(TestService.class.getName());
+		when(mockServletConfig.getInitParameter(INIT_PARAM + "Resolution")).thenReturn("singleton");
+
+		ServiceLocator<TestService> serviceLocator = new ServiceLocator<>(INIT_PARAM, mockServletConfig);
+
+		TestService service = serviceLocator.locateService();
+		for (int i = 0; i < 10; i++) {
+			assertSame(service, serviceLocator.locateService());
+		}
+		assertEquals(10, serviceLocator.getHitCount());
+		assertEquals(1, serviceLocator.getMissCount());
+	}
+
+	@Test
+	public void testPooledResolutionIsNotSupported() {
+		ServletConfig mockServletConfig = mock(ServletConfig.class);
+		when(mockServletConfig.getInitParameter(INIT_PARAM + "Class")).thenReturn(TestService.class.getName());
+		when(mockServletConfig.getInitParameter(INIT_PARAM + "Resolution")).thenReturn("POOLED");
+
+		try {
+			new ServiceLocator<TestService>(INIT_PARAM, mockServletConfig);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected, a shared instance does not bound concurrent use
+		}
+	}
+
+	@Test
+	public void testMissingService() throws Exception {
+		ServletConfig mockServletConfig = mock(ServletConfig.class);
+		when(mockServletConfig.getInitParameter(INIT_PARAM + "Resolution")).thenReturn("SINGLETON");
+
+		ServiceLocator<TestService> serviceLocator = new ServiceLocator<>(INIT_PARAM, mockServletConfig);
+
+		assertNull(serviceLocator.locateService());
+	}
+
+	public static class TestService {
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * eID Client - Server Project.
+ * Copyright (C) 2018 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.eid.server;
+
+import be.bosa.eid.server.impl.AuthenticationChallenge;
+import be.bosa.eid.server.impl.ReplayFilter;
+import be.bosa.eid.server.impl.StatelessChallengeCodec;
+import org.junit.Test;
+
+import javax.servlet.http.HttpSession;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatelessChallengeCodecTest {
+
+	private static final long MAX_MATURITY = 1000 * 60 * 5;
+
+	private static final String SECRET = "cluster-secret-of-at-least-32-characters";
+
+	@Test
+	public void testVerifyOnOtherNode() {
+		StatelessChallengeCodec issuingNode = new StatelessChallengeCodec(SECRET, MAX_MATURITY, 10);
+		StatelessChallengeCodec verifyingNode = new StatelessChallengeCodec(SECRET, MAX_MATURITY, 10);
+
+		byte[] challenge = issuingNode.generate();
+
+		assertEquals(StatelessChallengeCodec.CHALLENGE_SIZE, challenge.length);
+		verifyingNode.verify(challenge);
+	}
+
+	@Test
+	public void testReplayIsRejected() {
+		StatelessChallengeCodec codec = new StatelessChallengeCodec(SECRET, MAX_MATURITY, 10);
+		byte[] challenge = codec.generate();
+		codec.verify(challenge);
+
+		try {
+			codec.verify(challenge);
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("challenge already used", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testTamperedChallengeIsRejected() {
+		StatelessChallengeCodec codec = new StatelessChallengeCodec(SECRET, MAX_MATURITY, 10);
+		byte[] challenge = codec.generate();
+		challenge[5]++;
+
+		try {
+			codec.verify(challenge);
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("challenge authentication failed", e.getMessage());
+		}
+
+		try {
+			new StatelessChallengeCodec("other-cluster-secret-of-32-characters", MAX_MATURITY, 10).verify(codec.generate());
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("challenge authentication failed", e.getMessage());
+		}
+
+		try {
+			codec.verify(Arrays.copyOf(codec.generate(), 20));
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("invalid challenge", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testExpiredChallengeIsRejected() throws Exception {
+		StatelessChallengeCodec codec = new StatelessChallengeCodec(SECRET, 1, 10);
+		byte[] challenge = codec.generate();
+		Thread.sleep(10);
+
+		try {
+			codec.verify(challenge);
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("maximum challenge maturity reached", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testEchoedChallengeDoesNotNeedSession() {
+		StatelessChallengeCodec codec = new StatelessChallengeCodec(SECRET, MAX_MATURITY, 10);
+		HttpSession issuingSession = new HttpTestSession();
+		byte[] challenge = AuthenticationChallenge.generateChallenge(issuingSession, codec);
+
+		HttpSession otherSession = new HttpTestSession();
+		byte[] result = AuthenticationChallenge.getAuthnChallenge(otherSession, null, challenge, codec);
+
+		assertArrayEquals(challenge, result);
+	}
+
+	@Test
+	public void testSessionChallengeIsAlsoSingleUse() {
+		StatelessChallengeCodec codec = new StatelessChallengeCodec(SECRET, MAX_MATURITY, 10);
+		HttpSession session = new HttpTestSession();
+		byte[] challenge = AuthenticationChallenge.generateChallenge(session, codec);
+
+		assertArrayEquals(challenge, AuthenticationChallenge.getAuthnChallenge(session, null, null, codec));
+
+		try {
+			AuthenticationChallenge.getAuthnChallenge(session, null, challenge, codec);
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("challenge already used", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testReplayFilterRotation() {
+		ReplayFilter replayFilter = new ReplayFilter(1000, 100, 1e-6);
+
+		assertTrue(replayFilter.add(1, 2, 500));
+		assertFalse(replayFilter.add(1, 2, 900));
+		assertTrue(replayFilter.add(3, 4, 1500));
+		assertFalse(replayFilter.add(1, 2, 999));
+
+		// window 2 replaces window 0, whose items are no longer accepted
+		assertTrue(replayFilter.add(1, 2, 2500));
+		assertFalse(replayFilter.add(5, 6, 500));
+		assertFalse(replayFilter.add(3, 4, 1600));
+	}
+
+	@Test
+	public void testReplayFilterSizing() {
+		ReplayFilter replayFilter = new ReplayFilter(1000, 100000, 1e-6);
+
+		// about 29 bits and 20 hashes per item for a false positive rate of 1e-6
+		assertEquals(2875584, replayFilter.getBitCount(), 64);
+		assertEquals(20, replayFilter.getHashCount());
+	}
+
+	@Test
+	public void testSecretTooShort() {
+		try {
+			new StatelessChallengeCodec("secret", MAX_MATURITY, 10);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
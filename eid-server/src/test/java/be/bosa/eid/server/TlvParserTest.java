@@ -27,6 +27,8 @@ import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
@@ -471,4 +473,59 @@ public class TlvParserTest {
 		LOG.debug("special organisation: \"" + identity.getSpecialOrganisation() + "\"");
 		assertEquals(SpecialOrganisation.RESEARCHER, identity.getSpecialOrganisation());
 	}
+
+	public static class PrivateField {
+		@TlvField(1)
+		private byte[] field;
+	}
+
+	@Test
+	public void testGeneratedParsers() throws Exception {
+		assertTrue(TlvParser.hasGeneratedParser(Identity.class));
+		assertTrue(TlvParser.hasGeneratedParser(Address.class));
+		assertFalse(TlvParser.hasGeneratedParser(PrivateField.class));
+
+		// reflective fallback
+		PrivateField privateField = TlvParser.parse(new byte[] { 1, 2, 0x12, 0x34 }, PrivateField.class);
+		assertArrayEquals(new byte[] { 0x12, 0x34 }, privateField.field);
+	}
+
+	@Test
+	public void testParseSlice() throws Exception {
+		// setup
+		byte[] idFile = IOUtils.toByteArray(TlvParserTest.class.getResourceAsStream("/id-alice.tlv"));
+		byte[] body = new byte[idFile.length + 20];
+		Arrays.fill(body, (byte) 0x01);
+		System.arraycopy(idFile, 0, body, 10, idFile.length);
+		ByteBuffer slice = ByteBuffer.wrap(body, 10, idFile.length).slice();
+
+		// operate
+		Identity identity = TlvParser.parse(slice, Identity.class);
+		Identity expectedIdentity = TlvParser.parse(idFile, Identity.class);
+
+		// verify
+		assertEquals(expectedIdentity.nationalNumber, identity.nationalNumber);
+		assertEquals(expectedIdentity.name, identity.name);
+		assertArrayEquals(expectedIdentity.photoDigest, identity.photoDigest);
+		assertEquals(idFile.length, slice.remaining());
+
+		// reflective parser
+		PrivateField privateField = TlvParser.parse(ByteBuffer.wrap(new byte[] { 5, 1, 2, 0x12, 0x34, 6 }, 1, 4).slice(),
+				PrivateField.class);
+		assertArrayEquals(new byte[] { 0x12, 0x34 }, privateField.field);
+	}
+
+	@Test
+	public void testValueExceedingSlice() {
+		// setup
+		byte[] body = new byte[] { 1, 4, 'a', 'b', 'c', 'd' };
+
+		// operate & verify
+		try {
+			TlvParser.parse(body, 0, 4, Identity.class);
+			fail();
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
 }